@@ -0,0 +1,166 @@
+#!/bin/bash
+
+# Graph Mailer Virtual Thread Load Test
+# Starts the application in mock mode twice with the same fixed heap, once on
+# platform threads and once on virtual threads, and fires the same burst of
+# concurrent sends at each. The mock Graph service blocks for 100-500ms per send
+# like a real Graph call, so the number of sends in flight is bounded by the
+# request threads rather than CPU.
+#
+# Usage: ./load-test.sh [concurrency] [requests]
+# Requires: java 21, curl, xargs, awk
+
+# Configuration
+CONCURRENCY="${1:-1000}"
+REQUESTS="${2:-5000}"
+HEAP="${LOAD_TEST_HEAP:-256m}"
+PORT="${LOAD_TEST_PORT:-18080}"
+API_KEY="${GRAPH_MAILER_API_KEY:-demo-api-key-12345}"
+BASE_URL="http://localhost:$PORT"
+WORK_DIR="$(mktemp -d -t graph-mailer-load-XXXX)"
+
+# Colors for output
+RED='\033[0;31m'
+GREEN='\033[0;32m'
+YELLOW='\033[1;33m'
+BLUE='\033[0;34m'
+NC='\033[0m' # No Color
+
+# Functions
+log_info() {
+    echo -e "${GREEN}[INFO]${NC} $1"
+}
+
+log_warn() {
+    echo -e "${YELLOW}[WARN]${NC} $1"
+}
+
+log_error() {
+    echo -e "${RED}[ERROR]${NC} $1"
+}
+
+log_title() {
+    echo -e "${BLUE}[LOAD]${NC} $1"
+}
+
+# Locate the application jar, building it if needed
+find_jar() {
+    JAR=$(ls target/graph-mailer-*.jar 2>/dev/null | grep -v original | head -n1)
+    if [ -z "$JAR" ]; then
+        log_info "Building application jar..."
+        ./mvnw -q -B package -DskipTests || exit 1
+        JAR=$(ls target/graph-mailer-*.jar | grep -v original | head -n1)
+    fi
+    log_info "Using $JAR"
+}
+
+# Read a single actuator metric value
+metric() {
+    curl -s -H "X-API-Key: $API_KEY" "$BASE_URL/actuator/metrics/$1" \
+        | grep -o '"value":[0-9.E+-]*' | head -n1 | cut -d: -f2
+}
+
+# Send one request
+send_one() {
+    local i=$1
+    curl -s -o /dev/null -w "%{http_code} %{time_total}\n" \
+        -X POST "$BASE_URL/api/v1/mail/send" \
+        -H "Content-Type: application/json" \
+        -H "X-API-Key: $API_KEY" \
+        -d "{\"fromUpn\":\"noreply@example.com\",\"to\":[\"load-$i@example.com\"],\"subject\":\"Load test $i\",\"textBody\":\"Load test message\"}"
+}
+export -f send_one
+export BASE_URL API_KEY
+
+# Run one load test pass against a freshly started application
+run_mode() {
+    local mode=$1
+    local virtual=$2
+    local results="$WORK_DIR/$mode-results.txt"
+    local samples="$WORK_DIR/$mode-samples.txt"
+
+    # All requests come from one client address, so its rate limits are raised above the burst
+    log_title "Starting application ($mode threads, heap $HEAP)..."
+    java -Xms"$HEAP" -Xmx"$HEAP" -jar "$JAR" \
+        --spring.profiles.active=mock \
+        --server.port="$PORT" \
+        --spring.threads.virtual.enabled="$virtual" \
+        --rate-limit.capacity=1000000 \
+        --rate-limit.send.capacity="$((REQUESTS * 2))" \
+        --rate-limit.send.daily-capacity="$((REQUESTS * 2))" \
+        --logging.level.com.graphmailer=WARN \
+        > "$WORK_DIR/$mode.log" 2>&1 &
+    APP_PID=$!
+
+    for _ in $(seq 1 60); do
+        if curl -s "$BASE_URL/actuator/health" | grep -q '"UP"'; then
+            break
+        fi
+        sleep 1
+    done
+    if ! curl -s "$BASE_URL/actuator/health" | grep -q '"UP"'; then
+        log_error "Application did not start, see $WORK_DIR/$mode.log"
+        kill "$APP_PID" 2>/dev/null
+        exit 1
+    fi
+
+    # Sample live threads and heap while the burst is running
+    (
+        while kill -0 "$APP_PID" 2>/dev/null; do
+            echo "$(metric jvm.threads.live) $(metric 'jvm.memory.used?tag=area:heap')"
+            sleep 0.5
+        done
+    ) > "$samples" &
+    SAMPLER_PID=$!
+
+    log_title "Sending $REQUESTS requests with $CONCURRENCY concurrent clients..."
+    local start end
+    start=$(date +%s.%N)
+    seq 1 "$REQUESTS" | xargs -P "$CONCURRENCY" -I{} bash -c 'send_one {}' > "$results"
+    end=$(date +%s.%N)
+
+    kill "$SAMPLER_PID" 2>/dev/null
+    kill "$APP_PID" 2>/dev/null
+    wait "$APP_PID" 2>/dev/null
+
+    # In-flight sends on average = total time spent in requests / wall time (Little's law)
+    sort -k2 -n "$results" | awk -v start="$start" -v end="$end" -v mode="$mode" -v samples="$samples" '
+        { n++; if ($1 == "200") ok++; total += $2; latency[n] = $2 }
+        END {
+            elapsed = end - start
+            while ((getline line < samples) > 0) {
+                split(line, s, " ")
+                if (s[1] + 0 > threads) threads = s[1] + 0
+                if (s[2] + 0 > heap) heap = s[2] + 0
+            }
+            printf "%-9s %8d %8d %9.1f %10.0f %9.0f %9.0f %8d %9.0f\n", mode, n, ok, elapsed, total / elapsed,
+                latency[int(n * 0.5)] * 1000, latency[int(n * 0.99)] * 1000, threads, heap / 1048576
+        }' >> "$WORK_DIR/summary.txt"
+}
+
+# Main execution
+main() {
+    echo -e "${BLUE}======================================${NC}"
+    echo -e "${BLUE}  Graph Mailer - Virtual Thread Load  ${NC}"
+    echo -e "${BLUE}======================================${NC}"
+    echo ""
+
+    find_jar
+    log_info "Concurrency: $CONCURRENCY, requests: $REQUESTS, heap: $HEAP"
+    log_info "Working directory: $WORK_DIR"
+    echo ""
+
+    run_mode platform false
+    run_mode virtual true
+
+    echo ""
+    log_title "Results"
+    printf "%-9s %8s %8s %9s %10s %9s %9s %8s %9s\n" \
+        "mode" "sent" "200 OK" "elapsed" "in-flight" "p50 ms" "p99 ms" "threads" "heap MB"
+    cat "$WORK_DIR/summary.txt"
+    echo ""
+    log_info "in-flight: average sends in progress at once (request time / wall time)"
+    log_warn "Platform threads cap in-flight sends at server.tomcat.threads.max (200 by default)"
+}
+
+main "$@"
@@ -0,0 +1,38 @@
+package com.graphmailer.actuator;
+
+import com.graphmailer.service.resilience.MailboxGovernor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Actuator endpoint exposing the per-mailbox governor state at /actuator/mailboxes.
+ *
+ * Shows each sending mailbox's current concurrency limit, in-flight calls,
+ * queue depth and send rate, which is the first place to look when a single
+ * sender is being throttled by Exchange Online.
+ */
+@Component
+@Endpoint(id = "mailboxes")
+public class MailboxGovernorEndpoint {
+
+    private final MailboxGovernor mailboxGovernor;
+
+    public MailboxGovernorEndpoint(MailboxGovernor mailboxGovernor) {
+        this.mailboxGovernor = mailboxGovernor;
+    }
+
+    @ReadOperation
+    public Map<String, MailboxGovernor.MailboxSnapshot> mailboxes() {
+        return mailboxGovernor.snapshot();
+    }
+
+    @ReadOperation
+    public MailboxGovernor.MailboxSnapshot mailbox(@Selector String mailbox) {
+        return mailboxGovernor.snapshot().get(mailbox.toLowerCase(Locale.ROOT));
+    }
+}
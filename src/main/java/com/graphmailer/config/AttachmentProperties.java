@@ -0,0 +1,42 @@
+package com.graphmailer.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+import org.springframework.validation.annotation.Validated;
+
+/**
+ * Configuration properties for attachment downloads.
+ *
+ * Attachment content is streamed from Graph to the client as it arrives.
+ * With {@code cache-enabled}, complete downloads of attachments up to
+ * {@code cache-max-entry-size} are also written to {@code cache-directory}
+ * and later requests, including range requests, are served from disk. The
+ * cache holds at most {@code cache-max-size} and evicts the least recently
+ * used attachments first.
+ */
+@ConfigurationProperties(prefix = "attachments")
+@Validated
+public record AttachmentProperties(
+        Boolean cacheEnabled,
+        String cacheDirectory,
+        DataSize cacheMaxSize,
+        DataSize cacheMaxEntrySize
+) {
+    /**
+     * Constructor with default values for optional fields.
+     */
+    public AttachmentProperties {
+        if (cacheEnabled == null) {
+            cacheEnabled = false;
+        }
+        if (cacheDirectory == null || cacheDirectory.isBlank()) {
+            cacheDirectory = "data/attachments";
+        }
+        if (cacheMaxSize == null) {
+            cacheMaxSize = DataSize.ofGigabytes(1);
+        }
+        if (cacheMaxEntrySize == null) {
+            cacheMaxEntrySize = DataSize.ofMegabytes(100);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.graphmailer.config;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.Positive;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import java.time.Duration;
+
+/**
+ * Configuration properties for the circuit breaker around Microsoft Graph calls.
+ *
+ * The breaker opens when the share of failed or slow calls among the most recent
+ * calls crosses a threshold, rejects calls while open, and then lets a few probe
+ * calls through to decide whether Graph has recovered.
+ */
+@ConfigurationProperties(prefix = "circuit-breaker")
+@Validated
+public record CircuitBreakerProperties(
+        Boolean enabled,
+        @Positive Integer slidingWindowSize,
+        @Positive Integer minimumCalls,
+        @Min(1) @Max(100) Integer failureRateThreshold,
+        @Min(1) @Max(100) Integer slowCallRateThreshold,
+        Duration slowCallDuration,
+        Duration openDuration,
+        @Positive Integer halfOpenProbes
+) {
+    /**
+     * Constructor with default values for optional fields.
+     */
+    public CircuitBreakerProperties {
+        if (enabled == null) {
+            enabled = true;
+        }
+        if (slidingWindowSize == null) {
+            slidingWindowSize = 50;
+        }
+        if (minimumCalls == null) {
+            minimumCalls = 20;
+        }
+        if (failureRateThreshold == null) {
+            failureRateThreshold = 50;
+        }
+        if (slowCallRateThreshold == null) {
+            slowCallRateThreshold = 80;
+        }
+        if (slowCallDuration == null) {
+            slowCallDuration = Duration.ofSeconds(5);
+        }
+        if (openDuration == null) {
+            openDuration = Duration.ofSeconds(30);
+        }
+        if (halfOpenProbes == null) {
+            halfOpenProbes = 3;
+        }
+    }
+}
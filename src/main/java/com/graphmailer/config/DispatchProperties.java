@@ -0,0 +1,107 @@
+package com.graphmailer.config;
+
+import com.graphmailer.model.MailPriority;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Configuration properties for the in-process mail dispatch queue.
+ *
+ * When async mode is enabled, send requests are validated and enqueued
+ * instead of being sent on the HTTP request thread, and a worker pool
+ * drains the queue into Microsoft Graph. Bulk uploads are fed through the
+ * same queue with a per-request cap on messages in flight.
+ *
+ * Queued sends wait in one lane per {@link MailPriority}, each with its own
+ * capacity, and workers take from the lanes in proportion to their weights.
+ * Workers reserved for a lane are never taken by sends of other lanes, so
+ * bulk sends stuck behind a throttled mailbox cannot occupy every worker.
+ * Lanes not configured get the defaults below, with the global queue capacity.
+ */
+@ConfigurationProperties(prefix = "dispatch")
+@Validated
+public record DispatchProperties(
+        Boolean asyncEnabled,
+        @Positive Integer queueCapacity,
+        @Positive Integer workerThreads,
+        @Positive Integer maxTrackedSends,
+        Duration statusRetention,
+        @Positive Integer bulkMaxInFlight,
+        Map<MailPriority, @Valid Lane> lanes
+) {
+    /**
+     * Constructor with default values for optional fields.
+     */
+    public DispatchProperties {
+        if (asyncEnabled == null) {
+            asyncEnabled = false;
+        }
+        if (queueCapacity == null) {
+            queueCapacity = 1000;
+        }
+        if (workerThreads == null) {
+            workerThreads = 8;
+        }
+        if (maxTrackedSends == null) {
+            maxTrackedSends = 10000;
+        }
+        if (statusRetention == null) {
+            statusRetention = Duration.ofHours(1);
+        }
+        if (bulkMaxInFlight == null) {
+            bulkMaxInFlight = 32;
+        }
+        Map<MailPriority, Lane> resolved = new EnumMap<>(MailPriority.class);
+        for (MailPriority priority : MailPriority.values()) {
+            Lane lane = lanes != null ? lanes.get(priority) : null;
+            resolved.put(priority, Lane.withDefaults(priority, lane, queueCapacity, workerThreads));
+        }
+        lanes = resolved;
+    }
+
+    /**
+     * Settings of a dispatch lane.
+     */
+    public Lane lane(MailPriority priority) {
+        return lanes.get(priority);
+    }
+
+    /**
+     * Scheduling settings of one dispatch lane.
+     *
+     * @param weight        Share of worker pickups while other lanes are also waiting
+     * @param queueCapacity Sends the lane holds before submissions are rejected
+     * @param latencySlo    Queueing time a send of this lane should not exceed
+     * @param reservedWorkers Workers kept free for this lane while it is not using them
+     */
+    public record Lane(
+            @Positive Integer weight,
+            @Positive Integer queueCapacity,
+            Duration latencySlo,
+            @PositiveOrZero Integer reservedWorkers
+    ) {
+        private static Lane withDefaults(MailPriority priority, Lane lane, int defaultCapacity, int workerThreads) {
+            Lane defaults = switch (priority) {
+                case TRANSACTIONAL -> new Lane(8, defaultCapacity, Duration.ofMillis(250),
+                        workerThreads > 1 ? Math.max(1, workerThreads / 4) : 0);
+                case NORMAL -> new Lane(3, defaultCapacity, Duration.ofSeconds(5), workerThreads / 8);
+                case BULK -> new Lane(1, defaultCapacity, Duration.ofMinutes(1), 0);
+            };
+            if (lane == null) {
+                return defaults;
+            }
+            return new Lane(
+                    lane.weight() != null ? lane.weight() : defaults.weight(),
+                    lane.queueCapacity() != null ? lane.queueCapacity() : defaults.queueCapacity(),
+                    lane.latencySlo() != null ? lane.latencySlo() : defaults.latencySlo(),
+                    lane.reservedWorkers() != null ? lane.reservedWorkers() : defaults.reservedWorkers());
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.graphmailer.config;
+
+import jakarta.validation.constraints.Positive;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import java.time.Duration;
+
+/**
+ * Configuration properties for multi-mailbox reads.
+ *
+ * A multi-mailbox read queries up to {@code max-mailboxes} mailboxes, at most
+ * {@code parallelism} of them at a time. A mailbox that has not answered
+ * within {@code mailbox-timeout} of its read starting is reported as timed out
+ * while the other mailboxes are still returned.
+ */
+@ConfigurationProperties(prefix = "fan-out")
+@Validated
+public record FanOutProperties(
+        @Positive Integer parallelism,
+        Duration mailboxTimeout,
+        @Positive Integer maxMailboxes
+) {
+    /**
+     * Constructor with default values for optional fields.
+     */
+    public FanOutProperties {
+        if (parallelism == null) {
+            parallelism = 8;
+        }
+        if (mailboxTimeout == null) {
+            mailboxTimeout = Duration.ofSeconds(10);
+        }
+        if (maxMailboxes == null) {
+            maxMailboxes = 50;
+        }
+    }
+}
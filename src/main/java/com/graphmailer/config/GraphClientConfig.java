@@ -2,13 +2,24 @@ package com.graphmailer.config;
 
 import com.azure.identity.ClientSecretCredential;
 import com.azure.identity.ClientSecretCredentialBuilder;
+import com.microsoft.graph.core.authentication.AzureIdentityAuthenticationProvider;
+import com.graphmailer.service.resilience.GraphConcurrencyInterceptor;
+import com.graphmailer.service.resilience.GraphConcurrencyLimiter;
+import com.microsoft.graph.core.requests.GraphClientFactory;
 import com.microsoft.graph.serviceclient.GraphServiceClient;
+import com.microsoft.kiota.http.middleware.RetryHandler;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.retry.annotation.EnableRetry;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Configuration class for Microsoft Graph client setup.
@@ -16,21 +27,44 @@ import org.springframework.retry.annotation.EnableRetry;
  * This configuration creates a GraphServiceClient using Azure Identity
  * with Client Credentials flow for application-only authentication.
  * 
- * The client is configured with retry capabilities and timeout settings
- * as specified in the GraphProperties configuration.
+ * Retries of throttled and failed calls are handled by the
+ * GraphRetryEngine using the GraphProperties request settings.
+ * The SDK's own RetryHandler is removed from the client middleware, as it
+ * would retry 429/503/504 responses again, sleeping on the calling thread.
  * Only active in production mode.
+ *
+ * The Graph SDK executes requests synchronously on the calling thread, so with
+ * virtual threads enabled every in-flight Graph call occupies a virtual thread
+ * only. OkHttp 4 waits for HTTP/2 stream responses in {@code Object.wait()}
+ * inside a monitor, which pins the carrier thread for the whole call, so in
+ * that mode the client speaks HTTP/1.1, whose blocking socket reads unmount
+ * cleanly, and keeps a larger connection pool since connections are no longer
+ * multiplexed.
+ *
+ * Every HTTP request of the client holds a permit of the adaptive
+ * {@link GraphConcurrencyLimiter}.
  */
 @Configuration
-@EnableRetry
 @ConditionalOnProperty(name = "app.mode", havingValue = "production", matchIfMissing = true)
 public class GraphClientConfig {
 
     private static final Logger logger = LoggerFactory.getLogger(GraphClientConfig.class);
 
+    /**
+     * Idle connections kept per client when each in-flight call needs its own HTTP/1.1 connection.
+     */
+    private static final int VIRTUAL_THREAD_MAX_IDLE_CONNECTIONS = 256;
+
     private final GraphProperties graphProperties;
+    private final GraphConcurrencyLimiter concurrencyLimiter;
+    private final boolean virtualThreads;
 
-    public GraphClientConfig(GraphProperties graphProperties) {
+    public GraphClientConfig(GraphProperties graphProperties,
+                             GraphConcurrencyLimiter concurrencyLimiter,
+                             @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
         this.graphProperties = graphProperties;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.virtualThreads = virtualThreads;
     }
 
     /**
@@ -52,9 +86,28 @@ public class GraphClientConfig {
                 .build();
 
         // Build Graph service client with the credential
-        GraphServiceClient graphClient = new GraphServiceClient(credential, graphProperties.scopes());
+        AzureIdentityAuthenticationProvider authProvider = new AzureIdentityAuthenticationProvider(
+                credential, new String[0], graphProperties.scopes());
+        GraphServiceClient graphClient = new GraphServiceClient(authProvider, httpClientBuilder().build());
 
         logger.info("Microsoft Graph client initialized successfully");
         return graphClient;
     }
+
+    /**
+     * Builds the HTTP client of the Graph client: the SDK's default middleware
+     * without its RetryHandler, followed by the concurrency interceptor.
+     */
+    OkHttpClient.Builder httpClientBuilder() {
+        OkHttpClient.Builder httpClient = GraphClientFactory.create();
+        httpClient.interceptors().removeIf(RetryHandler.class::isInstance);
+        httpClient.addInterceptor(new GraphConcurrencyInterceptor(concurrencyLimiter));
+        if (virtualThreads) {
+            httpClient.protocols(List.of(Protocol.HTTP_1_1))
+                    .connectionPool(new ConnectionPool(VIRTUAL_THREAD_MAX_IDLE_CONNECTIONS, 5, TimeUnit.MINUTES));
+            logger.info("Graph client configured for virtual threads (HTTP/1.1, up to {} idle connections)",
+                    VIRTUAL_THREAD_MAX_IDLE_CONNECTIONS);
+        }
+        return httpClient;
+    }
 }
\ No newline at end of file
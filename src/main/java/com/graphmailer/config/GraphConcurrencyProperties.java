@@ -0,0 +1,61 @@
+package com.graphmailer.config;
+
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import java.time.Duration;
+
+/**
+ * Configuration properties for the adaptive limit on concurrent Microsoft Graph requests.
+ *
+ * The limit starts at the initial value and is adjusted between the minimum and
+ * maximum from the latency and throttling of Graph's responses. Requests beyond
+ * the limit wait up to the queue wait time; once the queue is full new work is
+ * rejected straight away.
+ */
+@ConfigurationProperties(prefix = "graph-concurrency")
+@Validated
+public record GraphConcurrencyProperties(
+        Boolean enabled,
+        @Positive Integer initialLimit,
+        @Positive Integer minLimit,
+        @Positive Integer maxLimit,
+        @PositiveOrZero Integer maxQueued,
+        Duration maxQueueWait,
+        @DecimalMin("0.1") @DecimalMax("0.99") Double backoffRatio,
+        Duration minRttWindow
+) {
+    /**
+     * Constructor with default values for optional fields.
+     */
+    public GraphConcurrencyProperties {
+        if (enabled == null) {
+            enabled = true;
+        }
+        if (initialLimit == null) {
+            initialLimit = 20;
+        }
+        if (minLimit == null) {
+            minLimit = 4;
+        }
+        if (maxLimit == null) {
+            maxLimit = 200;
+        }
+        if (maxQueued == null) {
+            maxQueued = 200;
+        }
+        if (maxQueueWait == null) {
+            maxQueueWait = Duration.ofSeconds(5);
+        }
+        if (backoffRatio == null) {
+            backoffRatio = 0.9;
+        }
+        if (minRttWindow == null) {
+            minRttWindow = Duration.ofMinutes(1);
+        }
+    }
+}
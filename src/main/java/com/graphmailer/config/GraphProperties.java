@@ -1,14 +1,18 @@
 package com.graphmailer.config;
 
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.validation.annotation.Validated;
 
 /**
  * Configuration properties for Microsoft Graph API client settings.
- * 
+ *
  * These properties are bound from application configuration and include
  * all necessary settings for Graph API authentication and request behavior.
  */
@@ -19,14 +23,63 @@ public record GraphProperties(
         @NotBlank String clientId,
         @NotBlank String clientSecret,
         @NotBlank String scopes,
-        @NotNull RequestConfig request
+        @NotNull RequestConfig request,
+        @Valid BatchConfig batch
 ) {
+    /**
+     * Constructor with default values for optional sections.
+     */
+    public GraphProperties {
+        if (batch == null) {
+            batch = new BatchConfig(null, null, null, null, null);
+        }
+    }
+
     /**
      * Nested configuration for Graph API request settings.
+     * A throttled call whose Retry-After exceeds maxRetryAfterMs is not retried
+     * but failed straight away, passing the Retry-After on to the client.
      */
     public record RequestConfig(
             @Positive long timeoutMs,
             @Positive int maxRetries,
-            @Positive long retryBaseDelayMs
-    ) {}
-}
\ No newline at end of file
+            @Positive long retryBaseDelayMs,
+            @Positive Long maxRetryAfterMs
+    ) {
+        public RequestConfig {
+            if (maxRetryAfterMs == null) {
+                maxRetryAfterMs = 30_000L;
+            }
+        }
+    }
+
+    /**
+     * Nested configuration for coalescing sendMail calls into JSON $batch requests.
+     * Graph accepts at most 20 requests per batch.
+     */
+    public record BatchConfig(
+            Boolean enabled,
+            @Min(1) @Max(20) Integer maxBatchSize,
+            @PositiveOrZero Long lingerMs,
+            @PositiveOrZero Integer maxRequeues,
+            @Positive Integer maxConcurrentBatches
+    ) {
+        public BatchConfig {
+            if (enabled == null) {
+                enabled = false;
+            }
+            if (maxBatchSize == null) {
+                maxBatchSize = 20;
+            }
+            if (lingerMs == null) {
+                lingerMs = 10L;
+            }
+            if (maxRequeues == null) {
+                maxRequeues = 2;
+            }
+            if (maxConcurrentBatches == null) {
+                maxConcurrentBatches = 4;
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.graphmailer.config;
+
+import jakarta.validation.constraints.Positive;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import java.time.Duration;
+
+/**
+ * Configuration properties for Idempotency-Key handling on send endpoints.
+ *
+ * Responses to sends carrying an {@code Idempotency-Key} header are remembered
+ * for {@code ttl} so a retried request gets the original response instead of
+ * sending the mail again. At most {@code max-entries} responses are kept in
+ * memory; when {@code spill-enabled} is set, responses evicted before they
+ * expire are written to {@code spill-directory} and still honored.
+ */
+@ConfigurationProperties(prefix = "idempotency")
+@Validated
+public record IdempotencyProperties(
+        Boolean enabled,
+        Duration ttl,
+        @Positive Integer maxEntries,
+        @Positive Integer stripes,
+        Boolean spillEnabled,
+        String spillDirectory
+) {
+    /**
+     * Constructor with default values for optional fields.
+     */
+    public IdempotencyProperties {
+        if (enabled == null) {
+            enabled = true;
+        }
+        if (ttl == null) {
+            ttl = Duration.ofHours(24);
+        }
+        if (maxEntries == null) {
+            maxEntries = 10000;
+        }
+        if (stripes == null) {
+            stripes = 64;
+        }
+        if (spillEnabled == null) {
+            spillEnabled = false;
+        }
+        if (spillDirectory == null || spillDirectory.isBlank()) {
+            spillDirectory = "data/idempotency";
+        }
+    }
+}
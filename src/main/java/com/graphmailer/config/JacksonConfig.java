@@ -0,0 +1,31 @@
+package com.graphmailer.config;
+
+import com.fasterxml.jackson.core.StreamReadConstraints;
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Jackson customizations.
+ *
+ * Jackson rejects string values longer than 20M characters by default, which
+ * caps base64 attachments at roughly 15MB. The limit is raised to fit
+ * {@code mail.max-attachment-bytes} once base64 encoded. Attachments are parsed
+ * into strings, so a request with attachments of that size takes about 4/3 of it
+ * in heap, plus a transient copy of twice that while Jackson buffers the text.
+ */
+@Configuration
+public class JacksonConfig {
+
+    @Bean
+    public Jackson2ObjectMapperBuilderCustomizer attachmentSizeCustomizer(MailProperties mailProperties) {
+        long encodedLength = (mailProperties.maxAttachmentBytes() + 2) / 3 * 4;
+        int maxStringLength = (int) Math.min(Integer.MAX_VALUE,
+                Math.max(StreamReadConstraints.DEFAULT_MAX_STRING_LEN, encodedLength + 1024));
+
+        return builder -> builder.postConfigurer(objectMapper -> objectMapper.getFactory()
+                .setStreamReadConstraints(StreamReadConstraints.builder()
+                        .maxStringLength(maxStringLength)
+                        .build()));
+    }
+}
@@ -3,7 +3,6 @@ package com.graphmailer.config;
 import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Positive;
-import jakarta.validation.constraints.PositiveOrZero;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.validation.annotation.Validated;
 
@@ -14,6 +13,11 @@ import java.util.List;
  * 
  * These properties control mail sending behavior, security restrictions,
  * and validation rules for the Graph Mail service.
+ *
+ * Messages whose attachments exceed {@code upload-session-threshold-bytes} in
+ * total are sent as a draft, with attachments of that size or more streamed
+ * through Graph upload sessions in {@code upload-chunk-bytes} slices. Graph
+ * requires slices to be a multiple of 320 KiB.
  */
 @ConfigurationProperties(prefix = "mail")
 @Validated
@@ -22,5 +26,19 @@ public record MailProperties(
         @NotNull Boolean saveToSentItems,
         @Positive long maxAttachmentBytes,
         @NotEmpty List<String> allowedRecipientDomains,
-        @NotEmpty List<String> allowedSenderUpns
-) {}
\ No newline at end of file
+        @NotEmpty List<String> allowedSenderUpns,
+        @Positive Long uploadSessionThresholdBytes,
+        @Positive Integer uploadChunkBytes
+) {
+    /**
+     * Constructor with default values for optional fields.
+     */
+    public MailProperties {
+        if (uploadSessionThresholdBytes == null) {
+            uploadSessionThresholdBytes = 3L * 1024 * 1024;
+        }
+        if (uploadChunkBytes == null) {
+            uploadChunkBytes = 10 * 320 * 1024;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,55 @@
+package com.graphmailer.config;
+
+import jakarta.validation.constraints.Positive;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import java.time.Duration;
+
+/**
+ * Configuration properties for the per-mailbox send governor.
+ *
+ * Exchange Online throttles each sending mailbox independently, by default at
+ * four concurrent requests and 30 messages per minute. The governor keeps every
+ * mailbox below these limits and lowers them further while Graph is throttling.
+ * A call that would wait longer than {@code maxQueueDelay} behind the mailbox's
+ * queue is rejected straight away instead of being queued.
+ */
+@ConfigurationProperties(prefix = "mailbox-governor")
+@Validated
+public record MailboxGovernorProperties(
+        Boolean enabled,
+        @Positive Integer maxConcurrent,
+        @Positive Integer minConcurrent,
+        @Positive Integer messagesPerMinute,
+        @Positive Integer maxQueued,
+        Duration maxQueueDelay,
+        Duration idleEviction
+) {
+    /**
+     * Constructor with default values for optional fields.
+     */
+    public MailboxGovernorProperties {
+        if (enabled == null) {
+            enabled = true;
+        }
+        if (maxConcurrent == null) {
+            maxConcurrent = 4;
+        }
+        if (minConcurrent == null) {
+            minConcurrent = 1;
+        }
+        if (messagesPerMinute == null) {
+            messagesPerMinute = 30;
+        }
+        if (maxQueued == null) {
+            maxQueued = 500;
+        }
+        if (maxQueueDelay == null) {
+            maxQueueDelay = Duration.ofSeconds(30);
+        }
+        if (idleEviction == null) {
+            idleEviction = Duration.ofMinutes(10);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.graphmailer.config;
+
+import jakarta.validation.constraints.Positive;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Configuration properties for the local mailbox mirror.
+ *
+ * When enabled, mailbox reads are served from a local copy of message
+ * metadata that is kept current with Graph delta queries. A mailbox is synced
+ * on its first read and then at most once per {@code refresh-interval}, pulling
+ * only the changes since the previous sync. Only the listed mail folders are
+ * mirrored. Delta tokens and metadata are persisted in {@code directory}, which
+ * must be on a persistent volume to avoid a full resync after a restart.
+ */
+@ConfigurationProperties(prefix = "mirror")
+@Validated
+public record MirrorProperties(
+        Boolean enabled,
+        String directory,
+        List<String> folders,
+        Duration refreshInterval,
+        @Positive Integer pageSize
+) {
+    /**
+     * Constructor with default values for optional fields.
+     */
+    public MirrorProperties {
+        if (enabled == null) {
+            enabled = false;
+        }
+        if (directory == null || directory.isBlank()) {
+            directory = "data/mirror";
+        }
+        if (folders == null || folders.isEmpty()) {
+            folders = List.of("inbox");
+        }
+        if (refreshInterval == null) {
+            refreshInterval = Duration.ofMinutes(1);
+        }
+        if (pageSize == null) {
+            pageSize = 200;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.graphmailer.config;
+
+import jakarta.validation.constraints.Positive;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+/**
+ * Configuration properties for the durable mail outbox.
+ *
+ * When enabled, every accepted send request is appended to a local journal
+ * before it is dispatched and marked complete once Graph has accepted it, so
+ * sends interrupted by a pod restart are replayed on startup. The directory
+ * must be on a persistent volume for this to survive a restart.
+ */
+@ConfigurationProperties(prefix = "outbox")
+@Validated
+public record OutboxProperties(
+        Boolean enabled,
+        String directory,
+        @Positive Integer maxBatchEntries,
+        @Positive Long maxSegmentBytes
+) {
+    /**
+     * Constructor with default values for optional fields.
+     */
+    public OutboxProperties {
+        if (enabled == null) {
+            enabled = false;
+        }
+        if (directory == null || directory.isBlank()) {
+            directory = "data/outbox";
+        }
+        if (maxBatchEntries == null) {
+            maxBatchEntries = 512;
+        }
+        if (maxSegmentBytes == null) {
+            maxSegmentBytes = 64L * 1024 * 1024;
+        }
+    }
+}
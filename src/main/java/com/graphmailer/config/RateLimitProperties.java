@@ -0,0 +1,226 @@
+package com.graphmailer.config;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+import org.springframework.validation.annotation.Validated;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Configuration properties for per-principal request rate limiting.
+ *
+ * Every authenticated principal gets its own token bucket of
+ * {@code capacity} read requests per {@code period}, and a separate send
+ * bucket ({@code send.*}) charged by recipients and payload size. {@code overrides} sets other
+ * limits for individual principals or for every principal of a tenant; keys
+ * are principal keys such as {@code "[jwt:<tenant>/<subject>]"} or
+ * {@code "[api-key:<address>]"}, or tenant IDs such as {@code "[tenant:<tenant>]"}.
+ * Callers of the shared API key are told apart by their client address.
+ * At most {@code max-principals} buckets are kept; buckets of principals idle
+ * for {@code idle-timeout} are dropped.
+ *
+ * With {@code distributed.backend} set, buckets live in a store shared by
+ * all replicas instead of in each replica's memory, so the limit holds for
+ * the whole deployment rather than per pod.
+ */
+@ConfigurationProperties(prefix = "rate-limit")
+@Validated
+public record RateLimitProperties(
+        @Positive Long capacity,
+        Duration period,
+        Map<String, @Valid Limit> overrides,
+        @Positive Integer maxPrincipals,
+        Duration idleTimeout,
+        @Valid Distributed distributed,
+        @Valid Send send
+) {
+    /**
+     * Constructor with default values for optional fields.
+     */
+    public RateLimitProperties {
+        if (capacity == null) {
+            capacity = 30L;
+        }
+        if (period == null) {
+            period = Duration.ofMinutes(1);
+        }
+        if (overrides == null) {
+            overrides = Map.of();
+        }
+        if (maxPrincipals == null) {
+            maxPrincipals = 10_000;
+        }
+        if (idleTimeout == null) {
+            idleTimeout = Duration.ofMinutes(10);
+        }
+        if (distributed == null) {
+            distributed = new Distributed(null, null, null, null);
+        }
+        if (send == null) {
+            send = new Send(null, null, null, null, null);
+        }
+    }
+
+    /**
+     * A request limit.
+     *
+     * @param capacity Requests allowed per period
+     * @param period   Period after which the full capacity is available again
+     */
+    public record Limit(@Positive Long capacity, Duration period) {
+        public Limit {
+            if (capacity == null) {
+                capacity = 30L;
+            }
+            if (period == null) {
+                period = Duration.ofMinutes(1);
+            }
+        }
+    }
+
+    /**
+     * Send limits, counted like Exchange Online counts sending: a message
+     * costs one token per recipient (TO, CC and BCC) plus one per
+     * {@code bytesPerToken} of body and attachments. The bucket holds
+     * {@code capacity} tokens per {@code period} and at most
+     * {@code dailyCapacity} tokens per day. {@code overrides} replaces
+     * {@code capacity} and {@code period} per principal or tenant, keyed as
+     * the read overrides.
+     *
+     * @param capacity      Tokens per period
+     * @param period        Period after which the full capacity is available again
+     * @param dailyCapacity Tokens per day
+     * @param bytesPerToken Body and attachment bytes charged as one token
+     * @param overrides     Limits of individual principals or tenants
+     */
+    public record Send(
+            @Positive Long capacity,
+            Duration period,
+            @Positive Long dailyCapacity,
+            DataSize bytesPerToken,
+            Map<String, @Valid Limit> overrides
+    ) {
+        public Send {
+            if (capacity == null) {
+                capacity = 300L;
+            }
+            if (period == null) {
+                period = Duration.ofMinutes(1);
+            }
+            if (dailyCapacity == null) {
+                dailyCapacity = 10_000L;
+            }
+            if (bytesPerToken == null) {
+                bytesPerToken = DataSize.ofMegabytes(1);
+            }
+            if (overrides == null) {
+                overrides = Map.of();
+            }
+        }
+
+        /**
+         * Send limit of a principal: its own override, else its tenant's, else the default.
+         */
+        public Limit limitFor(String principalKey, String tenant) {
+            return RateLimitProperties.limitFor(overrides, principalKey, tenant, new Limit(capacity, period));
+        }
+    }
+
+    /**
+     * Where buckets are kept.
+     */
+    public enum Backend {
+        /** Each replica keeps its own buckets. */
+        LOCAL,
+        /** Buckets kept in this process through the shared-store protocol; for tests and single instances. */
+        MEMORY,
+        /** Buckets kept in a database table shared by all replicas. */
+        JDBC
+    }
+
+    /**
+     * Shared bucket store.
+     *
+     * A replica consumes up to {@code syncTokens} tokens of a bucket locally
+     * and writes them to the store when that many are used or after
+     * {@code syncInterval}, whichever comes first. The limit can therefore be
+     * exceeded by at most {@code syncTokens} per replica per principal;
+     * {@code 0} consults the store on every request.
+     *
+     * @param backend      Where buckets are kept
+     * @param syncTokens   Tokens consumed locally between store updates
+     * @param syncInterval Longest time locally consumed tokens go unwritten
+     * @param jdbc         Database of the {@code jdbc} backend
+     */
+    public record Distributed(
+            Backend backend,
+            @PositiveOrZero Long syncTokens,
+            Duration syncInterval,
+            @Valid Jdbc jdbc
+    ) {
+        public Distributed {
+            if (backend == null) {
+                backend = Backend.LOCAL;
+            }
+            if (syncTokens == null) {
+                syncTokens = 5L;
+            }
+            if (syncInterval == null) {
+                syncInterval = Duration.ofSeconds(1);
+            }
+            if (jdbc == null) {
+                jdbc = new Jdbc(null, null, null, null);
+            }
+        }
+    }
+
+    /**
+     * Database of the {@code jdbc} backend. Connections come from the
+     * application's {@code DataSource} when there is one, else from
+     * {@code url} through the JDBC driver on the classpath.
+     *
+     * @param url      JDBC URL
+     * @param username Database user
+     * @param password Database password
+     * @param table    Table holding one row per principal
+     */
+    public record Jdbc(
+            String url,
+            String username,
+            String password,
+            @Pattern(regexp = "[A-Za-z_][A-Za-z0-9_.]*") String table
+    ) {
+        public Jdbc {
+            if (table == null) {
+                table = "rate_limit_buckets";
+            }
+        }
+    }
+
+    /**
+     * Default limit of principals without an override.
+     */
+    public Limit defaultLimit() {
+        return new Limit(capacity, period);
+    }
+
+    /**
+     * Limit of a principal: its own override, else its tenant's, else the default.
+     */
+    public Limit limitFor(String principalKey, String tenant) {
+        return limitFor(overrides, principalKey, tenant, defaultLimit());
+    }
+
+    private static Limit limitFor(Map<String, Limit> overrides, String principalKey, String tenant, Limit fallback) {
+        Limit limit = overrides.get(principalKey);
+        if (limit == null && tenant != null) {
+            limit = overrides.get("tenant:" + tenant);
+        }
+        return limit != null ? limit : fallback;
+    }
+}
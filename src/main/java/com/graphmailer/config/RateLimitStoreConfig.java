@@ -0,0 +1,52 @@
+package com.graphmailer.config;
+
+import com.graphmailer.service.ratelimit.InMemoryProxyManager;
+import com.graphmailer.service.ratelimit.JdbcProxyManager;
+import io.github.bucket4j.distributed.proxy.ProxyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.sql.DriverManager;
+
+/**
+ * Shared rate limit bucket store, selected by {@code rate-limit.distributed.backend}.
+ *
+ * With the default {@code local} backend no store is created and every
+ * replica limits on its own.
+ */
+@Configuration
+public class RateLimitStoreConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(RateLimitStoreConfig.class);
+
+    @Bean
+    @ConditionalOnProperty(name = "rate-limit.distributed.backend", havingValue = "memory")
+    public ProxyManager<String> inMemoryRateLimitStore() {
+        logger.info("Rate limit buckets kept in memory through the shared store protocol");
+        return new InMemoryProxyManager();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "rate-limit.distributed.backend", havingValue = "jdbc")
+    public ProxyManager<String> jdbcRateLimitStore(RateLimitProperties properties,
+                                                   ObjectProvider<DataSource> dataSource) {
+        RateLimitProperties.Jdbc jdbc = properties.distributed().jdbc();
+        DataSource shared = dataSource.getIfAvailable();
+        if (shared != null) {
+            logger.info("Rate limit buckets shared through table: {} of the application data source", jdbc.table());
+            return new JdbcProxyManager(shared::getConnection, jdbc.table());
+        }
+        if (jdbc.url() == null || jdbc.url().isBlank()) {
+            throw new IllegalStateException(
+                    "rate-limit.distributed.jdbc.url is required when no DataSource is configured");
+        }
+        logger.info("Rate limit buckets shared through table: {} at {}", jdbc.table(), jdbc.url());
+        return new JdbcProxyManager(
+                () -> DriverManager.getConnection(jdbc.url(), jdbc.username(), jdbc.password()), jdbc.table());
+    }
+}
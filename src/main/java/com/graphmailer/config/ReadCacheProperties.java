@@ -0,0 +1,56 @@
+package com.graphmailer.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+import org.springframework.validation.annotation.Validated;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Configuration properties for the mailbox read response cache.
+ *
+ * Identical reads of a mailbox within {@code ttl} are answered with the
+ * response already produced for the first one. The cache holds at most
+ * {@code max-size} of response text and evicts by frequency and recency
+ * (W-TinyLFU). {@code mailbox-ttls} overrides the TTL for individual
+ * mailboxes; a zero TTL disables caching for that mailbox.
+ */
+@ConfigurationProperties(prefix = "read-cache")
+@Validated
+public record ReadCacheProperties(
+        Boolean enabled,
+        Duration ttl,
+        DataSize maxSize,
+        Map<String, Duration> mailboxTtls
+) {
+    /**
+     * Constructor with default values for optional fields.
+     */
+    public ReadCacheProperties {
+        if (enabled == null) {
+            enabled = true;
+        }
+        if (ttl == null) {
+            ttl = Duration.ofSeconds(30);
+        }
+        if (maxSize == null) {
+            maxSize = DataSize.ofMegabytes(64);
+        }
+        if (mailboxTtls == null) {
+            mailboxTtls = Map.of();
+        }
+        mailboxTtls = mailboxTtls.entrySet().stream()
+                .collect(Collectors.toUnmodifiableMap(
+                        entry -> entry.getKey().toLowerCase(Locale.ROOT), Map.Entry::getValue));
+    }
+
+    /**
+     * TTL of cached reads of the given mailbox.
+     */
+    public Duration ttlFor(String mailbox) {
+        return mailboxTtls.getOrDefault(mailbox.toLowerCase(Locale.ROOT), ttl);
+    }
+}
@@ -0,0 +1,49 @@
+package com.graphmailer.config;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.Positive;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import java.time.Duration;
+
+/**
+ * Configuration properties for scheduled and deferred sends.
+ *
+ * Sends with {@code sendAt} or {@code sendAfter} are held in a hierarchical
+ * timing wheel until due and then handed to the dispatch queue. The tick is
+ * the wheel's resolution: sends go out at most one tick late. They are
+ * journaled in the outbox, so pending sends survive a restart when the outbox
+ * is enabled.
+ */
+@ConfigurationProperties(prefix = "schedule")
+@Validated
+public record ScheduleProperties(
+        Boolean enabled,
+        Duration tick,
+        @Min(2) @Max(1024) Integer slotsPerLevel,
+        Duration maxDelay,
+        @Positive Integer maxPending
+) {
+    /**
+     * Constructor with default values for optional fields.
+     */
+    public ScheduleProperties {
+        if (enabled == null) {
+            enabled = true;
+        }
+        if (tick == null) {
+            tick = Duration.ofMillis(100);
+        }
+        if (slotsPerLevel == null) {
+            slotsPerLevel = 64;
+        }
+        if (maxDelay == null) {
+            maxDelay = Duration.ofDays(30);
+        }
+        if (maxPending == null) {
+            maxPending = 2_000_000;
+        }
+    }
+}
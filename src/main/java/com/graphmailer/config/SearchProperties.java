@@ -0,0 +1,47 @@
+package com.graphmailer.config;
+
+import jakarta.validation.constraints.Positive;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+/**
+ * Configuration properties for the local full-text search index.
+ *
+ * The index covers the subject, sender and body preview of mirrored messages,
+ * so it is only available while the mailbox mirror is enabled. Changes are
+ * buffered in memory and written as an immutable segment at the end of every
+ * mirror sync, or once {@code flush-docs} messages are buffered. When a mailbox
+ * has more than {@code max-segments} segments they are merged into one.
+ * Segments are stored in {@code directory}, which should be on the same
+ * persistent volume as the mirror.
+ */
+@ConfigurationProperties(prefix = "search")
+@Validated
+public record SearchProperties(
+        Boolean enabled,
+        String directory,
+        @Positive Integer flushDocs,
+        @Positive Integer maxSegments,
+        @Positive Integer maxPrefixTerms
+) {
+    /**
+     * Constructor with default values for optional fields.
+     */
+    public SearchProperties {
+        if (enabled == null) {
+            enabled = true;
+        }
+        if (directory == null || directory.isBlank()) {
+            directory = "data/search";
+        }
+        if (flushDocs == null) {
+            flushDocs = 5000;
+        }
+        if (maxSegments == null) {
+            maxSegments = 8;
+        }
+        if (maxPrefixTerms == null) {
+            maxPrefixTerms = 1024;
+        }
+    }
+}
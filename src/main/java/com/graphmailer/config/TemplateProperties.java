@@ -0,0 +1,49 @@
+package com.graphmailer.config;
+
+import jakarta.validation.constraints.Positive;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import java.time.Duration;
+
+/**
+ * Configuration properties for stored email templates.
+ *
+ * Templates are compiled when uploaded and kept in memory. With
+ * {@code persistent} they are also written to {@code directory} and compiled
+ * again on startup, so they survive restarts; the directory must then be on a
+ * persistent volume shared by all replicas. A replica checks a cached
+ * template's file for changes by other replicas at most once per
+ * {@code recheck-interval}. {@code max-recipients} caps the messages of one
+ * template send request.
+ */
+@ConfigurationProperties(prefix = "templates")
+@Validated
+public record TemplateProperties(
+        Boolean persistent,
+        String directory,
+        @Positive Integer maxTemplates,
+        @Positive Integer maxRecipients,
+        Duration recheckInterval
+) {
+    /**
+     * Constructor with default values for optional fields.
+     */
+    public TemplateProperties {
+        if (persistent == null) {
+            persistent = false;
+        }
+        if (directory == null || directory.isBlank()) {
+            directory = "data/templates";
+        }
+        if (maxTemplates == null) {
+            maxTemplates = 1000;
+        }
+        if (maxRecipients == null) {
+            maxRecipients = 1000;
+        }
+        if (recheckInterval == null) {
+            recheckInterval = Duration.ofSeconds(5);
+        }
+    }
+}
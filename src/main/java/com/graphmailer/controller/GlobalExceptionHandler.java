@@ -1,5 +1,6 @@
 package com.graphmailer.controller;
 
+import com.graphmailer.service.resilience.CircuitOpenException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ProblemDetail;
 import org.springframework.http.ResponseEntity;
@@ -76,6 +77,24 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.FORBIDDEN).body(problemDetail);
     }
 
+    /**
+     * Handles calls rejected because the Graph circuit breaker is open, the
+     * concurrency limit is reached or Graph asked for a long Retry-After.
+     */
+    @ExceptionHandler(CircuitOpenException.class)
+    public ResponseEntity<ProblemDetail> handleCircuitOpenException(
+            CircuitOpenException ex, WebRequest request) {
+        
+        ProblemDetail problemDetail = ProblemDetail.forStatus(HttpStatus.SERVICE_UNAVAILABLE);
+        problemDetail.setTitle("Service Unavailable");
+        problemDetail.setDetail(ex.getMessage());
+        problemDetail.setType(URI.create("https://example.com/problems/graph-unavailable"));
+        
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header("Retry-After", String.valueOf(ex.getRetryAfterSeconds()))
+                .body(problemDetail);
+    }
+
     /**
      * Handles all other runtime exceptions.
      */
@@ -4,11 +4,16 @@ import com.graphmailer.model.EmailAttachment;
 import com.graphmailer.model.SendMailRequest;
 import com.graphmailer.model.SendMailResponse;
 import com.graphmailer.service.MailService;
+import com.graphmailer.service.idempotency.IdempotencyKeyReusedException;
+import com.graphmailer.service.idempotency.IdempotencyStore;
+import com.graphmailer.service.outbox.MailOutbox;
+import com.graphmailer.service.ratelimit.RateLimiter;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
@@ -41,9 +46,16 @@ public class LegacySendController {
     private static final Logger logger = LoggerFactory.getLogger(LegacySendController.class);
     
     private final MailService mailService;
+    private final MailOutbox outbox;
+    private final IdempotencyStore idempotencyStore;
+    private final RateLimiter rateLimiter;
 
-    public LegacySendController(MailService mailService) {
+    public LegacySendController(MailService mailService, MailOutbox outbox, IdempotencyStore idempotencyStore,
+                                RateLimiter rateLimiter) {
         this.mailService = mailService;
+        this.outbox = outbox;
+        this.idempotencyStore = idempotencyStore;
+        this.rateLimiter = rateLimiter;
     }
 
     /**
@@ -99,7 +111,11 @@ public class LegacySendController {
             @RequestParam(required = false) MultipartFile[] attachBytes,
             
             @Parameter(description = "Attachment names")
-            @RequestParam(required = false) String[] attachName
+            @RequestParam(required = false) String[] attachName,
+            
+            @Parameter(description = "Client-chosen key; repeated requests with the same key are sent only once")
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+            HttpServletRequest httpRequest
     ) throws URISyntaxException {
         
         String correlationId = UUID.randomUUID().toString();
@@ -119,8 +135,17 @@ public class LegacySendController {
             // Convert legacy request to new format
             SendMailRequest newRequest = convertToNewFormat(subject, from, emailbody, to, cc, attachBytes, attachName);
             
-            // Call new mail service
-            SendMailResponse response = mailService.sendMail(newRequest);
+            // Call new mail service once per principal and Idempotency-Key, journaled so
+            // the send is replayed if this pod stops mid-send
+            String idempotencyScope = idempotencyKey != null ? rateLimiter.principalOf(httpRequest).key() : null;
+            SendMailResponse response = idempotencyStore.execute(idempotencyScope, idempotencyKey, newRequest, () -> {
+                String outboxId = outbox.append(newRequest, null, correlationId);
+                try {
+                    return mailService.sendMail(newRequest);
+                } finally {
+                    outbox.complete(outboxId);
+                }
+            }).response();
             
             if ("SUCCESS".equals(response.status())) {
                 logger.info("Legacy email sent successfully with messageId: {}", response.messageId());
@@ -130,6 +155,9 @@ public class LegacySendController {
                 return new ResponseEntity<>(response.message(), HttpStatus.OK);
             }
             
+        } catch (IdempotencyKeyReusedException e) {
+            logger.warn("Idempotency-Key reused for a different legacy request: {}", e.getMessage());
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.OK);
         } catch (Exception e) {
             logger.error("Error sending legacy email", e);
             return new ResponseEntity<>("Internal server error: " + e.getMessage(), HttpStatus.OK);
@@ -1,11 +1,36 @@
 package com.graphmailer.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.graphmailer.model.SendMailRequest;
 import com.graphmailer.model.SendMailResponse;
+import com.graphmailer.model.SendMailStatusResponse;
 import com.graphmailer.service.MailService;
 import com.graphmailer.service.ReadMailService;
-import io.github.bucket4j.Bandwidth;
-import io.github.bucket4j.Bucket;
+import com.graphmailer.service.attachment.AttachmentContent;
+import com.graphmailer.service.attachment.AttachmentService;
+import com.graphmailer.service.attachment.ByteRange;
+import com.graphmailer.service.dispatch.BulkSendProcessor;
+import com.graphmailer.service.dispatch.DispatchRejectedException;
+import com.graphmailer.service.dispatch.MailDispatchQueue;
+import com.graphmailer.service.dispatch.MailScheduler;
+import com.graphmailer.service.export.CsvMessageWriter;
+import com.graphmailer.service.export.JsonMessageWriter;
+import com.graphmailer.service.export.MessageWriter;
+import com.graphmailer.service.fanout.MailboxReadResult;
+import com.graphmailer.service.fanout.MultiMailboxReadResult;
+import com.graphmailer.service.fanout.MultiMailboxReader;
+import com.graphmailer.service.idempotency.IdempotencyKeyReusedException;
+import com.graphmailer.service.idempotency.IdempotencyStore;
+import com.graphmailer.service.outbox.MailOutbox;
+import com.graphmailer.service.resilience.CircuitOpenException;
+import com.graphmailer.service.resilience.GraphConcurrencyLimiter;
+import com.graphmailer.service.ratelimit.RateLimitPrincipal;
+import com.graphmailer.service.ratelimit.RateLimiter;
+import com.graphmailer.service.resilience.GraphFailureClassifier;
+import com.graphmailer.service.search.MailSearchService;
+import com.graphmailer.service.search.SearchQuery;
+import com.graphmailer.service.search.SearchUnavailableException;
+import com.microsoft.graph.models.Message;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -15,22 +40,33 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
 
 /**
  * REST controller for mail sending operations.
@@ -47,17 +83,44 @@ public class MailController {
 
     private final MailService mailService;
     private final ReadMailService readMailService;
-    private final ConcurrentMap<String, Bucket> rateLimitBuckets;
-    private final Bandwidth defaultBandwidth;
+    private final MultiMailboxReader multiMailboxReader;
+    private final MailSearchService mailSearchService;
+    private final AttachmentService attachmentService;
+    private final MailDispatchQueue dispatchQueue;
+    private final MailScheduler scheduler;
+    private final BulkSendProcessor bulkSendProcessor;
+    private final MailOutbox outbox;
+    private final IdempotencyStore idempotencyStore;
+    private final RateLimiter rateLimiter;
+    private final GraphConcurrencyLimiter concurrencyLimiter;
+    private final ObjectMapper objectMapper;
 
     public MailController(MailService mailService,
                          ReadMailService readMailService,
-                         ConcurrentMap<String, Bucket> rateLimitBuckets,
-                         Bandwidth defaultBandwidth) {
+                         MultiMailboxReader multiMailboxReader,
+                         MailSearchService mailSearchService,
+                         AttachmentService attachmentService,
+                         MailDispatchQueue dispatchQueue,
+                         MailScheduler scheduler,
+                         BulkSendProcessor bulkSendProcessor,
+                         MailOutbox outbox,
+                         IdempotencyStore idempotencyStore,
+                         RateLimiter rateLimiter,
+                         GraphConcurrencyLimiter concurrencyLimiter,
+                         ObjectMapper objectMapper) {
         this.mailService = mailService;
         this.readMailService = readMailService;
-        this.rateLimitBuckets = rateLimitBuckets;
-        this.defaultBandwidth = defaultBandwidth;
+        this.multiMailboxReader = multiMailboxReader;
+        this.mailSearchService = mailSearchService;
+        this.attachmentService = attachmentService;
+        this.dispatchQueue = dispatchQueue;
+        this.scheduler = scheduler;
+        this.bulkSendProcessor = bulkSendProcessor;
+        this.outbox = outbox;
+        this.idempotencyStore = idempotencyStore;
+        this.rateLimiter = rateLimiter;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.objectMapper = objectMapper;
     }
 
     /**
@@ -73,10 +136,22 @@ public class MailController {
                     
                     Features:
                     - HTML and plain text content support
-                    - File attachments (up to 5MB total)
+                    - File attachments (up to 35MB total, large ones streamed via Graph upload sessions)
                     - CC/BCC recipients
                     - Domain and sender validation
                     - Rate limiting (30 requests per minute per IP)
+                    
+                    When async dispatch is enabled (dispatch.async-enabled), the request is validated,
+                    queued and answered with 202 Accepted and a tracking ID that can be polled via
+                    GET /api/v1/mail/send/{trackingId}.
+                    
+                    Requests with sendAt (a time with offset) or sendAfter (an ISO-8601 duration) are
+                    answered with 202 and held until due, then dispatched like queued sends. They can be
+                    cancelled until then with DELETE /api/v1/mail/send/{trackingId}.
+                    
+                    Requests carrying an Idempotency-Key header are sent at most once per key: a retry
+                    with the same key gets the original response (marked with Idempotent-Replayed: true)
+                    and concurrent duplicates wait for the first request instead of sending again.
                     """,
             security = {
                     @SecurityRequirement(name = "apiKey"),
@@ -92,6 +167,14 @@ public class MailController {
                             schema = @Schema(implementation = SendMailResponse.class)
                     )
             ),
+            @ApiResponse(
+                    responseCode = "202",
+                    description = "Email accepted for asynchronous dispatch",
+                    content = @Content(
+                            mediaType = MediaType.APPLICATION_JSON_VALUE,
+                            schema = @Schema(implementation = SendMailResponse.class)
+                    )
+            ),
             @ApiResponse(
                     responseCode = "400",
                     description = "Invalid request data or validation failure",
@@ -107,6 +190,11 @@ public class MailController {
                     description = "Insufficient permissions or sender/domain not allowed",
                     content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE)
             ),
+            @ApiResponse(
+                    responseCode = "422",
+                    description = "Idempotency-Key already used for a different request",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE)
+            ),
             @ApiResponse(
                     responseCode = "429",
                     description = "Rate limit exceeded",
@@ -116,11 +204,18 @@ public class MailController {
                     responseCode = "500",
                     description = "Internal server error or Graph API failure",
                     content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE)
+            ),
+            @ApiResponse(
+                    responseCode = "503",
+                    description = "Dispatch queue full, Graph circuit breaker open or Graph concurrency limit reached, retry later",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE)
             )
     })
     public ResponseEntity<SendMailResponse> sendMail(
             @Parameter(description = "Email request with all necessary details", required = true)
             @Valid @RequestBody SendMailRequest request,
+            @Parameter(description = "Client-chosen key; repeated requests with the same key are sent only once")
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
             HttpServletRequest httpRequest
     ) {
         // Set up correlation ID for request tracking
@@ -129,27 +224,64 @@ public class MailController {
 
         try {
             logger.info("Received email send request from: {} for {} recipients", 
-                       request.fromUpn(), getTotalRecipientCount(request));
+                       request.fromUpn(), request.recipientCount());
 
-            // Apply rate limiting
-            if (!checkRateLimit(httpRequest)) {
-                logger.warn("Rate limit exceeded for IP: {}", getClientIpAddress(httpRequest));
+            // Apply rate limiting, charged by recipients and payload size
+            if (!rateLimiter.tryConsume(httpRequest, RateLimiter.Lane.SEND, rateLimiter.sendCost(request))) {
+                logger.warn("Rate limit exceeded for principal: {}", rateLimiter.principalOf(httpRequest).key());
                 SendMailResponse response = SendMailResponse.failed("Rate limit exceeded", correlationId);
                 return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(response);
             }
 
-            // Process the email send request
-            SendMailResponse response = mailService.sendMail(request);
+            // Turn direct sends away early while Graph requests are backed up
+            if (!dispatchQueue.isAsyncEnabled() && !request.isScheduled()) {
+                concurrencyLimiter.checkAdmission();
+            }
 
-            // Return appropriate HTTP status based on response
-            HttpStatus status = "SUCCESS".equals(response.status()) ? HttpStatus.OK : HttpStatus.INTERNAL_SERVER_ERROR;
-            return ResponseEntity.status(status).body(response);
+            // Send at most once per principal and Idempotency-Key, repeats get the original response
+            String idempotencyScope = idempotencyKey != null ? rateLimiter.principalOf(httpRequest).key() : null;
+            IdempotencyStore.Outcome outcome = idempotencyStore.execute(idempotencyScope, idempotencyKey, request,
+                    () -> dispatch(request, correlationId));
+            SendMailResponse response = outcome.response();
+
+            ResponseEntity.BodyBuilder builder;
+            if ("ACCEPTED".equals(response.status())) {
+                builder = ResponseEntity.accepted()
+                        .location(URI.create("/api/v1/mail/send/" + response.trackingId()));
+            } else {
+                // Return appropriate HTTP status based on response
+                builder = ResponseEntity.status(
+                        "SUCCESS".equals(response.status()) ? HttpStatus.OK : HttpStatus.INTERNAL_SERVER_ERROR);
+            }
+            if (outcome.replayed()) {
+                builder.header("Idempotent-Replayed", "true");
+            }
+            return builder.body(response);
 
         } catch (IllegalArgumentException e) {
             logger.warn("Validation error for email request: {}", e.getMessage());
             SendMailResponse response = SendMailResponse.failed("Validation error: " + e.getMessage(), correlationId);
             return ResponseEntity.badRequest().body(response);
 
+        } catch (IdempotencyKeyReusedException e) {
+            logger.warn("Idempotency-Key reused for a different request: {}", e.getMessage());
+            SendMailResponse response = SendMailResponse.failed(e.getMessage(), correlationId);
+            return ResponseEntity.unprocessableEntity().body(response);
+
+        } catch (DispatchRejectedException e) {
+            logger.warn("Email request rejected by dispatch queue: {}", e.getMessage());
+            SendMailResponse response = SendMailResponse.failed(e.getMessage(), correlationId);
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header("Retry-After", "1")
+                    .body(response);
+
+        } catch (CircuitOpenException e) {
+            logger.warn("Email request rejected: {}", e.getMessage());
+            SendMailResponse response = SendMailResponse.failed(e.getMessage(), correlationId);
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header("Retry-After", String.valueOf(e.getRetryAfterSeconds()))
+                    .body(response);
+
         } catch (Exception e) {
             logger.error("Unexpected error processing email request: {}", e.getMessage(), e);
             SendMailResponse response = SendMailResponse.failed("Internal server error", correlationId);
@@ -160,6 +292,175 @@ public class MailController {
         }
     }
 
+    /**
+     * Schedules the request if it is deferred, queues it when async dispatch is
+     * enabled, and otherwise sends it right away.
+     */
+    private SendMailResponse dispatch(SendMailRequest request, String correlationId) {
+        if (request.isScheduled()) {
+            SendMailStatusResponse scheduled = scheduler.schedule(request, correlationId);
+            return SendMailResponse.accepted(scheduled.trackingId(), correlationId);
+        }
+        if (dispatchQueue.isAsyncEnabled()) {
+            SendMailStatusResponse accepted = dispatchQueue.submit(request, correlationId);
+            return SendMailResponse.accepted(accepted.trackingId(), correlationId);
+        }
+
+        // Journaled so the send is replayed if this pod stops mid-send
+        String outboxId = outbox.append(request, null, correlationId);
+        try {
+            return mailService.sendMail(request);
+        } finally {
+            outbox.complete(outboxId);
+        }
+    }
+
+    /**
+     * Sends a stream of emails supplied as newline-delimited JSON.
+     * Results are streamed back as NDJSON lines while the upload is still being read.
+     */
+    @PostMapping(value = "/send/bulk", consumes = MediaType.APPLICATION_NDJSON_VALUE,
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(
+            summary = "Send many emails from an NDJSON stream",
+            description = """
+                    Accepts a newline-delimited JSON stream of send requests (same schema as
+                    POST /api/v1/mail/send, one object per line) and streams back one NDJSON result
+                    line per message as each send completes.
+                    
+                    Features:
+                    - Incremental parsing, the request body is never buffered as a whole
+                    - Results carry the zero-based index of their request line (completion order may differ)
+                    - Invalid lines are reported individually without aborting the stream
+                    - Bounded number of messages in flight per upload (dispatch.bulk-max-in-flight)
+                    - Each message is charged to the send rate limit by recipients and size; messages
+                      over the limit are reported as RATE_LIMITED
+                    """,
+            security = {
+                    @SecurityRequirement(name = "apiKey"),
+                    @SecurityRequirement(name = "oauth2")
+            }
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Upload processed, one result line per message",
+                    content = @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE)
+            ),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "Authentication required",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE)
+            ),
+            @ApiResponse(
+                    responseCode = "429",
+                    description = "Rate limit exceeded",
+                    content = @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE)
+            )
+    })
+    public void sendBulk(HttpServletRequest httpRequest, HttpServletResponse httpResponse) throws IOException {
+        String correlationId = UUID.randomUUID().toString();
+        MDC.put("correlationId", correlationId);
+
+        try {
+            logger.info("Received bulk email send request");
+
+            // Apply rate limiting, one send token for the upload and each message's cost before it is sent
+            RateLimitPrincipal principal = rateLimiter.principalOf(httpRequest);
+            if (!rateLimiter.tryConsume(principal, RateLimiter.Lane.SEND, 1)) {
+                logger.warn("Rate limit exceeded for principal: {}", principal.key());
+                httpResponse.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+                httpResponse.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+                httpResponse.getOutputStream().write(
+                        ("{\"error\":\"Rate limit exceeded\",\"correlationId\":\"" + correlationId + "\"}\n")
+                                .getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+
+            httpResponse.setStatus(HttpStatus.OK.value());
+            httpResponse.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+            httpResponse.setCharacterEncoding(StandardCharsets.UTF_8.name());
+
+            bulkSendProcessor.process(httpRequest.getInputStream(), httpResponse.getOutputStream(),
+                    request -> rateLimiter.tryConsume(principal, RateLimiter.Lane.SEND, rateLimiter.sendCost(request)));
+
+        } finally {
+            MDC.clear();
+        }
+    }
+
+    /**
+     * Reports the dispatch status of an email accepted in async mode.
+     */
+    @GetMapping(value = "/send/{trackingId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(
+            summary = "Get status of an asynchronously dispatched email",
+            description = """
+                    Returns the current dispatch state (SCHEDULED, QUEUED, SENDING, SENT, FAILED or
+                    CANCELLED) of an email accepted with 202 by POST /api/v1/mail/send. Statuses are
+                    retained for a limited time after the send completes.
+                    """,
+            security = {
+                    @SecurityRequirement(name = "apiKey"),
+                    @SecurityRequirement(name = "oauth2")
+            }
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Dispatch status found",
+                    content = @Content(
+                            mediaType = MediaType.APPLICATION_JSON_VALUE,
+                            schema = @Schema(implementation = SendMailStatusResponse.class)
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "404",
+                    description = "Unknown or expired tracking ID",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE)
+            )
+    })
+    public ResponseEntity<SendMailStatusResponse> getSendStatus(
+            @Parameter(description = "Tracking ID returned when the email was accepted", required = true)
+            @PathVariable String trackingId
+    ) {
+        return dispatchQueue.getStatus(trackingId)
+                .or(() -> scheduler.getStatus(trackingId))
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Cancels a scheduled send that is not due yet.
+     */
+    @DeleteMapping(value = "/send/{trackingId}")
+    @Operation(
+            summary = "Cancel a scheduled email",
+            description = """
+                    Cancels an email accepted with sendAt or sendAfter before it becomes due.
+                    Once it was handed to the dispatch queue it can no longer be cancelled.
+                    """,
+            security = {
+                    @SecurityRequirement(name = "apiKey"),
+                    @SecurityRequirement(name = "oauth2")
+            }
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "204", description = "Scheduled send cancelled"),
+            @ApiResponse(responseCode = "404", description = "Unknown or expired tracking ID"),
+            @ApiResponse(responseCode = "409", description = "The send is already being dispatched or done")
+    })
+    public ResponseEntity<Void> cancelScheduledSend(
+            @Parameter(description = "Tracking ID returned when the email was scheduled", required = true)
+            @PathVariable String trackingId
+    ) {
+        return switch (scheduler.cancel(trackingId)) {
+            case CANCELLED -> ResponseEntity.noContent().build();
+            case ALREADY_DISPATCHED -> ResponseEntity.status(HttpStatus.CONFLICT).build();
+            case NOT_FOUND -> ResponseEntity.notFound().build();
+        };
+    }
+
     /**
      * Reads emails from a mailbox using Microsoft Graph API with modern REST practices.
      * Uses query parameters for filtering and follows OData conventions.
@@ -213,9 +514,14 @@ public class MailController {
                     responseCode = "500",
                     description = "Internal server error or Graph API failure",
                     content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE)
+            ),
+            @ApiResponse(
+                    responseCode = "503",
+                    description = "Graph circuit breaker open or Graph concurrency limit reached, retry later",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE)
             )
     })
-    public ResponseEntity<String> readEmails(
+    public ResponseEntity<byte[]> readEmails(
             @Parameter(description = "Mailbox UPN (user principal name) to read from", required = true, example = "user@contoso.com")
             @RequestParam String mailbox,
             
@@ -251,33 +557,32 @@ public class MailController {
             if (mailbox == null || mailbox.trim().isEmpty()) {
                 logger.warn("Mailbox parameter is required");
                 return ResponseEntity.badRequest()
-                    .body("{\"error\":\"Mailbox parameter is required\",\"correlationId\":\"" + correlationId + "\"}");
+                    .body(errorBody("{\"error\":\"Mailbox parameter is required\",\"correlationId\":\"" + correlationId + "\"}"));
             }
 
             if (top != null && (top < 1 || top > 100)) {
                 logger.warn("Top parameter must be between 1 and 100, got: {}", top);
                 return ResponseEntity.badRequest()
-                    .body("{\"error\":\"Top parameter must be between 1 and 100\",\"correlationId\":\"" + correlationId + "\"}");
+                    .body(errorBody("{\"error\":\"Top parameter must be between 1 and 100\",\"correlationId\":\"" + correlationId + "\"}"));
             }
 
             // Apply rate limiting
             if (!checkRateLimit(httpRequest)) {
-                logger.warn("Rate limit exceeded for IP: {}", getClientIpAddress(httpRequest));
+                logger.warn("Rate limit exceeded for principal: {}", rateLimiter.principalOf(httpRequest).key());
                 return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
-                    .body("{\"error\":\"Rate limit exceeded\",\"correlationId\":\"" + correlationId + "\"}");
+                    .body(errorBody("{\"error\":\"Rate limit exceeded\",\"correlationId\":\"" + correlationId + "\"}"));
             }
+            concurrencyLimiter.checkAdmission();
 
             // Convert modern parameters to legacy format for service compatibility
             String legacyFormat = "csv".equalsIgnoreCase(format) ? "CSV" : "JSON";
             String legacyHeader = includeHeaders != null && includeHeaders ? "true" : "false";
             
-            // Call the read mail service with converted parameters
-            String response = readMailService.readEmails(
-                mailbox,                    // from
-                "not-used-in-graph-api",   // paswd (not used but required by legacy interface)
+            // Call the read mail service with converted parameters; the encoded response is sent as is
+            byte[] response = readMailService.readEmailBytes(
+                mailbox,                   // from
                 subject,                   // subject filter
                 sender,                    // sender filter
-                "emails." + format.toLowerCase(), // filename
                 legacyFormat,              // filetype
                 top,                       // counted
                 separator,                 // separator
@@ -298,12 +603,18 @@ public class MailController {
         } catch (IllegalArgumentException e) {
             logger.warn("Validation error for email read request: {}", e.getMessage());
             return ResponseEntity.badRequest()
-                .body("{\"error\":\"Validation error: " + e.getMessage() + "\",\"correlationId\":\"" + correlationId + "\"}");
+                .body(errorBody("{\"error\":\"Validation error: " + e.getMessage() + "\",\"correlationId\":\"" + correlationId + "\"}"));
+
+        } catch (CircuitOpenException e) {
+            logger.warn("Email read request rejected: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header("Retry-After", String.valueOf(e.getRetryAfterSeconds()))
+                .body(errorBody("{\"error\":\"" + e.getMessage() + "\",\"correlationId\":\"" + correlationId + "\"}"));
 
         } catch (Exception e) {
             logger.error("Unexpected error processing email read request: {}", e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                .body("{\"error\":\"Internal server error\",\"correlationId\":\"" + correlationId + "\"}");
+                .body(errorBody("{\"error\":\"Internal server error\",\"correlationId\":\"" + correlationId + "\"}"));
 
         } finally {
             MDC.clear();
@@ -311,44 +622,642 @@ public class MailController {
     }
 
     /**
-     * Checks rate limit for the client IP address.
+     * Exports emails from a mailbox, following Graph's pages until the mailbox or limit is exhausted.
+     * Messages are streamed to the response as they arrive, so exports are not capped like /read.
      */
-    private boolean checkRateLimit(HttpServletRequest request) {
-        String clientIp = getClientIpAddress(request);
-        
-        Bucket bucket = rateLimitBuckets.computeIfAbsent(clientIp, ip -> 
-                Bucket.builder()
-                        .addLimit(defaultBandwidth)
-                        .build()
-        );
-
-        return bucket.tryConsume(1);
+    @GetMapping(value = "/read/export", produces = {MediaType.APPLICATION_JSON_VALUE, "text/csv"})
+    @Operation(
+            summary = "Export emails from mailbox",
+            description = """
+                    Streams every email in the specified mailbox that matches the filters, as a JSON
+                    array or CSV. Unlike GET /api/v1/mail/read, results are not limited to a single page:
+                    Graph's next links are followed lazily and each message is written to the response
+                    as soon as its page arrives.
+                    
+                    Features:
+                    - Constant memory regardless of mailbox size
+                    - Optional limit on the number of exported emails
+                    - Same filters and fields as GET /api/v1/mail/read
+                    - Errors after the first page has been written truncate the response
+                    """,
+            security = {
+                    @SecurityRequirement(name = "apiKey"),
+                    @SecurityRequirement(name = "oauth2")
+            }
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Emails streamed successfully",
+                    content = {
+                            @Content(mediaType = MediaType.APPLICATION_JSON_VALUE),
+                            @Content(mediaType = "text/csv")
+                    }
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Invalid query parameters",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE)
+            ),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "Authentication required",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE)
+            ),
+            @ApiResponse(
+                    responseCode = "429",
+                    description = "Rate limit exceeded",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE)
+            ),
+            @ApiResponse(
+                    responseCode = "500",
+                    description = "Internal server error or Graph API failure before any email was written",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE)
+            ),
+            @ApiResponse(
+                    responseCode = "503",
+                    description = "Graph circuit breaker open or Graph concurrency limit reached, retry later",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE)
+            )
+    })
+    public void exportEmails(
+            @Parameter(description = "Mailbox UPN (user principal name) to read from", required = true, example = "user@contoso.com")
+            @RequestParam String mailbox,
+
+            @Parameter(description = "Filter emails by sender address", example = "sender@example.com")
+            @RequestParam(required = false) String sender,
+
+            @Parameter(description = "Filter emails by subject (contains)", example = "important")
+            @RequestParam(required = false) String subject,
+
+            @Parameter(description = "Maximum number of emails to export (default: all)", example = "250000")
+            @RequestParam(required = false) Long limit,
+
+            @Parameter(description = "Response format: json or csv", example = "csv")
+            @RequestParam(required = false, defaultValue = "json") String format,
+
+            @Parameter(description = "CSV separator (only for CSV format)", example = ",")
+            @RequestParam(required = false, defaultValue = ",") String separator,
+
+            @Parameter(description = "Include CSV headers (only for CSV format)", example = "true")
+            @RequestParam(required = false, defaultValue = "true") Boolean includeHeaders,
+
+            HttpServletRequest httpRequest,
+            HttpServletResponse httpResponse
+    ) throws IOException {
+        String correlationId = UUID.randomUUID().toString();
+        MDC.put("correlationId", correlationId);
+
+        try {
+            logger.info("Received email export request for mailbox: {} (limit: {}, format: {})",
+                       mailbox, limit, format);
+
+            // Validate parameters
+            if (mailbox == null || mailbox.trim().isEmpty()) {
+                logger.warn("Mailbox parameter is required");
+                writeExportError(httpResponse, HttpStatus.BAD_REQUEST,
+                    "{\"error\":\"Mailbox parameter is required\",\"correlationId\":\"" + correlationId + "\"}");
+                return;
+            }
+
+            if (limit != null && limit < 1) {
+                logger.warn("Limit parameter must be positive, got: {}", limit);
+                writeExportError(httpResponse, HttpStatus.BAD_REQUEST,
+                    "{\"error\":\"Limit parameter must be positive\",\"correlationId\":\"" + correlationId + "\"}");
+                return;
+            }
+
+            // Apply rate limiting
+            if (!checkRateLimit(httpRequest)) {
+                logger.warn("Rate limit exceeded for principal: {}", rateLimiter.principalOf(httpRequest).key());
+                writeExportError(httpResponse, HttpStatus.TOO_MANY_REQUESTS,
+                    "{\"error\":\"Rate limit exceeded\",\"correlationId\":\"" + correlationId + "\"}");
+                return;
+            }
+            concurrencyLimiter.checkAdmission();
+
+            boolean csv = "csv".equalsIgnoreCase(format);
+            httpResponse.setStatus(HttpStatus.OK.value());
+            httpResponse.setContentType(csv ? "text/csv" : MediaType.APPLICATION_JSON_VALUE);
+            httpResponse.setCharacterEncoding(StandardCharsets.UTF_8.name());
+
+            long exported = readMailService.streamEmails(mailbox, subject, sender, limit, csv ? "CSV" : "JSON",
+                    separator, includeHeaders != null && includeHeaders, httpResponse.getOutputStream());
+
+            logger.info("Email export completed for mailbox: {} ({} emails)", mailbox, exported);
+
+        } catch (CircuitOpenException e) {
+            logger.warn("Email export request rejected: {}", e.getMessage());
+            if (!httpResponse.isCommitted()) {
+                httpResponse.setHeader("Retry-After", String.valueOf(e.getRetryAfterSeconds()));
+            }
+            writeExportError(httpResponse, HttpStatus.SERVICE_UNAVAILABLE,
+                "{\"error\":\"" + e.getMessage() + "\",\"correlationId\":\"" + correlationId + "\"}");
+
+        } catch (IOException e) {
+            logger.warn("Email export for mailbox: {} aborted, client connection lost: {}", mailbox, e.getMessage());
+
+        } catch (Exception e) {
+            logger.error("Unexpected error processing email export request: {}", e.getMessage(), e);
+            writeExportError(httpResponse, HttpStatus.INTERNAL_SERVER_ERROR,
+                "{\"error\":\"Internal server error\",\"correlationId\":\"" + correlationId + "\"}");
+
+        } finally {
+            MDC.clear();
+        }
+    }
+
+    /**
+     * Reads several mailboxes concurrently and merges their emails into one response, newest first.
+     * Mailboxes that fail or time out are reported per mailbox without failing the others.
+     */
+    @GetMapping(value = "/read/multi", produces = {MediaType.APPLICATION_JSON_VALUE, "text/csv"})
+    @Operation(
+            summary = "Read emails from several mailboxes",
+            description = """
+                    Reads the newest emails matching the filters from each listed mailbox and merges them
+                    into one response ordered by receivedDateTime, newest first. Mailboxes are read
+                    concurrently with bounded parallelism (fan-out.parallelism) and each read is given
+                    fan-out.mailbox-timeout.
+                    
+                    Features:
+                    - Same filters and fields as GET /api/v1/mail/read, plus the mailbox of each email
+                    - Per-mailbox status (SUCCESS, ERROR or TIMEOUT) with email counts and errors
+                    - Overall status SUCCESS, PARTIAL or ERROR; 502 only when no mailbox could be read
+                    - CSV responses report per-mailbox status in the X-Mailbox-Status header
+                    """,
+            security = {
+                    @SecurityRequirement(name = "apiKey"),
+                    @SecurityRequirement(name = "oauth2")
+            }
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Emails read from all or some of the mailboxes",
+                    content = {
+                            @Content(mediaType = MediaType.APPLICATION_JSON_VALUE),
+                            @Content(mediaType = "text/csv")
+                    }
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Invalid query parameters",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE)
+            ),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "Authentication required",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE)
+            ),
+            @ApiResponse(
+                    responseCode = "429",
+                    description = "Rate limit exceeded",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE)
+            ),
+            @ApiResponse(
+                    responseCode = "502",
+                    description = "None of the mailboxes could be read",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE)
+            ),
+            @ApiResponse(
+                    responseCode = "503",
+                    description = "Graph concurrency limit reached, retry later",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE)
+            )
+    })
+    public void readMultipleMailboxes(
+            @Parameter(description = "Mailbox UPNs to read from, comma separated", required = true,
+                    example = "support@contoso.com,sales@contoso.com")
+            @RequestParam List<String> mailboxes,
+
+            @Parameter(description = "Filter emails by sender address", example = "sender@example.com")
+            @RequestParam(required = false) String sender,
+
+            @Parameter(description = "Filter emails by subject (contains)", example = "important")
+            @RequestParam(required = false) String subject,
+
+            @Parameter(description = "Maximum number of emails per mailbox (default: 10, max: 100)", example = "25")
+            @RequestParam(required = false, defaultValue = "10") Integer top,
+
+            @Parameter(description = "Response format: json or csv", example = "json")
+            @RequestParam(required = false, defaultValue = "json") String format,
+
+            @Parameter(description = "CSV separator (only for CSV format)", example = ",")
+            @RequestParam(required = false, defaultValue = ",") String separator,
+
+            @Parameter(description = "Include CSV headers (only for CSV format)", example = "true")
+            @RequestParam(required = false, defaultValue = "true") Boolean includeHeaders,
+
+            HttpServletRequest httpRequest,
+            HttpServletResponse httpResponse
+    ) throws IOException {
+        String correlationId = UUID.randomUUID().toString();
+        MDC.put("correlationId", correlationId);
+
+        try {
+            logger.info("Received multi-mailbox read request for {} mailboxes (top: {}, format: {})",
+                       mailboxes.size(), top, format);
+
+            // Validate parameters
+            if (top != null && (top < 1 || top > 100)) {
+                logger.warn("Top parameter must be between 1 and 100, got: {}", top);
+                writeExportError(httpResponse, HttpStatus.BAD_REQUEST,
+                    "{\"error\":\"Top parameter must be between 1 and 100\",\"correlationId\":\"" + correlationId + "\"}");
+                return;
+            }
+
+            // Apply rate limiting, one read per mailbox
+            if (!rateLimiter.tryConsume(httpRequest, RateLimiter.Lane.READ, mailboxes.size())) {
+                logger.warn("Rate limit exceeded for principal: {}", rateLimiter.principalOf(httpRequest).key());
+                writeExportError(httpResponse, HttpStatus.TOO_MANY_REQUESTS,
+                    "{\"error\":\"Rate limit exceeded\",\"correlationId\":\"" + correlationId + "\"}");
+                return;
+            }
+            concurrencyLimiter.checkAdmission();
+
+            MultiMailboxReadResult result = multiMailboxReader.read(mailboxes, subject, sender, top);
+
+            boolean csv = "csv".equalsIgnoreCase(format);
+            httpResponse.setStatus(result.status() == MultiMailboxReadResult.Status.ERROR
+                    ? HttpStatus.BAD_GATEWAY.value() : HttpStatus.OK.value());
+            httpResponse.setContentType(csv ? "text/csv" : MediaType.APPLICATION_JSON_VALUE);
+            httpResponse.setCharacterEncoding(StandardCharsets.UTF_8.name());
+            httpResponse.setHeader("X-Mailbox-Status", result.mailboxes().stream()
+                    .map(mailbox -> mailbox.mailbox() + "=" + mailbox.status())
+                    .collect(Collectors.joining(", ")));
+
+            long written = result.writeTo(csv ? "CSV" : "JSON", separator, includeHeaders != null && includeHeaders,
+                    httpResponse.getOutputStream(), objectMapper);
+
+            logger.info("Multi-mailbox read completed: {} ({} of {} mailboxes read, {} emails)", result.status(),
+                       result.mailboxes().stream().filter(MailboxReadResult::isSuccess).count(),
+                       result.mailboxes().size(), written);
+
+        } catch (IllegalArgumentException e) {
+            logger.warn("Validation error for multi-mailbox read request: {}", e.getMessage());
+            writeExportError(httpResponse, HttpStatus.BAD_REQUEST,
+                "{\"error\":\"Validation error: " + e.getMessage() + "\",\"correlationId\":\"" + correlationId + "\"}");
+
+        } catch (CircuitOpenException e) {
+            logger.warn("Multi-mailbox read request rejected: {}", e.getMessage());
+            if (!httpResponse.isCommitted()) {
+                httpResponse.setHeader("Retry-After", String.valueOf(e.getRetryAfterSeconds()));
+            }
+            writeExportError(httpResponse, HttpStatus.SERVICE_UNAVAILABLE,
+                "{\"error\":\"" + e.getMessage() + "\",\"correlationId\":\"" + correlationId + "\"}");
+
+        } catch (IOException e) {
+            logger.warn("Multi-mailbox read aborted, client connection lost: {}", e.getMessage());
+
+        } catch (Exception e) {
+            logger.error("Unexpected error processing multi-mailbox read request: {}", e.getMessage(), e);
+            writeExportError(httpResponse, HttpStatus.INTERNAL_SERVER_ERROR,
+                "{\"error\":\"Internal server error\",\"correlationId\":\"" + correlationId + "\"}");
+
+        } finally {
+            MDC.clear();
+        }
+    }
+
+    /**
+     * Searches a mirrored mailbox with the local full-text index.
+     */
+    @GetMapping(value = "/search", produces = {MediaType.APPLICATION_JSON_VALUE, "text/csv"})
+    @Operation(
+            summary = "Search emails in a mailbox",
+            description = """
+                    Searches the subject, sender and body preview of a mailbox with a local inverted index
+                    built from the mailbox mirror, and returns the newest matches first. Requires the mailbox
+                    mirror (mirror.enabled) and search (search.enabled).
+                    
+                    Query syntax, clauses separated by spaces must all match:
+                    - report: emails containing the term
+                    - rep*: emails containing a term starting with "rep"
+                    - "quarterly report": emails containing the terms next to each other
+                    - subject:, from: or body: before a clause restricts it to one field
+                    
+                    The receive time can be limited with after (inclusive) and before (exclusive).
+                    At least a query or a date is required.
+                    """,
+            security = {
+                    @SecurityRequirement(name = "apiKey"),
+                    @SecurityRequirement(name = "oauth2")
+            }
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Matching emails",
+                    content = {
+                            @Content(mediaType = MediaType.APPLICATION_JSON_VALUE),
+                            @Content(mediaType = "text/csv")
+                    }
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Invalid query parameters",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE)
+            ),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "Authentication required",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE)
+            ),
+            @ApiResponse(
+                    responseCode = "429",
+                    description = "Rate limit exceeded",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE)
+            ),
+            @ApiResponse(
+                    responseCode = "503",
+                    description = "Search or the mailbox mirror is disabled, or the Graph circuit breaker is open",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE)
+            )
+    })
+    public void searchEmails(
+            @Parameter(description = "Mailbox UPN (user principal name) to search", required = true, example = "user@contoso.com")
+            @RequestParam String mailbox,
+
+            @Parameter(description = "Search query", example = "from:contoso \"quarterly report\" inv*")
+            @RequestParam(required = false) String q,
+
+            @Parameter(description = "Earliest receive time, inclusive (ISO-8601)", example = "2025-10-01T00:00:00Z")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime after,
+
+            @Parameter(description = "Latest receive time, exclusive (ISO-8601)", example = "2025-11-01T00:00:00Z")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime before,
+
+            @Parameter(description = "Maximum number of emails to return (default: 25, max: 100)", example = "25")
+            @RequestParam(required = false, defaultValue = "25") Integer top,
+
+            @Parameter(description = "Response format: json or csv", example = "json")
+            @RequestParam(required = false, defaultValue = "json") String format,
+
+            @Parameter(description = "CSV separator (only for CSV format)", example = ",")
+            @RequestParam(required = false, defaultValue = ",") String separator,
+
+            @Parameter(description = "Include CSV headers (only for CSV format)", example = "true")
+            @RequestParam(required = false, defaultValue = "true") Boolean includeHeaders,
+
+            HttpServletRequest httpRequest,
+            HttpServletResponse httpResponse
+    ) throws IOException {
+        String correlationId = UUID.randomUUID().toString();
+        MDC.put("correlationId", correlationId);
+
+        try {
+            logger.info("Received search request for mailbox: {} (top: {}, format: {})", mailbox, top, format);
+
+            // Validate parameters
+            if (mailbox == null || mailbox.trim().isEmpty()) {
+                logger.warn("Mailbox parameter is required");
+                writeExportError(httpResponse, HttpStatus.BAD_REQUEST,
+                    "{\"error\":\"Mailbox parameter is required\",\"correlationId\":\"" + correlationId + "\"}");
+                return;
+            }
+
+            if (top != null && (top < 1 || top > 100)) {
+                logger.warn("Top parameter must be between 1 and 100, got: {}", top);
+                writeExportError(httpResponse, HttpStatus.BAD_REQUEST,
+                    "{\"error\":\"Top parameter must be between 1 and 100\",\"correlationId\":\"" + correlationId + "\"}");
+                return;
+            }
+
+            SearchQuery query = SearchQuery.parse(q);
+            if (query.isEmpty() && after == null && before == null) {
+                throw new IllegalArgumentException("A search query or date range is required");
+            }
+
+            // Apply rate limiting
+            if (!checkRateLimit(httpRequest)) {
+                logger.warn("Rate limit exceeded for principal: {}", rateLimiter.principalOf(httpRequest).key());
+                writeExportError(httpResponse, HttpStatus.TOO_MANY_REQUESTS,
+                    "{\"error\":\"Rate limit exceeded\",\"correlationId\":\"" + correlationId + "\"}");
+                return;
+            }
+
+            List<Message> messages = mailSearchService.search(mailbox, query, after, before, top != null ? top : 25);
+
+            boolean csv = "csv".equalsIgnoreCase(format);
+            httpResponse.setStatus(HttpStatus.OK.value());
+            httpResponse.setContentType(csv ? "text/csv" : MediaType.APPLICATION_JSON_VALUE);
+            httpResponse.setCharacterEncoding(StandardCharsets.UTF_8.name());
+
+            try (MessageWriter writer = csv
+                    ? new CsvMessageWriter(httpResponse.getOutputStream(), separator, includeHeaders != null && includeHeaders)
+                    : JsonMessageWriter.enveloped(httpResponse.getOutputStream(), objectMapper, messages.size())) {
+                for (Message message : messages) {
+                    writer.write(message);
+                }
+            }
+
+            logger.info("Search of mailbox: {} completed ({} emails)", mailbox, messages.size());
+
+        } catch (IllegalArgumentException e) {
+            logger.warn("Validation error for search request: {}", e.getMessage());
+            writeExportError(httpResponse, HttpStatus.BAD_REQUEST,
+                "{\"error\":\"Validation error: " + e.getMessage() + "\",\"correlationId\":\"" + correlationId + "\"}");
+
+        } catch (SearchUnavailableException e) {
+            logger.warn("Search request rejected: {}", e.getMessage());
+            writeExportError(httpResponse, HttpStatus.SERVICE_UNAVAILABLE,
+                "{\"error\":\"" + e.getMessage() + "\",\"correlationId\":\"" + correlationId + "\"}");
+
+        } catch (CircuitOpenException e) {
+            logger.warn("Search request rejected: {}", e.getMessage());
+            if (!httpResponse.isCommitted()) {
+                httpResponse.setHeader("Retry-After", String.valueOf(e.getRetryAfterSeconds()));
+            }
+            writeExportError(httpResponse, HttpStatus.SERVICE_UNAVAILABLE,
+                "{\"error\":\"" + e.getMessage() + "\",\"correlationId\":\"" + correlationId + "\"}");
+
+        } catch (Exception e) {
+            logger.error("Unexpected error processing search request: {}", e.getMessage(), e);
+            writeExportError(httpResponse, HttpStatus.INTERNAL_SERVER_ERROR,
+                "{\"error\":\"Internal server error\",\"correlationId\":\"" + correlationId + "\"}");
+
+        } finally {
+            MDC.clear();
+        }
     }
 
     /**
-     * Extracts client IP address from request, considering proxy headers.
+     * Streams the content of a message attachment from Graph, with byte range support.
      */
-    private String getClientIpAddress(HttpServletRequest request) {
-        String xForwardedFor = request.getHeader("X-Forwarded-For");
-        if (xForwardedFor != null && !xForwardedFor.isEmpty()) {
-            return xForwardedFor.split(",")[0].trim();
+    @GetMapping(value = "/messages/{messageId}/attachments/{attachmentId}/content")
+    @Operation(
+            summary = "Download attachment content",
+            description = """
+                    Streams the content of a message attachment from Microsoft Graph to the client as it
+                    arrives, without buffering it in memory. Responses without a known length use chunked
+                    transfer encoding.
+                    
+                    Features:
+                    - Single byte ranges via the Range header (206 Partial Content)
+                    - Graph may ignore a range for uncached attachments, in which case the whole content is sent (200)
+                    - Optional disk cache of recently downloaded attachments with LRU eviction (attachments.cache-*)
+                    """,
+            security = {
+                    @SecurityRequirement(name = "apiKey"),
+                    @SecurityRequirement(name = "oauth2")
+            }
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Whole attachment content",
+                    content = @Content(mediaType = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+            ),
+            @ApiResponse(
+                    responseCode = "206",
+                    description = "Requested byte range of the attachment content",
+                    content = @Content(mediaType = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Invalid query parameters",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE)
+            ),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "Authentication required",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE)
+            ),
+            @ApiResponse(
+                    responseCode = "404",
+                    description = "Message or attachment not found",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE)
+            ),
+            @ApiResponse(
+                    responseCode = "416",
+                    description = "Requested range lies outside the attachment content"
+            ),
+            @ApiResponse(
+                    responseCode = "429",
+                    description = "Rate limit exceeded",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE)
+            ),
+            @ApiResponse(
+                    responseCode = "503",
+                    description = "Graph circuit breaker open or Graph concurrency limit reached, retry later",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE)
+            )
+    })
+    public void downloadAttachment(
+            @Parameter(description = "Graph message ID", required = true)
+            @PathVariable String messageId,
+
+            @Parameter(description = "Graph attachment ID", required = true)
+            @PathVariable String attachmentId,
+
+            @Parameter(description = "Mailbox UPN (user principal name) holding the message", required = true, example = "user@contoso.com")
+            @RequestParam String mailbox,
+
+            @Parameter(description = "Byte range to download", example = "bytes=0-1048575")
+            @RequestHeader(value = "Range", required = false) String range,
+
+            HttpServletRequest httpRequest,
+            HttpServletResponse httpResponse
+    ) throws IOException {
+        String correlationId = UUID.randomUUID().toString();
+        MDC.put("correlationId", correlationId);
+
+        try {
+            logger.info("Received attachment download request for attachment: {} of message: {} (range: {})",
+                       attachmentId, messageId, range != null ? range : "none");
+
+            // Validate parameters
+            if (mailbox == null || mailbox.trim().isEmpty()) {
+                logger.warn("Mailbox parameter is required");
+                writeExportError(httpResponse, HttpStatus.BAD_REQUEST,
+                    "{\"error\":\"Mailbox parameter is required\",\"correlationId\":\"" + correlationId + "\"}");
+                return;
+            }
+
+            // Apply rate limiting
+            if (!checkRateLimit(httpRequest)) {
+                logger.warn("Rate limit exceeded for principal: {}", rateLimiter.principalOf(httpRequest).key());
+                writeExportError(httpResponse, HttpStatus.TOO_MANY_REQUESTS,
+                    "{\"error\":\"Rate limit exceeded\",\"correlationId\":\"" + correlationId + "\"}");
+                return;
+            }
+            concurrencyLimiter.checkAdmission();
+
+            try (AttachmentContent content = attachmentService.open(mailbox, messageId, attachmentId,
+                    ByteRange.parse(range))) {
+                httpResponse.setStatus(content.getStatus());
+                httpResponse.setHeader("Accept-Ranges", "bytes");
+                httpResponse.setContentType(content.getContentType());
+                if (content.getName() != null && !content.getName().isEmpty()) {
+                    httpResponse.setHeader("Content-Disposition", ContentDisposition.attachment()
+                            .filename(content.getName(), StandardCharsets.UTF_8).build().toString());
+                }
+                if (content.getContentRange() != null) {
+                    httpResponse.setHeader("Content-Range", content.getContentRange());
+                }
+                if (content.getContentLength() != null) {
+                    httpResponse.setContentLengthLong(content.getContentLength());
+                }
+
+                long written = content.writeTo(httpResponse.getOutputStream());
+                logger.info("Attachment download completed for attachment: {} ({} bytes, status: {}, cached: {})",
+                           attachmentId, written, content.getStatus(), content.isCached());
+            }
+
+        } catch (CircuitOpenException e) {
+            logger.warn("Attachment download request rejected: {}", e.getMessage());
+            if (!httpResponse.isCommitted()) {
+                httpResponse.setHeader("Retry-After", String.valueOf(e.getRetryAfterSeconds()));
+            }
+            writeExportError(httpResponse, HttpStatus.SERVICE_UNAVAILABLE,
+                "{\"error\":\"" + e.getMessage() + "\",\"correlationId\":\"" + correlationId + "\"}");
+
+        } catch (IOException e) {
+            logger.warn("Attachment download of attachment: {} aborted: {}", attachmentId, e.getMessage());
+
+        } catch (Exception e) {
+            if (GraphFailureClassifier.classify(e).statusCode() == HttpStatus.NOT_FOUND.value()) {
+                logger.warn("Attachment: {} of message: {} not found", attachmentId, messageId);
+                writeExportError(httpResponse, HttpStatus.NOT_FOUND,
+                    "{\"error\":\"Attachment not found\",\"correlationId\":\"" + correlationId + "\"}");
+                return;
+            }
+            logger.error("Unexpected error processing attachment download request: {}", e.getMessage(), e);
+            writeExportError(httpResponse, HttpStatus.INTERNAL_SERVER_ERROR,
+                "{\"error\":\"Internal server error\",\"correlationId\":\"" + correlationId + "\"}");
+
+        } finally {
+            MDC.clear();
         }
+    }
 
-        String xRealIp = request.getHeader("X-Real-IP");
-        if (xRealIp != null && !xRealIp.isEmpty()) {
-            return xRealIp;
+    /**
+     * Writes an export error response, unless part of the export has already been sent.
+     */
+    private void writeExportError(HttpServletResponse httpResponse, HttpStatus status, String body) throws IOException {
+        if (httpResponse.isCommitted()) {
+            logger.warn("Export response already started, cannot report status {}", status.value());
+            return;
         }
+        httpResponse.resetBuffer();
+        httpResponse.setStatus(status.value());
+        httpResponse.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        httpResponse.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        httpResponse.getOutputStream().write(body.getBytes(StandardCharsets.UTF_8));
+    }
 
-        return request.getRemoteAddr();
+    /**
+     * Encodes a JSON error body for the byte-valued read response.
+     */
+    private static byte[] errorBody(String body) {
+        return body.getBytes(StandardCharsets.UTF_8);
     }
 
     /**
-     * Calculates total recipient count for logging purposes.
+     * Checks the read rate limit of the request's principal.
      */
-    private int getTotalRecipientCount(SendMailRequest request) {
-        int count = request.to().size();
-        if (request.cc() != null) count += request.cc().size();
-        if (request.bcc() != null) count += request.bcc().size();
-        return count;
+    private boolean checkRateLimit(HttpServletRequest request) {
+        return rateLimiter.tryConsume(request);
     }
 }
\ No newline at end of file
@@ -0,0 +1,272 @@
+package com.graphmailer.controller;
+
+import com.graphmailer.config.TemplateProperties;
+import com.graphmailer.model.MailTemplate;
+import com.graphmailer.model.TemplateInfo;
+import com.graphmailer.model.TemplateSendRequest;
+import com.graphmailer.service.dispatch.BulkSendProcessor;
+import com.graphmailer.service.ratelimit.RateLimitPrincipal;
+import com.graphmailer.service.ratelimit.RateLimiter;
+import com.graphmailer.service.template.CompiledTemplate;
+import com.graphmailer.service.template.TemplateRegistry;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.validation.Valid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * REST controller for stored email templates.
+ *
+ * Templates are uploaded once and compiled; sends then reference them by ID
+ * with a small set of variable values per recipient instead of posting the
+ * rendered body every time.
+ */
+@RestController
+@RequestMapping("/api/v1/mail/templates")
+@Tag(name = "Mail Templates", description = "Stored email templates and per-recipient mail merge")
+public class TemplateController {
+
+    private static final Logger logger = LoggerFactory.getLogger(TemplateController.class);
+
+    private final TemplateRegistry templateRegistry;
+    private final BulkSendProcessor bulkSendProcessor;
+    private final RateLimiter rateLimiter;
+    private final TemplateProperties properties;
+
+    public TemplateController(TemplateRegistry templateRegistry,
+                              BulkSendProcessor bulkSendProcessor,
+                              RateLimiter rateLimiter,
+                              TemplateProperties properties) {
+        this.templateRegistry = templateRegistry;
+        this.bulkSendProcessor = bulkSendProcessor;
+        this.rateLimiter = rateLimiter;
+        this.properties = properties;
+    }
+
+    /**
+     * Uploads a template, replacing any previous version with the same ID.
+     */
+    @PutMapping(value = "/{templateId}", consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(
+            summary = "Upload an email template",
+            description = """
+                    Stores a template under the given ID, replacing any previous version. Subject and
+                    bodies may contain {{name}} placeholders; in the HTML body their values are
+                    HTML-escaped, {{{name}}} inserts a value as is. The template is compiled on upload,
+                    so syntax errors are reported here rather than when sending.
+                    """,
+            security = {
+                    @SecurityRequirement(name = "apiKey"),
+                    @SecurityRequirement(name = "oauth2")
+            }
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Template stored",
+                    content = @Content(
+                            mediaType = MediaType.APPLICATION_JSON_VALUE,
+                            schema = @Schema(implementation = TemplateInfo.class)
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Invalid template or ID, or template limit reached",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE)
+            )
+    })
+    public ResponseEntity<TemplateInfo> putTemplate(
+            @Parameter(description = "Template ID: letters, digits, '-' and '_'", example = "order-shipped")
+            @PathVariable String templateId,
+            @Valid @RequestBody MailTemplate template
+    ) {
+        return ResponseEntity.ok(templateRegistry.put(templateId, template).info());
+    }
+
+    /**
+     * Describes a stored template.
+     */
+    @GetMapping(value = "/{templateId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(
+            summary = "Get a stored template",
+            description = "Returns the template's variables and size.",
+            security = {
+                    @SecurityRequirement(name = "apiKey"),
+                    @SecurityRequirement(name = "oauth2")
+            }
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Template found"),
+            @ApiResponse(responseCode = "404", description = "Unknown template")
+    })
+    public ResponseEntity<TemplateInfo> getTemplate(@PathVariable String templateId) {
+        return templateRegistry.get(templateId)
+                .map(CompiledTemplate::info)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Lists the stored templates.
+     */
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(
+            summary = "List stored templates",
+            security = {
+                    @SecurityRequirement(name = "apiKey"),
+                    @SecurityRequirement(name = "oauth2")
+            }
+    )
+    public List<TemplateInfo> listTemplates() {
+        return templateRegistry.list();
+    }
+
+    /**
+     * Deletes a stored template.
+     */
+    @DeleteMapping(value = "/{templateId}")
+    @Operation(
+            summary = "Delete a stored template",
+            security = {
+                    @SecurityRequirement(name = "apiKey"),
+                    @SecurityRequirement(name = "oauth2")
+            }
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "204", description = "Template deleted"),
+            @ApiResponse(responseCode = "404", description = "Unknown template")
+    })
+    public ResponseEntity<Void> deleteTemplate(@PathVariable String templateId) {
+        return templateRegistry.remove(templateId)
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.notFound().build();
+    }
+
+    /**
+     * Renders a stored template for each recipient entry and sends the messages.
+     * Results are streamed back as NDJSON lines as the sends complete.
+     */
+    @PostMapping(value = "/{templateId}/send", consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(
+            summary = "Send a stored template to many recipients",
+            description = """
+                    Renders the template once per entry of "recipients" with the entry's variables,
+                    falling back to the shared "variables", and sends each message through the
+                    dispatch queue like a bulk upload. One NDJSON result line is streamed back per
+                    entry, carrying the entry's zero-based index.
+                    
+                    Features:
+                    - Entries with missing variables are reported as INVALID without aborting the send
+                    - At most templates.max-recipients entries per request
+                    - Bounded number of messages rendered and in flight (dispatch.bulk-max-in-flight)
+                    - Each message is charged to the send rate limit by recipients and size; messages
+                      over the limit are reported as RATE_LIMITED
+                    """,
+            security = {
+                    @SecurityRequirement(name = "apiKey"),
+                    @SecurityRequirement(name = "oauth2")
+            }
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Messages processed, one result line per recipient entry",
+                    content = @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE)
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Invalid request or too many recipient entries",
+                    content = @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE)
+            ),
+            @ApiResponse(
+                    responseCode = "404",
+                    description = "Unknown template",
+                    content = @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE)
+            ),
+            @ApiResponse(
+                    responseCode = "429",
+                    description = "Rate limit exceeded",
+                    content = @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE)
+            )
+    })
+    public void sendTemplate(
+            @PathVariable String templateId,
+            @Valid @RequestBody TemplateSendRequest request,
+            HttpServletRequest httpRequest,
+            HttpServletResponse httpResponse
+    ) throws IOException {
+        String correlationId = UUID.randomUUID().toString();
+        MDC.put("correlationId", correlationId);
+
+        try {
+            logger.info("Received template send request for {} with {} recipient entries", templateId,
+                    request.recipients().size());
+
+            if (request.recipients().size() > properties.maxRecipients()) {
+                writeError(httpResponse, HttpStatus.BAD_REQUEST, "At most " + properties.maxRecipients()
+                        + " recipient entries are allowed per request", correlationId);
+                return;
+            }
+            CompiledTemplate template = templateRegistry.get(templateId).orElse(null);
+            if (template == null) {
+                writeError(httpResponse, HttpStatus.NOT_FOUND, "Unknown template", correlationId);
+                return;
+            }
+
+            // Apply rate limiting, one send token for the request and each message's cost before it is sent
+            RateLimitPrincipal principal = rateLimiter.principalOf(httpRequest);
+            if (!rateLimiter.tryConsume(principal, RateLimiter.Lane.SEND, 1)) {
+                logger.warn("Rate limit exceeded for principal: {}", principal.key());
+                writeError(httpResponse, HttpStatus.TOO_MANY_REQUESTS, "Rate limit exceeded", correlationId);
+                return;
+            }
+
+            httpResponse.setStatus(HttpStatus.OK.value());
+            httpResponse.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+            httpResponse.setCharacterEncoding(StandardCharsets.UTF_8.name());
+
+            bulkSendProcessor.merge(template, request, httpResponse.getOutputStream(),
+                    message -> rateLimiter.tryConsume(principal, RateLimiter.Lane.SEND, rateLimiter.sendCost(message)));
+
+        } finally {
+            MDC.clear();
+        }
+    }
+
+    private void writeError(HttpServletResponse httpResponse, HttpStatus status, String error, String correlationId)
+            throws IOException {
+        httpResponse.setStatus(status.value());
+        httpResponse.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        httpResponse.getOutputStream().write(
+                ("{\"error\":\"" + error + "\",\"correlationId\":\"" + correlationId + "\"}\n")
+                        .getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -60,7 +60,7 @@ public class AuditLogger {
         event.put("action", action);
         event.put("correlationId", correlationId);
         event.put("fromUpn", request.fromUpn());
-        event.put("recipientCount", getTotalRecipientCount(request));
+        event.put("recipientCount", request.recipientCount());
         event.put("subjectHash", hashSubject(request.subject()));
         event.put("hasAttachments", request.attachments() != null && !request.attachments().isEmpty());
         event.put("attachmentCount", request.attachments() != null ? request.attachments().size() : 0);
@@ -89,16 +89,6 @@ public class AuditLogger {
         }
     }
 
-    /**
-     * Gets total recipient count across TO, CC, and BCC.
-     */
-    private int getTotalRecipientCount(SendMailRequest request) {
-        int count = request.to().size();
-        if (request.cc() != null) count += request.cc().size();
-        if (request.bcc() != null) count += request.bcc().size();
-        return count;
-    }
-
     /**
      * Creates a hash of the subject for audit purposes (no sensitive data).
      */
@@ -0,0 +1,55 @@
+package com.graphmailer.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * Result line for a single message of a bulk NDJSON send.
+ *
+ * Results are streamed back in completion order, so each line carries the
+ * zero-based index of the request line it belongs to.
+ */
+@Schema(description = "Result of one message in a bulk send")
+public record BulkSendResult(
+
+        @Schema(description = "Zero-based position of the message in the request stream", example = "0")
+        @JsonProperty("index")
+        long index,
+
+        @Schema(description = "Outcome of the send",
+                example = "SUCCESS",
+                allowableValues = {"SUCCESS", "FAILED", "INVALID", "RATE_LIMITED"})
+        @JsonProperty("status")
+        String status,
+
+        @Schema(description = "Message identifier for successful sends")
+        @JsonProperty("messageId")
+        String messageId,
+
+        @Schema(description = "Optional message providing additional details")
+        @JsonProperty("message")
+        String message,
+
+        @Schema(description = "Correlation ID used while sending this message")
+        @JsonProperty("correlationId")
+        String correlationId
+) {
+    /**
+     * Creates a result from a completed send.
+     */
+    public static BulkSendResult from(long index, SendMailResponse response) {
+        return new BulkSendResult(index, response.status(), response.messageId(),
+                response.message(), response.correlationId());
+    }
+
+    /**
+     * Creates a result for a line that could not be parsed or failed validation.
+     */
+    public static BulkSendResult invalid(long index, String message, String correlationId) {
+        return new BulkSendResult(index, "INVALID", null, message, correlationId);
+    }
+
+    public static BulkSendResult rateLimited(long index, String correlationId) {
+        return new BulkSendResult(index, "RATE_LIMITED", null, "Rate limit exceeded", correlationId);
+    }
+}
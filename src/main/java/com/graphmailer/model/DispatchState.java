@@ -0,0 +1,20 @@
+package com.graphmailer.model;
+
+/**
+ * Lifecycle states of a mail send accepted by the dispatch queue.
+ */
+public enum DispatchState {
+    SCHEDULED,
+    QUEUED,
+    SENDING,
+    SENT,
+    FAILED,
+    CANCELLED;
+
+    /**
+     * Whether the send has reached a final state and will not change again.
+     */
+    public boolean isTerminal() {
+        return this == SENT || this == FAILED || this == CANCELLED;
+    }
+}
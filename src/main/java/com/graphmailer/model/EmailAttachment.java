@@ -1,5 +1,6 @@
 package com.graphmailer.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.validation.constraints.NotBlank;
@@ -42,4 +43,25 @@ public record EmailAttachment(
                 message = "Content must be valid base64 encoding")
         @JsonProperty("base64")
         String base64
-) {}
\ No newline at end of file
+) {
+
+    /**
+     * Size of the decoded attachment content in bytes, computed from the length
+     * of the base64 text without decoding it.
+     *
+     * @throws IllegalArgumentException if the base64 text has an impossible length
+     */
+    @JsonIgnore
+    public long decodedSize() {
+        int length = base64.length();
+        int padding = 0;
+        while (padding < 2 && length > 0 && base64.charAt(length - 1) == '=') {
+            length--;
+            padding++;
+        }
+        if (length % 4 == 1 || (padding > 0 && (length + padding) % 4 != 0)) {
+            throw new IllegalArgumentException("Invalid base64 length in attachment: " + filename);
+        }
+        return (long) length / 4 * 3 + Math.max(0, length % 4 - 1);
+    }
+}
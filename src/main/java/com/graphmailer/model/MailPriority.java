@@ -0,0 +1,37 @@
+package com.graphmailer.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.util.Locale;
+
+/**
+ * Dispatch lane of a send. Queued sends are scheduled by lane weight, so
+ * transactional mail such as password resets and one-time codes is not held
+ * up behind bulk mailings.
+ */
+public enum MailPriority {
+    TRANSACTIONAL,
+    NORMAL,
+    BULK;
+
+    @JsonValue
+    public String value() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Parses a lane name, ignoring case.
+     *
+     * @throws IllegalArgumentException if the name is not a lane
+     */
+    @JsonCreator
+    public static MailPriority from(String value) {
+        for (MailPriority priority : values()) {
+            if (priority.name().equalsIgnoreCase(value)) {
+                return priority;
+            }
+        }
+        throw new IllegalArgumentException("Unknown priority: " + value);
+    }
+}
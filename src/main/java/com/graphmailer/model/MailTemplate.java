@@ -0,0 +1,36 @@
+package com.graphmailer.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
+
+/**
+ * Source of a stored email template.
+ *
+ * Subject and bodies may reference variables as {@code {{name}}}; in the HTML
+ * body their values are HTML-escaped unless the variable is written as
+ * {@code {{{name}}}}.
+ */
+@Schema(description = "Email template with {{variable}} placeholders")
+public record MailTemplate(
+
+        @Schema(description = "Subject line template",
+                example = "Your order {{orderId}} has shipped",
+                requiredMode = Schema.RequiredMode.REQUIRED)
+        @NotBlank(message = "Subject is required")
+        @Size(max = 255, message = "Subject must not exceed 255 characters")
+        @JsonProperty("subject")
+        String subject,
+
+        @Schema(description = "HTML body template; values are HTML-escaped, {{{name}}} inserts them as is",
+                example = "<p>Hello {{firstName}}, your order <b>{{orderId}}</b> is on its way.</p>")
+        @Size(max = 1048576, message = "HTML body must not exceed 1MB")
+        @JsonProperty("htmlBody")
+        String htmlBody,
+
+        @Schema(description = "Plain text body template, used when there is no HTML body")
+        @Size(max = 1048576, message = "Text body must not exceed 1MB")
+        @JsonProperty("textBody")
+        String textBody
+) {}
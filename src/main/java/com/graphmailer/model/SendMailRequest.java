@@ -1,5 +1,6 @@
 package com.graphmailer.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.validation.Valid;
@@ -8,6 +9,9 @@ import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.Size;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
 import java.util.List;
 
 /**
@@ -82,7 +86,26 @@ public record SendMailRequest(
                 allowableValues = {"low", "normal", "high"},
                 defaultValue = "normal")
         @JsonProperty("importance")
-        String importance
+        String importance,
+
+        @Schema(description = "Dispatch lane; only affects scheduling of queued sends, not the message itself. "
+                        + "Defaults to normal, or bulk for bulk uploads",
+                example = "transactional",
+                allowableValues = {"transactional", "normal", "bulk"})
+        @JsonProperty("priority")
+        MailPriority priority,
+
+        @Schema(description = "Send no earlier than this time, in ISO-8601 with the offset of the time zone "
+                        + "it refers to, e.g. the recipient's local time",
+                example = "2025-10-22T08:00:00+02:00")
+        @JsonProperty("sendAt")
+        OffsetDateTime sendAt,
+
+        @Schema(description = "Send after this ISO-8601 duration from acceptance unless cancelled first; "
+                        + "cannot be combined with sendAt",
+                example = "PT15M")
+        @JsonProperty("sendAfter")
+        Duration sendAfter
 ) {
     /**
      * Constructor with default values for optional fields.
@@ -105,4 +128,65 @@ public record SendMailRequest(
             importance = "normal";
         }
     }
+
+    /**
+     * Request without a dispatch lane.
+     */
+    public SendMailRequest(String fromUpn, List<String> to, List<String> cc, List<String> bcc, String subject,
+                           String htmlBody, String textBody, List<EmailAttachment> attachments,
+                           Boolean saveToSentItems, String importance) {
+        this(fromUpn, to, cc, bcc, subject, htmlBody, textBody, attachments, saveToSentItems, importance,
+                null, null, null);
+    }
+
+    /**
+     * Whether the send is deferred with {@code sendAt} or {@code sendAfter}.
+     */
+    @JsonIgnore
+    public boolean isScheduled() {
+        return sendAt != null || sendAfter != null;
+    }
+
+    /**
+     * Time the send is due, or null if it is not scheduled.
+     *
+     * @param acceptedAt Time the request was accepted, the base of {@code sendAfter}
+     */
+    @JsonIgnore
+    public Instant scheduledFor(Instant acceptedAt) {
+        if (sendAt != null) {
+            return sendAt.toInstant();
+        }
+        return sendAfter != null ? acceptedAt.plus(sendAfter) : null;
+    }
+
+    /**
+     * Dispatch lane of the request, or the given lane if none was requested.
+     */
+    @JsonIgnore
+    public MailPriority priorityOr(MailPriority fallback) {
+        return priority != null ? priority : fallback;
+    }
+
+    /**
+     * Total recipient count across TO, CC, and BCC.
+     */
+    @JsonIgnore
+    public int recipientCount() {
+        return to.size() + cc.size() + bcc.size();
+    }
+
+    /**
+     * Size of the bodies and decoded attachments in bytes, counting one byte per body character.
+     *
+     * @throws IllegalArgumentException if an attachment is not valid base64
+     */
+    @JsonIgnore
+    public long payloadSize() {
+        long size = (htmlBody != null ? htmlBody.length() : 0) + (textBody != null ? textBody.length() : 0);
+        for (EmailAttachment attachment : attachments) {
+            size += attachment.decodedSize();
+        }
+        return size;
+    }
 }
\ No newline at end of file
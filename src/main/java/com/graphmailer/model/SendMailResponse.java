@@ -16,7 +16,7 @@ public record SendMailResponse(
 
         @Schema(description = "Operation status", 
                 example = "SUCCESS",
-                allowableValues = {"SUCCESS", "FAILED", "PARTIAL_SUCCESS"})
+                allowableValues = {"SUCCESS", "FAILED", "PARTIAL_SUCCESS", "ACCEPTED"})
         @JsonProperty("status")
         String status,
 
@@ -36,7 +36,11 @@ public record SendMailResponse(
 
         @Schema(description = "Correlation ID for tracking the request")
         @JsonProperty("correlationId")
-        String correlationId
+        String correlationId,
+
+        @Schema(description = "Tracking ID for polling the status of an asynchronously dispatched email")
+        @JsonProperty("trackingId")
+        String trackingId
 ) {
     /**
      * Creates a successful response.
@@ -51,7 +55,8 @@ public record SendMailResponse(
                 messageId,
                 Instant.now(),
                 "Email sent successfully",
-                correlationId
+                correlationId,
+                null
         );
     }
 
@@ -68,7 +73,26 @@ public record SendMailResponse(
                 null,
                 Instant.now(),
                 message,
-                correlationId
+                correlationId,
+                null
+        );
+    }
+
+    /**
+     * Creates a response for an email accepted for asynchronous dispatch.
+     * 
+     * @param trackingId The dispatch tracking ID
+     * @param correlationId The request correlation ID
+     * @return Accepted response
+     */
+    public static SendMailResponse accepted(String trackingId, String correlationId) {
+        return new SendMailResponse(
+                "ACCEPTED",
+                null,
+                Instant.now(),
+                "Email accepted for delivery",
+                correlationId,
+                trackingId
         );
     }
 }
\ No newline at end of file
@@ -0,0 +1,44 @@
+package com.graphmailer.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.time.Instant;
+
+/**
+ * Response model describing the current state of an asynchronously dispatched email.
+ */
+@Schema(description = "Status of an email accepted for asynchronous dispatch")
+public record SendMailStatusResponse(
+
+        @Schema(description = "Tracking identifier returned when the email was accepted",
+                example = "3f2b8c1e-7d4a-4c1b-9a63-0f5d2e8b7a10")
+        @JsonProperty("trackingId")
+        String trackingId,
+
+        @Schema(description = "Current dispatch state",
+                example = "QUEUED",
+                allowableValues = {"SCHEDULED", "QUEUED", "SENDING", "SENT", "FAILED", "CANCELLED"})
+        @JsonProperty("status")
+        DispatchState status,
+
+        @Schema(description = "Message identifier, available once the email has been sent")
+        @JsonProperty("messageId")
+        String messageId,
+
+        @Schema(description = "Optional message providing additional details")
+        @JsonProperty("message")
+        String message,
+
+        @Schema(description = "Correlation ID of the original send request")
+        @JsonProperty("correlationId")
+        String correlationId,
+
+        @Schema(description = "Time the email was accepted in ISO-8601 format")
+        @JsonProperty("acceptedAt")
+        Instant acceptedAt,
+
+        @Schema(description = "Time of the last state change in ISO-8601 format")
+        @JsonProperty("updatedAt")
+        Instant updatedAt
+) {}
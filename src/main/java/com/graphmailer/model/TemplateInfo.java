@@ -0,0 +1,35 @@
+package com.graphmailer.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Description of a stored, compiled email template.
+ */
+@Schema(description = "Stored email template")
+public record TemplateInfo(
+
+        @Schema(description = "Template ID", example = "order-shipped")
+        @JsonProperty("templateId")
+        String templateId,
+
+        @Schema(description = "Variables referenced by the template, in order of first use",
+                example = "[\"orderId\", \"firstName\"]")
+        @JsonProperty("variables")
+        List<String> variables,
+
+        @Schema(description = "Length of the HTML body template in characters", example = "18250")
+        @JsonProperty("htmlBodyLength")
+        int htmlBodyLength,
+
+        @Schema(description = "Length of the text body template in characters", example = "0")
+        @JsonProperty("textBodyLength")
+        int textBodyLength,
+
+        @Schema(description = "When the template was last uploaded")
+        @JsonProperty("updatedAt")
+        Instant updatedAt
+) {}
@@ -0,0 +1,105 @@
+package com.graphmailer.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Email;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Request to send a stored template, merged once per recipient entry.
+ */
+@Schema(description = "Request to send a stored template to one or more recipients")
+public record TemplateSendRequest(
+
+        @Schema(description = "Sender email address (UPN)",
+                example = "noreply@yourtenant.com",
+                requiredMode = Schema.RequiredMode.REQUIRED)
+        @NotBlank(message = "From UPN is required")
+        @Email(message = "From UPN must be a valid email address")
+        @JsonProperty("fromUpn")
+        String fromUpn,
+
+        @Schema(description = "One message is rendered and sent per entry",
+                requiredMode = Schema.RequiredMode.REQUIRED)
+        @NotEmpty(message = "At least one recipient is required")
+        @JsonProperty("recipients")
+        List<@Valid Recipient> recipients,
+
+        @Schema(description = "Variable values shared by all recipients; a recipient's own values take precedence",
+                example = "{\"supportUrl\": \"https://support.example.com\"}")
+        @JsonProperty("variables")
+        Map<String, String> variables,
+
+        @Schema(description = "Whether to save the emails to sender's Sent Items folder",
+                example = "true",
+                defaultValue = "true")
+        @JsonProperty("saveToSentItems")
+        Boolean saveToSentItems,
+
+        @Schema(description = "Email importance level",
+                example = "normal",
+                allowableValues = {"low", "normal", "high"},
+                defaultValue = "normal")
+        @JsonProperty("importance")
+        String importance,
+
+        @Schema(description = "Dispatch lane of the messages, defaults to bulk",
+                example = "transactional",
+                allowableValues = {"transactional", "normal", "bulk"})
+        @JsonProperty("priority")
+        MailPriority priority
+) {
+    /**
+     * Constructor with default values for optional fields.
+     */
+    public TemplateSendRequest {
+        if (variables == null) {
+            variables = Map.of();
+        }
+    }
+
+    /**
+     * Recipients of one merged message and the values for its variables.
+     */
+    @Schema(description = "Recipients of one merged message")
+    public record Recipient(
+
+            @Schema(description = "Primary recipients (TO)",
+                    example = "[\"jane@example.com\"]",
+                    requiredMode = Schema.RequiredMode.REQUIRED)
+            @NotEmpty(message = "At least one recipient is required")
+            @Size(max = 100, message = "Maximum 100 TO recipients allowed")
+            @JsonProperty("to")
+            List<@Email(message = "All TO recipients must be valid email addresses") String> to,
+
+            @Schema(description = "Carbon copy recipients (CC)")
+            @Size(max = 50, message = "Maximum 50 CC recipients allowed")
+            @JsonProperty("cc")
+            List<@Email(message = "All CC recipients must be valid email addresses") String> cc,
+
+            @Schema(description = "Blind carbon copy recipients (BCC)")
+            @Size(max = 50, message = "Maximum 50 BCC recipients allowed")
+            @JsonProperty("bcc")
+            List<@Email(message = "All BCC recipients must be valid email addresses") String> bcc,
+
+            @Schema(description = "Variable values for this message",
+                    example = "{\"firstName\": \"Jane\", \"orderId\": \"A-1042\"}")
+            @JsonProperty("variables")
+            Map<String, String> variables
+    ) {
+        /**
+         * Constructor with default values for optional fields.
+         */
+        public Recipient {
+            if (variables == null) {
+                variables = Map.of();
+            }
+        }
+    }
+}
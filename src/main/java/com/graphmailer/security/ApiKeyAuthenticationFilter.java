@@ -25,6 +25,11 @@ public class ApiKeyAuthenticationFilter extends OncePerRequestFilter {
 
     private static final Logger logger = LoggerFactory.getLogger(ApiKeyAuthenticationFilter.class);
 
+    /**
+     * Name of the principal of every caller presenting the configured API key.
+     */
+    public static final String API_KEY_PRINCIPAL = "api-user";
+
     private final SecurityProperties securityProperties;
 
     public ApiKeyAuthenticationFilter(SecurityProperties securityProperties) {
@@ -55,7 +60,7 @@ public class ApiKeyAuthenticationFilter extends OncePerRequestFilter {
         if (apiKey != null && expectedApiKey != null && apiKey.equals(expectedApiKey)) {
             // Valid API key - set up authentication
             UsernamePasswordAuthenticationToken authentication = 
-                    new UsernamePasswordAuthenticationToken("api-user", null, List.of());
+                    new UsernamePasswordAuthenticationToken(API_KEY_PRINCIPAL, null, List.of());
             SecurityContextHolder.getContext().setAuthentication(authentication);
             
             logger.debug("API key authentication successful for request: {}", requestPath);
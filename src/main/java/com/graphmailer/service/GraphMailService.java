@@ -6,8 +6,18 @@ import com.graphmailer.logging.AuditLogger;
 import com.graphmailer.model.EmailAttachment;
 import com.graphmailer.model.SendMailRequest;
 import com.graphmailer.model.SendMailResponse;
+import com.graphmailer.service.dispatch.GraphBatchDispatcher;
+import com.graphmailer.service.resilience.CircuitOpenException;
+import com.graphmailer.service.resilience.GraphCircuitBreaker;
+import com.graphmailer.service.resilience.GraphRetryEngine;
+import com.graphmailer.service.resilience.MailboxGovernor;
+import com.graphmailer.util.Base64Streams;
 import com.graphmailer.util.ValidationUtil;
+import com.microsoft.graph.core.models.UploadResult;
+import com.microsoft.graph.core.tasks.LargeFileUploadTask;
 import com.microsoft.graph.models.Attachment;
+import com.microsoft.graph.models.AttachmentItem;
+import com.microsoft.graph.models.AttachmentType;
 import com.microsoft.graph.models.BodyType;
 import com.microsoft.graph.models.EmailAddress;
 import com.microsoft.graph.models.FileAttachment;
@@ -15,19 +25,25 @@ import com.microsoft.graph.models.Importance;
 import com.microsoft.graph.models.ItemBody;
 import com.microsoft.graph.models.Message;
 import com.microsoft.graph.models.Recipient;
+import com.microsoft.graph.models.UploadSession;
 import com.microsoft.graph.serviceclient.GraphServiceClient;
+import com.microsoft.graph.users.item.messages.item.attachments.createuploadsession.CreateUploadSessionPostRequestBody;
 import com.microsoft.graph.users.item.sendmail.SendMailPostRequestBody;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
-import org.springframework.retry.annotation.Backoff;
-import org.springframework.retry.annotation.Retryable;
 import org.springframework.stereotype.Service;
 
+import java.io.InputStream;
 import java.util.Base64;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 
 /**
  * Service class for handling email operations using Microsoft Graph API.
@@ -42,31 +58,44 @@ public class GraphMailService implements MailService {
     private static final Logger logger = LoggerFactory.getLogger(GraphMailService.class);
 
     private final GraphServiceClient graphClient;
+    private final GraphProperties graphProperties;
     private final MailProperties mailProperties;
     private final ValidationUtil validationUtil;
     private final AuditLogger auditLogger;
+    private final GraphBatchDispatcher batchDispatcher;
+    private final GraphRetryEngine retryEngine;
+    private final MailboxGovernor mailboxGovernor;
+    private final GraphCircuitBreaker circuitBreaker;
 
     public GraphMailService(GraphServiceClient graphClient,
+                           GraphProperties graphProperties,
                            MailProperties mailProperties,
                            ValidationUtil validationUtil,
-                           AuditLogger auditLogger) {
+                           AuditLogger auditLogger,
+                           GraphBatchDispatcher batchDispatcher,
+                           GraphRetryEngine retryEngine,
+                           MailboxGovernor mailboxGovernor,
+                           GraphCircuitBreaker circuitBreaker) {
         this.graphClient = graphClient;
+        this.graphProperties = graphProperties;
         this.mailProperties = mailProperties;
         this.validationUtil = validationUtil;
         this.auditLogger = auditLogger;
+        this.batchDispatcher = batchDispatcher;
+        this.retryEngine = retryEngine;
+        this.mailboxGovernor = mailboxGovernor;
+        this.circuitBreaker = circuitBreaker;
     }
 
     /**
-     * Sends an email using Microsoft Graph API with retry logic.
+     * Sends an email using Microsoft Graph API.
+     * Throttled and transient Graph failures are retried by the {@link GraphRetryEngine};
+     * validation failures and other client errors are not.
      * 
      * @param request The email request containing all email details
      * @return SendMailResponse with operation result
+     * @throws CircuitOpenException if Graph calls are currently being rejected by the circuit breaker
      */
-    @Retryable(
-            retryFor = {Exception.class},
-            maxAttempts = 3,
-            backoff = @Backoff(delay = 300, multiplier = 2.0)
-    )
     public SendMailResponse sendMail(SendMailRequest request) {
         String correlationId = MDC.get("correlationId");
         if (correlationId == null) {
@@ -81,11 +110,20 @@ public class GraphMailService implements MailService {
             // Validate request
             validationUtil.validateMailRequest(request, mailProperties);
 
-            // Build Graph message
-            Message message = buildGraphMessage(request);
-
-            // Send the message
-            String messageId = sendGraphMessage(message, request.fromUpn(), request.saveToSentItems());
+            // Build and send the message, streaming large attachments through a draft
+            String messageId;
+            if (requiresUploadSession(request.attachments())) {
+                // Built per attempt: the SDK serializes only changed values of a model it already sent
+                messageId = sendGraphMessage(request.fromUpn(), "sendDraft",
+                        () -> sendViaDraft(request.fromUpn(), buildGraphMessage(request, false),
+                                request.attachments()));
+            } else {
+                Message message = buildGraphMessage(request, true);
+                sendGraphMessage(request.fromUpn(), "sendMail",
+                        () -> postSendMail(request.fromUpn(), sendMailBody(message, request.saveToSentItems())));
+                // Graph sendMail doesn't return a message ID
+                messageId = UUID.randomUUID().toString();
+            }
 
             // Log successful send
             auditLogger.logEmailSent(request, messageId, correlationId);
@@ -93,6 +131,11 @@ public class GraphMailService implements MailService {
             logger.info("Email sent successfully with messageId: {}", messageId);
             return SendMailResponse.success(messageId, correlationId);
 
+        } catch (CircuitOpenException e) {
+            logger.warn("Email from: {} not sent, Graph circuit breaker is open", request.fromUpn());
+            auditLogger.logEmailFailed(request, e.getMessage(), correlationId);
+            throw e;
+
         } catch (Exception e) {
             logger.error("Failed to send email from: {} - {}", request.fromUpn(), e.getMessage(), e);
             auditLogger.logEmailFailed(request, e.getMessage(), correlationId);
@@ -100,10 +143,24 @@ public class GraphMailService implements MailService {
         }
     }
 
+    /**
+     * Whether the request's attachments are too large to be sent inline with sendMail.
+     */
+    private boolean requiresUploadSession(List<EmailAttachment> attachments) {
+        if (attachments == null || attachments.isEmpty()) {
+            return false;
+        }
+        long totalSize = 0;
+        for (EmailAttachment attachment : attachments) {
+            totalSize += attachment.decodedSize();
+        }
+        return totalSize > mailProperties.uploadSessionThresholdBytes();
+    }
+
     /**
      * Builds a Microsoft Graph Message object from the request.
      */
-    private Message buildGraphMessage(SendMailRequest request) {
+    private Message buildGraphMessage(SendMailRequest request, boolean includeAttachments) {
         Message message = new Message();
 
         // Set basic properties
@@ -133,8 +190,8 @@ public class GraphMailService implements MailService {
         message.setImportance(mapImportance(request.importance()));
 
         // Add attachments if present
-        if (request.attachments() != null && !request.attachments().isEmpty()) {
-            message.setAttachments(buildAttachments(request.attachments()));
+        if (includeAttachments && request.attachments() != null && !request.attachments().isEmpty()) {
+            message.setAttachments(request.attachments().stream().map(this::buildAttachment).toList());
         }
 
         return message;
@@ -156,18 +213,14 @@ public class GraphMailService implements MailService {
     }
 
     /**
-     * Builds Graph attachments from email attachment models.
+     * Builds an inline Graph attachment from an email attachment model.
      */
-    private List<Attachment> buildAttachments(List<EmailAttachment> attachments) {
-        return attachments.stream()
-                .map(att -> {
-                    FileAttachment fileAttachment = new FileAttachment();
-                    fileAttachment.setName(att.filename());
-                    fileAttachment.setContentType(att.contentType());
-                    fileAttachment.setContentBytes(Base64.getDecoder().decode(att.base64()));
-                    return (Attachment) fileAttachment;
-                })
-                .toList();
+    private Attachment buildAttachment(EmailAttachment attachment) {
+        FileAttachment fileAttachment = new FileAttachment();
+        fileAttachment.setName(attachment.filename());
+        fileAttachment.setContentType(attachment.contentType());
+        fileAttachment.setContentBytes(Base64.getDecoder().decode(attachment.base64()));
+        return fileAttachment;
     }
 
     /**
@@ -181,30 +234,160 @@ public class GraphMailService implements MailService {
         };
     }
 
+    private SendMailPostRequestBody sendMailBody(Message message, Boolean saveToSentItems) {
+        SendMailPostRequestBody requestBody = new SendMailPostRequestBody();
+        requestBody.setMessage(message);
+        requestBody.setSaveToSentItems(saveToSentItems != null && saveToSentItems);
+        return requestBody;
+    }
+
     /**
-     * Sends the message using Graph API.
+     * Sends the message using Graph API, retrying throttled and transient failures.
+     * Every attempt waits for a permit from the sending mailbox's governor and
+     * then passes through the circuit breaker.
      */
-    private String sendGraphMessage(Message message, String fromUpn, Boolean saveToSentItems) {
+    private <T> T sendGraphMessage(String fromUpn, String operation, Supplier<CompletableFuture<T>> attempt) {
+        T result;
         try {
-            // Create the send mail request body
-            SendMailPostRequestBody requestBody = new SendMailPostRequestBody();
-            requestBody.setMessage(message);
-            requestBody.setSaveToSentItems(saveToSentItems != null && saveToSentItems);
-            
-            // Use the Graph client to send the message from the specified mailbox
-            graphClient.users().byUserId(fromUpn)
-                    .sendMail()
-                    .post(requestBody);
+            result = retryEngine.execute(operation + " for " + fromUpn,
+                    () -> mailboxGovernor.submit(fromUpn, attempt)).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof CircuitOpenException circuitOpen) {
+                throw circuitOpen;
+            }
+            logger.error("Graph API call failed for user: {} - {}", fromUpn, cause.getMessage());
+            throw new GraphMailException("Graph API call failed: " + cause.getMessage(), cause);
+        }
+
+        logger.debug("Graph API {} completed for user: {}", operation, fromUpn);
+        return result;
+    }
+
+    /**
+     * Makes a single sendMail attempt.
+     * When batching is enabled the call is coalesced with other pending sends
+     * into a single $batch request.
+     */
+    private CompletableFuture<Void> postSendMail(String fromUpn, SendMailPostRequestBody requestBody) {
+        return circuitBreaker.execute(() -> postSendMailUnguarded(fromUpn, requestBody));
+    }
+
+    private CompletableFuture<Void> postSendMailUnguarded(String fromUpn, SendMailPostRequestBody requestBody) {
+        if (batchDispatcher != null && batchDispatcher.isEnabled()) {
+            return batchDispatcher.submit(fromUpn, requestBody)
+                    .orTimeout(graphProperties.request().timeoutMs(), TimeUnit.MILLISECONDS)
+                    .exceptionallyCompose(error -> CompletableFuture.failedFuture(
+                            // The item may still be sent with a later batch, so a timeout must not be retried
+                            error instanceof TimeoutException
+                                    ? new GraphMailException("Timed out waiting for batched sendMail to complete")
+                                    : error));
+        }
+
+        // Use the Graph client to send the message from the specified mailbox
+        graphClient.users().byUserId(fromUpn)
+                .sendMail()
+                .post(requestBody);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Makes a single attempt at sending a message with large attachments.
+     *
+     * The message is created as a draft, attachments below the upload session
+     * threshold are added one request at a time and larger ones are streamed
+     * through an upload session in {@code mail.upload-chunk-bytes} slices,
+     * decoding the base64 content as it is read, so the upload itself needs only
+     * one slice of heap. The request still holds the full base64 text of every
+     * attachment, about 4/3 of its size, from parsing until the send completes;
+     * parsing and journaling the request to the outbox briefly take further
+     * copies. Heap per request is therefore bounded by a small multiple of
+     * {@code mail.max-attachment-bytes}, not by the slice size. The draft is then
+     * sent, which always keeps a copy in Sent Items, so requests asking for
+     * {@code saveToSentItems=false} are rejected by validation. If the attempt
+     * fails the draft is deleted so a retry starts from scratch.
+     *
+     * The Graph calls pass through the circuit breaker individually; slice
+     * uploads do not, as their duration depends on the attachment size.
+     *
+     * @return ID of the sent message
+     */
+    private CompletableFuture<String> sendViaDraft(String fromUpn, Message draft, List<EmailAttachment> attachments) {
+        String messageId = null;
+        try {
+            Message created = circuitBreaker.call(() -> graphClient.users().byUserId(fromUpn)
+                    .messages()
+                    .post(draft));
+            messageId = created.getId();
+            String draftId = messageId;
+
+            for (EmailAttachment attachment : attachments) {
+                if (attachment.decodedSize() < mailProperties.uploadSessionThresholdBytes()) {
+                    circuitBreaker.call(() -> graphClient.users().byUserId(fromUpn)
+                            .messages().byMessageId(draftId)
+                            .attachments()
+                            .post(buildAttachment(attachment)));
+                } else {
+                    uploadAttachment(fromUpn, draftId, attachment);
+                }
+            }
+
+            circuitBreaker.call(() -> {
+                graphClient.users().byUserId(fromUpn)
+                        .messages().byMessageId(draftId)
+                        .send()
+                        .post();
+                return null;
+            });
+            return CompletableFuture.completedFuture(messageId);
+
+        } catch (Exception e) {
+            if (messageId != null) {
+                deleteDraft(fromUpn, messageId);
+            }
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Streams one attachment to a draft through a Graph upload session.
+     */
+    private void uploadAttachment(String fromUpn, String draftId, EmailAttachment attachment) throws Exception {
+        long size = attachment.decodedSize();
+
+        AttachmentItem item = new AttachmentItem();
+        item.setAttachmentType(AttachmentType.File);
+        item.setName(attachment.filename());
+        item.setContentType(attachment.contentType());
+        item.setSize(size);
+        CreateUploadSessionPostRequestBody sessionRequest = new CreateUploadSessionPostRequestBody();
+        sessionRequest.setAttachmentItem(item);
 
-            // Generate a message ID (Graph sendMail doesn't return one directly)
-            String messageId = UUID.randomUUID().toString();
-            
-            logger.debug("Graph API sendMail completed for user: {}", fromUpn);
-            return messageId;
+        UploadSession session = circuitBreaker.call(() -> graphClient.users().byUserId(fromUpn)
+                .messages().byMessageId(draftId)
+                .attachments()
+                .createUploadSession()
+                .post(sessionRequest));
 
+        logger.debug("Uploading attachment '{}' ({} bytes) to draft {}", attachment.filename(), size, draftId);
+        try (InputStream content = Base64Streams.decoding(attachment.base64())) {
+            LargeFileUploadTask<AttachmentItem> uploadTask = new LargeFileUploadTask<>(
+                    graphClient.getRequestAdapter(), session, content, size,
+                    mailProperties.uploadChunkBytes(), AttachmentItem::createFromDiscriminatorValue);
+            UploadResult<AttachmentItem> result = uploadTask.upload();
+            if (!result.isUploadSuccessful()) {
+                throw new GraphMailException("Upload of attachment '" + attachment.filename() + "' did not complete");
+            }
+        }
+    }
+
+    private void deleteDraft(String fromUpn, String draftId) {
+        try {
+            graphClient.users().byUserId(fromUpn)
+                    .messages().byMessageId(draftId)
+                    .delete();
         } catch (Exception e) {
-            logger.error("Graph API call failed for user: {} - {}", fromUpn, e.getMessage());
-            throw new GraphMailException("Graph API call failed: " + e.getMessage(), e);
+            logger.warn("Failed to delete draft {} for user: {} - {}", draftId, fromUpn, e.getMessage());
         }
     }
-}
\ No newline at end of file
+}
@@ -2,20 +2,40 @@ package com.graphmailer.service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.graphmailer.service.export.CsvMessageWriter;
+import com.graphmailer.service.export.JsonMessageWriter;
+import com.graphmailer.service.export.MessageWriter;
+import com.graphmailer.service.mirror.MailboxMirror;
+import com.graphmailer.service.resilience.CircuitOpenException;
+import com.graphmailer.service.resilience.GraphCircuitBreaker;
+import com.graphmailer.service.resilience.GraphRetryEngine;
 import com.microsoft.graph.serviceclient.GraphServiceClient;
+import com.microsoft.graph.core.tasks.PageIterator;
+import com.microsoft.graph.models.EmailAddress;
 import com.microsoft.graph.models.Message;
+import com.microsoft.graph.models.MessageCollectionResponse;
+import com.microsoft.graph.models.Recipient;
+import com.microsoft.graph.users.item.messages.MessagesRequestBuilder;
+import com.microsoft.kiota.ApiException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
-import java.time.format.DateTimeFormatter;
 import java.util.*;
 
 /**
@@ -29,24 +49,42 @@ public class GraphReadMailService implements ReadMailService {
     
     private static final Logger logger = LoggerFactory.getLogger(GraphReadMailService.class);
     
+    /** Messages requested per Graph page when streaming; the maximum Graph allows for messages. */
+    private static final int STREAM_PAGE_SIZE = 1000;
+    
+    /** Typical size of one message in a JSON or CSV read response, used to presize response buffers. */
+    private static final int ESTIMATED_JSON_MESSAGE_BYTES = 512;
+    private static final int ESTIMATED_CSV_MESSAGE_BYTES = 160;
+    
+    /** Messages returned when no count is requested, matching Graph's default page size. */
+    private static final int DEFAULT_TOP = 10;
+    
     private final GraphServiceClient graphServiceClient;
     private final ObjectMapper objectMapper;
+    private final GraphRetryEngine retryEngine;
+    private final GraphCircuitBreaker circuitBreaker;
+    private final MailboxMirror mailboxMirror;
     
     @Value("${app.mode:production}")
     private String appMode;
     
     public GraphReadMailService(@Autowired(required = false) GraphServiceClient graphServiceClient, 
-                               ObjectMapper objectMapper) {
+                               ObjectMapper objectMapper,
+                               GraphRetryEngine retryEngine,
+                               GraphCircuitBreaker circuitBreaker,
+                               MailboxMirror mailboxMirror) {
         this.graphServiceClient = graphServiceClient;
         this.objectMapper = objectMapper;
+        this.retryEngine = retryEngine;
+        this.circuitBreaker = circuitBreaker;
+        this.mailboxMirror = mailboxMirror;
         logger.info("GraphReadMailService initialized with GraphServiceClient: {}", 
                    graphServiceClient != null ? "available" : "not available (mock mode)");
     }
     
     @Override
-    public String readEmails(String from, String paswd, String subject, String sender, 
-                           String filename, String filetype, Integer counted, 
-                           String separator, String header) {
+    public byte[] readEmailBytes(String from, String subject, String sender, String filetype,
+                                 Integer counted, String separator, String header) {
         
         logger.info("Reading emails from mailbox: {}", from);
         
@@ -56,54 +94,200 @@ public class GraphReadMailService implements ReadMailService {
                 return generateMockEmailData(from, subject, sender, counted, filetype);
             }
             
-            // Build the request to Graph API
-            var messagesResponse = graphServiceClient
-                .users()
-                .byUserId(from)
-                .messages()
-                .get(requestConfiguration -> {
-                    if (counted != null && counted > 0) {
-                        requestConfiguration.queryParameters.top = counted;
-                    }
-                    
-                    // Build filter based on parameters
-                    List<String> filters = new ArrayList<>();
-                    if (sender != null && !sender.trim().isEmpty()) {
-                        filters.add(String.format("from/emailAddress/address eq '%s'", sender));
-                    }
-                    if (subject != null && !subject.trim().isEmpty()) {
-                        filters.add(String.format("contains(subject, '%s')", subject));
-                    }
-                    
-                    if (!filters.isEmpty()) {
-                        requestConfiguration.queryParameters.filter = String.join(" and ", filters);
-                    }
-                    
-                    // Select specific fields to reduce payload
-                    requestConfiguration.queryParameters.select = new String[]{
-                        "subject", "from", "receivedDateTime", "bodyPreview", 
-                        "isRead", "hasAttachments", "internetMessageId"
-                    };
-                    
-                    // Order by received date (newest first)
-                    requestConfiguration.queryParameters.orderby = new String[]{"receivedDateTime desc"};
-                });
-            
-            List<Message> messages = messagesResponse != null ? messagesResponse.getValue() : new ArrayList<>();
-            
             // Convert to the expected format
-            return convertToExpectedFormat(messages, filetype, separator, header);
+            return convertToExpectedFormat(readMessages(from, subject, sender, counted), filetype, separator, header);
             
+        } catch (CircuitOpenException e) {
+            logger.warn("Emails from mailbox: {} not read, Graph circuit breaker is open", from);
+            throw e;
         } catch (Exception e) {
             logger.error("Error reading emails from mailbox: {}", from, e);
             return createErrorResponse("Error reading emails: " + e.getMessage());
         }
     }
     
+    /**
+     * Reads the newest messages of a mailbox matching the filters, newest first.
+     * Messages come from the local mirror when it is enabled, from Graph otherwise,
+     * and are generated in mock mode.
+     *
+     * @param counted Number of messages to read, Graph's default page size if null
+     * @throws CircuitOpenException if the Graph circuit breaker is open
+     * @throws RuntimeException if the mailbox cannot be read
+     */
+    public List<Message> readMessages(String from, String subject, String sender, Integer counted) {
+        if ("mock".equals(appMode) || graphServiceClient == null) {
+            return generateMockMessages(from, subject, sender, counted != null && counted > 0 ? counted : 5);
+        }
+        
+        // Serve from the local mirror, which only pulls changes since the last sync
+        if (mailboxMirror.isEnabled()) {
+            try {
+                return mailboxMirror.read(from, subject, sender, counted != null && counted > 0 ? counted : DEFAULT_TOP);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e.getMessage(), e);
+            }
+        }
+        
+        // Build the request to Graph API, retrying throttled and transient failures
+        MessageCollectionResponse messagesResponse;
+        try {
+            messagesResponse = retryEngine.call("readEmails for " + from, () -> circuitBreaker.call(() -> graphServiceClient
+                .users()
+                .byUserId(from)
+                .messages()
+                .get(requestConfiguration -> configureQuery(requestConfiguration, counted, subject, sender))));
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+        
+        return messagesResponse != null && messagesResponse.getValue() != null
+                ? messagesResponse.getValue() : new ArrayList<>();
+    }
+    
+    @Override
+    public long streamEmails(String from, String subject, String sender, Long limit,
+                             String filetype, String separator, boolean header, OutputStream output) throws IOException {
+        
+        logger.info("Streaming emails from mailbox: {} (limit: {})", from, limit != null ? limit : "none");
+        
+        if ("mock".equals(appMode) || graphServiceClient == null) {
+            return streamMockEmails(subject, sender, limit, filetype, separator, header, output);
+        }
+        
+        int pageSize = limit != null ? (int) Math.min(limit, STREAM_PAGE_SIZE) : STREAM_PAGE_SIZE;
+        
+        // Fetch the first page before writing anything, so failures can still be reported as an error response
+        MessageCollectionResponse firstPage;
+        try {
+            firstPage = retryEngine.call("streamEmails for " + from, () -> circuitBreaker.call(() -> graphServiceClient
+                .users()
+                .byUserId(from)
+                .messages()
+                .get(requestConfiguration -> configureQuery(requestConfiguration, pageSize, subject, sender))));
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Error reading emails: " + e.getMessage(), e);
+        }
+        
+        MessageWriter writer = MessageWriter.forFormat(filetype, separator, header, output, objectMapper);
+        if (firstPage != null) {
+            try {
+                // Later pages are fetched from @odata.nextLink as the previous page is consumed
+                PageIterator<Message, MessageCollectionResponse> pages = new PageIterator.Builder<Message, MessageCollectionResponse>()
+                    .client(graphServiceClient)
+                    .collectionPage(firstPage)
+                    .collectionPageFactory(MessageCollectionResponse::createFromDiscriminatorValue)
+                    .processPageItemCallback(message -> {
+                        try {
+                            writer.write(message);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        return limit == null || writer.count() < limit;
+                    })
+                    .build();
+                pages.iterate();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } catch (ApiException | ReflectiveOperationException e) {
+                throw new IllegalStateException("Error reading emails after " + writer.count() + " messages: "
+                        + e.getMessage(), e);
+            }
+        }
+        writer.close();
+        
+        logger.info("Streamed {} emails from mailbox: {}", writer.count(), from);
+        return writer.count();
+    }
+    
+    /**
+     * Applies the paging, filter, field selection and ordering shared by all mailbox reads.
+     */
+    private void configureQuery(MessagesRequestBuilder.GetRequestConfiguration requestConfiguration,
+                                Integer top, String subject, String sender) {
+        if (top != null && top > 0) {
+            requestConfiguration.queryParameters.top = top;
+        }
+        
+        // Build filter based on parameters
+        List<String> filters = new ArrayList<>();
+        if (sender != null && !sender.trim().isEmpty()) {
+            filters.add(String.format("from/emailAddress/address eq '%s'", sender));
+        }
+        if (subject != null && !subject.trim().isEmpty()) {
+            filters.add(String.format("contains(subject, '%s')", subject));
+        }
+        
+        if (!filters.isEmpty()) {
+            requestConfiguration.queryParameters.filter = String.join(" and ", filters);
+        }
+        
+        // Select specific fields to reduce payload
+        requestConfiguration.queryParameters.select = new String[]{
+            "subject", "from", "receivedDateTime", "bodyPreview", 
+            "isRead", "hasAttachments", "internetMessageId"
+        };
+        
+        // Order by received date (newest first)
+        requestConfiguration.queryParameters.orderby = new String[]{"receivedDateTime desc"};
+    }
+    
+    /**
+     * Streams generated mock emails for testing, one message at a time.
+     */
+    private long streamMockEmails(String subject, String sender, Long limit, String filetype,
+                                  String separator, boolean header, OutputStream output) throws IOException {
+        long emailCount = (limit != null && limit > 0) ? limit : 5;
+        OffsetDateTime base = OffsetDateTime.of(2025, 10, 21, 0, 0, 0, 0, ZoneOffset.UTC);
+        
+        MessageWriter writer = MessageWriter.forFormat(filetype, separator, header, output, objectMapper);
+        for (long i = 1; i <= emailCount; i++) {
+            writer.write(createMockMessage(i, subject, sender, base.minusMinutes(i)));
+        }
+        writer.close();
+        return writer.count();
+    }
+    
+    /**
+     * Generates mock messages for testing, newest first. Each mailbox gets its own
+     * receive times, so messages of several mailboxes interleave.
+     */
+    private List<Message> generateMockMessages(String from, String subject, String sender, int count) {
+        OffsetDateTime base = OffsetDateTime.of(2025, 10, 21, 0, 0, 0, 0, ZoneOffset.UTC)
+                .minusMinutes(Math.floorMod(Objects.hashCode(from), 10));
+        
+        List<Message> messages = new ArrayList<>(count);
+        for (long i = 1; i <= count; i++) {
+            messages.add(createMockMessage(i, subject, sender, base.minusMinutes(i * 10)));
+        }
+        return messages;
+    }
+    
+    private static Message createMockMessage(long i, String subject, String sender, OffsetDateTime receivedDateTime) {
+        EmailAddress address = new EmailAddress();
+        address.setAddress(sender != null ? sender : "mock.sender" + i + "@example.com");
+        Recipient recipient = new Recipient();
+        recipient.setEmailAddress(address);
+        
+        Message message = new Message();
+        message.setInternetMessageId("mock-msg-" + i);
+        message.setSubject((subject != null ? subject + " " : "") + "Mock Email " + i);
+        message.setFrom(recipient);
+        message.setReceivedDateTime(receivedDateTime);
+        message.setBodyPreview("This is a mock email body preview for testing purposes");
+        message.setIsRead(i % 2 == 0);
+        message.setHasAttachments(i % 3 == 0);
+        return message;
+    }
+    
     /**
      * Generates mock email data for testing.
      */
-    private String generateMockEmailData(String from, String subject, String sender, Integer counted, String filetype) {
+    private byte[] generateMockEmailData(String from, String subject, String sender, Integer counted, String filetype) {
         logger.info("Generating mock email data for mailbox: {}", from);
         
         List<Map<String, Object>> mockEmails = new ArrayList<>();
@@ -129,7 +313,7 @@ public class GraphReadMailService implements ReadMailService {
             response.put("emails", mockEmails);
             response.put("note", "MOCK DATA - Real emails would be retrieved from Microsoft Graph API");
             
-            return objectMapper.writeValueAsString(response);
+            return objectMapper.writeValueAsBytes(response);
         } catch (JsonProcessingException e) {
             logger.error("Error creating mock response", e);
             return createErrorResponse("Error creating mock response");
@@ -139,99 +323,35 @@ public class GraphReadMailService implements ReadMailService {
     /**
      * Converts Graph API message response to the expected format.
      */
-    private String convertToExpectedFormat(List<Message> messages, String filetype, String separator, String header) {
-        try {
-            if ("CSV".equalsIgnoreCase(filetype)) {
-                return convertToCSV(messages, separator, header);
-            } else {
-                return convertToJSON(messages);
+    private byte[] convertToExpectedFormat(List<Message> messages, String filetype, String separator, String header) {
+        // Size the buffer for a typical message up front so it is rarely grown
+        boolean csv = "CSV".equalsIgnoreCase(filetype);
+        ByteArrayOutputStream output = new ByteArrayOutputStream(256 + messages.size()
+                * (csv ? ESTIMATED_CSV_MESSAGE_BYTES : ESTIMATED_JSON_MESSAGE_BYTES));
+        try (MessageWriter writer = csv
+                ? new CsvMessageWriter(output, separator, "true".equalsIgnoreCase(header))
+                : JsonMessageWriter.enveloped(output, objectMapper, messages.size())) {
+            for (Message message : messages) {
+                writer.write(message);
             }
         } catch (Exception e) {
             logger.error("Error converting messages to format: {}", filetype, e);
             return createErrorResponse("Error formatting response");
         }
-    }
-    
-    /**
-     * Converts messages to JSON format.
-     */
-    private String convertToJSON(List<Message> messages) throws JsonProcessingException {
-        List<Map<String, Object>> emailList = new ArrayList<>();
-        
-        for (Message message : messages) {
-            Map<String, Object> email = new HashMap<>();
-            email.put("messageId", message.getInternetMessageId());
-            email.put("subject", message.getSubject());
-            email.put("from", message.getFrom() != null ? message.getFrom().getEmailAddress().getAddress() : "");
-            email.put("receivedDateTime", message.getReceivedDateTime() != null ? 
-                message.getReceivedDateTime().format(DateTimeFormatter.ISO_INSTANT) : "");
-            email.put("bodyPreview", message.getBodyPreview());
-            email.put("isRead", message.getIsRead());
-            email.put("hasAttachments", message.getHasAttachments());
-            emailList.add(email);
-        }
-        
-        Map<String, Object> response = new HashMap<>();
-        response.put("status", "SUCCESS");
-        response.put("totalCount", emailList.size());
-        response.put("emails", emailList);
-        
-        return objectMapper.writeValueAsString(response);
-    }
-    
-    /**
-     * Converts messages to CSV format.
-     */
-    private String convertToCSV(List<Message> messages, String separator, String header) {
-        StringBuilder csv = new StringBuilder();
-        String sep = (separator != null && !separator.isEmpty()) ? 
-            (separator.equals("comma") ? "," : separator) : ",";
-        
-        // Add header if requested
-        if ("true".equalsIgnoreCase(header)) {
-            csv.append("MessageId").append(sep)
-               .append("Subject").append(sep)
-               .append("From").append(sep)
-               .append("ReceivedDateTime").append(sep)
-               .append("IsRead").append(sep)
-               .append("HasAttachments").append("\n");
-        }
-        
-        // Add data rows
-        for (Message message : messages) {
-            csv.append(escapeCSV(message.getInternetMessageId())).append(sep)
-               .append(escapeCSV(message.getSubject())).append(sep)
-               .append(escapeCSV(message.getFrom() != null ? message.getFrom().getEmailAddress().getAddress() : "")).append(sep)
-               .append(escapeCSV(message.getReceivedDateTime() != null ? message.getReceivedDateTime().toString() : "")).append(sep)
-               .append(message.getIsRead()).append(sep)
-               .append(message.getHasAttachments()).append("\n");
-        }
-        
-        return csv.toString();
-    }
-    
-    /**
-     * Escapes CSV values to handle commas and quotes.
-     */
-    private String escapeCSV(String value) {
-        if (value == null) return "";
-        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
-            return "\"" + value.replace("\"", "\"\"") + "\"";
-        }
-        return value;
+        return output.toByteArray();
     }
     
     /**
      * Creates an error response in JSON format.
      */
-    private String createErrorResponse(String errorMessage) {
+    private byte[] createErrorResponse(String errorMessage) {
         try {
-            Map<String, Object> error = new HashMap<>();
+            Map<String, Object> error = new LinkedHashMap<>();
             error.put("status", "ERROR");
             error.put("message", errorMessage);
-            return objectMapper.writeValueAsString(error);
+            return objectMapper.writeValueAsBytes(error);
         } catch (JsonProcessingException e) {
-            return "{\"status\":\"ERROR\",\"message\":\"" + errorMessage + "\"}";
+            return ("{\"status\":\"ERROR\",\"message\":\"" + errorMessage + "\"}").getBytes(StandardCharsets.UTF_8);
         }
     }
 }
\ No newline at end of file
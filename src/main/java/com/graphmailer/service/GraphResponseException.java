@@ -0,0 +1,39 @@
+package com.graphmailer.service;
+
+import java.time.Duration;
+
+/**
+ * Exception for a Microsoft Graph request that completed with an error status.
+ *
+ * Carries the HTTP status code and any Retry-After hint so callers can
+ * decide whether and when the request may be retried.
+ */
+public class GraphResponseException extends GraphMailException {
+
+    private final int statusCode;
+    private final Duration retryAfter;
+
+    public GraphResponseException(String message, int statusCode, Duration retryAfter) {
+        super(message);
+        this.statusCode = statusCode;
+        this.retryAfter = retryAfter;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Delay requested by Graph before retrying, or null if none was sent.
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * Whether Graph throttled the request (429) or reported a server-side failure (5xx).
+     */
+    public boolean isRetryable() {
+        return statusCode == 429 || statusCode >= 500;
+    }
+}
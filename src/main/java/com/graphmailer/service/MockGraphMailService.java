@@ -15,7 +15,6 @@ import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.Base64;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.ThreadLocalRandom;
@@ -134,8 +133,7 @@ public class MockGraphMailService implements MailService {
             for (EmailAttachment attachment : request.attachments()) {
                 // Validate attachment size using the utility
                 try {
-                    byte[] decodedBytes = Base64.getDecoder().decode(attachment.base64());
-                    if (decodedBytes.length > mailProperties.maxAttachmentBytes()) {
+                    if (attachment.decodedSize() > mailProperties.maxAttachmentBytes()) {
                         throw new IllegalArgumentException(
                             String.format("Attachment '%s' exceeds maximum size of %d bytes", 
                                         attachment.filename(), mailProperties.maxAttachmentBytes()));
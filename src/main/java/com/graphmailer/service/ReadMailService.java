@@ -1,5 +1,9 @@
 package com.graphmailer.service;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
 /**
  * Service interface for reading emails.
  * 
@@ -22,7 +26,46 @@ public interface ReadMailService {
      * @param header Whether to include headers in output
      * @return JSON string containing the email data
      */
-    String readEmails(String from, String paswd, String subject, String sender, 
-                     String filename, String filetype, Integer counted, 
-                     String separator, String header);
-}
\ No newline at end of file
+    default String readEmails(String from, String paswd, String subject, String sender, 
+                             String filename, String filetype, Integer counted, 
+                             String separator, String header) {
+        return new String(readEmailBytes(from, subject, sender, filetype, counted, separator, header),
+                StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Reads emails from the specified mailbox and returns the response already
+     * encoded as UTF-8, ready to be written to the client without another copy.
+     * 
+     * @param from Email address of the mailbox to read from
+     * @param subject Subject filter for emails
+     * @param sender Sender filter for emails
+     * @param filetype File type for output (e.g., CSV, JSON)
+     * @param counted Number of emails to retrieve
+     * @param separator Separator for CSV output
+     * @param header Whether to include headers in output
+     * @return UTF-8 encoded JSON or CSV response
+     */
+    byte[] readEmailBytes(String from, String subject, String sender, String filetype,
+                          Integer counted, String separator, String header);
+    
+    /**
+     * Streams emails from the specified mailbox to the given stream, following
+     * the mailbox's pages until it is exhausted or the limit is reached. Each
+     * message is written as it arrives, so memory use does not depend on the
+     * number of messages exported.
+     * 
+     * @param from Email address of the mailbox to read from
+     * @param subject Subject filter for emails
+     * @param sender Sender filter for emails
+     * @param limit Maximum number of emails to write, or null for all
+     * @param filetype File type for output (CSV, or JSON array otherwise)
+     * @param separator Separator for CSV output
+     * @param header Whether to include headers in CSV output
+     * @param output Destination of the export, flushed but not closed
+     * @return Number of emails written
+     * @throws IOException if writing to the output fails
+     */
+    long streamEmails(String from, String subject, String sender, Long limit,
+                      String filetype, String separator, boolean header, OutputStream output) throws IOException;
+}
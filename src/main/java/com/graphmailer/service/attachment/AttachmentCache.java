@@ -0,0 +1,298 @@
+package com.graphmailer.service.attachment;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Disk cache of attachment content with least-recently-used eviction by total size.
+ *
+ * Each attachment is one file holding its name and content type followed by
+ * the content. Files are written under a temporary name and renamed when
+ * complete, so a cached file is always whole. The recency order is kept in
+ * memory and restored from file modification times on startup.
+ */
+final class AttachmentCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(AttachmentCache.class);
+
+    private static final int MAGIC = 0x41545443;
+    private static final String SUFFIX = ".bin";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private final Path directory;
+    private final long maxBytes;
+    private final long maxEntryBytes;
+
+    /** Cached file sizes by file name, least recently used first. */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    AttachmentCache(Path directory, long maxBytes, long maxEntryBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = maxEntryBytes;
+        Files.createDirectories(directory);
+        load();
+    }
+
+    /**
+     * Opens a cached attachment, or returns null if it is not cached.
+     */
+    Entry get(String key) throws IOException {
+        String fileName = fileName(key);
+        synchronized (this) {
+            if (entries.get(fileName) == null) {
+                return null;
+            }
+        }
+        Path file = directory.resolve(fileName);
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            forget(fileName);
+            return null;
+        }
+        try {
+            DataInputStream input = new DataInputStream(Channels.newInputStream(channel));
+            if (input.readInt() != MAGIC) {
+                throw new IOException("Not a cached attachment: " + file);
+            }
+            String name = input.readUTF();
+            String contentType = input.readUTF();
+            long offset = channel.position();
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return new Entry(name, contentType, channel, offset, channel.size() - offset);
+        } catch (IOException e) {
+            channel.close();
+            logger.warn("Dropping unreadable cached attachment {}: {}", file, e.getMessage());
+            forget(fileName);
+            Files.deleteIfExists(file);
+            return null;
+        }
+    }
+
+    /**
+     * Starts writing an attachment to the cache. Content beyond the maximum
+     * entry size abandons the fill.
+     */
+    Fill fill(String key, String name, String contentType) throws IOException {
+        return new Fill(fileName(key), name, contentType);
+    }
+
+    synchronized long totalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Indexes a cached file and evicts the least recently used ones over the
+     * size limit. Evicted files are deleted after leaving the monitor, so file
+     * system calls never block other callers; one re-cached in between is just
+     * a miss, as {@link #get} forgets entries whose file is gone.
+     */
+    private void add(String fileName, long size) {
+        List<Path> evicted = new ArrayList<>();
+        synchronized (this) {
+            Long previous = entries.put(fileName, size);
+            totalBytes += size - (previous != null ? previous : 0);
+            Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+            while (totalBytes > maxBytes && eldest.hasNext()) {
+                Map.Entry<String, Long> entry = eldest.next();
+                if (entry.getKey().equals(fileName)) {
+                    continue;
+                }
+                eldest.remove();
+                totalBytes -= entry.getValue();
+                evicted.add(directory.resolve(entry.getKey()));
+            }
+        }
+        for (Path file : evicted) {
+            deleteFile(file);
+        }
+    }
+
+    private synchronized void forget(String fileName) {
+        Long size = entries.remove(fileName);
+        if (size != null) {
+            totalBytes -= size;
+        }
+    }
+
+    /**
+     * Indexes the cached files, least recently used first, and removes
+     * leftovers of interrupted fills.
+     */
+    private void load() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                if (file.getFileName().toString().endsWith(SUFFIX)) {
+                    files.add(file);
+                } else if (file.getFileName().toString().endsWith(TEMPORARY_SUFFIX)) {
+                    deleteFile(file);
+                }
+            }
+        }
+        files.sort(Comparator.comparing(AttachmentCache::lastModified));
+        for (Path file : files) {
+            add(file.getFileName().toString(), Files.size(file));
+        }
+        if (!files.isEmpty()) {
+            logger.info("Attachment cache at {} holds {} attachments ({} bytes)",
+                    directory.toAbsolutePath(), entries.size(), totalBytes);
+        }
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static void deleteFile(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Failed to delete cached attachment {}: {}", file, e.getMessage());
+        }
+    }
+
+    private static String fileName(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest) + SUFFIX;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * An open cached attachment. Closing it releases the file; an evicted
+     * file stays readable until then.
+     *
+     * @param offset Position of the content in the file
+     * @param length Content length in bytes
+     */
+    record Entry(String name, String contentType, FileChannel channel, long offset, long length) {
+
+        long write(long start, long count, OutputStream output) throws IOException {
+            long position = offset + start;
+            long end = position + count;
+            var target = Channels.newChannel(output);
+            while (position < end) {
+                long transferred = channel.transferTo(position, end - position, target);
+                if (transferred <= 0) {
+                    throw new IOException("Cached attachment ended early");
+                }
+                position += transferred;
+            }
+            return count;
+        }
+    }
+
+    /**
+     * An attachment being written to the cache while it is downloaded.
+     */
+    final class Fill {
+
+        private final String fileName;
+        private final Path temporary;
+        private DataOutputStream output;
+        private long contentBytes;
+
+        private Fill(String fileName, String name, String contentType) throws IOException {
+            this.fileName = fileName;
+            this.temporary = directory.resolve(fileName + "." + UUID.randomUUID() + TEMPORARY_SUFFIX);
+            this.output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 65536));
+            output.writeInt(MAGIC);
+            output.writeUTF(name != null ? name : "");
+            output.writeUTF(contentType != null ? contentType : "");
+        }
+
+        /**
+         * Appends downloaded content. A failed write abandons the fill
+         * without failing the download.
+         */
+        void write(byte[] buffer, int offset, int length) {
+            if (output == null) {
+                return;
+            }
+            contentBytes += length;
+            if (contentBytes > maxEntryBytes) {
+                logger.debug("Attachment exceeds the cache entry limit of {} bytes, not caching it", maxEntryBytes);
+                abort();
+                return;
+            }
+            try {
+                output.write(buffer, offset, length);
+            } catch (IOException e) {
+                logger.warn("Failed to write attachment to the cache: {}", e.getMessage());
+                abort();
+            }
+        }
+
+        /**
+         * Adds the completely written attachment to the cache.
+         */
+        void commit() {
+            if (output == null) {
+                return;
+            }
+            try {
+                output.close();
+                output = null;
+                Path file = directory.resolve(fileName);
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                add(fileName, Files.size(file));
+            } catch (IOException e) {
+                logger.warn("Failed to add attachment to the cache: {}", e.getMessage());
+                output = null;
+                deleteFile(temporary);
+            }
+        }
+
+        /**
+         * Discards a fill that did not complete.
+         */
+        void abort() {
+            if (output == null) {
+                return;
+            }
+            try {
+                output.close();
+            } catch (IOException e) {
+                logger.debug("Failed to close abandoned attachment cache file: {}", e.getMessage());
+            }
+            output = null;
+            deleteFile(temporary);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.graphmailer.service.attachment;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Content of an attachment download, ready to be written to the client.
+ *
+ * The status is 200 for the whole content, 206 for a byte range and 416 if
+ * the requested range lies outside the content. The content length is null
+ * when it is not known in advance, in which case the response is sent with
+ * chunked transfer encoding. Must be closed after writing.
+ */
+public final class AttachmentContent implements Closeable {
+
+    /**
+     * Writes the content and returns the number of bytes written.
+     */
+    @FunctionalInterface
+    interface Body {
+        long writeTo(OutputStream output) throws IOException;
+    }
+
+    private final String name;
+    private final String contentType;
+    private final int status;
+    private final String contentRange;
+    private final Long contentLength;
+    private final boolean cached;
+    private final Body body;
+    private final Closeable resource;
+
+    AttachmentContent(String name, String contentType, int status, String contentRange, Long contentLength,
+                      boolean cached, Body body, Closeable resource) {
+        this.name = name;
+        this.contentType = contentType;
+        this.status = status;
+        this.contentRange = contentRange;
+        this.contentLength = contentLength;
+        this.cached = cached;
+        this.body = body;
+        this.resource = resource;
+    }
+
+    /**
+     * Content of known length, of which the requested range is sent.
+     *
+     * @param range  Requested range, or null for the whole content
+     * @param writer Writes {@code count} bytes from position {@code start}
+     */
+    static AttachmentContent ranged(String name, String contentType, long length, ByteRange range, boolean cached,
+                                    RangeWriter writer, Closeable resource) {
+        if (range == null) {
+            return new AttachmentContent(name, contentType, 200, null, length, cached,
+                    output -> writer.write(0, length, output), resource);
+        }
+        long[] bounds = range.resolve(length);
+        if (bounds == null) {
+            return new AttachmentContent(name, contentType, 416, "bytes */" + length, 0L, cached,
+                    output -> 0, resource);
+        }
+        long count = bounds[1] - bounds[0] + 1;
+        return new AttachmentContent(name, contentType, 206, "bytes " + bounds[0] + "-" + bounds[1] + "/" + length,
+                count, cached, output -> writer.write(bounds[0], count, output), resource);
+    }
+
+    /**
+     * Writes part of content of known length.
+     */
+    @FunctionalInterface
+    interface RangeWriter {
+        long write(long start, long count, OutputStream output) throws IOException;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * Content-Range header value, or null for the whole content.
+     */
+    public String getContentRange() {
+        return contentRange;
+    }
+
+    /**
+     * Number of bytes that will be written, or null if not known in advance.
+     */
+    public Long getContentLength() {
+        return contentLength;
+    }
+
+    /**
+     * Whether the content is served from the disk cache.
+     */
+    public boolean isCached() {
+        return cached;
+    }
+
+    public long writeTo(OutputStream output) throws IOException {
+        return body.writeTo(output);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (resource != null) {
+            resource.close();
+        }
+    }
+}
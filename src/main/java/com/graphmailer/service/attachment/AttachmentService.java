@@ -0,0 +1,208 @@
+package com.graphmailer.service.attachment;
+
+import com.graphmailer.config.AttachmentProperties;
+import com.graphmailer.service.GraphResponseException;
+import com.graphmailer.service.resilience.GraphCircuitBreaker;
+import com.graphmailer.service.resilience.GraphRetryEngine;
+import com.graphmailer.util.RetryAfterParser;
+import com.microsoft.graph.models.Attachment;
+import com.microsoft.graph.serviceclient.GraphServiceClient;
+import com.microsoft.graph.users.item.messages.item.attachments.item.AttachmentItemRequestBuilder;
+import com.microsoft.kiota.HttpMethod;
+import com.microsoft.kiota.NativeResponseHandler;
+import com.microsoft.kiota.RequestInformation;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+
+/**
+ * Streams attachment content from Microsoft Graph to the client.
+ *
+ * Content is read from {@code /attachments/{id}/$value} and written to the
+ * client as it arrives, through a fixed-size buffer. Range requests are
+ * forwarded to Graph; if Graph ignores the range, the whole content is sent
+ * with status 200, which HTTP allows. With the disk cache enabled, complete
+ * downloads are also written to the cache, and cached attachments are served
+ * from disk, including byte ranges.
+ */
+@Service
+public class AttachmentService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AttachmentService.class);
+
+    private static final String CONTENT_URL_TEMPLATE =
+            "{+baseurl}/users/{user%2Did}/messages/{message%2Did}/attachments/{attachment%2Did}/$value";
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+    private static final int BUFFER_SIZE = 65536;
+
+    private final GraphServiceClient graphServiceClient;
+    private final GraphRetryEngine retryEngine;
+    private final GraphCircuitBreaker circuitBreaker;
+    private final AttachmentCache cache;
+
+    @Value("${app.mode:production}")
+    private String appMode;
+
+    public AttachmentService(@Autowired(required = false) GraphServiceClient graphServiceClient,
+                             GraphRetryEngine retryEngine,
+                             GraphCircuitBreaker circuitBreaker,
+                             AttachmentProperties properties) throws IOException {
+        this.graphServiceClient = graphServiceClient;
+        this.retryEngine = retryEngine;
+        this.circuitBreaker = circuitBreaker;
+        this.cache = properties.cacheEnabled()
+                ? new AttachmentCache(Paths.get(properties.cacheDirectory()),
+                        properties.cacheMaxSize().toBytes(), properties.cacheMaxEntrySize().toBytes())
+                : null;
+
+        if (cache != null) {
+            logger.info("Attachment cache enabled at {} (max size: {}, max attachment size: {})",
+                    properties.cacheDirectory(), properties.cacheMaxSize(), properties.cacheMaxEntrySize());
+        }
+    }
+
+    /**
+     * Opens the content of a message attachment for download.
+     *
+     * @param mailbox      Mailbox UPN
+     * @param messageId    Graph message ID
+     * @param attachmentId Graph attachment ID
+     * @param range        Requested byte range, or null for the whole content
+     * @return Content to write to the client; must be closed
+     * @throws com.graphmailer.service.resilience.CircuitOpenException if the Graph circuit breaker is open
+     * @throws RuntimeException if Graph rejects the request, e.g. for an unknown attachment
+     * @throws IOException if the cached copy could not be read
+     */
+    public AttachmentContent open(String mailbox, String messageId, String attachmentId, ByteRange range)
+            throws IOException {
+        if ("mock".equals(appMode) || graphServiceClient == null) {
+            return mockContent(messageId, attachmentId, range);
+        }
+
+        String key = mailbox.toLowerCase(Locale.ROOT) + "/" + messageId + "/" + attachmentId;
+        if (cache != null) {
+            AttachmentCache.Entry entry = cache.get(key);
+            if (entry != null) {
+                logger.debug("Serving attachment {} of message {} from the cache", attachmentId, messageId);
+                return AttachmentContent.ranged(entry.name(), entry.contentType(), entry.length(), range, true,
+                        entry::write, entry.channel());
+            }
+        }
+
+        String operation = "attachment download for " + mailbox;
+        AttachmentItemRequestBuilder attachment = graphServiceClient.users().byUserId(mailbox)
+                .messages().byMessageId(messageId)
+                .attachments().byAttachmentId(attachmentId);
+
+        // Only the metadata; the content is streamed from $value instead of arriving base64 encoded
+        Attachment metadata = call(operation, () -> attachment.get(requestConfiguration ->
+                requestConfiguration.queryParameters.select = new String[]{"name", "contentType"}));
+        String name = metadata != null ? metadata.getName() : null;
+        String contentType = metadata != null && metadata.getContentType() != null
+                ? metadata.getContentType() : DEFAULT_CONTENT_TYPE;
+
+        GraphContent content = call(operation, () -> fetchContent(attachment, range));
+        if (range != null && content.partial()) {
+            return new AttachmentContent(name, contentType, 206, content.contentRange(),
+                    content.contentLength() >= 0 ? content.contentLength() : null, false,
+                    output -> copy(content.stream(), output, null), content.stream());
+        }
+
+        // Whole content: cache it while it is sent, so later requests and ranges are served from disk
+        AttachmentCache.Fill fill = cache != null ? cache.fill(key, name, contentType) : null;
+        return new AttachmentContent(name, contentType, 200, null, null, false,
+                output -> copy(content.stream(), output, fill),
+                () -> {
+                    if (fill != null) {
+                        fill.abort();
+                    }
+                    content.stream().close();
+                });
+    }
+
+    /**
+     * Requests the attachment content. The response is taken unread from the
+     * adapter, so the body can be streamed instead of being buffered.
+     */
+    private GraphContent fetchContent(AttachmentItemRequestBuilder attachment, ByteRange range) throws IOException {
+        RequestInformation request = new RequestInformation(HttpMethod.GET, CONTENT_URL_TEMPLATE,
+                attachment.toGetRequestInformation().pathParameters);
+        if (range != null) {
+            request.headers.add("Range", range.toHeader());
+        }
+        NativeResponseHandler handler = new NativeResponseHandler();
+        request.setResponseHandler(handler);
+        graphServiceClient.getRequestAdapter().sendPrimitive(request, null, InputStream.class);
+
+        Response response = (Response) handler.getValue();
+        if (response == null || response.body() == null) {
+            throw new IOException("Graph returned no content for the attachment");
+        }
+        if (!response.isSuccessful()) {
+            int status = response.code();
+            Duration retryAfter = RetryAfterParser.parse(response.header("Retry-After"));
+            response.close();
+            throw new GraphResponseException("Attachment download failed with status " + status, status, retryAfter);
+        }
+        return new GraphContent(response.body().byteStream(), response.code() == 206,
+                response.header("Content-Range"), response.body().contentLength());
+    }
+
+    private static long copy(InputStream input, OutputStream output, AttachmentCache.Fill fill) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long total = 0;
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+            if (fill != null) {
+                fill.write(buffer, 0, read);
+            }
+            total += read;
+        }
+        if (fill != null) {
+            fill.commit();
+        }
+        return total;
+    }
+
+    private AttachmentContent mockContent(String messageId, String attachmentId, ByteRange range) {
+        byte[] content = ("Mock attachment " + attachmentId + " of message " + messageId + "\n")
+                .repeat(64).getBytes(StandardCharsets.UTF_8);
+        return AttachmentContent.ranged("mock-attachment.txt", "text/plain", content.length, range, false,
+                (start, count, output) -> {
+                    output.write(content, (int) start, (int) count);
+                    return count;
+                }, null);
+    }
+
+    private <T> T call(String operation, Callable<T> call) {
+        try {
+            return retryEngine.call(operation, () -> circuitBreaker.call(call));
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(operation + " failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * An attachment content response from Graph.
+     *
+     * @param partial       Whether Graph answered with the requested range (206)
+     * @param contentLength Body length, or -1 if not known
+     */
+    private record GraphContent(InputStream stream, boolean partial, String contentRange, long contentLength) {
+    }
+}
@@ -0,0 +1,65 @@
+package com.graphmailer.service.attachment;
+
+/**
+ * A single byte range from an HTTP {@code Range} header.
+ *
+ * @param first First byte position, or null for a suffix range
+ * @param last  Last byte position, inclusive; null for an open range. For a
+ *              suffix range, the number of final bytes requested
+ */
+public record ByteRange(Long first, Long last) {
+
+    private static final String UNIT = "bytes=";
+
+    /**
+     * Parses a {@code Range} header. Headers that are absent, malformed or
+     * request several ranges return null, so the whole content is sent.
+     */
+    public static ByteRange parse(String header) {
+        if (header == null || !header.startsWith(UNIT) || header.indexOf(',') >= 0) {
+            return null;
+        }
+        String spec = header.substring(UNIT.length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            if (first.isEmpty()) {
+                long suffix = Long.parseLong(last);
+                return suffix > 0 ? new ByteRange(null, suffix) : null;
+            }
+            ByteRange range = new ByteRange(Long.parseLong(first), last.isEmpty() ? null : Long.parseLong(last));
+            return range.first() >= 0 && (range.last() == null || range.last() >= range.first()) ? range : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Resolves the range against the content length.
+     *
+     * @return First and last byte positions, inclusive, or null if the range is not satisfiable
+     */
+    long[] resolve(long length) {
+        if (first == null) {
+            return length > 0 ? new long[]{Math.max(0, length - last), length - 1} : null;
+        }
+        if (first >= length) {
+            return null;
+        }
+        return new long[]{first, last == null ? length - 1 : Math.min(last, length - 1)};
+    }
+
+    /**
+     * The range as a {@code Range} header value.
+     */
+    String toHeader() {
+        if (first == null) {
+            return UNIT + "-" + last;
+        }
+        return UNIT + first + "-" + (last != null ? last : "");
+    }
+}
@@ -0,0 +1,155 @@
+package com.graphmailer.service.cache;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.graphmailer.config.ReadCacheProperties;
+import com.graphmailer.service.GraphReadMailService;
+import com.graphmailer.service.ReadMailService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Response cache in front of {@link GraphReadMailService}.
+ *
+ * Reads are keyed by their normalized filter ({@link ReadCacheKey}) and the
+ * cached value is the UTF-8 encoded JSON or CSV response, so a hit returns it
+ * without calling Graph, serializing or encoding again. Concurrent misses for
+ * the same key are coalesced: the first caller registers a pending response and
+ * reads from Graph on its own thread, outside the cache's locks, while the others
+ * wait for that response. Error responses are handed to the waiting callers but
+ * not cached. Graph is asked with the normalized subject and sender of the key,
+ * so every read sharing an entry gets the response to the same query.
+ *
+ * Entries expire after the TTL configured for their mailbox and are evicted by
+ * W-TinyLFU once their total size exceeds {@code read-cache.max-size}. Hits,
+ * misses and evictions are published as {@code cache.*} metrics tagged
+ * {@code cache=mail.read}. Streaming exports are never cached.
+ */
+@Service
+@Primary
+public class CachingReadMailService implements ReadMailService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CachingReadMailService.class);
+
+    private static final String CACHE_NAME = "mail.read";
+    private static final byte[] ERROR_PREFIX = "{\"status\":\"ERROR\"".getBytes(StandardCharsets.UTF_8);
+
+    private final GraphReadMailService delegate;
+    private final ReadCacheProperties properties;
+    private final AsyncCache<ReadCacheKey, byte[]> cache;
+
+    public CachingReadMailService(GraphReadMailService delegate,
+                                  ReadCacheProperties properties,
+                                  MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.properties = properties;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(properties.maxSize().toBytes())
+                .weigher((ReadCacheKey key, byte[] response) -> key.weight() + response.length)
+                .expireAfter(new MailboxExpiry(properties))
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+
+        logger.info("Read response cache {} (ttl: {}, max size: {}, mailbox overrides: {})",
+                properties.enabled() ? "enabled" : "disabled", properties.ttl(), properties.maxSize(),
+                properties.mailboxTtls().size());
+    }
+
+    @Override
+    public byte[] readEmailBytes(String from, String subject, String sender, String filetype,
+                                 Integer counted, String separator, String header) {
+        if (!properties.enabled() || from == null || properties.ttlFor(from).isZero()) {
+            return delegate.readEmailBytes(from, subject, sender, filetype, counted, separator, header);
+        }
+
+        ReadCacheKey key = ReadCacheKey.of(from, subject, sender, counted, filetype, separator, header);
+        CompletableFuture<byte[]> pending = new CompletableFuture<>();
+        CompletableFuture<byte[]> response = cache.get(key, (ignored, executor) -> pending);
+        if (response != pending) {
+            return await(response);
+        }
+
+        byte[] result;
+        try {
+            result = delegate.readEmailBytes(from, key.subject(), key.sender(), filetype, counted, separator, header);
+        } catch (RuntimeException | Error e) {
+            pending.completeExceptionally(e);
+            throw e;
+        }
+        if (isError(result)) {
+            cache.asMap().remove(key, pending);
+        }
+        pending.complete(result);
+        return result;
+    }
+
+    @Override
+    public long streamEmails(String from, String subject, String sender, Long limit,
+                             String filetype, String separator, boolean header, OutputStream output) throws IOException {
+        return delegate.streamEmails(from, subject, sender, limit, filetype, separator, header, output);
+    }
+
+    /**
+     * Waits for a read started by another caller.
+     */
+    private static byte[] await(CompletableFuture<byte[]> response) {
+        try {
+            return response.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Whether a response reports a failed read. Error responses always start with their status field.
+     */
+    private static boolean isError(byte[] response) {
+        return response == null || (response.length >= ERROR_PREFIX.length
+                && Arrays.equals(response, 0, ERROR_PREFIX.length, ERROR_PREFIX, 0, ERROR_PREFIX.length));
+    }
+
+    /**
+     * Expires each entry after the TTL configured for its mailbox.
+     */
+    private static final class MailboxExpiry implements Expiry<ReadCacheKey, byte[]> {
+
+        private final ReadCacheProperties properties;
+
+        private MailboxExpiry(ReadCacheProperties properties) {
+            this.properties = properties;
+        }
+
+        @Override
+        public long expireAfterCreate(ReadCacheKey key, byte[] response, long currentTime) {
+            Duration ttl = properties.ttlFor(key.mailbox());
+            return ttl.toNanos();
+        }
+
+        @Override
+        public long expireAfterUpdate(ReadCacheKey key, byte[] response, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, response, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(ReadCacheKey key, byte[] response, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
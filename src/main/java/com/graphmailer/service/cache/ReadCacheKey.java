@@ -0,0 +1,59 @@
+package com.graphmailer.service.cache;
+
+import java.util.Locale;
+
+/**
+ * Normalized form of a mailbox read, so reads that produce the same response share a cache entry.
+ *
+ * Mailbox and sender compare case-insensitively, like Graph's filters; blank
+ * filters are dropped; CSV options are only kept for CSV reads. The legacy
+ * password and output file name do not affect the response and are ignored.
+ * The subject and sender of the key are what Graph is asked for, so reads that
+ * share an entry also share the query.
+ *
+ * @param mailbox   Lower-cased mailbox UPN
+ * @param subject   Trimmed subject filter, or null
+ * @param sender    Lower-cased sender filter, or null
+ * @param count     Requested number of emails, or null for the default
+ * @param csv       Whether the response is CSV rather than JSON
+ * @param separator CSV separator, or null for JSON
+ * @param header    Whether a CSV header row is included
+ */
+record ReadCacheKey(
+        String mailbox,
+        String subject,
+        String sender,
+        Integer count,
+        boolean csv,
+        String separator,
+        boolean header
+) {
+
+    static ReadCacheKey of(String mailbox, String subject, String sender, Integer count,
+                           String filetype, String separator, String header) {
+        boolean csv = "CSV".equalsIgnoreCase(filetype);
+        return new ReadCacheKey(
+                mailbox.trim().toLowerCase(Locale.ROOT),
+                blankToNull(subject),
+                sender != null && !sender.trim().isEmpty() ? sender.trim().toLowerCase(Locale.ROOT) : null,
+                count != null && count > 0 ? count : null,
+                csv,
+                csv ? (separator == null || separator.isEmpty() || separator.equals("comma") ? "," : separator) : null,
+                csv && "true".equalsIgnoreCase(header));
+    }
+
+    /**
+     * Approximate memory held by the key, for weighing cache entries.
+     */
+    int weight() {
+        return 64 + length(mailbox) + length(subject) + length(sender) + length(separator);
+    }
+
+    private static int length(String value) {
+        return value != null ? value.length() : 0;
+    }
+
+    private static String blankToNull(String value) {
+        return value != null && !value.trim().isEmpty() ? value.trim() : null;
+    }
+}
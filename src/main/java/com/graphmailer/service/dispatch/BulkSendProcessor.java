@@ -0,0 +1,344 @@
+package com.graphmailer.service.dispatch;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.graphmailer.config.DispatchProperties;
+import com.graphmailer.model.BulkSendResult;
+import com.graphmailer.model.SendMailRequest;
+import com.graphmailer.model.SendMailResponse;
+import com.graphmailer.model.TemplateSendRequest;
+import com.graphmailer.service.template.CompiledTemplate;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Processes bulk sends supplied as a stream of newline-delimited JSON requests.
+ *
+ * The input is parsed one message at a time with Jackson's streaming parser and
+ * each message is handed to the {@link MailDispatchQueue}. The number of
+ * messages in flight per request is capped, and results are written back as
+ * NDJSON lines as soon as each send completes, so memory use does not grow
+ * with the size of the upload. Completions only queue their result; the
+ * request thread writes it, so a slow client never holds up dispatch workers. Template sends to many recipients are processed the
+ * same way, rendering one message per recipient instead of parsing it.
+ */
+@Service
+public class BulkSendProcessor {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkSendProcessor.class);
+
+    private final MailDispatchQueue dispatchQueue;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final DispatchProperties dispatchProperties;
+
+    public BulkSendProcessor(MailDispatchQueue dispatchQueue,
+                             ObjectMapper objectMapper,
+                             Validator validator,
+                             DispatchProperties dispatchProperties) {
+        this.dispatchQueue = dispatchQueue;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.dispatchProperties = dispatchProperties;
+    }
+
+    /**
+     * Reads send requests from the input and streams one result line per message to the output.
+     *
+     * @param input  NDJSON stream of {@link SendMailRequest} objects
+     * @param output Stream receiving NDJSON {@link BulkSendResult} lines
+     * @return Summary of the processed upload
+     * @throws IOException if the input cannot be read
+     */
+    public BulkSendSummary process(InputStream input, OutputStream output) throws IOException {
+        return process(input, output, request -> true);
+    }
+
+    /**
+     * Like {@link #process(InputStream, OutputStream)}, sending only the valid
+     * messages the admission check accepts; the others are reported as rate limited.
+     *
+     * @param admission Rate limit check of one message, may throw IllegalArgumentException for an invalid message
+     */
+    public BulkSendSummary process(InputStream input, OutputStream output, Predicate<SendMailRequest> admission)
+            throws IOException {
+        Run run = new Run(output, admission);
+        long index = 0;
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(input);
+             MappingIterator<SendMailRequest> requests = objectMapper.readerFor(SendMailRequest.class)
+                     .readValues(parser)) {
+
+            while (!run.isBroken()) {
+                final long current = index;
+                SendMailRequest request;
+                try {
+                    if (!requests.hasNextValue()) {
+                        break;
+                    }
+                    index++;
+                    request = requests.nextValue();
+                } catch (JsonMappingException e) {
+                    // The iterator resynchronises on the next line, so keep going
+                    run.invalid(current, "Invalid message: " + e.getOriginalMessage(), null);
+                    continue;
+                } catch (JsonProcessingException e) {
+                    run.invalid(current, "Malformed NDJSON: " + e.getOriginalMessage(), null);
+                    break;
+                }
+
+                if (!run.send(current, request, UUID.randomUUID().toString())) {
+                    break;
+                }
+            }
+        } finally {
+            run.awaitCompletion();
+        }
+
+        return run.summarize("Bulk send", index);
+    }
+
+    /**
+     * Renders a stored template once per recipient entry and sends the messages
+     * like a bulk upload, streaming one NDJSON result line per entry to the output.
+     *
+     * A message is rendered only when the previous one was handed to the
+     * dispatch queue, and the body is built in a buffer reused for every
+     * recipient, so rendered bodies held in memory are bounded by
+     * {@code dispatch.bulk-max-in-flight} however many recipients there are.
+     * Messages go to the bulk lane unless the request names another priority.
+     *
+     * @param admission Rate limit check of one rendered message
+     */
+    public BulkSendSummary merge(CompiledTemplate template, TemplateSendRequest request, OutputStream output,
+                                 Predicate<SendMailRequest> admission) {
+        Run run = new Run(output, admission);
+        StringBuilder buffer = new StringBuilder();
+        long index = 0;
+
+        try {
+            for (TemplateSendRequest.Recipient recipient : request.recipients()) {
+                final long current = index++;
+                if (run.isBroken()) {
+                    break;
+                }
+                String correlationId = UUID.randomUUID().toString();
+                CompiledTemplate.Rendered rendered;
+                try {
+                    rendered = template.render(request.variables(), recipient.variables(), buffer);
+                } catch (IllegalArgumentException e) {
+                    run.invalid(current, "Template error: " + e.getMessage(), correlationId);
+                    continue;
+                }
+
+                SendMailRequest message = new SendMailRequest(request.fromUpn(), recipient.to(), recipient.cc(),
+                        recipient.bcc(), rendered.subject(), rendered.htmlBody(), rendered.textBody(), List.of(),
+                        request.saveToSentItems(), request.importance(), request.priority(), null, null);
+                if (!run.send(current, message, correlationId)) {
+                    break;
+                }
+            }
+        } finally {
+            run.awaitCompletion();
+        }
+
+        return run.summarize("Template " + template.id() + " send", index);
+    }
+
+    /**
+     * Applies the same bean validation rules as the single-send endpoint.
+     *
+     * @return Violation description, or null if the request is valid
+     */
+    private String validate(SendMailRequest request) {
+        if (request == null) {
+            return "Empty message";
+        }
+        Set<ConstraintViolation<SendMailRequest>> violations = validator.validate(request);
+        if (violations.isEmpty()) {
+            return null;
+        }
+        return violations.stream()
+                .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                .sorted()
+                .collect(Collectors.joining("; ", "Validation failed: ", ""));
+    }
+
+    /**
+     * Summary of a processed bulk upload.
+     */
+    public record BulkSendSummary(long received, long invalid, long rateLimited, long failed,
+                                  boolean clientDisconnected) {}
+
+    /**
+     * Sends of one upload or template merge: bounds the messages in flight and
+     * counts the outcomes written to the result stream.
+     *
+     * Only the request thread touches the output and the counters; completions,
+     * which run on dispatch workers, just add their result to a queue sized to
+     * the in-flight bound, so adding never blocks.
+     */
+    private final class Run {
+        private final Predicate<SendMailRequest> admission;
+        private final ResultWriter writer;
+        private final int maxInFlight = dispatchProperties.bulkMaxInFlight();
+        private final BlockingQueue<BulkSendResult> completed = new ArrayBlockingQueue<>(maxInFlight);
+        private int inFlight;
+        private long failed;
+        private long invalid;
+        private long rateLimited;
+
+        private Run(OutputStream output, Predicate<SendMailRequest> admission) {
+            this.writer = new ResultWriter(output);
+            this.admission = admission;
+        }
+
+        private boolean isBroken() {
+            return writer.isBroken();
+        }
+
+        private void invalid(long index, String message, String correlationId) {
+            invalid++;
+            writer.write(BulkSendResult.invalid(index, message, correlationId));
+        }
+
+        /**
+         * Validates, admits and dispatches one message, waiting while too many are in flight.
+         *
+         * @return false if interrupted, in which case no more messages should be sent
+         */
+        private boolean send(long index, SendMailRequest request, String correlationId) {
+            String violations = validate(request);
+            if (violations != null) {
+                invalid(index, violations, correlationId);
+                return true;
+            }
+
+            boolean admitted;
+            try {
+                admitted = admission.test(request);
+            } catch (IllegalArgumentException e) {
+                invalid(index, "Validation error: " + e.getMessage(), correlationId);
+                return true;
+            }
+            if (!admitted) {
+                rateLimited++;
+                writer.write(BulkSendResult.rateLimited(index, correlationId));
+                return true;
+            }
+
+            CompletableFuture<SendMailResponse> completion;
+            try {
+                writeCompleted();
+                while (inFlight >= maxInFlight) {
+                    writeResult(completed.take());
+                }
+                completion = dispatchQueue.dispatch(request, correlationId);
+            } catch (IllegalArgumentException e) {
+                invalid(index, "Validation error: " + e.getMessage(), correlationId);
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+
+            inFlight++;
+            completion.whenComplete((response, error) -> completed.add(error == null
+                    ? BulkSendResult.from(index, response)
+                    : new BulkSendResult(index, "FAILED", null, error.getMessage(), correlationId)));
+            return true;
+        }
+
+        /**
+         * Waits for outstanding sends so every accepted message gets its result line.
+         */
+        private void awaitCompletion() {
+            boolean interrupted = false;
+            while (inFlight > 0) {
+                try {
+                    writeResult(completed.take());
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Writes the results of sends that completed so far.
+         */
+        private void writeCompleted() {
+            BulkSendResult result;
+            while ((result = completed.poll()) != null) {
+                writeResult(result);
+            }
+        }
+
+        private void writeResult(BulkSendResult result) {
+            inFlight--;
+            if (!"SUCCESS".equals(result.status())) {
+                failed++;
+            }
+            writer.write(result);
+        }
+
+        private BulkSendSummary summarize(String operation, long received) {
+            BulkSendSummary summary = new BulkSendSummary(received, invalid, rateLimited, failed,
+                    writer.isBroken());
+            logger.info("{} processed {} messages ({} invalid, {} rate limited, {} failed{})", operation,
+                    summary.received(), summary.invalid(), summary.rateLimited(), summary.failed(),
+                    summary.clientDisconnected() ? ", client disconnected" : "");
+            return summary;
+        }
+    }
+
+    /**
+     * Writes result lines onto the response stream from the request thread.
+     */
+    private final class ResultWriter {
+        private final OutputStream output;
+        private boolean broken;
+
+        private ResultWriter(OutputStream output) {
+            this.output = output;
+        }
+
+        private boolean isBroken() {
+            return broken;
+        }
+
+        private void write(BulkSendResult result) {
+            if (broken) {
+                return;
+            }
+            try {
+                output.write(objectMapper.writeValueAsBytes(result));
+                output.write('\n');
+                output.flush();
+            } catch (IOException e) {
+                logger.warn("Bulk send client stopped reading results: {}", e.getMessage());
+                broken = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.graphmailer.service.dispatch;
+
+/**
+ * Exception thrown when the dispatch queue cannot accept more work.
+ *
+ * Callers should treat this as a transient condition and retry later.
+ */
+public class DispatchRejectedException extends RuntimeException {
+
+    public DispatchRejectedException(String message) {
+        super(message);
+    }
+}
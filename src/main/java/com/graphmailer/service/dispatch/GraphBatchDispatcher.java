@@ -0,0 +1,382 @@
+package com.graphmailer.service.dispatch;
+
+import com.graphmailer.config.GraphProperties;
+import com.graphmailer.service.GraphMailException;
+import com.graphmailer.service.GraphResponseException;
+import com.graphmailer.service.resilience.CircuitOpenException;
+import com.graphmailer.service.resilience.FailureKind;
+import com.graphmailer.service.resilience.GraphFailureClassifier;
+import com.graphmailer.util.RetryAfterParser;
+import com.microsoft.graph.core.content.BatchRequestContent;
+import com.microsoft.graph.core.content.BatchResponseContent;
+import com.microsoft.graph.serviceclient.GraphServiceClient;
+import com.microsoft.graph.users.item.sendmail.SendMailPostRequestBody;
+import com.microsoft.kiota.NativeResponseHandler;
+import com.microsoft.kiota.RequestInformation;
+import com.microsoft.kiota.ResponseHandlerOption;
+import jakarta.annotation.PreDestroy;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Coalesces outbound sendMail calls into Microsoft Graph JSON $batch requests.
+ *
+ * Pending sends are collected until either the batch is full (Graph allows at
+ * most 20 requests per batch) or the linger window expires, then posted as a
+ * single HTTP request. Per-item responses are mapped back to the caller's future;
+ * items that failed with a server error (5xx) are put back into the next batch a
+ * limited number of times before failing. Items throttled with a Retry-After hint
+ * are failed straight away so the caller's retry engine can wait as Graph asked.
+ * A failure of the $batch request itself is classified the same way; items are
+ * only requeued when Graph cannot have processed them.
+ */
+@Component
+@ConditionalOnProperty(name = "app.mode", havingValue = "production", matchIfMissing = true)
+public class GraphBatchDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(GraphBatchDispatcher.class);
+
+    private final GraphServiceClient graphClient;
+    private final GraphProperties.BatchConfig batchConfig;
+    private final ScheduledExecutorService lingerTimer;
+    private final ExecutorService batchExecutor;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private List<PendingSend> pending;
+    private ScheduledFuture<?> lingerTask;
+
+    public GraphBatchDispatcher(GraphServiceClient graphClient, GraphProperties graphProperties) {
+        this.graphClient = graphClient;
+        this.batchConfig = graphProperties.batch();
+        this.pending = new ArrayList<>(batchConfig.maxBatchSize());
+        this.lingerTimer = Executors.newSingleThreadScheduledExecutor(namedThreadFactory("graph-batch-linger"));
+        this.batchExecutor = Executors.newFixedThreadPool(batchConfig.maxConcurrentBatches(),
+                namedThreadFactory("graph-batch"));
+
+        logger.info("Graph $batch dispatcher initialized (enabled: {}, maxBatchSize: {}, lingerMs: {})",
+                batchConfig.enabled(), batchConfig.maxBatchSize(), batchConfig.lingerMs());
+    }
+
+    /**
+     * Whether sends should be routed through the batch dispatcher.
+     */
+    public boolean isEnabled() {
+        return batchConfig.enabled();
+    }
+
+    /**
+     * Queues a sendMail call for inclusion in the next $batch request.
+     *
+     * @param fromUpn     Mailbox to send from
+     * @param requestBody The sendMail request body
+     * @return Future completed when Graph accepted the message, or completed
+     *         exceptionally with a {@link GraphResponseException} if it did not
+     */
+    public CompletableFuture<Void> submit(String fromUpn, SendMailPostRequestBody requestBody) {
+        PendingSend send = new PendingSend(fromUpn, requestBody, new CompletableFuture<>());
+        enqueue(send);
+        return send.future;
+    }
+
+    private void enqueue(PendingSend send) {
+        List<PendingSend> ready = null;
+        lock.lock();
+        try {
+            pending.add(send);
+            if (pending.size() >= batchConfig.maxBatchSize()) {
+                ready = takePending();
+            } else if (lingerTask == null) {
+                lingerTask = lingerTimer.schedule(this::flushPending, batchConfig.lingerMs(), TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (ready != null) {
+            executeAsync(ready);
+        }
+    }
+
+    /**
+     * Flushes whatever is pending when the linger window expires.
+     */
+    private void flushPending() {
+        List<PendingSend> batch;
+        lock.lock();
+        try {
+            lingerTask = null;
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = takePending();
+        } finally {
+            lock.unlock();
+        }
+        executeAsync(batch);
+    }
+
+    /**
+     * Detaches the pending list. Must be called with the lock held.
+     */
+    private List<PendingSend> takePending() {
+        List<PendingSend> batch = pending;
+        pending = new ArrayList<>(batchConfig.maxBatchSize());
+        if (lingerTask != null) {
+            lingerTask.cancel(false);
+            lingerTask = null;
+        }
+        return batch;
+    }
+
+    private void executeAsync(List<PendingSend> batch) {
+        try {
+            batchExecutor.execute(() -> executeBatch(batch));
+        } catch (RejectedExecutionException e) {
+            GraphMailException failure = new GraphMailException("Batch dispatcher is shut down");
+            batch.forEach(send -> send.future.completeExceptionally(failure));
+        }
+    }
+
+    /**
+     * Posts one $batch request and resolves each item from its individual response.
+     */
+    private void executeBatch(List<PendingSend> batch) {
+        Map<String, PendingSend> sendsByStep = new LinkedHashMap<>();
+        BatchRequestContent batchContent;
+
+        try {
+            batchContent = new BatchRequestContent(graphClient);
+            for (PendingSend send : batch) {
+                // The SDK serializes only changed values once a model was serialized, so a
+                // requeued body must be marked changed again or it is posted as {}
+                send.requestBody.getBackingStore().setIsInitializationCompleted(false);
+                RequestInformation requestInformation = graphClient.users().byUserId(send.fromUpn)
+                        .sendMail()
+                        .toPostRequestInformation(send.requestBody);
+                sendsByStep.put(batchContent.addBatchRequestStep(requestInformation), send);
+            }
+        } catch (Exception e) {
+            logger.error("Failed to build Graph $batch request for {} sends - {}", batch.size(), e.getMessage());
+            GraphMailException failure = new GraphMailException("Failed to build Graph $batch request: " + e.getMessage(), e);
+            batch.forEach(send -> send.future.completeExceptionally(failure));
+            return;
+        }
+
+        BatchResponseContent batchResponse;
+        try {
+            batchResponse = postBatch(batchContent);
+            logger.debug("Graph $batch completed for {} sendMail requests", batch.size());
+        } catch (Exception e) {
+            onBatchFailure(batch, e);
+            return;
+        }
+
+        for (Map.Entry<String, PendingSend> entry : sendsByStep.entrySet()) {
+            PendingSend send = entry.getValue();
+            try {
+                resolve(send, batchResponse.getResponseById(entry.getKey()));
+            } catch (RuntimeException e) {
+                send.future.completeExceptionally(
+                        new GraphMailException("Failed to read Graph $batch item response: " + e.getMessage(), e));
+            }
+        }
+    }
+
+    /**
+     * Posts a $batch request. The SDK's batch request builder ignores an error
+     * status of the $batch request itself and returns no item responses, so the
+     * native response is checked here.
+     */
+    private BatchResponseContent postBatch(BatchRequestContent batchContent) throws IOException {
+        RequestInformation requestInformation = graphClient.getBatchRequestBuilder().toPostRequestInformation(batchContent);
+        NativeResponseHandler responseHandler = new NativeResponseHandler();
+        ResponseHandlerOption responseHandlerOption = new ResponseHandlerOption();
+        responseHandlerOption.setResponseHandler(responseHandler);
+        requestInformation.addRequestOptions(List.of(responseHandlerOption));
+        graphClient.getRequestAdapter().sendPrimitive(requestInformation, null, InputStream.class);
+
+        Response response = (Response) responseHandler.getValue();
+        if (!BatchResponseContent.isSuccessStatusCode(response.code())) {
+            try (response) {
+                throw new GraphResponseException("HTTP " + response.code() + " " + errorBody(response),
+                        response.code(), RetryAfterParser.parse(response.header("Retry-After")));
+            }
+        }
+        return new BatchResponseContent(response);
+    }
+
+    /**
+     * Fails or requeues the items of a $batch request that did not return item responses.
+     *
+     * Only failures that guarantee Graph did not process the items are requeued:
+     * a throttled or 5xx status for the whole batch, or a connection that could
+     * not be established. Client errors fail the items, and so do I/O errors
+     * once the request may have been written, as a requeue could send the
+     * messages twice.
+     */
+    private void onBatchFailure(List<PendingSend> batch, Exception error) {
+        // Rejected before reaching Graph; callers map this to 503 with its Retry-After
+        CircuitOpenException rejected = findCause(error, CircuitOpenException.class);
+        if (rejected != null) {
+            logger.warn("Graph $batch request for {} sends rejected - {}", batch.size(), rejected.getMessage());
+            batch.forEach(send -> send.future.completeExceptionally(rejected));
+            return;
+        }
+
+        logger.error("Graph $batch request failed for {} sends - {}", batch.size(), error.getMessage());
+
+        GraphFailureClassifier.Classification classification = GraphFailureClassifier.classify(error);
+        String message = "Graph $batch request failed: " + error.getMessage();
+        if (classification.statusCode() > 0) {
+            GraphResponseException failure = new GraphResponseException(
+                    message, classification.statusCode(), classification.retryAfter());
+            if (classification.kind().isRetryable()) {
+                batch.forEach(send -> retryOrFail(send, failure));
+            } else {
+                batch.forEach(send -> send.future.completeExceptionally(failure));
+            }
+        } else if (findCause(error, ConnectException.class) != null
+                || findCause(error, UnknownHostException.class) != null) {
+            GraphResponseException failure = new GraphResponseException(message, 503, null);
+            batch.forEach(send -> retryOrFail(send, failure));
+        } else if (classification.kind() == FailureKind.TRANSIENT) {
+            // No cause, so the caller's retry engine does not send the messages a second time either
+            GraphMailException failure = new GraphMailException(message + " (messages may have been sent)");
+            batch.forEach(send -> send.future.completeExceptionally(failure));
+        } else {
+            GraphMailException failure = new GraphMailException(message, error);
+            batch.forEach(send -> send.future.completeExceptionally(failure));
+        }
+    }
+
+    private static <T extends Throwable> T findCause(Throwable error, Class<T> type) {
+        Throwable current = error;
+        for (int depth = 0; current != null && depth < 10; depth++) {
+            if (type.isInstance(current)) {
+                return type.cast(current);
+            }
+            current = current.getCause();
+        }
+        return null;
+    }
+
+    /**
+     * Completes a single send from its batch item response.
+     */
+    private void resolve(PendingSend send, Response response) {
+        if (response == null) {
+            retryOrFail(send, new GraphResponseException("Missing response in Graph $batch result", 500, null));
+            return;
+        }
+
+        try {
+            int status = response.code();
+            if (status >= 200 && status < 300) {
+                send.future.complete(null);
+                return;
+            }
+
+            GraphResponseException failure = new GraphResponseException(
+                    "Graph API call failed with status " + status + ": " + errorBody(response),
+                    status,
+                    RetryAfterParser.parse(response.header("Retry-After")));
+
+            if (failure.isRetryable()) {
+                retryOrFail(send, failure);
+            } else {
+                send.future.completeExceptionally(failure);
+            }
+        } finally {
+            // Item responses without content (sendMail answers 202) carry no body to close
+            if (response.body() != null) {
+                response.body().close();
+            }
+        }
+    }
+
+    /**
+     * Puts a throttled or failed item back into the next batch, or fails it
+     * once the requeue budget is spent. Requeueing immediately would ignore a
+     * Retry-After hint, so those items are failed and left to the caller.
+     */
+    private void retryOrFail(PendingSend send, GraphResponseException failure) {
+        if (failure.getRetryAfter() == null && send.requeues.getAndIncrement() < batchConfig.maxRequeues()) {
+            logger.debug("Requeueing sendMail for {} after status {}", send.fromUpn, failure.getStatusCode());
+            enqueue(send);
+        } else {
+            send.future.completeExceptionally(failure);
+        }
+    }
+
+    private String errorBody(Response response) {
+        try {
+            ResponseBody body = response.body();
+            return body != null ? body.string() : "";
+        } catch (Exception e) {
+            return "";
+        }
+    }
+
+    private static ThreadFactory namedThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushPending();
+        lingerTimer.shutdown();
+        batchExecutor.shutdown();
+        try {
+            if (!batchExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+                batchExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            batchExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * A sendMail call waiting for the next batch.
+     */
+    private static final class PendingSend {
+        private final String fromUpn;
+        private final SendMailPostRequestBody requestBody;
+        private final CompletableFuture<Void> future;
+        private final AtomicInteger requeues = new AtomicInteger();
+
+        private PendingSend(String fromUpn, SendMailPostRequestBody requestBody, CompletableFuture<Void> future) {
+            this.fromUpn = fromUpn;
+            this.requestBody = requestBody;
+            this.future = future;
+        }
+    }
+}
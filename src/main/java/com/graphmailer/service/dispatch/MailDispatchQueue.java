@@ -0,0 +1,526 @@
+package com.graphmailer.service.dispatch;
+
+import com.graphmailer.config.DispatchProperties;
+import com.graphmailer.config.MailProperties;
+import com.graphmailer.model.DispatchState;
+import com.graphmailer.model.MailPriority;
+import com.graphmailer.model.SendMailRequest;
+import com.graphmailer.model.SendMailResponse;
+import com.graphmailer.model.SendMailStatusResponse;
+import com.graphmailer.service.MailService;
+import com.graphmailer.service.outbox.MailOutbox;
+import com.graphmailer.service.outbox.OutboxEntry;
+import com.graphmailer.util.ValidationUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded in-process queue that decouples accepting an email from sending it.
+ *
+ * Requests are validated up front so callers still get synchronous feedback on
+ * business rule violations, then enqueued and drained into the {@link MailService}
+ * by a fixed pool of worker threads. The state of each accepted send is tracked
+ * so callers can poll for the outcome instead of holding a connection open.
+ *
+ * Workers spend nearly all their time blocked on Graph, so with virtual threads
+ * enabled they run as virtual threads and {@code dispatch.worker-threads} can be
+ * raised to the desired number of concurrent sends at little memory cost.
+ *
+ * Sends wait in one lane per {@link MailPriority}: transactional, normal and
+ * bulk. Each lane has its own capacity and workers pick from the lanes by
+ * weight, so a large bulk upload neither fills the queue for other sends nor
+ * delays them by more than a few pickups. Workers reserved for a lane stay free
+ * for it, so bulk sends blocked on a throttled mailbox cannot hold up
+ * transactional ones. Queueing time is recorded per lane
+ * against the lane's latency objective ({@code mail.dispatch.queue.wait},
+ * {@code mail.dispatch.slo.breaches}).
+ *
+ * Every enqueued send is recorded in the {@link MailOutbox} first and marked
+ * complete once it has been attempted, so sends still queued or in flight when
+ * the pod stops are replayed when the application next starts.
+ */
+@Service
+public class MailDispatchQueue {
+
+    private static final Logger logger = LoggerFactory.getLogger(MailDispatchQueue.class);
+
+    private static final long POLL_INTERVAL_MS = 500;
+
+    private final MailService mailService;
+    private final ValidationUtil validationUtil;
+    private final MailProperties mailProperties;
+    private final DispatchProperties dispatchProperties;
+    private final MailOutbox outbox;
+
+    private final WeightedLaneQueue<DispatchTask> queue;
+    private final Map<MailPriority, LaneMetrics> laneMetrics = new EnumMap<>(MailPriority.class);
+    private final ConcurrentMap<String, TrackedSend> trackedSends = new ConcurrentHashMap<>();
+    private final Queue<String> trackingOrder = new ConcurrentLinkedQueue<>();
+    private final ExecutorService workers;
+
+    private volatile boolean running = true;
+
+    public MailDispatchQueue(MailService mailService,
+                             ValidationUtil validationUtil,
+                             MailProperties mailProperties,
+                             DispatchProperties dispatchProperties,
+                             MailOutbox outbox,
+                             MeterRegistry meterRegistry,
+                             @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.mailService = mailService;
+        this.validationUtil = validationUtil;
+        this.mailProperties = mailProperties;
+        this.dispatchProperties = dispatchProperties;
+        this.outbox = outbox;
+
+        int workerThreads = dispatchProperties.workerThreads();
+        MailPriority[] lanes = MailPriority.values();
+        int[] capacities = new int[lanes.length];
+        int[] weights = new int[lanes.length];
+        int[] reserved = new int[lanes.length];
+        int totalReserved = 0;
+        for (MailPriority lane : lanes) {
+            DispatchProperties.Lane settings = dispatchProperties.lane(lane);
+            capacities[lane.ordinal()] = settings.queueCapacity();
+            weights[lane.ordinal()] = settings.weight();
+            reserved[lane.ordinal()] = settings.reservedWorkers();
+            totalReserved += settings.reservedWorkers();
+        }
+        if (totalReserved >= workerThreads) {
+            logger.warn("Dispatch lanes reserve {} of {} workers, lanes without a reservation may stall",
+                    totalReserved, workerThreads);
+        }
+        this.queue = new WeightedLaneQueue<>(capacities, weights, workerThreads, reserved);
+        for (MailPriority lane : lanes) {
+            laneMetrics.put(lane, new LaneMetrics(lane, dispatchProperties.lane(lane).latencySlo(), meterRegistry));
+        }
+
+        this.workers = Executors.newFixedThreadPool(workerThreads, virtualThreads
+                ? Thread.ofVirtual().name("mail-dispatch-", 1).factory()
+                : workerThreadFactory());
+        for (int i = 0; i < workerThreads; i++) {
+            workers.execute(this::drain);
+        }
+
+        logger.info("Mail dispatch queue started (async: {}, lanes: {}, workers: {}, virtual threads: {})",
+                dispatchProperties.asyncEnabled(), dispatchProperties.lanes(), workerThreads, virtualThreads);
+    }
+
+    /**
+     * Whether send requests should be accepted asynchronously instead of sent inline.
+     */
+    public boolean isAsyncEnabled() {
+        return dispatchProperties.asyncEnabled();
+    }
+
+    /**
+     * Validates and enqueues a send request in its lane, normal unless the request names one.
+     *
+     * @param request       The email request to dispatch
+     * @param correlationId The correlation ID of the accepting HTTP request
+     * @return Initial status of the accepted send
+     * @throws IllegalArgumentException   if the request violates business rules
+     * @throws DispatchRejectedException  if the request's lane is full
+     * @throws com.graphmailer.service.outbox.OutboxUnavailableException if the send cannot be journaled
+     */
+    public SendMailStatusResponse submit(SendMailRequest request, String correlationId) {
+        validationUtil.validateMailRequest(request, mailProperties);
+
+        MailPriority lane = request.priorityOr(MailPriority.NORMAL);
+        if (queue.size(lane) >= dispatchProperties.lane(lane).queueCapacity()) {
+            throw rejectFull(request, lane);
+        }
+
+        String trackingId = UUID.randomUUID().toString();
+        String outboxId = outbox.append(request, trackingId, correlationId);
+        TrackedSend tracked = new TrackedSend(trackingId, correlationId);
+        trackedSends.put(trackingId, tracked);
+        // Snapshot before enqueueing, a worker may pick the send up immediately
+        SendMailStatusResponse accepted = tracked.toResponse();
+
+        if (!queue.offer(lane, new DispatchTask(request, correlationId, tracked, null, outboxId))) {
+            trackedSends.remove(trackingId);
+            outbox.complete(outboxId);
+            throw rejectFull(request, lane);
+        }
+
+        trackingOrder.add(trackingId);
+        evictExcessStatuses();
+
+        logger.debug("Enqueued {} send {} from: {} ({} pending)", lane.value(), trackingId, request.fromUpn(),
+                queue.size());
+        return accepted;
+    }
+
+    /**
+     * Validates and enqueues a send request whose outcome is delivered through a future
+     * rather than the status table. Blocks while the lane is full, so producers
+     * such as bulk uploads are slowed down to the rate the workers can sustain.
+     * Sends go to the bulk lane unless the request names another one.
+     *
+     * @param request       The email request to dispatch
+     * @param correlationId Correlation ID to use while sending
+     * @return Future completed with the send result
+     * @throws IllegalArgumentException if the request violates business rules or is scheduled
+     * @throws InterruptedException     if interrupted while waiting for queue space
+     */
+    public CompletableFuture<SendMailResponse> dispatch(SendMailRequest request, String correlationId)
+            throws InterruptedException {
+        validationUtil.validateMailRequest(request, mailProperties);
+        if (request.isScheduled()) {
+            throw new IllegalArgumentException("sendAt and sendAfter are not supported here");
+        }
+
+        CompletableFuture<SendMailResponse> completion = new CompletableFuture<>();
+        String outboxId = outbox.append(request, null, correlationId);
+        try {
+            queue.put(request.priorityOr(MailPriority.BULK),
+                    new DispatchTask(request, correlationId, null, completion, outboxId));
+        } catch (InterruptedException e) {
+            outbox.complete(outboxId);
+            throw e;
+        }
+        return completion;
+    }
+
+    /**
+     * Tracks a scheduled send that became due as queued, so its status can be
+     * looked up while the scheduler hands it over to {@link #enqueueScheduled}.
+     */
+    void trackScheduled(String trackingId, String correlationId) {
+        trackedSends.put(trackingId, new TrackedSend(trackingId, correlationId));
+        trackingOrder.add(trackingId);
+    }
+
+    /**
+     * Enqueues a scheduled send that became due, blocking while its lane is full.
+     * The send is tracked under the ID it was scheduled with.
+     */
+    void enqueueScheduled(SendMailRequest request, String correlationId, String trackingId, String outboxId)
+            throws InterruptedException {
+        TrackedSend tracked = trackedSends.get(trackingId);
+        if (tracked == null) {
+            tracked = new TrackedSend(trackingId, correlationId);
+            trackedSends.put(trackingId, tracked);
+            trackingOrder.add(trackingId);
+        }
+        queue.put(request.priorityOr(MailPriority.NORMAL),
+                new DispatchTask(request, correlationId, tracked, null, outboxId));
+        evictExcessStatuses();
+    }
+
+    /**
+     * Records a scheduled send that became due but could not be enqueued.
+     */
+    void recordFailed(String trackingId, String correlationId, String message) {
+        TrackedSend tracked = new TrackedSend(trackingId, correlationId);
+        tracked.update(DispatchState.FAILED, null, message);
+        trackedSends.put(trackingId, tracked);
+        trackingOrder.add(trackingId);
+        evictExcessStatuses();
+    }
+
+    /**
+     * Records a scheduled send that was cancelled before it became due, so its
+     * status stays available for the status retention period.
+     */
+    void recordCancelled(String trackingId, String correlationId) {
+        TrackedSend tracked = new TrackedSend(trackingId, correlationId);
+        tracked.update(DispatchState.CANCELLED, null, "Cancelled before it was due");
+        trackedSends.put(trackingId, tracked);
+        trackingOrder.add(trackingId);
+        evictExcessStatuses();
+    }
+
+    /**
+     * Re-enqueues sends recovered from the outbox once the application is ready.
+     * Runs on its own thread so a large backlog does not hold up startup.
+     * Scheduled sends are restored by the {@link MailScheduler} instead.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void replayOutbox() {
+        List<OutboxEntry> entries = outbox.recoveredEntries().stream()
+                .filter(entry -> !entry.request().isScheduled())
+                .toList();
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        Thread replay = new Thread(() -> {
+            logger.info("Replaying {} unfinished sends from the outbox", entries.size());
+            for (OutboxEntry entry : entries) {
+                TrackedSend tracked = null;
+                if (entry.trackingId() != null) {
+                    tracked = new TrackedSend(entry.trackingId(), entry.correlationId());
+                    trackedSends.put(entry.trackingId(), tracked);
+                    trackingOrder.add(entry.trackingId());
+                }
+                try {
+                    queue.put(entry.request().priorityOr(MailPriority.NORMAL),
+                            new DispatchTask(entry.request(), entry.correlationId(), tracked, null, entry.id()));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            evictExcessStatuses();
+        }, "mail-outbox-replay");
+        replay.setDaemon(true);
+        replay.start();
+    }
+
+    /**
+     * Looks up the current status of an accepted send.
+     *
+     * @param trackingId The tracking ID returned by {@link #submit}
+     * @return Current status, or empty if unknown or expired
+     */
+    public Optional<SendMailStatusResponse> getStatus(String trackingId) {
+        TrackedSend tracked = trackedSends.get(trackingId);
+        if (tracked == null) {
+            return Optional.empty();
+        }
+        if (tracked.isExpired(Instant.now().minus(dispatchProperties.statusRetention()))) {
+            trackedSends.remove(trackingId, tracked);
+            return Optional.empty();
+        }
+        return Optional.of(tracked.toResponse());
+    }
+
+    /**
+     * Number of sends waiting to be picked up by a worker.
+     */
+    public int pendingCount() {
+        return queue.size();
+    }
+
+    /**
+     * Number of sends waiting in one lane.
+     */
+    public int pendingCount(MailPriority lane) {
+        return queue.size(lane);
+    }
+
+    /**
+     * Worker loop draining the queue until shutdown.
+     */
+    private void drain() {
+        while (running || queue.size() > 0) {
+            WeightedLaneQueue.Entry<DispatchTask> entry;
+            try {
+                entry = queue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (entry != null) {
+                laneMetrics.get(entry.lane()).recordWait(System.nanoTime() - entry.enqueuedNanos());
+                try {
+                    send(entry.item());
+                } finally {
+                    queue.release(entry.lane());
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends a single queued email and records the outcome.
+     */
+    private void send(DispatchTask task) {
+        TrackedSend tracked = task.tracked();
+        if (tracked != null) {
+            tracked.update(DispatchState.SENDING, null, null);
+        }
+        MDC.put("correlationId", task.correlationId());
+
+        SendMailResponse response;
+        try {
+            response = mailService.sendMail(task.request());
+        } catch (Exception e) {
+            logger.error("Dispatch from {} failed: {}", task.request().fromUpn(), e.getMessage(), e);
+            response = SendMailResponse.failed("Failed to send email: " + e.getMessage(), task.correlationId());
+        } finally {
+            MDC.clear();
+        }
+
+        if (tracked != null) {
+            if ("SUCCESS".equals(response.status())) {
+                tracked.update(DispatchState.SENT, response.messageId(), response.message());
+            } else {
+                tracked.update(DispatchState.FAILED, null, response.message());
+            }
+        }
+        outbox.complete(task.outboxId());
+        if (task.completion() != null) {
+            task.completion().complete(response);
+        }
+    }
+
+    private DispatchRejectedException rejectFull(SendMailRequest request, MailPriority lane) {
+        laneMetrics.get(lane).rejected.increment();
+        logger.warn("Dispatch lane {} full ({} pending), rejecting send from: {}", lane.value(), queue.size(lane),
+                request.fromUpn());
+        return new DispatchRejectedException("Dispatch queue is full for " + lane.value() + " sends");
+    }
+
+    /**
+     * Drops the oldest finished statuses once the tracking table exceeds its bound.
+     * Sends that are still in flight are kept and re-checked later.
+     */
+    private void evictExcessStatuses() {
+        int budget = trackingOrder.size();
+        while (trackedSends.size() > dispatchProperties.maxTrackedSends() && budget-- > 0) {
+            String oldest = trackingOrder.poll();
+            if (oldest == null) {
+                return;
+            }
+            TrackedSend tracked = trackedSends.get(oldest);
+            if (tracked == null) {
+                continue;
+            }
+            if (tracked.state.isTerminal()) {
+                trackedSends.remove(oldest, tracked);
+            } else {
+                trackingOrder.add(oldest);
+            }
+        }
+    }
+
+    private ThreadFactory workerThreadFactory() {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "mail-dispatch-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Stops accepting work and gives workers a chance to drain the queue.
+     */
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(30, TimeUnit.SECONDS)) {
+                logger.warn("Dispatch workers did not drain in time, {} sends abandoned", queue.size());
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Queueing metrics of one dispatch lane.
+     */
+    private final class LaneMetrics {
+        private final Duration latencySlo;
+        private final Timer wait;
+        private final Counter sloBreaches;
+        private final Counter rejected;
+
+        private LaneMetrics(MailPriority lane, Duration latencySlo, MeterRegistry meterRegistry) {
+            this.latencySlo = latencySlo;
+            this.wait = Timer.builder("mail.dispatch.queue.wait")
+                    .description("Time sends waited in their dispatch lane before a worker picked them up")
+                    .tag("lane", lane.value())
+                    .serviceLevelObjectives(latencySlo)
+                    .register(meterRegistry);
+            this.sloBreaches = Counter.builder("mail.dispatch.slo.breaches")
+                    .description("Sends that waited longer than their lane's latency objective")
+                    .tag("lane", lane.value())
+                    .register(meterRegistry);
+            this.rejected = Counter.builder("mail.dispatch.rejected")
+                    .description("Sends rejected because their dispatch lane was full")
+                    .tag("lane", lane.value())
+                    .register(meterRegistry);
+            Gauge.builder("mail.dispatch.queue.size", queue, lanes -> lanes.size(lane))
+                    .description("Sends waiting in the dispatch lane")
+                    .tag("lane", lane.value())
+                    .register(meterRegistry);
+        }
+
+        private void recordWait(long nanos) {
+            wait.record(nanos, TimeUnit.NANOSECONDS);
+            if (nanos > latencySlo.toNanos()) {
+                sloBreaches.increment();
+            }
+        }
+    }
+
+    /**
+     * A queued send request paired with its tracking record or completion future
+     * and its outbox entry.
+     */
+    private record DispatchTask(SendMailRequest request,
+                                String correlationId,
+                                TrackedSend tracked,
+                                CompletableFuture<SendMailResponse> completion,
+                                String outboxId) {}
+
+    /**
+     * Mutable tracking record for an accepted send.
+     */
+    private static final class TrackedSend {
+        private final String trackingId;
+        private final String correlationId;
+        private final Instant acceptedAt = Instant.now();
+        private volatile DispatchState state = DispatchState.QUEUED;
+        private volatile String messageId;
+        private volatile String message;
+        private volatile Instant updatedAt = acceptedAt;
+
+        private TrackedSend(String trackingId, String correlationId) {
+            this.trackingId = trackingId;
+            this.correlationId = correlationId;
+        }
+
+        private void update(DispatchState newState, String newMessageId, String newMessage) {
+            this.messageId = newMessageId;
+            this.message = newMessage;
+            this.updatedAt = Instant.now();
+            this.state = newState;
+        }
+
+        private boolean isExpired(Instant cutoff) {
+            return state.isTerminal() && updatedAt.isBefore(cutoff);
+        }
+
+        private SendMailStatusResponse toResponse() {
+            return new SendMailStatusResponse(trackingId, state, messageId, message,
+                    correlationId, acceptedAt, updatedAt);
+        }
+    }
+}
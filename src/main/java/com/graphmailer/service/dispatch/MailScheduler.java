@@ -0,0 +1,306 @@
+package com.graphmailer.service.dispatch;
+
+import com.graphmailer.config.MailProperties;
+import com.graphmailer.config.ScheduleProperties;
+import com.graphmailer.model.DispatchState;
+import com.graphmailer.model.SendMailRequest;
+import com.graphmailer.model.SendMailStatusResponse;
+import com.graphmailer.service.outbox.MailOutbox;
+import com.graphmailer.service.outbox.OutboxEntry;
+import com.graphmailer.util.ValidationUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Holds sends with {@code sendAt} or {@code sendAfter} until they are due,
+ * then hands them to the {@link MailDispatchQueue} like any other accepted send.
+ *
+ * Pending sends live in a {@link TimingWheel}, so scheduling and cancelling
+ * cost the same with millions pending, and a timer thread turns the wheel once
+ * per {@code schedule.tick}. Each send is journaled in the {@link MailOutbox}
+ * when it is scheduled and completed once it was sent or cancelled; after a
+ * restart the sends still pending are restored from the journal, and those
+ * that fell due in the meantime go out right away.
+ */
+@Service
+public class MailScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(MailScheduler.class);
+
+    /**
+     * Result of a cancel request.
+     */
+    public enum CancelOutcome {
+        CANCELLED, ALREADY_DISPATCHED, NOT_FOUND
+    }
+
+    private final ScheduleProperties properties;
+    private final MailDispatchQueue dispatchQueue;
+    private final ValidationUtil validationUtil;
+    private final MailProperties mailProperties;
+    private final MailOutbox outbox;
+    private final Clock clock;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final TimingWheel<ScheduledSend> wheel;
+    private final Map<String, TimingWheel.Timeout<ScheduledSend>> pending = new HashMap<>();
+    private final ScheduledExecutorService timer;
+
+    private final Counter firedCounter;
+    private final Counter cancelledCounter;
+
+    @Autowired
+    public MailScheduler(ScheduleProperties properties,
+                         MailDispatchQueue dispatchQueue,
+                         ValidationUtil validationUtil,
+                         MailProperties mailProperties,
+                         MailOutbox outbox,
+                         MeterRegistry meterRegistry) {
+        this(properties, dispatchQueue, validationUtil, mailProperties, outbox, meterRegistry, Clock.systemUTC());
+    }
+
+    MailScheduler(ScheduleProperties properties,
+                  MailDispatchQueue dispatchQueue,
+                  ValidationUtil validationUtil,
+                  MailProperties mailProperties,
+                  MailOutbox outbox,
+                  MeterRegistry meterRegistry,
+                  Clock clock) {
+        this.properties = properties;
+        this.dispatchQueue = dispatchQueue;
+        this.validationUtil = validationUtil;
+        this.mailProperties = mailProperties;
+        this.outbox = outbox;
+        this.clock = clock;
+        this.wheel = new TimingWheel<>(properties.tick().toMillis(), properties.slotsPerLevel(),
+                properties.maxDelay().toMillis(), clock.millis());
+
+        Gauge.builder("mail.schedule.pending", this, MailScheduler::pendingCount)
+                .description("Scheduled sends waiting to become due")
+                .register(meterRegistry);
+        this.firedCounter = Counter.builder("mail.schedule.fired")
+                .description("Scheduled sends handed to the dispatch queue")
+                .register(meterRegistry);
+        this.cancelledCounter = Counter.builder("mail.schedule.cancelled")
+                .description("Scheduled sends cancelled before they were due")
+                .register(meterRegistry);
+
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mail-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long tickMillis = properties.tick().toMillis();
+        timer.scheduleWithFixedDelay(this::fireDue, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+
+        logger.info("Mail scheduler started (enabled: {}, tick: {}, maxDelay: {}, durable: {})",
+                properties.enabled(), properties.tick(), properties.maxDelay(), outbox.isEnabled());
+    }
+
+    /**
+     * Validates, journals and schedules a deferred send.
+     *
+     * @param request       A request with {@code sendAt} or {@code sendAfter}
+     * @param correlationId Correlation ID of the accepting HTTP request
+     * @return Status of the scheduled send; its tracking ID also cancels it
+     * @throws IllegalArgumentException  if the request violates business rules or its schedule is invalid
+     * @throws DispatchRejectedException if scheduling is disabled or too many sends are pending
+     */
+    public SendMailStatusResponse schedule(SendMailRequest request, String correlationId) {
+        validationUtil.validateMailRequest(request, mailProperties);
+        if (request.sendAt() != null && request.sendAfter() != null) {
+            throw new IllegalArgumentException("Only one of sendAt and sendAfter may be given");
+        }
+        if (request.sendAfter() != null && request.sendAfter().isNegative()) {
+            throw new IllegalArgumentException("sendAfter must not be negative");
+        }
+        Instant now = clock.instant();
+        Instant dueAt = request.scheduledFor(now);
+        if (dueAt.isAfter(now.plus(properties.maxDelay()))) {
+            throw new IllegalArgumentException("Sends can be scheduled at most " + properties.maxDelay()
+                    + " ahead");
+        }
+        if (!properties.enabled()) {
+            throw new DispatchRejectedException("Scheduled sends are disabled");
+        }
+        if (pendingCount() >= properties.maxPending()) {
+            logger.warn("Scheduler full ({} pending), rejecting send from: {}", pendingCount(), request.fromUpn());
+            throw new DispatchRejectedException("Too many scheduled sends pending");
+        }
+
+        String trackingId = UUID.randomUUID().toString();
+        String outboxId = outbox.append(request, trackingId, correlationId);
+        ScheduledSend send = new ScheduledSend(trackingId, correlationId, request, outboxId, now);
+        add(send, dueAt);
+
+        logger.info("Scheduled send {} from: {} for {}", trackingId, request.fromUpn(), dueAt);
+        return send.toResponse(dueAt);
+    }
+
+    /**
+     * Cancels a send that is not due yet.
+     *
+     * @param trackingId Tracking ID returned by {@link #schedule}
+     */
+    public CancelOutcome cancel(String trackingId) {
+        ScheduledSend send;
+        lock.lock();
+        try {
+            TimingWheel.Timeout<ScheduledSend> timeout = pending.remove(trackingId);
+            if (timeout == null || !wheel.cancel(timeout)) {
+                return dispatchQueue.getStatus(trackingId).isPresent()
+                        ? CancelOutcome.ALREADY_DISPATCHED : CancelOutcome.NOT_FOUND;
+            }
+            send = timeout.item();
+        } finally {
+            lock.unlock();
+        }
+
+        outbox.complete(send.outboxId());
+        dispatchQueue.recordCancelled(trackingId, send.correlationId());
+        cancelledCounter.increment();
+        logger.info("Cancelled scheduled send {} from: {}", trackingId, send.request().fromUpn());
+        return CancelOutcome.CANCELLED;
+    }
+
+    /**
+     * Status of a send that is not due yet.
+     *
+     * @return Status, or empty if the send is unknown or was already handed to the dispatch queue
+     */
+    public Optional<SendMailStatusResponse> getStatus(String trackingId) {
+        lock.lock();
+        try {
+            TimingWheel.Timeout<ScheduledSend> timeout = pending.get(trackingId);
+            return timeout == null ? Optional.empty()
+                    : Optional.of(timeout.item().toResponse(Instant.ofEpochMilli(timeout.deadlineMillis())));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Number of sends waiting to become due.
+     */
+    public int pendingCount() {
+        lock.lock();
+        try {
+            return wheel.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Restores the scheduled sends left pending in the outbox by the previous run.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void restoreFromOutbox() {
+        int restored = 0;
+        for (OutboxEntry entry : outbox.recoveredEntries()) {
+            SendMailRequest request = entry.request();
+            if (!request.isScheduled()) {
+                continue;
+            }
+            String trackingId = entry.trackingId() != null ? entry.trackingId() : entry.id();
+            add(new ScheduledSend(trackingId, entry.correlationId(), request, entry.id(), entry.acceptedAt()),
+                    request.scheduledFor(entry.acceptedAt()));
+            restored++;
+        }
+        if (restored > 0) {
+            logger.info("Restored {} scheduled sends from the outbox", restored);
+        }
+    }
+
+    private void add(ScheduledSend send, Instant dueAt) {
+        lock.lock();
+        try {
+            pending.put(send.trackingId(), wheel.schedule(send, dueAt.toEpochMilli()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Timer task: turns the wheel and enqueues the sends that became due,
+     * waiting for lane space so a burst of due sends is not dropped.
+     * Due sends are tracked by the dispatch queue before they leave the
+     * pending table, so their status never disappears in between.
+     */
+    void fireDue() {
+        List<ScheduledSend> due = new ArrayList<>();
+        lock.lock();
+        try {
+            wheel.advance(clock.millis(), due);
+            for (ScheduledSend send : due) {
+                dispatchQueue.trackScheduled(send.trackingId(), send.correlationId());
+                pending.remove(send.trackingId());
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        for (ScheduledSend send : due) {
+            try {
+                dispatchQueue.enqueueScheduled(send.request(), send.correlationId(), send.trackingId(),
+                        send.outboxId());
+                firedCounter.increment();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                // Still journaled, so the send goes out after the restart
+                logger.warn("Scheduler interrupted with {} due sends not enqueued", due.size());
+                return;
+            } catch (RuntimeException e) {
+                logger.error("Failed to enqueue scheduled send {}: {}", send.trackingId(), e.getMessage(), e);
+                dispatchQueue.recordFailed(send.trackingId(), send.correlationId(),
+                        "Failed to enqueue scheduled send: " + e.getMessage());
+                outbox.complete(send.outboxId());
+            }
+        }
+    }
+
+    /**
+     * Stops the timer; sends still pending stay in the outbox for the next run.
+     */
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+        logger.info("Mail scheduler stopped ({} sends pending)", pendingCount());
+    }
+
+    /**
+     * A send waiting in the wheel.
+     */
+    private record ScheduledSend(String trackingId,
+                                 String correlationId,
+                                 SendMailRequest request,
+                                 String outboxId,
+                                 Instant acceptedAt) {
+
+        private SendMailStatusResponse toResponse(Instant dueAt) {
+            return new SendMailStatusResponse(trackingId, DispatchState.SCHEDULED, null,
+                    "Scheduled for " + dueAt, correlationId, acceptedAt, acceptedAt);
+        }
+    }
+}
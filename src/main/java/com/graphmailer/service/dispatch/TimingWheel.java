@@ -0,0 +1,217 @@
+package com.graphmailer.service.dispatch;
+
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel holding items until their deadline.
+ *
+ * Time is counted in ticks. Level 0 has one slot per tick, and each slot of
+ * level {@code n} spans all slots of level {@code n - 1}. An item goes into the
+ * lowest level whose current rotation contains its deadline tick, in the slot
+ * of that tick, and each slot is a doubly linked list, so scheduling and
+ * cancelling are O(1) whatever the number of pending items. When the wheel
+ * turns into a new slot of a higher level, that slot's items move down to the
+ * level below; an item is thus moved at most once per level before it fires
+ * from level 0 in the tick of its deadline.
+ *
+ * Deadlines are rounded up to whole ticks, so items never fire early and at
+ * most one tick late. Not thread-safe; callers synchronize.
+ */
+final class TimingWheel<T> {
+
+    private final long tickMillis;
+    private final int bits;
+    private final int mask;
+    private final int levels;
+    private final Slot<T>[][] slots;
+    /** Items whose deadline passed before they could be placed in a slot. */
+    private final Slot<T> due = new Slot<>();
+    private long currentTick;
+    private int size;
+
+    /**
+     * @param tickMillis    Length of one tick
+     * @param slotsPerLevel Slots of each level; rounded up to a power of two
+     * @param horizonMillis Longest delay the levels should cover; longer ones still work but move down more often
+     * @param nowMillis     Current time
+     */
+    TimingWheel(long tickMillis, int slotsPerLevel, long horizonMillis, long nowMillis) {
+        this.tickMillis = tickMillis;
+        this.bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(slotsPerLevel - 1));
+        this.mask = (1 << bits) - 1;
+        long horizonTicks = Math.max(1, horizonMillis / tickMillis);
+        int neededLevels = 1;
+        while (neededLevels * bits < 63 && (horizonTicks >>> (neededLevels * bits)) > 0) {
+            neededLevels++;
+        }
+        this.levels = neededLevels;
+        // Slots only ever hold items of type T
+        @SuppressWarnings("unchecked")
+        Slot<T>[][] wheel = (Slot<T>[][]) new Slot<?>[levels][1 << bits];
+        this.slots = wheel;
+        for (int level = 0; level < levels; level++) {
+            for (int slot = 0; slot <= mask; slot++) {
+                slots[level][slot] = new Slot<>();
+            }
+        }
+        this.currentTick = nowMillis / tickMillis;
+    }
+
+    /**
+     * Adds an item that fires once the deadline is reached.
+     *
+     * @return Handle for {@link #cancel}
+     */
+    Timeout<T> schedule(T item, long deadlineMillis) {
+        Timeout<T> timeout = new Timeout<>(item, deadlineMillis, Math.floorDiv(deadlineMillis + tickMillis - 1,
+                tickMillis));
+        place(timeout);
+        size++;
+        return timeout;
+    }
+
+    /**
+     * Removes a pending item.
+     *
+     * @return Whether the item was still pending
+     */
+    boolean cancel(Timeout<T> timeout) {
+        if (timeout.slot == null) {
+            return false;
+        }
+        timeout.slot.remove(timeout);
+        size--;
+        return true;
+    }
+
+    /**
+     * Turns the wheel up to the given time, adding the items that are due to the list.
+     */
+    void advance(long nowMillis, List<T> expired) {
+        long targetTick = nowMillis / tickMillis;
+        drain(due, expired);
+        if (size == 0) {
+            // Nothing to move or fire, and every slot is empty whatever the current tick
+            currentTick = Math.max(currentTick, targetTick);
+            return;
+        }
+        while (currentTick < targetTick) {
+            currentTick++;
+            // Levels whose slot changed with this tick, highest first, so items can move down more than one level
+            int changed = 1;
+            while (changed < levels && (currentTick & ((1L << (bits * changed)) - 1)) == 0) {
+                changed++;
+            }
+            for (int level = changed - 1; level >= 1; level--) {
+                Slot<T> slot = slots[level][(int) (currentTick >>> (bits * level)) & mask];
+                for (Timeout<T> timeout = slot.detachAll(); timeout != null; ) {
+                    Timeout<T> next = timeout.next;
+                    timeout.next = null;
+                    place(timeout);
+                    timeout = next;
+                }
+            }
+            drain(slots[0][(int) currentTick & mask], expired);
+            drain(due, expired);
+        }
+    }
+
+    /**
+     * Items pending.
+     */
+    int size() {
+        return size;
+    }
+
+    private void place(Timeout<T> timeout) {
+        long deadline = timeout.deadlineTick;
+        if (deadline <= currentTick) {
+            due.add(timeout);
+            return;
+        }
+        for (int level = 0; level < levels; level++) {
+            int shift = bits * (level + 1);
+            if (level == levels - 1 || shift >= 64 || (deadline >>> shift) == (currentTick >>> shift)) {
+                slots[level][(int) (deadline >>> (bits * level)) & mask].add(timeout);
+                return;
+            }
+        }
+    }
+
+    private void drain(Slot<T> slot, List<T> expired) {
+        for (Timeout<T> timeout = slot.detachAll(); timeout != null; timeout = timeout.next) {
+            expired.add(timeout.item);
+            size--;
+        }
+    }
+
+    /**
+     * A pending item and its position in the wheel.
+     */
+    static final class Timeout<T> {
+        private final T item;
+        private final long deadlineMillis;
+        private final long deadlineTick;
+        private Slot<T> slot;
+        private Timeout<T> prev;
+        private Timeout<T> next;
+
+        private Timeout(T item, long deadlineMillis, long deadlineTick) {
+            this.item = item;
+            this.deadlineMillis = deadlineMillis;
+            this.deadlineTick = deadlineTick;
+        }
+
+        T item() {
+            return item;
+        }
+
+        long deadlineMillis() {
+            return deadlineMillis;
+        }
+    }
+
+    /**
+     * Doubly linked list of the items in one slot.
+     */
+    private static final class Slot<T> {
+        private Timeout<T> head;
+
+        private void add(Timeout<T> timeout) {
+            timeout.slot = this;
+            timeout.prev = null;
+            timeout.next = head;
+            if (head != null) {
+                head.prev = timeout;
+            }
+            head = timeout;
+        }
+
+        private void remove(Timeout<T> timeout) {
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.slot = null;
+            timeout.prev = null;
+            timeout.next = null;
+        }
+
+        /**
+         * Empties the slot, returning its items as a chain linked by {@code next}.
+         */
+        private Timeout<T> detachAll() {
+            Timeout<T> first = head;
+            for (Timeout<T> timeout = first; timeout != null; timeout = timeout.next) {
+                timeout.slot = null;
+                timeout.prev = null;
+            }
+            head = null;
+            return first;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.graphmailer.service.dispatch;
+
+import com.graphmailer.model.MailPriority;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded FIFO queues, one per {@link MailPriority} lane, drained in smooth
+ * weighted round robin.
+ *
+ * While several lanes hold items, each take goes to the lane with the most
+ * credit; every waiting lane earns its weight per take and the chosen lane
+ * pays the sum of the waiting lanes' weights. Lanes are therefore served in
+ * proportion to their weights, interleaved rather than in bursts, and an
+ * empty lane's share goes to the others. Each lane has its own capacity, so
+ * a full bulk lane does not block transactional submissions.
+ *
+ * Taken items count as busy workers until {@link #release} is called. A lane
+ * is only served while the idle workers exceed the reservations of the other
+ * lanes that they are not currently using, so slow bulk sends cannot occupy
+ * the workers reserved for transactional ones.
+ */
+final class WeightedLaneQueue<T> {
+
+    private static final MailPriority[] LANES = MailPriority.values();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition[] notFull = new Condition[LANES.length];
+    private final List<ArrayDeque<Entry<T>>> queues = new ArrayList<>(LANES.length);
+    private final int[] capacities = new int[LANES.length];
+    private final int[] weights = new int[LANES.length];
+    private final long[] credits = new long[LANES.length];
+    private final int workers;
+    private final int[] reserved = new int[LANES.length];
+    private final int[] active = new int[LANES.length];
+    private int size;
+    private int busy;
+
+    WeightedLaneQueue(int[] capacities, int[] weights) {
+        this(capacities, weights, Integer.MAX_VALUE, new int[LANES.length]);
+    }
+
+    /**
+     * @param workers  Workers taking from the queue
+     * @param reserved Workers reserved for each lane
+     */
+    WeightedLaneQueue(int[] capacities, int[] weights, int workers, int[] reserved) {
+        this.workers = workers;
+        for (int i = 0; i < LANES.length; i++) {
+            this.capacities[i] = capacities[i];
+            this.weights[i] = weights[i];
+            this.reserved[i] = reserved[i];
+            this.queues.add(new ArrayDeque<>());
+            this.notFull[i] = lock.newCondition();
+        }
+    }
+
+    /**
+     * Adds an item to a lane unless the lane is full.
+     */
+    boolean offer(MailPriority lane, T item) {
+        lock.lock();
+        try {
+            if (queues.get(lane.ordinal()).size() >= capacities[lane.ordinal()]) {
+                return false;
+            }
+            enqueue(lane, item);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds an item to a lane, waiting while the lane is full.
+     */
+    void put(MailPriority lane, T item) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (queues.get(lane.ordinal()).size() >= capacities[lane.ordinal()]) {
+                notFull[lane.ordinal()].await();
+            }
+            enqueue(lane, item);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes the next item by lane weight, waiting up to the timeout for one
+     * that may be served. The caller must {@link #release} it once handled.
+     *
+     * @return The item with its lane and enqueue time, or null on timeout
+     */
+    Entry<T> poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long remainingNanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (!anyServable()) {
+                if (remainingNanos <= 0) {
+                    return null;
+                }
+                remainingNanos = notEmpty.awaitNanos(remainingNanos);
+            }
+
+            int chosen = -1;
+            long totalWeight = 0;
+            for (int i = 0; i < LANES.length; i++) {
+                if (!servable(i)) {
+                    continue;
+                }
+                credits[i] += weights[i];
+                totalWeight += weights[i];
+                if (chosen < 0 || credits[i] > credits[chosen]) {
+                    chosen = i;
+                }
+            }
+            credits[chosen] -= totalWeight;
+
+            Entry<T> entry = queues.get(chosen).poll();
+            if (queues.get(chosen).isEmpty()) {
+                // An idle lane starts over instead of carrying credit or debt into its next burst
+                credits[chosen] = 0;
+            }
+            size--;
+            active[chosen]++;
+            busy++;
+            notFull[chosen].signal();
+            return entry;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Marks an item taken from a lane as handled, freeing its worker.
+     */
+    void release(MailPriority lane) {
+        lock.lock();
+        try {
+            active[lane.ordinal()]--;
+            busy--;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Items waiting in all lanes.
+     */
+    int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Items waiting in one lane.
+     */
+    int size(MailPriority lane) {
+        lock.lock();
+        try {
+            return queues.get(lane.ordinal()).size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean anyServable() {
+        for (int i = 0; i < LANES.length; i++) {
+            if (servable(i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether a lane holds items and an idle worker is left once the unused
+     * reservations of the other lanes are set aside.
+     */
+    private boolean servable(int lane) {
+        if (queues.get(lane).isEmpty()) {
+            return false;
+        }
+        long heldForOthers = 0;
+        for (int i = 0; i < LANES.length; i++) {
+            if (i != lane) {
+                heldForOthers += Math.max(0, reserved[i] - active[i]);
+            }
+        }
+        return busy < workers - heldForOthers;
+    }
+
+    private void enqueue(MailPriority lane, T item) {
+        queues.get(lane.ordinal()).add(new Entry<>(item, lane, System.nanoTime()));
+        size++;
+        notEmpty.signal();
+    }
+
+    /**
+     * A queued item with its lane and the time it was queued.
+     */
+    record Entry<T>(T item, MailPriority lane, long enqueuedNanos) {}
+}
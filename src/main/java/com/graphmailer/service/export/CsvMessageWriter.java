@@ -0,0 +1,195 @@
+package com.graphmailer.service.export;
+
+import com.microsoft.graph.models.Message;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes messages as CSV rows.
+ *
+ * Field values are escaped and UTF-8 encoded character by character into a
+ * reused byte buffer, which is written to the output stream when full. Values
+ * containing the separator, a quote or a line break are quoted, with quotes
+ * doubled.
+ */
+public class CsvMessageWriter implements MessageWriter {
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final int FLUSH_INTERVAL = 100;
+
+    private static final byte QUOTE = '"';
+    private static final byte NEWLINE = '\n';
+    private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+    private static final String[] HEADER = {
+        "MessageId", "Subject", "From", "ReceivedDateTime", "IsRead", "HasAttachments"
+    };
+    private static final String MAILBOX_HEADER = "Mailbox";
+
+    private final OutputStream output;
+    private final String separator;
+    private final byte[] separatorBytes;
+    private final boolean includeMailbox;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private long count;
+
+    public CsvMessageWriter(OutputStream output, String separator, boolean header) throws IOException {
+        this(output, separator, header, false);
+    }
+
+    /**
+     * Creates a writer that optionally starts each row with the mailbox the message was read from.
+     */
+    public CsvMessageWriter(OutputStream output, String separator, boolean header, boolean includeMailbox)
+            throws IOException {
+        this.output = output;
+        this.separator = (separator != null && !separator.isEmpty())
+                ? (separator.equals("comma") ? "," : separator) : ",";
+        this.separatorBytes = this.separator.getBytes(StandardCharsets.UTF_8);
+        this.includeMailbox = includeMailbox;
+
+        if (header) {
+            if (includeMailbox) {
+                writeValue(MAILBOX_HEADER);
+                writeBytes(separatorBytes);
+            }
+            for (int i = 0; i < HEADER.length; i++) {
+                if (i > 0) {
+                    writeBytes(separatorBytes);
+                }
+                writeValue(HEADER[i]);
+            }
+            writeByte(NEWLINE);
+        }
+    }
+
+    @Override
+    public void write(String mailbox, Message message) throws IOException {
+        if (includeMailbox) {
+            writeValue(mailbox);
+            writeBytes(separatorBytes);
+        }
+        writeValue(message.getInternetMessageId());
+        writeBytes(separatorBytes);
+        writeValue(message.getSubject());
+        writeBytes(separatorBytes);
+        writeValue(message.getFrom() != null ? message.getFrom().getEmailAddress().getAddress() : null);
+        writeBytes(separatorBytes);
+        writeValue(message.getReceivedDateTime() != null ? message.getReceivedDateTime().toString() : null);
+        writeBytes(separatorBytes);
+        writeBoolean(message.getIsRead());
+        writeBytes(separatorBytes);
+        writeBoolean(message.getHasAttachments());
+        writeByte(NEWLINE);
+
+        if (++count % FLUSH_INTERVAL == 0) {
+            flush();
+        }
+    }
+
+    @Override
+    public long count() {
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    private void flush() throws IOException {
+        drain();
+        output.flush();
+    }
+
+    private void writeBoolean(Boolean value) throws IOException {
+        writeBytes(value == null ? NULL : value ? TRUE : FALSE);
+    }
+
+    /**
+     * Writes a field value, quoted if it contains the separator, a quote or a line break.
+     */
+    private void writeValue(String value) throws IOException {
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+        boolean quoted = needsQuoting(value);
+        if (quoted) {
+            writeByte(QUOTE);
+        }
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (c == '"') {
+                    writeByte(QUOTE);
+                }
+                writeByte((byte) c);
+            } else if (c < 0x800) {
+                ensure(2);
+                buffer[position++] = (byte) (0xC0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                ensure(4);
+                buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                writeByte((byte) '?');
+            } else {
+                ensure(3);
+                buffer[position++] = (byte) (0xE0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        if (quoted) {
+            writeByte(QUOTE);
+        }
+    }
+
+    private boolean needsQuoting(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return value.contains(separator);
+    }
+
+    private void writeByte(byte value) throws IOException {
+        ensure(1);
+        buffer[position++] = value;
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        if (bytes.length > buffer.length) {
+            drain();
+            output.write(bytes);
+            return;
+        }
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (position + bytes > buffer.length) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        if (position > 0) {
+            output.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.graphmailer.service.export;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.graph.models.Message;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes messages as the elements of a JSON array, optionally wrapped in a
+ * response envelope.
+ *
+ * Fields are written with a UTF-8 Jackson generator from the mapper's factory,
+ * which encodes into a recycled buffer, and field names are pre-encoded once.
+ */
+public class JsonMessageWriter implements MessageWriter {
+
+    private static final int FLUSH_INTERVAL = 100;
+
+    private static final SerializableString MAILBOX = new SerializedString("mailbox");
+    private static final SerializableString MESSAGE_ID = new SerializedString("messageId");
+    private static final SerializableString SUBJECT = new SerializedString("subject");
+    private static final SerializableString FROM = new SerializedString("from");
+    private static final SerializableString RECEIVED_DATE_TIME = new SerializedString("receivedDateTime");
+    private static final SerializableString BODY_PREVIEW = new SerializedString("bodyPreview");
+    private static final SerializableString IS_READ = new SerializedString("isRead");
+    private static final SerializableString HAS_ATTACHMENTS = new SerializedString("hasAttachments");
+
+    private final JsonGenerator generator;
+    private final boolean envelope;
+    private final boolean includeMailbox;
+    private long count;
+
+    /**
+     * Creates a writer producing a top-level JSON array.
+     */
+    public JsonMessageWriter(OutputStream output, ObjectMapper objectMapper) throws IOException {
+        this(output, objectMapper, null, false);
+    }
+
+    private JsonMessageWriter(OutputStream output, ObjectMapper objectMapper, Map<String, ?> envelopeFields,
+                              boolean includeMailbox) throws IOException {
+        this.generator = objectMapper.getFactory().createGenerator(output, JsonEncoding.UTF8);
+        this.envelope = envelopeFields != null;
+        this.includeMailbox = includeMailbox;
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        if (envelope) {
+            generator.writeStartObject();
+            for (Map.Entry<String, ?> field : envelopeFields.entrySet()) {
+                generator.writeObjectField(field.getKey(), field.getValue());
+            }
+            generator.writeFieldName("emails");
+        }
+        generator.writeStartArray();
+    }
+
+    /**
+     * Creates a writer producing the read response object
+     * {@code {"status":"SUCCESS","totalCount":n,"emails":[...]}}.
+     *
+     * @param totalCount Number of messages that will be written
+     */
+    public static JsonMessageWriter enveloped(OutputStream output, ObjectMapper objectMapper, int totalCount)
+            throws IOException {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("status", "SUCCESS");
+        fields.put("totalCount", totalCount);
+        return new JsonMessageWriter(output, objectMapper, fields, false);
+    }
+
+    /**
+     * Creates a writer producing an object with the given fields, in iteration
+     * order, followed by the messages in an {@code emails} array. Each message
+     * carries the mailbox it was read from.
+     *
+     * @param fields Envelope fields, serialized with the mapper
+     */
+    public static JsonMessageWriter withMailboxes(OutputStream output, ObjectMapper objectMapper,
+                                                  Map<String, ?> fields) throws IOException {
+        return new JsonMessageWriter(output, objectMapper, fields, true);
+    }
+
+    @Override
+    public void write(String mailbox, Message message) throws IOException {
+        generator.writeStartObject();
+        if (includeMailbox) {
+            writeStringField(MAILBOX, mailbox);
+        }
+        writeStringField(MESSAGE_ID, message.getInternetMessageId());
+        writeStringField(SUBJECT, message.getSubject());
+        writeStringField(FROM, message.getFrom() != null ? message.getFrom().getEmailAddress().getAddress() : "");
+        writeStringField(RECEIVED_DATE_TIME, message.getReceivedDateTime() != null
+                ? message.getReceivedDateTime().format(DateTimeFormatter.ISO_INSTANT) : "");
+        writeStringField(BODY_PREVIEW, message.getBodyPreview());
+        writeBooleanField(IS_READ, message.getIsRead());
+        writeBooleanField(HAS_ATTACHMENTS, message.getHasAttachments());
+        generator.writeEndObject();
+
+        if (++count % FLUSH_INTERVAL == 0) {
+            generator.flush();
+        }
+    }
+
+    private void writeStringField(SerializableString name, String value) throws IOException {
+        generator.writeFieldName(name);
+        generator.writeString(value);
+    }
+
+    private void writeBooleanField(SerializableString name, Boolean value) throws IOException {
+        generator.writeFieldName(name);
+        if (value != null) {
+            generator.writeBoolean(value);
+        } else {
+            generator.writeNull();
+        }
+    }
+
+    @Override
+    public long count() {
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        generator.writeEndArray();
+        if (envelope) {
+            generator.writeEndObject();
+        }
+        generator.close();
+    }
+}
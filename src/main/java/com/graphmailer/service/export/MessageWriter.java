@@ -0,0 +1,55 @@
+package com.graphmailer.service.export;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.graph.models.Message;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes mailbox messages one at a time in an export format.
+ *
+ * Implementations encode message fields straight to UTF-8 bytes in a small
+ * buffer, without building intermediate maps or strings per message, so a
+ * writer backed by an HTTP response can export any number of messages in
+ * constant memory. {@link #close()} completes the document and flushes, but
+ * does not close the underlying stream.
+ */
+public interface MessageWriter extends Closeable {
+
+    /**
+     * Writes one message.
+     */
+    default void write(Message message) throws IOException {
+        write(null, message);
+    }
+
+    /**
+     * Writes one message read from the given mailbox. The mailbox is only
+     * written by writers created to include it.
+     */
+    void write(String mailbox, Message message) throws IOException;
+
+    /**
+     * Number of messages written so far.
+     */
+    long count();
+
+    /**
+     * Creates a writer for the given format.
+     *
+     * @param filetype     CSV for comma-separated output, anything else for a JSON array
+     * @param separator    CSV separator, "comma" or null for a comma
+     * @param header       Whether to start CSV output with a header row
+     * @param output       Destination of the export
+     * @param objectMapper Mapper used to create the JSON generator
+     */
+    static MessageWriter forFormat(String filetype, String separator, boolean header, OutputStream output,
+                                   ObjectMapper objectMapper) throws IOException {
+        if ("CSV".equalsIgnoreCase(filetype)) {
+            return new CsvMessageWriter(output, separator, header);
+        }
+        return new JsonMessageWriter(output, objectMapper);
+    }
+}
@@ -0,0 +1,41 @@
+package com.graphmailer.service.fanout;
+
+import com.microsoft.graph.models.Message;
+
+import java.util.List;
+
+/**
+ * Outcome of reading one mailbox as part of a multi-mailbox read.
+ *
+ * @param mailbox  Mailbox UPN as requested
+ * @param status   Whether the mailbox was read, failed or timed out
+ * @param messages Messages read, newest first; empty unless the read succeeded
+ * @param error    Reason the mailbox could not be read, null on success
+ */
+public record MailboxReadResult(String mailbox, Status status, List<Message> messages, String error) {
+
+    /**
+     * Result of reading a single mailbox.
+     */
+    public enum Status {
+        SUCCESS,
+        ERROR,
+        TIMEOUT
+    }
+
+    public static MailboxReadResult success(String mailbox, List<Message> messages) {
+        return new MailboxReadResult(mailbox, Status.SUCCESS, messages, null);
+    }
+
+    public static MailboxReadResult failed(String mailbox, String error) {
+        return new MailboxReadResult(mailbox, Status.ERROR, List.of(), error);
+    }
+
+    public static MailboxReadResult timedOut(String mailbox, String error) {
+        return new MailboxReadResult(mailbox, Status.TIMEOUT, List.of(), error);
+    }
+
+    public boolean isSuccess() {
+        return status == Status.SUCCESS;
+    }
+}
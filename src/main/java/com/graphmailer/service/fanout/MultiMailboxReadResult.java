@@ -0,0 +1,157 @@
+package com.graphmailer.service.fanout;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.graphmailer.service.export.CsvMessageWriter;
+import com.graphmailer.service.export.JsonMessageWriter;
+import com.graphmailer.service.export.MessageWriter;
+import com.microsoft.graph.models.Message;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Per-mailbox outcomes of a multi-mailbox read, and the response merging them.
+ *
+ * Each mailbox's messages are already ordered newest first, so they are merged
+ * with a k-way merge: a heap holds one cursor per mailbox, keyed by the
+ * cursor's next message, and each step writes the newest head and advances
+ * that cursor. Messages are written straight from the mailbox lists to the
+ * response without being copied into a combined list.
+ */
+public class MultiMailboxReadResult {
+
+    /**
+     * Overall result of a multi-mailbox read.
+     */
+    public enum Status {
+        SUCCESS,
+        PARTIAL,
+        ERROR
+    }
+
+    private static final Comparator<OffsetDateTime> NEWEST_FIRST =
+            Comparator.nullsLast(Comparator.<OffsetDateTime>reverseOrder());
+
+    private final List<MailboxReadResult> mailboxes;
+
+    public MultiMailboxReadResult(List<MailboxReadResult> mailboxes) {
+        this.mailboxes = List.copyOf(mailboxes);
+    }
+
+    /**
+     * Per-mailbox outcomes, in request order.
+     */
+    public List<MailboxReadResult> mailboxes() {
+        return mailboxes;
+    }
+
+    /**
+     * SUCCESS if every mailbox was read, ERROR if none was, PARTIAL otherwise.
+     */
+    public Status status() {
+        long succeeded = mailboxes.stream().filter(MailboxReadResult::isSuccess).count();
+        if (succeeded == mailboxes.size()) {
+            return Status.SUCCESS;
+        }
+        return succeeded == 0 ? Status.ERROR : Status.PARTIAL;
+    }
+
+    /**
+     * Number of messages read across all mailboxes.
+     */
+    public int totalCount() {
+        return mailboxes.stream().mapToInt(result -> result.messages().size()).sum();
+    }
+
+    /**
+     * Writes the merged messages, newest first, each attributed to its mailbox.
+     *
+     * JSON output is an object with the overall status, total count and
+     * per-mailbox outcomes followed by the {@code emails} array. CSV output
+     * starts each row with a Mailbox column and leaves outcomes to the caller.
+     *
+     * @return Number of messages written
+     */
+    public long writeTo(String filetype, String separator, boolean header, OutputStream output,
+                        ObjectMapper objectMapper) throws IOException {
+        MessageWriter writer = "CSV".equalsIgnoreCase(filetype)
+                ? new CsvMessageWriter(output, separator, header, true)
+                : JsonMessageWriter.withMailboxes(output, objectMapper, envelope());
+
+        PriorityQueue<Cursor> heads = new PriorityQueue<>(Math.max(1, mailboxes.size()));
+        for (int i = 0; i < mailboxes.size(); i++) {
+            MailboxReadResult result = mailboxes.get(i);
+            if (!result.messages().isEmpty()) {
+                heads.add(new Cursor(i, result.mailbox(), result.messages()));
+            }
+        }
+        while (!heads.isEmpty()) {
+            Cursor cursor = heads.poll();
+            writer.write(cursor.mailbox, cursor.head());
+            if (cursor.advance()) {
+                heads.add(cursor);
+            }
+        }
+        writer.close();
+        return writer.count();
+    }
+
+    private Map<String, Object> envelope() {
+        List<Map<String, Object>> outcomes = new ArrayList<>(mailboxes.size());
+        for (MailboxReadResult result : mailboxes) {
+            Map<String, Object> outcome = new LinkedHashMap<>();
+            outcome.put("mailbox", result.mailbox());
+            outcome.put("status", result.status().name());
+            outcome.put("count", result.messages().size());
+            if (result.error() != null) {
+                outcome.put("error", result.error());
+            }
+            outcomes.add(outcome);
+        }
+
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("status", status().name());
+        fields.put("totalCount", totalCount());
+        fields.put("mailboxes", outcomes);
+        return fields;
+    }
+
+    /**
+     * Position in one mailbox's messages. Ties between mailboxes go to the
+     * mailbox requested first, so the merge is deterministic.
+     */
+    private static final class Cursor implements Comparable<Cursor> {
+
+        private final int order;
+        private final String mailbox;
+        private final List<Message> messages;
+        private int position;
+
+        private Cursor(int order, String mailbox, List<Message> messages) {
+            this.order = order;
+            this.mailbox = mailbox;
+            this.messages = messages;
+        }
+
+        private Message head() {
+            return messages.get(position);
+        }
+
+        private boolean advance() {
+            return ++position < messages.size();
+        }
+
+        @Override
+        public int compareTo(Cursor other) {
+            int byTime = NEWEST_FIRST.compare(head().getReceivedDateTime(), other.head().getReceivedDateTime());
+            return byTime != 0 ? byTime : Integer.compare(order, other.order);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.graphmailer.service.fanout;
+
+import com.graphmailer.config.FanOutProperties;
+import com.graphmailer.service.GraphReadMailService;
+import com.graphmailer.service.resilience.CircuitOpenException;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads several mailboxes concurrently for a multi-mailbox read.
+ *
+ * At most {@code fan-out.parallelism} mailboxes of one request are read at a
+ * time; the next mailbox starts as soon as a read finishes. Each read gets
+ * {@code fan-out.mailbox-timeout} from the moment it starts, after which it is
+ * interrupted and reported as timed out. A mailbox that fails or times out is
+ * reported in the result without failing the other mailboxes.
+ */
+@Service
+public class MultiMailboxReader {
+
+    private static final Logger logger = LoggerFactory.getLogger(MultiMailboxReader.class);
+
+    private final GraphReadMailService readMailService;
+    private final FanOutProperties properties;
+    private final ExecutorService executor;
+
+    public MultiMailboxReader(GraphReadMailService readMailService,
+                              FanOutProperties properties,
+                              @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.readMailService = readMailService;
+        this.properties = properties;
+        this.executor = virtualThreads
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("mail-fanout-", 1).factory())
+                : Executors.newCachedThreadPool(readerThreadFactory());
+
+        logger.info("Multi-mailbox reader started (parallelism: {}, mailbox timeout: {}, max mailboxes: {})",
+                properties.parallelism(), properties.mailboxTimeout(), properties.maxMailboxes());
+    }
+
+    /**
+     * Maximum number of mailboxes accepted by one read.
+     */
+    public int maxMailboxes() {
+        return properties.maxMailboxes();
+    }
+
+    /**
+     * Reads the newest messages matching the filters from each mailbox.
+     * Mailboxes listed more than once, ignoring case, are read once.
+     *
+     * @param mailboxes Mailbox UPNs to read
+     * @param counted   Messages to read per mailbox
+     * @return Per-mailbox outcomes in request order
+     * @throws IllegalArgumentException if no or too many mailboxes are given
+     */
+    public MultiMailboxReadResult read(List<String> mailboxes, String subject, String sender, Integer counted) {
+        List<String> distinct = distinctMailboxes(mailboxes);
+        if (distinct.isEmpty()) {
+            throw new IllegalArgumentException("At least one mailbox is required");
+        }
+        if (distinct.size() > properties.maxMailboxes()) {
+            throw new IllegalArgumentException("At most " + properties.maxMailboxes() + " mailboxes can be read at once");
+        }
+
+        logger.info("Reading {} mailboxes (parallelism: {})", distinct.size(), properties.parallelism());
+        Duration timeout = properties.mailboxTimeout();
+        Semaphore permits = new Semaphore(properties.parallelism());
+        Map<String, String> mdc = MDC.getCopyOfContextMap();
+
+        List<CompletableFuture<MailboxReadResult>> reads = new ArrayList<>(distinct.size());
+        for (String mailbox : distinct) {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                reads.forEach(read -> read.cancel(true));
+                throw new IllegalStateException("Interrupted while reading mailboxes", e);
+            }
+            reads.add(start(mailbox, subject, sender, counted, timeout, permits, mdc));
+        }
+
+        List<MailboxReadResult> results = new ArrayList<>(reads.size());
+        for (CompletableFuture<MailboxReadResult> read : reads) {
+            results.add(read.join());
+        }
+
+        MultiMailboxReadResult result = new MultiMailboxReadResult(results);
+        logger.info("Read {} mailboxes: {} ({} emails)", results.size(), result.status(), result.totalCount());
+        return result;
+    }
+
+    /**
+     * Starts reading one mailbox. The permit is released when the read thread
+     * finishes, so a timed out read keeps its slot until it has been interrupted.
+     */
+    private CompletableFuture<MailboxReadResult> start(String mailbox, String subject, String sender, Integer counted,
+                                                       Duration timeout, Semaphore permits, Map<String, String> mdc) {
+        CompletableFuture<MailboxReadResult> read = new CompletableFuture<>();
+        Future<?> task = executor.submit(() -> {
+            if (mdc != null) {
+                MDC.setContextMap(mdc);
+            }
+            try {
+                read.complete(MailboxReadResult.success(mailbox,
+                        readMailService.readMessages(mailbox, subject, sender, counted)));
+            } catch (CircuitOpenException e) {
+                read.complete(MailboxReadResult.failed(mailbox, e.getMessage()));
+            } catch (Exception e) {
+                logger.warn("Reading mailbox: {} failed: {}", mailbox, e.getMessage());
+                read.complete(MailboxReadResult.failed(mailbox, "Error reading emails: " + e.getMessage()));
+            } finally {
+                MDC.clear();
+                permits.release();
+            }
+        });
+
+        return read.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+                .exceptionally(error -> {
+                    task.cancel(true);
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null
+                            ? error.getCause() : error;
+                    if (cause instanceof TimeoutException) {
+                        logger.warn("Reading mailbox: {} timed out after {}", mailbox, timeout);
+                        return MailboxReadResult.timedOut(mailbox, "No response within " + timeout.toMillis() + " ms");
+                    }
+                    if (cause instanceof CancellationException) {
+                        return MailboxReadResult.failed(mailbox, "Read cancelled");
+                    }
+                    return MailboxReadResult.failed(mailbox, "Error reading emails: " + cause.getMessage());
+                });
+    }
+
+    private static List<String> distinctMailboxes(List<String> mailboxes) {
+        Map<String, String> distinct = new LinkedHashMap<>();
+        if (mailboxes != null) {
+            for (String mailbox : mailboxes) {
+                if (mailbox != null && !mailbox.isBlank()) {
+                    distinct.putIfAbsent(mailbox.trim().toLowerCase(Locale.ROOT), mailbox.trim());
+                }
+            }
+        }
+        return new ArrayList<>(distinct.values());
+    }
+
+    private static ThreadFactory readerThreadFactory() {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "mail-fanout-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
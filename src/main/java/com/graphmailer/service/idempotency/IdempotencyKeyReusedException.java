@@ -0,0 +1,12 @@
+package com.graphmailer.service.idempotency;
+
+/**
+ * Thrown when an Idempotency-Key is presented with a request that differs from
+ * the one it was first used for.
+ */
+public class IdempotencyKeyReusedException extends RuntimeException {
+
+    public IdempotencyKeyReusedException(String key) {
+        super("Idempotency-Key '" + key + "' was already used for a different request");
+    }
+}
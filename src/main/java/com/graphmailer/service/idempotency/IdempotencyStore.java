@@ -0,0 +1,386 @@
+package com.graphmailer.service.idempotency;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.graphmailer.config.IdempotencyProperties;
+import com.graphmailer.model.SendMailRequest;
+import com.graphmailer.model.SendMailResponse;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Remembers send responses by Idempotency-Key so retried requests are not sent twice.
+ *
+ * Keys are spread over independently locked stripes, each holding its entries
+ * in a hash map kept in insertion order. Since every entry lives for the same
+ * TTL, the eldest entry of a stripe is also the first to expire, so expiry and
+ * capacity eviction both only ever look at the head of the map and every
+ * operation is O(1). Entries whose send is still running are never evicted,
+ * as a retry arriving meanwhile must wait for that send rather than start
+ * another; they are passed over until their result is known.
+ *
+ * Keys are scoped to the caller's principal, so two clients choosing the same
+ * key neither see each other's responses nor conflict.
+ *
+ * The first request for a key runs the send; concurrent requests with the same
+ * key wait for that send and share its result rather than starting their own.
+ * Only successful or accepted responses are kept, so a failed send can be
+ * retried with the same key.
+ *
+ * With spilling enabled, entries evicted for capacity before they expire are
+ * written to one small JSON file each and looked up there on a memory miss.
+ * Expired spill files are swept periodically.
+ */
+@Component
+public class IdempotencyStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdempotencyStore.class);
+
+    private static final int MAX_KEY_LENGTH = 255;
+    private static final String SPILL_SUFFIX = ".json";
+
+    private final IdempotencyProperties properties;
+    private final ObjectMapper objectMapper;
+    private final Stripe[] stripes;
+    private final int stripeMask;
+    private final int entriesPerStripe;
+    private final Path spillDirectory;
+    private final ScheduledExecutorService sweeper;
+
+    public IdempotencyStore(IdempotencyProperties properties, ObjectMapper objectMapper) {
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+
+        int stripeCount = properties.stripes() <= 1 ? 1 : Integer.highestOneBit(properties.stripes() - 1) << 1;
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe();
+        }
+        this.stripeMask = stripeCount - 1;
+        this.entriesPerStripe = Math.max(1, (properties.maxEntries() + stripeCount - 1) / stripeCount);
+
+        if (properties.enabled() && properties.spillEnabled()) {
+            this.spillDirectory = Paths.get(properties.spillDirectory());
+            this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "idempotency-spill-sweeper");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long sweepMinutes = Math.max(1, properties.ttl().toMinutes() / 4);
+            sweeper.scheduleWithFixedDelay(this::sweepSpill, 0, sweepMinutes, TimeUnit.MINUTES);
+        } else {
+            this.spillDirectory = null;
+            this.sweeper = null;
+        }
+
+        logger.info("Idempotency store initialized (enabled: {}, ttl: {}, maxEntries: {}, stripes: {}, spill: {})",
+                properties.enabled(), properties.ttl(), properties.maxEntries(), stripeCount,
+                spillDirectory != null ? spillDirectory.toAbsolutePath() : "off");
+    }
+
+    /**
+     * Result of a send made through the store.
+     *
+     * @param response The send response
+     * @param replayed Whether the response belongs to an earlier or concurrent request with the same key
+     */
+    public record Outcome(SendMailResponse response, boolean replayed) {
+    }
+
+    /**
+     * Runs a send at most once per principal and Idempotency-Key.
+     *
+     * @param scope     Principal the key belongs to, e.g. its rate limit key
+     * @param clientKey The Idempotency-Key, or null to send without deduplication
+     * @param request   The send request, used to detect a key reused for a different message
+     * @param send      Performs the send
+     * @return The new or remembered response
+     * @throws IllegalArgumentException       if the key is malformed
+     * @throws IdempotencyKeyReusedException if the key was used for a different request
+     */
+    public Outcome execute(String scope, String clientKey, SendMailRequest request,
+                           Supplier<SendMailResponse> send) {
+        if (clientKey == null || !properties.enabled()) {
+            return new Outcome(send.get(), false);
+        }
+        validateKey(clientKey);
+
+        // Separated by a space, which keys cannot contain
+        String key = scope + ' ' + clientKey;
+        int fingerprint = fingerprint(request);
+        Stripe stripe = stripes[spread(key.hashCode()) & stripeMask];
+        Entry entry;
+        boolean owner = false;
+        List<Map.Entry<String, Entry>> evicted;
+
+        stripe.lock.lock();
+        try {
+            entry = stripe.get(key);
+            if (entry == null && spillDirectory != null) {
+                entry = loadSpilled(key);
+                if (entry != null) {
+                    stripe.entries.put(key, entry);
+                }
+            }
+            if (entry == null) {
+                entry = new Entry(fingerprint, System.currentTimeMillis() + properties.ttl().toMillis());
+                stripe.entries.put(key, entry);
+                owner = true;
+            }
+            evicted = stripe.evict(entriesPerStripe);
+        } finally {
+            stripe.lock.unlock();
+        }
+        spill(evicted);
+
+        if (!owner && entry.fingerprint != fingerprint) {
+            throw new IdempotencyKeyReusedException(clientKey);
+        }
+
+        if (!owner) {
+            logger.info("Replaying response for Idempotency-Key {}", clientKey);
+            return new Outcome(await(entry), true);
+        }
+
+        SendMailResponse response;
+        try {
+            response = send.get();
+        } catch (RuntimeException e) {
+            stripe.remove(key, entry);
+            entry.result.completeExceptionally(e);
+            throw e;
+        }
+        if (!isRetained(response)) {
+            stripe.remove(key, entry);
+        }
+        entry.result.complete(response);
+        return new Outcome(response, false);
+    }
+
+    private static SendMailResponse await(Entry entry) {
+        try {
+            return entry.result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static boolean isRetained(SendMailResponse response) {
+        return "SUCCESS".equals(response.status()) || "ACCEPTED".equals(response.status());
+    }
+
+    private static void validateKey(String key) {
+        if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Idempotency-Key must be between 1 and " + MAX_KEY_LENGTH
+                    + " characters");
+        }
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c < 0x21 || c > 0x7e) {
+                throw new IllegalArgumentException("Idempotency-Key must only contain visible ASCII characters");
+            }
+        }
+    }
+
+    /**
+     * Cheap fingerprint of the parts of a request that identify the message.
+     * Bodies and attachment content are left out to keep lookups independent of message size.
+     */
+    static int fingerprint(SendMailRequest request) {
+        return Objects.hash(request.fromUpn(), request.to(), request.cc(), request.bcc(), request.subject(),
+                request.attachments() != null ? request.attachments().size() : 0);
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private void spill(List<Map.Entry<String, Entry>> evicted) {
+        if (spillDirectory == null) {
+            return;
+        }
+        for (Map.Entry<String, Entry> evictedEntry : evicted) {
+            Entry entry = evictedEntry.getValue();
+            SendMailResponse response = entry.result.getNow(null);
+            if (response == null || !isRetained(response)) {
+                continue;
+            }
+            Path file = spillFile(evictedEntry.getKey());
+            try {
+                Files.createDirectories(spillDirectory);
+                Path temp = Files.createTempFile(spillDirectory, "spill-", ".tmp");
+                objectMapper.writeValue(temp.toFile(), new SpilledEntry(evictedEntry.getKey(), entry.fingerprint,
+                        entry.expiresAtMillis, response));
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                logger.warn("Failed to spill idempotency entry to {}: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    private Entry loadSpilled(String key) {
+        Path file = spillFile(key);
+        try {
+            SpilledEntry spilled = objectMapper.readValue(file.toFile(), SpilledEntry.class);
+            if (!key.equals(spilled.key()) || spilled.expiresAtMillis() <= System.currentTimeMillis()) {
+                return null;
+            }
+            Entry entry = new Entry(spilled.fingerprint(), spilled.expiresAtMillis());
+            entry.result.complete(spilled.response());
+            return entry;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            if (Files.exists(file)) {
+                logger.warn("Failed to read spilled idempotency entry {}: {}", file, e.getMessage());
+            }
+            return null;
+        }
+    }
+
+    private void sweepSpill() {
+        if (!Files.isDirectory(spillDirectory)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long ttlMillis = properties.ttl().toMillis();
+        int removed = 0;
+        try (Stream<Path> files = Files.list(spillDirectory)) {
+            for (Iterator<Path> it = files.iterator(); it.hasNext(); ) {
+                Path file = it.next();
+                // Spill files are written once, so anything older than the TTL has expired
+                if (Files.getLastModifiedTime(file).toMillis() + ttlMillis <= now && Files.deleteIfExists(file)) {
+                    removed++;
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to sweep idempotency spill directory {}: {}", spillDirectory, e.getMessage());
+        }
+        if (removed > 0) {
+            logger.debug("Removed {} expired idempotency spill files", removed);
+        }
+    }
+
+    private Path spillFile(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return spillDirectory.resolve(HexFormat.of().formatHex(digest) + SPILL_SUFFIX);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+
+    /**
+     * One lock-protected slice of the key space.
+     */
+    private static final class Stripe {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+
+        /**
+         * Must be called with the lock held.
+         */
+        private Entry get(String key) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAtMillis <= System.currentTimeMillis()) {
+                entries.remove(key);
+                return null;
+            }
+            return entry;
+        }
+
+        private void remove(String key, Entry entry) {
+            lock.lock();
+            try {
+                entries.remove(key, entry);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Drops expired entries and trims the stripe to capacity, passing over
+         * entries whose send has not finished. Must be called with the lock held.
+         *
+         * @return Unexpired entries evicted for capacity
+         */
+        private List<Map.Entry<String, Entry>> evict(int capacity) {
+            List<Map.Entry<String, Entry>> evicted = List.of();
+            long now = System.currentTimeMillis();
+            Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Entry> eldest = it.next();
+                if (!eldest.getValue().result.isDone()) {
+                    continue;
+                }
+                boolean expired = eldest.getValue().expiresAtMillis <= now;
+                if (!expired && entries.size() <= capacity) {
+                    break;
+                }
+                if (!expired) {
+                    if (evicted.isEmpty()) {
+                        evicted = new ArrayList<>();
+                    }
+                    evicted.add(Map.entry(eldest.getKey(), eldest.getValue()));
+                }
+                it.remove();
+            }
+            return evicted;
+        }
+    }
+
+    private static final class Entry {
+
+        private final int fingerprint;
+        private final long expiresAtMillis;
+        private final CompletableFuture<SendMailResponse> result = new CompletableFuture<>();
+
+        private Entry(int fingerprint, long expiresAtMillis) {
+            this.fingerprint = fingerprint;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+
+    /**
+     * On-disk form of an evicted entry.
+     */
+    record SpilledEntry(String key, int fingerprint, long expiresAtMillis, SendMailResponse response) {
+    }
+}
@@ -0,0 +1,285 @@
+package com.graphmailer.service.mirror;
+
+import com.graphmailer.config.MirrorProperties;
+import com.graphmailer.service.resilience.GraphCircuitBreaker;
+import com.graphmailer.service.resilience.GraphFailureClassifier;
+import com.graphmailer.service.resilience.GraphRetryEngine;
+import com.microsoft.graph.models.Message;
+import com.microsoft.graph.serviceclient.GraphServiceClient;
+import com.microsoft.graph.users.item.mailfolders.item.messages.delta.DeltaGetResponse;
+import com.microsoft.graph.users.item.mailfolders.item.messages.delta.DeltaRequestBuilder;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Local mirror of mailbox message metadata, kept current with Graph delta queries.
+ *
+ * The first read of a mailbox pulls the configured folders in full through
+ * {@code mailFolders/{folder}/messages/delta}; later reads pull only what
+ * changed since the stored delta link, at most once per refresh interval.
+ * Reads are answered from the mirror with the same filters, fields and
+ * ordering as a direct Graph read. If a delta link has expired (410 Gone), the
+ * folder is resynced in full.
+ *
+ * While a mailbox is being synced, concurrent reads of an already mirrored
+ * mailbox are served from the current copy instead of waiting. Registered
+ * {@link MirrorListener}s are told about every change as it is applied.
+ */
+@Service
+public class MailboxMirror {
+
+    private static final Logger logger = LoggerFactory.getLogger(MailboxMirror.class);
+
+    private static final String[] SELECT = {
+        "subject", "from", "receivedDateTime", "bodyPreview",
+        "isRead", "hasAttachments", "internetMessageId"
+    };
+
+    private final MirrorProperties properties;
+    private final GraphServiceClient graphServiceClient;
+    private final GraphRetryEngine retryEngine;
+    private final GraphCircuitBreaker circuitBreaker;
+    private final Path directory;
+    private final ConcurrentMap<String, MirroredMailbox> mailboxes = new ConcurrentHashMap<>();
+    private final List<MirrorListener> listeners = new CopyOnWriteArrayList<>();
+
+    public MailboxMirror(MirrorProperties properties,
+                         @Autowired(required = false) GraphServiceClient graphServiceClient,
+                         GraphRetryEngine retryEngine,
+                         GraphCircuitBreaker circuitBreaker) throws IOException {
+        this.properties = properties;
+        this.graphServiceClient = graphServiceClient;
+        this.retryEngine = retryEngine;
+        this.circuitBreaker = circuitBreaker;
+        this.directory = Paths.get(properties.directory());
+
+        if (isEnabled()) {
+            Files.createDirectories(directory);
+            logger.info("Mailbox mirror enabled at {} (folders: {}, refresh interval: {})",
+                    directory.toAbsolutePath(), properties.folders(), properties.refreshInterval());
+        } else {
+            logger.info("Mailbox mirror disabled");
+        }
+    }
+
+    /**
+     * Whether reads should be served from the mirror.
+     */
+    public boolean isEnabled() {
+        return properties.enabled() && graphServiceClient != null;
+    }
+
+    /**
+     * Returns the newest messages of a mailbox matching the filters, syncing
+     * the mailbox first if it has not been synced within the refresh interval.
+     *
+     * @param mailbox Mailbox UPN
+     * @param subject Subject filter (contains), or null
+     * @param sender  Sender address filter, or null
+     * @param top     Maximum number of messages
+     * @return Messages with the mirrored fields set, newest first
+     * @throws IOException if the mirror could not be written
+     */
+    public List<Message> read(String mailbox, String subject, String sender, int top) throws IOException {
+        MirroredMailbox mirrored = open(mailbox);
+        refresh(mailbox, mirrored);
+        return mirrored.query(subject, sender, top).stream()
+                .map(MirroredMessage::toGraph)
+                .toList();
+    }
+
+    /**
+     * Syncs a mailbox if it has not been synced within the refresh interval.
+     *
+     * @throws IOException if the mirror could not be written
+     */
+    public void sync(String mailbox) throws IOException {
+        refresh(mailbox, open(mailbox));
+    }
+
+    /**
+     * Live view of the mirrored messages of a mailbox, without syncing it.
+     */
+    public Collection<MirroredMessage> messages(String mailbox) {
+        return open(mailbox).messages();
+    }
+
+    /**
+     * Current version of a mirrored message, or null if it is not mirrored.
+     *
+     * @param key Message key, see {@link MirroredMessage#key()}
+     */
+    public MirroredMessage lookup(String mailbox, String key) {
+        return open(mailbox).get(key);
+    }
+
+    /**
+     * Registers a listener for changes applied to any mailbox from now on.
+     */
+    public void addListener(MirrorListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Syncs a mailbox if it is stale. Readers of a mailbox that is already
+     * mirrored do not wait for a sync in progress.
+     */
+    private void refresh(String mailbox, MirroredMailbox mirrored) throws IOException {
+        if (isFresh(mirrored)) {
+            return;
+        }
+        if (mirrored.isSynced()) {
+            if (!mirrored.lock().tryLock()) {
+                return;
+            }
+        } else {
+            mirrored.lock().lock();
+        }
+        try {
+            if (!isFresh(mirrored)) {
+                sync(mailbox, mirrored);
+            }
+        } finally {
+            mirrored.lock().unlock();
+        }
+    }
+
+    private boolean isFresh(MirroredMailbox mirrored) {
+        return mirrored.isSynced()
+                && System.nanoTime() - mirrored.lastSyncNanos() < properties.refreshInterval().toNanos();
+    }
+
+    private void sync(String mailbox, MirroredMailbox mirrored) throws IOException {
+        long start = System.nanoTime();
+        int changes = 0;
+        for (String folder : properties.folders()) {
+            changes += syncFolder(mailbox, folder, mirrored);
+        }
+        mirrored.markSynced(start);
+        for (MirrorListener listener : listeners) {
+            listener.synced(mailbox.toLowerCase(Locale.ROOT));
+        }
+        logger.info("Synced mailbox {} mirror: {} changes pulled, {} messages mirrored in {} ms",
+                mailbox, changes, mirrored.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private int syncFolder(String mailbox, String folder, MirroredMailbox mirrored) throws IOException {
+        String deltaLink = mirrored.deltaLink(folder);
+        try {
+            return pull(mailbox, folder, deltaLink, mirrored);
+        } catch (RuntimeException e) {
+            if (deltaLink == null || GraphFailureClassifier.classify(e).statusCode() != 410) {
+                throw e;
+            }
+            logger.warn("Delta link for folder {} of mailbox {} expired, resyncing the folder", folder, mailbox);
+            mirrored.reset(folder);
+            return pull(mailbox, folder, null, mirrored);
+        }
+    }
+
+    /**
+     * Pulls every page of one delta round and applies it as it arrives.
+     */
+    private int pull(String mailbox, String folder, String deltaLink, MirroredMailbox mirrored) throws IOException {
+        String operation = "mirror sync of " + folder + " for " + mailbox;
+        DeltaRequestBuilder delta = graphServiceClient.users().byUserId(mailbox)
+                .mailFolders().byMailFolderId(folder)
+                .messages().delta();
+
+        DeltaGetResponse page = deltaLink != null
+                ? call(operation, () -> delta.withUrl(deltaLink).get(this::configurePage))
+                : call(operation, () -> delta.get(requestConfiguration -> {
+                    configurePage(requestConfiguration);
+                    requestConfiguration.queryParameters.select = SELECT;
+                }));
+
+        int changes = 0;
+        while (page != null) {
+            changes += mirrored.apply(folder, page.getValue());
+            String nextLink = page.getOdataNextLink();
+            if (nextLink == null) {
+                mirrored.completeRound(folder, page.getOdataDeltaLink());
+                break;
+            }
+            page = call(operation, () -> delta.withUrl(nextLink).get(this::configurePage));
+        }
+        return changes;
+    }
+
+    private void configurePage(DeltaRequestBuilder.GetRequestConfiguration requestConfiguration) {
+        requestConfiguration.headers.add("Prefer", "odata.maxpagesize=" + properties.pageSize());
+    }
+
+    private <T> T call(String operation, Callable<T> call) {
+        try {
+            return retryEngine.call(operation, () -> circuitBreaker.call(call));
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(operation + " failed: " + e.getMessage(), e);
+        }
+    }
+
+    private MirroredMailbox open(String mailbox) {
+        return mailboxes.computeIfAbsent(mailbox.toLowerCase(Locale.ROOT), key -> {
+            try {
+                MirroredMailbox mirrored = MirroredMailbox.open(directory.resolve(fileName(key)));
+                mirrored.setListener(new MirroredMailbox.ChangeListener() {
+                    @Override
+                    public void upserted(MirroredMessage message) {
+                        listeners.forEach(listener -> listener.upserted(key, message));
+                    }
+
+                    @Override
+                    public void removed(MirroredMessage message) {
+                        listeners.forEach(listener -> listener.removed(key, message));
+                    }
+                });
+                logger.debug("Opened mirror of mailbox {} ({} messages)", key, mirrored.size());
+                return mirrored;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to open mirror of mailbox " + key, e);
+            }
+        });
+    }
+
+    private static String fileName(String mailbox) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(mailbox.getBytes(StandardCharsets.UTF_8));
+            return "mailbox-" + HexFormat.of().formatHex(digest, 0, 16) + ".log";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        for (MirroredMailbox mirrored : mailboxes.values()) {
+            try {
+                mirrored.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close mailbox mirror: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.graphmailer.service.mirror;
+
+/**
+ * Receives the changes applied to mirrored mailboxes.
+ *
+ * Callbacks for a mailbox are made one at a time while its sync holds the
+ * mailbox lock, in the order the changes were applied. Mailboxes are
+ * identified by their lower-case UPN.
+ */
+public interface MirrorListener {
+
+    /**
+     * A message was added or changed.
+     */
+    void upserted(String mailbox, MirroredMessage message);
+
+    /**
+     * A message was deleted, moved out of the mirrored folders or dropped before a resync.
+     */
+    void removed(String mailbox, MirroredMessage message);
+
+    /**
+     * A sync of all mirrored folders completed.
+     */
+    void synced(String mailbox);
+}
@@ -0,0 +1,384 @@
+package com.graphmailer.service.mirror;
+
+import com.microsoft.graph.models.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Mirrored metadata and delta links of one mailbox, backed by an append-only log.
+ *
+ * Every change pulled from Graph is appended to the log as a CRC-checked frame,
+ * and the folder's new delta link is appended and fsynced once its sync round
+ * is complete. On open the log is replayed; changes of a round that never wrote
+ * its delta link are simply pulled again from the previous link, which is safe
+ * because applying delta changes is idempotent. When the log grows well beyond
+ * the live data it is rewritten as a snapshot.
+ *
+ * Reads may run concurrently with a sync; all changes are made while holding
+ * {@link #lock()}.
+ */
+class MirroredMailbox {
+
+    private static final Logger logger = LoggerFactory.getLogger(MirroredMailbox.class);
+
+    static final byte UPSERT = 1;
+    static final byte REMOVE = 2;
+    static final byte DELTA_LINK = 3;
+    static final byte RESET = 4;
+
+    /**
+     * Frame header: payload length (int), CRC32 of type and payload (int), type (byte).
+     */
+    private static final int HEADER_BYTES = 9;
+    private static final int COMPACTION_SLACK = 1024;
+
+    private final Path file;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, MirroredMessage> messages = new ConcurrentHashMap<>();
+    private final NavigableSet<MirroredMessage> newestFirst = new ConcurrentSkipListSet<>(MirroredMessage.NEWEST_FIRST);
+    private final Map<String, String> deltaLinks = new ConcurrentHashMap<>();
+
+    private FileChannel log;
+    private long frames;
+    private volatile ChangeListener listener;
+    private volatile long lastSyncNanos;
+    private volatile boolean synced;
+
+    private MirroredMailbox(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Opens the mailbox log, replaying any existing content.
+     */
+    static MirroredMailbox open(Path file) throws IOException {
+        MirroredMailbox mailbox = new MirroredMailbox(file);
+        if (Files.exists(file)) {
+            mailbox.replay();
+        }
+        mailbox.log = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        return mailbox;
+    }
+
+    ReentrantLock lock() {
+        return lock;
+    }
+
+    /**
+     * Sets the listener notified of every change made after the log was replayed.
+     */
+    void setListener(ChangeListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Delta link to resume the folder from, or null if it has never been synced.
+     */
+    String deltaLink(String folder) {
+        return deltaLinks.get(folder);
+    }
+
+    /**
+     * Whether a sync round has completed since this mailbox was opened.
+     */
+    boolean isSynced() {
+        return synced;
+    }
+
+    long lastSyncNanos() {
+        return lastSyncNanos;
+    }
+
+    int size() {
+        return messages.size();
+    }
+
+    /**
+     * Current version of a message, or null if it is not mirrored.
+     */
+    MirroredMessage get(String key) {
+        return messages.get(key);
+    }
+
+    /**
+     * Live view of all mirrored messages.
+     */
+    Collection<MirroredMessage> messages() {
+        return Collections.unmodifiableCollection(messages.values());
+    }
+
+    /**
+     * Applies one page of delta changes and appends them to the log.
+     *
+     * @return Number of changes applied
+     */
+    int apply(String folder, List<Message> page) throws IOException {
+        if (page == null || page.isEmpty()) {
+            return 0;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (Message message : page) {
+            if (message.getAdditionalData() != null && message.getAdditionalData().containsKey("@removed")) {
+                remove(MirroredMessage.key(folder, message.getId()));
+                appendFrame(bytes, REMOVE, output -> {
+                    MirroredMessage.writeString(output, folder);
+                    MirroredMessage.writeString(output, message.getId());
+                });
+            } else {
+                MirroredMessage mirrored = MirroredMessage.fromGraph(folder, message);
+                upsert(mirrored);
+                appendFrame(bytes, UPSERT, mirrored::writeTo);
+            }
+        }
+        write(bytes, false);
+        return page.size();
+    }
+
+    /**
+     * Records the delta link that completes a folder's sync round and makes the round durable.
+     */
+    void completeRound(String folder, String deltaLink) throws IOException {
+        if (deltaLink != null) {
+            deltaLinks.put(folder, deltaLink);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            appendFrame(bytes, DELTA_LINK, output -> {
+                MirroredMessage.writeString(output, folder);
+                MirroredMessage.writeString(output, deltaLink);
+            });
+            write(bytes, true);
+        }
+    }
+
+    /**
+     * Marks the end of a sync of all folders.
+     */
+    void markSynced(long nanos) throws IOException {
+        lastSyncNanos = nanos;
+        synced = true;
+        if (frames > 2L * (messages.size() + deltaLinks.size()) + COMPACTION_SLACK) {
+            compact();
+        }
+    }
+
+    /**
+     * Forgets a folder's messages and delta link, before a full resync.
+     */
+    void reset(String folder) throws IOException {
+        deltaLinks.remove(folder);
+        for (MirroredMessage message : List.copyOf(messages.values())) {
+            if (message.folder().equals(folder)) {
+                remove(message.key());
+            }
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        appendFrame(bytes, RESET, output -> MirroredMessage.writeString(output, folder));
+        write(bytes, true);
+    }
+
+    /**
+     * Returns the newest messages matching the filters, with Graph's filter semantics.
+     *
+     * @param subject Case-insensitive subject substring, or null
+     * @param sender  Case-insensitive sender address, or null
+     * @param top     Maximum number of messages
+     */
+    List<MirroredMessage> query(String subject, String sender, int top) {
+        String subjectFilter = subject != null && !subject.trim().isEmpty() ? subject.toLowerCase(Locale.ROOT) : null;
+        String senderFilter = sender != null && !sender.trim().isEmpty() ? sender : null;
+
+        List<MirroredMessage> result = new ArrayList<>(Math.min(top, 128));
+        for (MirroredMessage message : newestFirst) {
+            if (result.size() >= top) {
+                break;
+            }
+            if (senderFilter != null && !senderFilter.equalsIgnoreCase(message.from())) {
+                continue;
+            }
+            if (subjectFilter != null && (message.subject() == null
+                    || !message.subject().toLowerCase(Locale.ROOT).contains(subjectFilter))) {
+                continue;
+            }
+            result.add(message);
+        }
+        return result;
+    }
+
+    void close() throws IOException {
+        log.close();
+    }
+
+    private void upsert(MirroredMessage message) {
+        MirroredMessage previous = messages.put(message.key(), message);
+        if (previous != null) {
+            newestFirst.remove(previous);
+        }
+        newestFirst.add(message);
+        ChangeListener current = listener;
+        if (current != null) {
+            current.upserted(message);
+        }
+    }
+
+    private void remove(String key) {
+        MirroredMessage previous = messages.remove(key);
+        if (previous != null) {
+            newestFirst.remove(previous);
+            ChangeListener current = listener;
+            if (current != null) {
+                current.removed(previous);
+            }
+        }
+    }
+
+    /**
+     * Rewrites the log as a snapshot of the current messages and delta links.
+     */
+    private void compact() throws IOException {
+        long before = frames;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (MirroredMessage message : messages.values()) {
+            appendFrame(bytes, UPSERT, message::writeTo);
+        }
+        for (Map.Entry<String, String> link : deltaLinks.entrySet()) {
+            appendFrame(bytes, DELTA_LINK, output -> {
+                MirroredMessage.writeString(output, link.getKey());
+                MirroredMessage.writeString(output, link.getValue());
+            });
+        }
+
+        Path snapshot = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(channel, ByteBuffer.wrap(bytes.toByteArray()));
+            channel.force(true);
+        }
+        log.close();
+        Files.move(snapshot, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        frames = messages.size() + deltaLinks.size();
+        logger.debug("Compacted mirror log {} from {} to {} frames", file, before, frames);
+    }
+
+    private void replay() throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        int valid = 0;
+        while (buffer.remaining() >= HEADER_BYTES) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            byte type = buffer.get();
+            if (length < 0 || length > buffer.remaining()) {
+                logger.warn("Mirror log {} has a truncated frame at offset {}, ignoring the rest", file, start);
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+            if (checksum(type, payload) != checksum) {
+                logger.warn("Mirror log {} has a corrupt frame at offset {}, ignoring the rest", file, start);
+                break;
+            }
+            frames++;
+            valid = buffer.position();
+
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload));
+            switch (type) {
+                case UPSERT -> upsert(MirroredMessage.readFrom(input));
+                case REMOVE -> remove(MirroredMessage.key(MirroredMessage.readString(input),
+                        MirroredMessage.readString(input)));
+                case DELTA_LINK -> deltaLinks.put(MirroredMessage.readString(input), MirroredMessage.readString(input));
+                case RESET -> {
+                    String folder = MirroredMessage.readString(input);
+                    deltaLinks.remove(folder);
+                    messages.values().removeIf(message -> {
+                        if (message.folder().equals(folder)) {
+                            newestFirst.remove(message);
+                            return true;
+                        }
+                        return false;
+                    });
+                }
+                default -> logger.warn("Mirror log {} has an unknown frame type {} at offset {}", file, type, start);
+            }
+        }
+        // Drop any torn tail so new frames are not appended after it
+        if (valid < buffer.limit()) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(valid);
+            }
+        }
+    }
+
+    private void write(ByteArrayOutputStream bytes, boolean sync) throws IOException {
+        writeFully(log, ByteBuffer.wrap(bytes.toByteArray()));
+        if (sync) {
+            log.force(false);
+        }
+    }
+
+    private void appendFrame(ByteArrayOutputStream bytes, byte type, PayloadWriter writer) throws IOException {
+        ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream(256);
+        DataOutputStream payload = new DataOutputStream(payloadBytes);
+        writer.write(payload);
+        payload.flush();
+        byte[] content = payloadBytes.toByteArray();
+
+        DataOutputStream frame = new DataOutputStream(bytes);
+        frame.writeInt(content.length);
+        frame.writeInt(checksum(type, content));
+        frame.writeByte(type);
+        frame.write(content);
+        frame.flush();
+        frames++;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static int checksum(byte type, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Receives the messages upserted and removed by delta changes and resets.
+     */
+    interface ChangeListener {
+        void upserted(MirroredMessage message);
+
+        void removed(MirroredMessage message);
+    }
+
+    @FunctionalInterface
+    private interface PayloadWriter {
+        void write(DataOutputStream output) throws IOException;
+    }
+}
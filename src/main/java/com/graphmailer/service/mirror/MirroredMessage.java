@@ -0,0 +1,146 @@
+package com.graphmailer.service.mirror;
+
+import com.microsoft.graph.models.EmailAddress;
+import com.microsoft.graph.models.Message;
+import com.microsoft.graph.models.Recipient;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Comparator;
+
+/**
+ * Metadata of one mirrored message: the fields selected when reading a mailbox.
+ *
+ * @param folder            Mail folder the message was synced from
+ * @param id                Graph message ID
+ * @param internetMessageId RFC 2822 message ID
+ * @param subject           Subject
+ * @param from              Sender address
+ * @param receivedDateTime  Time the message was received
+ * @param bodyPreview       First characters of the body
+ * @param isRead            Whether the message has been read
+ * @param hasAttachments    Whether the message has attachments
+ */
+public record MirroredMessage(
+        String folder,
+        String id,
+        String internetMessageId,
+        String subject,
+        String from,
+        Instant receivedDateTime,
+        String bodyPreview,
+        Boolean isRead,
+        Boolean hasAttachments
+) {
+
+    /**
+     * Orders messages newest first, like {@code $orderby=receivedDateTime desc}.
+     */
+    static final Comparator<MirroredMessage> NEWEST_FIRST = Comparator
+            .comparing(MirroredMessage::receivedDateTime, Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(MirroredMessage::folder)
+            .thenComparing(MirroredMessage::id);
+
+    /**
+     * Copies the mirrored fields of a Graph message.
+     */
+    static MirroredMessage fromGraph(String folder, Message message) {
+        return new MirroredMessage(
+                folder,
+                message.getId(),
+                message.getInternetMessageId(),
+                message.getSubject(),
+                message.getFrom() != null && message.getFrom().getEmailAddress() != null
+                        ? message.getFrom().getEmailAddress().getAddress() : null,
+                message.getReceivedDateTime() != null ? message.getReceivedDateTime().toInstant() : null,
+                message.getBodyPreview(),
+                message.getIsRead(),
+                message.getHasAttachments());
+    }
+
+    /**
+     * Converts back to a Graph message with the mirrored fields set.
+     */
+    public Message toGraph() {
+        Message message = new Message();
+        message.setId(id);
+        message.setInternetMessageId(internetMessageId);
+        message.setSubject(subject);
+        if (from != null) {
+            EmailAddress address = new EmailAddress();
+            address.setAddress(from);
+            Recipient recipient = new Recipient();
+            recipient.setEmailAddress(address);
+            message.setFrom(recipient);
+        }
+        if (receivedDateTime != null) {
+            message.setReceivedDateTime(OffsetDateTime.ofInstant(receivedDateTime, ZoneOffset.UTC));
+        }
+        message.setBodyPreview(bodyPreview);
+        message.setIsRead(isRead);
+        message.setHasAttachments(hasAttachments);
+        return message;
+    }
+
+    /**
+     * Key identifying the message within its mailbox.
+     */
+    public String key() {
+        return key(folder, id);
+    }
+
+    static String key(String folder, String id) {
+        return folder + '/' + id;
+    }
+
+    void writeTo(DataOutput output) throws IOException {
+        writeString(output, folder);
+        writeString(output, id);
+        writeString(output, internetMessageId);
+        writeString(output, subject);
+        writeString(output, from);
+        output.writeLong(receivedDateTime != null ? receivedDateTime.toEpochMilli() : Long.MIN_VALUE);
+        writeString(output, bodyPreview);
+        writeBoolean(output, isRead);
+        writeBoolean(output, hasAttachments);
+    }
+
+    static MirroredMessage readFrom(DataInput input) throws IOException {
+        String folder = readString(input);
+        String id = readString(input);
+        String internetMessageId = readString(input);
+        String subject = readString(input);
+        String from = readString(input);
+        long received = input.readLong();
+        String bodyPreview = readString(input);
+        Boolean isRead = readBoolean(input);
+        Boolean hasAttachments = readBoolean(input);
+        return new MirroredMessage(folder, id, internetMessageId, subject, from,
+                received != Long.MIN_VALUE ? Instant.ofEpochMilli(received) : null,
+                bodyPreview, isRead, hasAttachments);
+    }
+
+    static void writeString(DataOutput output, String value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeUTF(value);
+        }
+    }
+
+    static String readString(DataInput input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+
+    private static void writeBoolean(DataOutput output, Boolean value) throws IOException {
+        output.writeByte(value == null ? 2 : value ? 1 : 0);
+    }
+
+    private static Boolean readBoolean(DataInput input) throws IOException {
+        byte value = input.readByte();
+        return value == 2 ? null : value == 1;
+    }
+}
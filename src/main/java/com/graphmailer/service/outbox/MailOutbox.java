@@ -0,0 +1,468 @@
+package com.graphmailer.service.outbox;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.graphmailer.config.OutboxProperties;
+import com.graphmailer.model.SendMailRequest;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Durable outbox journal for accepted send requests.
+ *
+ * Entries are appended to segment files in the configured directory as
+ * length-prefixed, CRC-checked frames. A single writer thread drains all
+ * appends that arrived while the previous write was in progress and makes
+ * them durable with one fsync (group commit), so the cost of an fsync is
+ * shared by every send accepted in the meantime.
+ *
+ * {@link #append} returns once the entry is on disk; {@link #complete} records
+ * that the send is finished without waiting for the disk. On startup the
+ * journal is scanned, entries that were never completed are exposed through
+ * {@link #recoveredEntries()} for replay, and a fresh segment is started that
+ * carries only those entries forward. A torn frame at the end of a segment,
+ * left by a crash mid-write, is detected by its checksum and ignored.
+ *
+ * Only the location of each open entry's frame is kept in memory. The segment
+ * is compacted the same way once it exceeds {@code outbox.max-segment-bytes}
+ * and at least half of it is completed entries, so each byte written is copied
+ * a bounded number of times however many entries stay open. Compaction copies
+ * the frames from file to file without reading them into the heap.
+ *
+ * Open entries, including scheduled sends not yet due, are published as
+ * {@code mail.outbox.open}; a replica should only be removed once it is zero.
+ */
+@Service
+public class MailOutbox {
+
+    private static final Logger logger = LoggerFactory.getLogger(MailOutbox.class);
+
+    static final byte ACCEPTED = 1;
+    static final byte COMPLETED = 2;
+
+    /**
+     * Frame header: payload length (int), CRC32 of type and payload (int), type (byte).
+     */
+    private static final int HEADER_BYTES = 9;
+    private static final String SEGMENT_PREFIX = "outbox-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final OutboxProperties properties;
+    private final ObjectMapper objectMapper;
+    private final Path directory;
+    private final BlockingQueue<PendingWrite> writes = new LinkedBlockingQueue<>();
+    private final ConcurrentMap<String, Frame> openEntries = new ConcurrentHashMap<>();
+    private final List<OutboxEntry> recovered;
+
+    private FileChannel segment;
+    private long segmentNumber;
+    private long segmentBytes;
+    /**
+     * Bytes of the frames of open entries; written by the writer thread only.
+     */
+    private long liveBytes;
+    private Thread writer;
+    private volatile boolean running;
+
+    public MailOutbox(OutboxProperties properties, ObjectMapper objectMapper, MeterRegistry meterRegistry)
+            throws IOException {
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+        this.directory = Paths.get(properties.directory());
+
+        Gauge.builder("mail.outbox.open", openEntries, Map::size)
+                .description("Journaled sends not completed yet, including scheduled sends")
+                .register(meterRegistry);
+
+        if (!properties.enabled()) {
+            this.recovered = List.of();
+            logger.info("Mail outbox disabled");
+            return;
+        }
+
+        Files.createDirectories(directory);
+        this.recovered = recover();
+        compact();
+
+        this.running = true;
+        this.writer = new Thread(this::writeLoop, "mail-outbox-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+
+        logger.info("Mail outbox opened at {} ({} unfinished sends recovered)", directory.toAbsolutePath(),
+                recovered.size());
+    }
+
+    /**
+     * Whether sends are being journaled.
+     */
+    public boolean isEnabled() {
+        return properties.enabled();
+    }
+
+    /**
+     * Durably records an accepted send request.
+     *
+     * @param request       The send request
+     * @param trackingId    Dispatch tracking ID, or null for sends without status tracking
+     * @param correlationId Correlation ID of the accepting request
+     * @return Journal entry ID to pass to {@link #complete}, or null if the outbox is disabled
+     * @throws OutboxUnavailableException if the entry could not be written
+     */
+    public String append(SendMailRequest request, String trackingId, String correlationId) {
+        if (!properties.enabled()) {
+            return null;
+        }
+
+        OutboxEntry entry = new OutboxEntry(UUID.randomUUID().toString(), trackingId, correlationId,
+                Instant.now(), request);
+        PendingWrite write;
+        try {
+            write = new PendingWrite(ACCEPTED, entry.id(), objectMapper.writeValueAsBytes(entry), true, 0);
+        } catch (IOException e) {
+            throw new OutboxUnavailableException("Failed to serialize outbox entry", e);
+        }
+
+        enqueue(write);
+        try {
+            write.durable.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OutboxUnavailableException("Interrupted while waiting for outbox write", e);
+        } catch (ExecutionException e) {
+            throw new OutboxUnavailableException("Failed to write outbox entry", e.getCause());
+        }
+        return entry.id();
+    }
+
+    /**
+     * Marks an entry as finished, whether it was sent or abandoned, so it is not replayed.
+     *
+     * @param entryId Entry ID returned by {@link #append}; ignored if null
+     */
+    public void complete(String entryId) {
+        if (entryId == null || !properties.enabled()) {
+            return;
+        }
+        Frame frame = openEntries.remove(entryId);
+        if (frame != null) {
+            enqueue(new PendingWrite(COMPLETED, entryId, entryId.getBytes(StandardCharsets.UTF_8), false,
+                    frame.length()));
+        }
+    }
+
+    /**
+     * Entries that were accepted but not completed before the last shutdown.
+     */
+    public List<OutboxEntry> recoveredEntries() {
+        return recovered;
+    }
+
+    /**
+     * Number of entries recorded but not yet completed.
+     */
+    public int openCount() {
+        return openEntries.size();
+    }
+
+    private void enqueue(PendingWrite write) {
+        if (!running) {
+            write.durable.completeExceptionally(new IOException("Outbox is closed"));
+            return;
+        }
+        writes.add(write);
+    }
+
+    /**
+     * Writer loop: drains all queued writes into one batch, writes them with a
+     * single channel write and fsyncs once if any of them needs durability.
+     */
+    private void writeLoop() {
+        List<PendingWrite> batch = new ArrayList<>(properties.maxBatchEntries());
+        while (running || !writes.isEmpty()) {
+            try {
+                PendingWrite first = writes.poll(500, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                writes.drainTo(batch, properties.maxBatchEntries() - 1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            try {
+                writeBatch(batch);
+                batch.forEach(write -> write.durable.complete(null));
+                if (segmentBytes >= properties.maxSegmentBytes() && liveBytes * 2 <= segmentBytes) {
+                    compact();
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.error("Outbox write of {} entries failed: {}", batch.size(), e.getMessage(), e);
+                batch.forEach(write -> write.durable.completeExceptionally(e));
+            }
+            batch.clear();
+        }
+    }
+
+    private void writeBatch(List<PendingWrite> batch) throws IOException {
+        int size = 0;
+        boolean sync = false;
+        for (PendingWrite write : batch) {
+            size += HEADER_BYTES + write.payload.length;
+            sync |= write.sync;
+        }
+
+        long offset = segmentBytes;
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (PendingWrite write : batch) {
+            putFrame(buffer, write.type, write.payload);
+        }
+        buffer.flip();
+        writeFully(buffer);
+        if (sync) {
+            segment.force(false);
+        }
+
+        for (PendingWrite write : batch) {
+            int length = HEADER_BYTES + write.payload.length;
+            if (write.type == ACCEPTED) {
+                openEntries.put(write.entryId, new Frame(segmentNumber, offset, length));
+                liveBytes += length;
+            } else {
+                liveBytes -= write.releasedBytes;
+            }
+            offset += length;
+        }
+    }
+
+    /**
+     * Starts a new segment containing copies of the frames of all open entries,
+     * then deletes all older segments. Runs on startup and on the writer thread.
+     *
+     * An entry completed while its frame is copied is carried forward too; its
+     * completion frame is written to the new segment after the copy.
+     */
+    private void compact() throws IOException {
+        FileChannel previous = segment;
+        long previousNumber = segmentNumber;
+        long nextNumber = previousNumber + 1;
+        FileChannel next = FileChannel.open(segmentPath(nextNumber),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        Map<Long, FileChannel> sources = new HashMap<>();
+        if (previous != null) {
+            sources.put(previousNumber, previous);
+        }
+        long position = 0;
+        int carried = 0;
+        try {
+            for (Map.Entry<String, Frame> entry : openEntries.entrySet()) {
+                Frame frame = entry.getValue();
+                FileChannel source = sources.get(frame.segment());
+                if (source == null) {
+                    source = FileChannel.open(segmentPath(frame.segment()), StandardOpenOption.READ);
+                    sources.put(frame.segment(), source);
+                }
+                long copied = 0;
+                while (copied < frame.length()) {
+                    copied += source.transferTo(frame.offset() + copied, frame.length() - copied, next);
+                }
+                openEntries.replace(entry.getKey(), frame, new Frame(nextNumber, position, frame.length()));
+                position += frame.length();
+                carried++;
+            }
+            next.force(true);
+        } catch (IOException | RuntimeException e) {
+            next.close();
+            Files.deleteIfExists(segmentPath(nextNumber));
+            throw e;
+        } finally {
+            for (FileChannel source : sources.values()) {
+                if (source != previous) {
+                    source.close();
+                }
+            }
+        }
+
+        segment = next;
+        segmentNumber = nextNumber;
+        segmentBytes = position;
+        if (previous != null) {
+            previous.close();
+        }
+        for (Path old : listSegments()) {
+            if (segmentNumber(old) < segmentNumber) {
+                Files.deleteIfExists(old);
+            }
+        }
+        logger.debug("Outbox compacted to segment {} carrying {} open entries ({} bytes)",
+                segmentNumber, carried, position);
+    }
+
+    /**
+     * Reads all segments and returns the entries that were never completed.
+     */
+    private List<OutboxEntry> recover() throws IOException {
+        Map<String, OutboxEntry> open = new LinkedHashMap<>();
+        for (Path path : listSegments()) {
+            segmentNumber = Math.max(segmentNumber, segmentNumber(path));
+            readSegment(path, open);
+        }
+        liveBytes = openEntries.values().stream().mapToLong(Frame::length).sum();
+        return List.copyOf(open.values());
+    }
+
+    private void readSegment(Path path, Map<String, OutboxEntry> open) throws IOException {
+        long number = segmentNumber(path);
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        while (buffer.remaining() >= HEADER_BYTES) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            byte type = buffer.get();
+            if (length < 0 || length > buffer.remaining()) {
+                logger.warn("Outbox segment {} has a truncated frame at offset {}, ignoring the rest", path, start);
+                return;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+            if (checksum(type, payload) != checksum) {
+                logger.warn("Outbox segment {} has a corrupt frame at offset {}, ignoring the rest", path, start);
+                return;
+            }
+
+            if (type == ACCEPTED) {
+                OutboxEntry entry = objectMapper.readValue(payload, OutboxEntry.class);
+                open.put(entry.id(), entry);
+                openEntries.put(entry.id(), new Frame(number, start, HEADER_BYTES + length));
+            } else if (type == COMPLETED) {
+                String id = new String(payload, StandardCharsets.UTF_8);
+                open.remove(id);
+                openEntries.remove(id);
+            }
+        }
+    }
+
+    private List<Path> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .filter(path -> {
+                        String name = path.getFileName().toString();
+                        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+                    })
+                    .sorted((a, b) -> Long.compare(segmentNumber(a), segmentNumber(b)))
+                    .toList();
+        }
+    }
+
+    private Path segmentPath(long number) {
+        return directory.resolve(String.format("%s%012d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    private static long segmentNumber(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            segmentBytes += segment.write(buffer);
+        }
+    }
+
+    private static void putFrame(ByteBuffer buffer, byte type, byte[] payload) {
+        buffer.putInt(payload.length);
+        buffer.putInt(checksum(type, payload));
+        buffer.put(type);
+        buffer.put(payload);
+    }
+
+    private static int checksum(byte type, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Stops the writer after it has flushed everything queued and closes the journal.
+     */
+    @PreDestroy
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            segment.force(true);
+            segment.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close outbox segment: {}", e.getMessage());
+        }
+        logger.info("Mail outbox closed ({} sends left unfinished)", openEntries.size());
+    }
+
+    /**
+     * Location of an open entry's frame in a segment.
+     */
+    private record Frame(long segment, long offset, int length) {
+    }
+
+    /**
+     * A frame waiting for the writer thread.
+     */
+    private static final class PendingWrite {
+        private final byte type;
+        private final String entryId;
+        private final byte[] payload;
+        private final boolean sync;
+        /**
+         * For a completion, the length of the completed entry's frame.
+         */
+        private final int releasedBytes;
+        private final CompletableFuture<Void> durable = new CompletableFuture<>();
+
+        private PendingWrite(byte type, String entryId, byte[] payload, boolean sync, int releasedBytes) {
+            this.type = type;
+            this.entryId = entryId;
+            this.payload = payload;
+            this.sync = sync;
+            this.releasedBytes = releasedBytes;
+        }
+    }
+}
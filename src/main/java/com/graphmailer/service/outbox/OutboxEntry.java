@@ -0,0 +1,22 @@
+package com.graphmailer.service.outbox;
+
+import com.graphmailer.model.SendMailRequest;
+
+import java.time.Instant;
+
+/**
+ * A send request recorded in the outbox journal.
+ *
+ * @param id            Journal entry ID
+ * @param trackingId    Dispatch tracking ID for sends accepted asynchronously, otherwise null
+ * @param correlationId Correlation ID of the accepting request
+ * @param acceptedAt    Time the send was accepted
+ * @param request       The send request
+ */
+public record OutboxEntry(
+        String id,
+        String trackingId,
+        String correlationId,
+        Instant acceptedAt,
+        SendMailRequest request
+) {}
@@ -0,0 +1,11 @@
+package com.graphmailer.service.outbox;
+
+/**
+ * Exception raised when a send cannot be recorded durably in the outbox journal.
+ */
+public class OutboxUnavailableException extends RuntimeException {
+
+    public OutboxUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,74 @@
+package com.graphmailer.service.ratelimit;
+
+import io.github.bucket4j.distributed.proxy.ClientSideConfig;
+import io.github.bucket4j.distributed.proxy.generic.compare_and_swap.AbstractCompareAndSwapBasedProxyManager;
+import io.github.bucket4j.distributed.proxy.generic.compare_and_swap.AsyncCompareAndSwapOperation;
+import io.github.bucket4j.distributed.proxy.generic.compare_and_swap.CompareAndSwapOperation;
+import io.github.bucket4j.distributed.remote.RemoteBucketState;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Bucket store held in this process.
+ *
+ * Buckets go through the same serialized compare-and-swap protocol as a
+ * remote store, so several limiters sharing one instance behave like
+ * replicas sharing a database. Used by tests and single-instance runs.
+ */
+public class InMemoryProxyManager extends AbstractCompareAndSwapBasedProxyManager<String> {
+
+    private final ConcurrentMap<String, byte[]> states = new ConcurrentHashMap<>();
+
+    public InMemoryProxyManager() {
+        super(ClientSideConfig.getDefault());
+    }
+
+    @Override
+    protected CompareAndSwapOperation beginCompareAndSwapOperation(String key) {
+        return new CompareAndSwapOperation() {
+            @Override
+            public Optional<byte[]> getStateData() {
+                return Optional.ofNullable(states.get(key));
+            }
+
+            @Override
+            public boolean compareAndSwap(byte[] originalData, byte[] newData, RemoteBucketState newState) {
+                // Arrays compare by identity, so the swap only succeeds on the exact state read
+                return originalData == null
+                        ? states.putIfAbsent(key, newData) == null
+                        : states.replace(key, originalData, newData);
+            }
+        };
+    }
+
+    @Override
+    protected AsyncCompareAndSwapOperation beginAsyncCompareAndSwapOperation(String key) {
+        throw new UnsupportedOperationException("Asynchronous buckets are not supported");
+    }
+
+    @Override
+    public void removeProxy(String key) {
+        states.remove(key);
+    }
+
+    @Override
+    protected CompletableFuture<Void> removeAsync(String key) {
+        removeProxy(key);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public boolean isAsyncModeSupported() {
+        return false;
+    }
+
+    /**
+     * Number of buckets in the store.
+     */
+    public int size() {
+        return states.size();
+    }
+}
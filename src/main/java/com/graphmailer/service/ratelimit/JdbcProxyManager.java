@@ -0,0 +1,161 @@
+package com.graphmailer.service.ratelimit;
+
+import io.github.bucket4j.distributed.proxy.ClientSideConfig;
+import io.github.bucket4j.distributed.proxy.generic.select_for_update.AbstractSelectForUpdateBasedProxyManager;
+import io.github.bucket4j.distributed.proxy.generic.select_for_update.LockAndGetResult;
+import io.github.bucket4j.distributed.proxy.generic.select_for_update.SelectForUpdateBasedTransaction;
+import io.github.bucket4j.distributed.remote.RemoteBucketState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Bucket store in a database table shared by all replicas.
+ *
+ * Each bucket is one row, locked with {@code SELECT ... FOR UPDATE} while a
+ * request updates it. The table is expected to exist:
+ *
+ * <pre>
+ * CREATE TABLE rate_limit_buckets (id VARCHAR(512) PRIMARY KEY, state BYTEA);
+ * </pre>
+ *
+ * ({@code BLOB} or {@code VARBINARY} instead of {@code BYTEA} outside PostgreSQL).
+ */
+public class JdbcProxyManager extends AbstractSelectForUpdateBasedProxyManager<String> {
+
+    private static final Logger logger = LoggerFactory.getLogger(JdbcProxyManager.class);
+
+    /**
+     * Source of database connections.
+     */
+    @FunctionalInterface
+    public interface ConnectionSource {
+        Connection getConnection() throws SQLException;
+    }
+
+    private final ConnectionSource connections;
+    private final String selectForUpdateSql;
+    private final String insertSql;
+    private final String updateSql;
+    private final String deleteSql;
+
+    public JdbcProxyManager(ConnectionSource connections, String table) {
+        super(ClientSideConfig.getDefault());
+        this.connections = connections;
+        this.selectForUpdateSql = "SELECT state FROM " + table + " WHERE id = ? FOR UPDATE";
+        this.insertSql = "INSERT INTO " + table + " (id, state) VALUES (?, NULL)";
+        this.updateSql = "UPDATE " + table + " SET state = ? WHERE id = ?";
+        this.deleteSql = "DELETE FROM " + table + " WHERE id = ?";
+    }
+
+    @Override
+    protected SelectForUpdateBasedTransaction allocateTransaction(String key) {
+        return new JdbcTransaction(key);
+    }
+
+    @Override
+    public void removeProxy(String key) {
+        try (Connection connection = connections.getConnection();
+             PreparedStatement statement = connection.prepareStatement(deleteSql)) {
+            statement.setString(1, key);
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to remove rate limit bucket: " + key, e);
+        }
+    }
+
+    /**
+     * One bucket update, run in its own database transaction.
+     */
+    private final class JdbcTransaction implements SelectForUpdateBasedTransaction {
+
+        private final String key;
+        private Connection connection;
+
+        private JdbcTransaction(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public void begin() {
+            try {
+                connection = connections.getConnection();
+                connection.setAutoCommit(false);
+            } catch (SQLException e) {
+                throw new IllegalStateException("Failed to open rate limit store transaction", e);
+            }
+        }
+
+        @Override
+        public LockAndGetResult tryLockAndGet() {
+            try (PreparedStatement statement = connection.prepareStatement(selectForUpdateSql)) {
+                statement.setString(1, key);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    return resultSet.next() ? LockAndGetResult.locked(resultSet.getBytes(1)) : LockAndGetResult.notLocked();
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException("Failed to lock rate limit bucket: " + key, e);
+            }
+        }
+
+        @Override
+        public boolean tryInsertEmptyData() {
+            try (PreparedStatement statement = connection.prepareStatement(insertSql)) {
+                statement.setString(1, key);
+                return statement.executeUpdate() > 0;
+            } catch (SQLException e) {
+                // Another replica inserted the row first; the caller retries with a new transaction
+                logger.debug("Rate limit bucket: {} not inserted: {}", key, e.getMessage());
+                return false;
+            }
+        }
+
+        @Override
+        public void update(byte[] data, RemoteBucketState newState) {
+            try (PreparedStatement statement = connection.prepareStatement(updateSql)) {
+                statement.setBytes(1, data);
+                statement.setString(2, key);
+                statement.executeUpdate();
+            } catch (SQLException e) {
+                throw new IllegalStateException("Failed to update rate limit bucket: " + key, e);
+            }
+        }
+
+        @Override
+        public void commit() {
+            try {
+                connection.commit();
+            } catch (SQLException e) {
+                throw new IllegalStateException("Failed to commit rate limit bucket: " + key, e);
+            }
+        }
+
+        @Override
+        public void rollback() {
+            if (connection == null) {
+                return;
+            }
+            try {
+                connection.rollback();
+            } catch (SQLException e) {
+                logger.debug("Rollback of rate limit bucket: {} failed: {}", key, e.getMessage());
+            }
+        }
+
+        @Override
+        public void release() {
+            if (connection == null) {
+                return;
+            }
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                logger.debug("Closing rate limit store connection failed: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.graphmailer.service.ratelimit;
+
+import com.graphmailer.security.ApiKeyAuthenticationFilter;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+/**
+ * Identity a request is rate limited under.
+ *
+ * Authenticated requests are keyed by their principal: for a JWT the tenant
+ * ({@code tid} claim) and subject, otherwise the authenticated name. The
+ * single configured API key is shared by all its callers, so they are keyed
+ * by the connection's remote address, like unauthenticated requests;
+ * forwarding headers are not used, as clients can set them freely.
+ *
+ * @param key    Bucket key, e.g. {@code jwt:<tenant>/<subject>} or {@code api-key:<address>}
+ * @param tenant Tenant ID, or null if the principal has none
+ */
+public record RateLimitPrincipal(String key, String tenant) {
+
+    private static final String TENANT_CLAIM = "tid";
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    public static RateLimitPrincipal of(Authentication authentication, HttpServletRequest request) {
+        if (authentication == null || !authentication.isAuthenticated()
+                || authentication instanceof AnonymousAuthenticationToken) {
+            return new RateLimitPrincipal("ip:" + request.getRemoteAddr(), null);
+        }
+        if (authentication.getPrincipal() instanceof Jwt jwt) {
+            String tenant = jwt.getClaimAsString(TENANT_CLAIM);
+            return new RateLimitPrincipal("jwt:" + (tenant != null ? tenant + "/" : "") + jwt.getSubject(), tenant);
+        }
+        if (isSharedApiKey(authentication)) {
+            return new RateLimitPrincipal("api-key:" + request.getRemoteAddr(), null);
+        }
+        return new RateLimitPrincipal("principal:" + authentication.getName(), null);
+    }
+
+    /**
+     * 64-bit hash of the key of the request's principal, computed without
+     * building the key. Equal to {@link #fingerprint()} of
+     * {@link #of(Authentication, HttpServletRequest)}.
+     */
+    static long fingerprint(Authentication authentication, HttpServletRequest request) {
+        if (authentication == null || !authentication.isAuthenticated()
+                || authentication instanceof AnonymousAuthenticationToken) {
+            return finish(hash(hash(FNV_OFFSET, "ip:"), request.getRemoteAddr()));
+        }
+        if (authentication.getPrincipal() instanceof Jwt jwt) {
+            long hash = hash(FNV_OFFSET, "jwt:");
+            String tenant = jwt.getClaimAsString(TENANT_CLAIM);
+            if (tenant != null) {
+                hash = hash(hash(hash, tenant), "/");
+            }
+            return finish(hash(hash, jwt.getSubject()));
+        }
+        if (isSharedApiKey(authentication)) {
+            return finish(hash(hash(FNV_OFFSET, "api-key:"), request.getRemoteAddr()));
+        }
+        return finish(hash(hash(FNV_OFFSET, "principal:"), authentication.getName()));
+    }
+
+    private static boolean isSharedApiKey(Authentication authentication) {
+        return ApiKeyAuthenticationFilter.API_KEY_PRINCIPAL.equals(authentication.getName());
+    }
+
+    /**
+     * 64-bit hash of the key.
+     */
+    long fingerprint() {
+        return finish(hash(FNV_OFFSET, key));
+    }
+
+    private static long hash(long hash, String value) {
+        String chars = String.valueOf(value);
+        for (int i = 0; i < chars.length(); i++) {
+            hash = (hash ^ chars.charAt(i)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static long finish(long hash) {
+        // Spreads FNV's weak low bits, which pick the table slot
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,317 @@
+package com.graphmailer.service.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.graphmailer.config.RateLimitProperties;
+import com.graphmailer.model.SendMailRequest;
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.Refill;
+import io.github.bucket4j.distributed.proxy.ProxyManager;
+import io.github.bucket4j.distributed.proxy.optimization.DelayParameters;
+import io.github.bucket4j.distributed.proxy.optimization.Optimization;
+import io.github.bucket4j.distributed.proxy.optimization.Optimizations;
+import io.github.bucket4j.local.LocalBucketBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Per-principal request rate limiter.
+ *
+ * Each principal has a read bucket, charged one token per request, and a
+ * send bucket, charged by {@link #sendCost(SendMailRequest)} and limited per
+ * period and per day. A request costing more than a bucket can hold is
+ * charged the bucket's capacity, so it passes once the bucket is full.
+ *
+ * Read buckets of a single replica live in a {@link TokenBucketTable}: a
+ * fixed table of at most {@code rate-limit.max-principals} buckets that
+ * requests update without locks or allocation. Send buckets, with two
+ * limits each, limits the table cannot represent, and buckets of a shared
+ * store go through Bucket4j.
+ *
+ * Bucket4j buckets are held in a bounded registry: at most
+ * {@code rate-limit.max-principals} buckets are kept, evicted by frequency
+ * and recency, and a bucket unused for {@code rate-limit.idle-timeout} is
+ * dropped. A dropped bucket would have refilled by the time it is recreated,
+ * as the idle timeout of a bucket is never shorter than its longest limit
+ * period.
+ *
+ * The registry is published as {@code cache.*} metrics tagged
+ * {@code cache=rate-limit}, buckets replaced in the table as
+ * {@code rate.limit.table.evictions}, and the approximate heap use of both
+ * as {@code rate.limit.registry.bytes}.
+ *
+ * When a shared bucket store is configured the registry holds proxies of
+ * the shared buckets, which consume tokens locally in batches of
+ * {@code rate-limit.distributed.sync-tokens} between store updates. If the
+ * store cannot be reached the request is let through and counted in
+ * {@code rate.limit.store.errors}, so an outage of the store does not
+ * take the API down with it.
+ */
+@Component
+public class RateLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(RateLimiter.class);
+
+    private static final String CACHE_NAME = "rate-limit";
+
+    private static final String SEND_PREFIX = "send/";
+    private static final Duration DAY = Duration.ofDays(1);
+
+    /**
+     * Bucket a request is charged to.
+     */
+    public enum Lane {
+        READ,
+        SEND
+    }
+
+    /** Approximate heap use of one registry entry: key, bucket state and cache node. */
+    static final long ESTIMATED_ENTRY_BYTES = 320;
+
+    private final RateLimitProperties properties;
+    private final Cache<String, Bucket> buckets;
+    private final TokenBucketTable readBuckets;
+    private final ProxyManager<String> store;
+    private final Optimization storeOptimization;
+    private final Counter storeErrors;
+
+    public RateLimiter(RateLimitProperties properties, MeterRegistry meterRegistry,
+                       Optional<ProxyManager<String>> store) {
+        this.properties = properties;
+        this.store = store.orElse(null);
+        RateLimitProperties.Distributed distributed = properties.distributed();
+        this.storeOptimization = distributed.syncTokens() > 0
+                ? Optimizations.delaying(new DelayParameters(distributed.syncTokens(), distributed.syncInterval()))
+                : Optimizations.batching();
+        Duration readIdleTimeout = readIdleTimeout(properties);
+        Duration sendIdleTimeout = sendIdleTimeout(properties);
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(properties.maxPrincipals())
+                .expireAfter(idleExpiry(readIdleTimeout.toNanos(), sendIdleTimeout.toNanos()))
+                .recordStats()
+                .build();
+        this.readBuckets = this.store == null ? new TokenBucketTable(properties.maxPrincipals()) : null;
+        CaffeineCacheMetrics.monitor(meterRegistry, buckets, CACHE_NAME);
+        Gauge.builder("rate.limit.registry.bytes", this, RateLimiter::registryBytes)
+                .description("Approximate heap used by rate limit buckets")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        if (readBuckets != null) {
+            FunctionCounter.builder("rate.limit.table.evictions", readBuckets, TokenBucketTable::evictions)
+                    .description("Read buckets replaced by other principals' buckets")
+                    .register(meterRegistry);
+        }
+        this.storeErrors = Counter.builder("rate.limit.store.errors")
+                .description("Requests let through because the shared bucket store failed")
+                .register(meterRegistry);
+
+        if (this.store != null) {
+            logger.info("Rate limit buckets shared by all replicas ({} backend, sync every {} tokens or {})",
+                    distributed.backend(), distributed.syncTokens(), distributed.syncInterval());
+        }
+        RateLimitProperties.Send send = properties.send();
+        logger.info("Rate limiting {} reads per {} and {} send tokens per {} ({} per day) per principal "
+                        + "(overrides: {}, max principals: {}, idle timeout: {})",
+                properties.capacity(), properties.period(), send.capacity(), send.period(), send.dailyCapacity(),
+                properties.overrides().size() + send.overrides().size(), properties.maxPrincipals(), readIdleTimeout);
+    }
+
+    /**
+     * Takes one request from the read bucket of the request's principal.
+     *
+     * @return whether the request is within its principal's limit
+     */
+    public boolean tryConsume(HttpServletRequest request) {
+        return tryConsume(principalOf(request), Lane.READ, 1);
+    }
+
+    /**
+     * Takes tokens from a bucket of the request's principal.
+     *
+     * @return whether the request is within its principal's limit
+     */
+    public boolean tryConsume(HttpServletRequest request, Lane lane, long tokens) {
+        if (lane == Lane.READ && readBuckets != null) {
+            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+            long fingerprint = RateLimitPrincipal.fingerprint(authentication, request);
+            int result = readBuckets.tryConsume(fingerprint, Math.max(1, tokens));
+            if (result != TokenBucketTable.ABSENT) {
+                return result == TokenBucketTable.CONSUMED;
+            }
+            return consumeNewRead(RateLimitPrincipal.of(authentication, request), fingerprint, tokens);
+        }
+        return tryConsume(principalOf(request), lane, tokens);
+    }
+
+    public boolean tryConsume(RateLimitPrincipal principal) {
+        return tryConsume(principal, Lane.READ, 1);
+    }
+
+    public boolean tryConsume(RateLimitPrincipal principal, Lane lane, long tokens) {
+        if (lane == Lane.READ && readBuckets != null) {
+            long fingerprint = principal.fingerprint();
+            int result = readBuckets.tryConsume(fingerprint, Math.max(1, tokens));
+            if (result != TokenBucketTable.ABSENT) {
+                return result == TokenBucketTable.CONSUMED;
+            }
+            return consumeNewRead(principal, fingerprint, tokens);
+        }
+        return consumeBucket(principal, lane, tokens);
+    }
+
+    /**
+     * Adds the read bucket of a principal to the table, or to the Bucket4j
+     * registry if the table cannot represent its limit.
+     */
+    private boolean consumeNewRead(RateLimitPrincipal principal, long fingerprint, long tokens) {
+        RateLimitProperties.Limit limit = properties.limitFor(principal.key(), principal.tenant());
+        long periodMillis = limit.period().toMillis();
+        if (!TokenBucketTable.supports(limit.capacity(), periodMillis)) {
+            return consumeBucket(principal, Lane.READ, tokens);
+        }
+        return readBuckets.insertAndConsume(fingerprint, limit.capacity(), periodMillis, Math.max(1, tokens))
+                == TokenBucketTable.CONSUMED;
+    }
+
+    private boolean consumeBucket(RateLimitPrincipal principal, Lane lane, long tokens) {
+        String bucketKey = lane == Lane.SEND ? SEND_PREFIX + principal.key() : principal.key();
+        Bucket bucket = buckets.get(bucketKey, key -> newBucket(key, principal, lane));
+        long charged = Math.max(1, Math.min(tokens, maxCost(principal, lane)));
+        if (store == null) {
+            return bucket.tryConsume(charged);
+        }
+        try {
+            return bucket.tryConsume(charged);
+        } catch (RuntimeException e) {
+            storeErrors.increment();
+            logger.warn("Rate limit store failed for principal: {}, allowing request: {}", principal.key(), e.getMessage());
+            return true;
+        }
+    }
+
+    /**
+     * Send tokens a message costs: one per recipient plus one per started
+     * {@code rate-limit.send.bytes-per-token} of body and attachments.
+     *
+     * @throws IllegalArgumentException if an attachment is not valid base64
+     */
+    public long sendCost(SendMailRequest request) {
+        long bytesPerToken = properties.send().bytesPerToken().toBytes();
+        long payloadTokens = (request.payloadSize() + bytesPerToken - 1) / bytesPerToken;
+        return Math.max(1, request.recipientCount() + payloadTokens);
+    }
+
+    /**
+     * Principal the request is rate limited under.
+     */
+    public RateLimitPrincipal principalOf(HttpServletRequest request) {
+        return RateLimitPrincipal.of(SecurityContextHolder.getContext().getAuthentication(), request);
+    }
+
+    /**
+     * Number of principals with a bucket.
+     */
+    public long principalCount() {
+        buckets.cleanUp();
+        return buckets.estimatedSize() + (readBuckets != null ? readBuckets.size() : 0);
+    }
+
+    private double registryBytes() {
+        return buckets.estimatedSize() * ESTIMATED_ENTRY_BYTES + (readBuckets != null ? readBuckets.memoryBytes() : 0);
+    }
+
+    private long maxCost(RateLimitPrincipal principal, Lane lane) {
+        if (lane == Lane.READ) {
+            return properties.limitFor(principal.key(), principal.tenant()).capacity();
+        }
+        RateLimitProperties.Send send = properties.send();
+        return Math.min(send.limitFor(principal.key(), principal.tenant()).capacity(), send.dailyCapacity());
+    }
+
+    private Bucket newBucket(String bucketKey, RateLimitPrincipal principal, Lane lane) {
+        BucketConfiguration configuration = lane == Lane.READ ? readConfiguration(principal) : sendConfiguration(principal);
+        if (store == null) {
+            LocalBucketBuilder builder = Bucket.builder();
+            for (Bandwidth bandwidth : configuration.getBandwidths()) {
+                builder.addLimit(bandwidth);
+            }
+            return builder.build();
+        }
+        return store.builder()
+                .withOptimization(storeOptimization)
+                .build(bucketKey, () -> configuration);
+    }
+
+    private BucketConfiguration readConfiguration(RateLimitPrincipal principal) {
+        RateLimitProperties.Limit limit = properties.limitFor(principal.key(), principal.tenant());
+        return BucketConfiguration.builder()
+                .addLimit(Bandwidth.classic(limit.capacity(), Refill.intervally(limit.capacity(), limit.period())))
+                .build();
+    }
+
+    private BucketConfiguration sendConfiguration(RateLimitPrincipal principal) {
+        RateLimitProperties.Send send = properties.send();
+        RateLimitProperties.Limit limit = send.limitFor(principal.key(), principal.tenant());
+        return BucketConfiguration.builder()
+                .addLimit(Bandwidth.classic(limit.capacity(), Refill.intervally(limit.capacity(), limit.period())))
+                .addLimit(Bandwidth.classic(send.dailyCapacity(), Refill.intervally(send.dailyCapacity(), DAY)))
+                .build();
+    }
+
+    /**
+     * Expires buckets after their lane's idle timeout, counted from their last use.
+     */
+    private static Expiry<String, Bucket> idleExpiry(long readIdleNanos, long sendIdleNanos) {
+        return new Expiry<>() {
+            @Override
+            public long expireAfterCreate(String key, Bucket bucket, long currentTime) {
+                return key.startsWith(SEND_PREFIX) ? sendIdleNanos : readIdleNanos;
+            }
+
+            @Override
+            public long expireAfterUpdate(String key, Bucket bucket, long currentTime, long currentDuration) {
+                return expireAfterCreate(key, bucket, currentTime);
+            }
+
+            @Override
+            public long expireAfterRead(String key, Bucket bucket, long currentTime, long currentDuration) {
+                return expireAfterCreate(key, bucket, currentTime);
+            }
+        };
+    }
+
+    private static Duration readIdleTimeout(RateLimitProperties properties) {
+        return longest(properties.idleTimeout(), properties.period(), properties.overrides());
+    }
+
+    private static Duration sendIdleTimeout(RateLimitProperties properties) {
+        RateLimitProperties.Send send = properties.send();
+        return longest(longest(properties.idleTimeout(), send.period(), send.overrides()), DAY, Map.of());
+    }
+
+    private static Duration longest(Duration idleTimeout, Duration period, Map<String, RateLimitProperties.Limit> overrides) {
+        Duration longest = period.compareTo(idleTimeout) > 0 ? period : idleTimeout;
+        for (RateLimitProperties.Limit limit : overrides.values()) {
+            if (limit.period().compareTo(longest) > 0) {
+                longest = limit.period();
+            }
+        }
+        return longest;
+    }
+}
@@ -0,0 +1,254 @@
+package com.graphmailer.service.ratelimit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-size table of single-limit token buckets, keyed by principal fingerprint.
+ *
+ * The table is open-addressed: a bucket lives in one of {@link #PROBES} slots
+ * after its fingerprint's home slot. A bucket's state is one long, holding
+ * the available tokens and the time of the last refill, and requests update
+ * it with a compare-and-swap, so consuming takes no lock and allocates
+ * nothing. Like Bucket4j's intervally refill, the full capacity is restored
+ * once per period.
+ *
+ * Inserts hold the lock of the fingerprint's home stripe, so one fingerprint
+ * is never inserted twice. When all slots of a probe window are taken, the
+ * insert replaces the bucket that refilled longest ago. A bucket whose period
+ * has passed since its last refill is full, so replacing it loses nothing.
+ * A request racing with the replacement of its bucket may take a token from
+ * the new bucket; it gives the token back and retries.
+ */
+final class TokenBucketTable {
+
+    static final int CONSUMED = 1;
+    static final int REJECTED = 0;
+    static final int ABSENT = -1;
+
+    /** Largest capacity a bucket can have. */
+    static final long MAX_CAPACITY = (1L << 23) - 1;
+    /** Longest period a bucket can have, in milliseconds. */
+    static final long MAX_PERIOD_MILLIS = 1L << 36;
+
+    /** Heap used by one slot: fingerprint, state, capacity and period. */
+    static final long SLOT_BYTES = 4 * Long.BYTES;
+
+    private static final int TIME_BITS = 40;
+    private static final long TIME_MASK = (1L << TIME_BITS) - 1;
+    private static final int PROBES = 16;
+    private static final int STRIPES = 64;
+
+    /** Fingerprint of a slot being filled; never a real fingerprint. */
+    private static final long CLAIMING = -1;
+
+    private final int mask;
+    private final int probes;
+    private final AtomicLongArray fingerprints;
+    private final AtomicLongArray states;
+    private final long[] capacities;
+    private final long[] periods;
+    private final Object[] stripes;
+    private final AtomicInteger size = new AtomicInteger();
+    private final LongAdder evictions = new LongAdder();
+    private final long originNanos = System.nanoTime();
+
+    /**
+     * @param maxBuckets Most buckets held; rounded down to a power of two
+     */
+    TokenBucketTable(int maxBuckets) {
+        int slots = Integer.highestOneBit(Math.max(1, maxBuckets));
+        this.mask = slots - 1;
+        this.probes = Math.min(PROBES, slots);
+        this.fingerprints = new AtomicLongArray(slots);
+        this.states = new AtomicLongArray(slots);
+        this.capacities = new long[slots];
+        this.periods = new long[slots];
+        this.stripes = new Object[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+    }
+
+    /**
+     * Whether a limit fits a bucket of this table.
+     */
+    static boolean supports(long capacity, long periodMillis) {
+        return capacity <= MAX_CAPACITY && periodMillis > 0 && periodMillis <= MAX_PERIOD_MILLIS;
+    }
+
+    /**
+     * Takes tokens from the bucket of a fingerprint. More tokens than the
+     * bucket's capacity are taken as the full capacity.
+     *
+     * @return {@link #CONSUMED}, {@link #REJECTED}, or {@link #ABSENT} if the fingerprint has no bucket
+     */
+    int tryConsume(long fingerprint, long tokens) {
+        long key = normalize(fingerprint);
+        long now = now();
+        int home = home(key);
+        for (int probe = 0; probe < probes; probe++) {
+            int slot = (home + probe) & mask;
+            long current = fingerprints.get(slot);
+            if (current == key) {
+                return consume(slot, key, tokens, now);
+            }
+            if (current == 0) {
+                return ABSENT;
+            }
+        }
+        return ABSENT;
+    }
+
+    /**
+     * Adds the bucket of a fingerprint, unless another request added it first,
+     * and takes tokens from it.
+     *
+     * @return {@link #CONSUMED} or {@link #REJECTED}
+     */
+    int insertAndConsume(long fingerprint, long capacity, long periodMillis, long tokens) {
+        long key = normalize(fingerprint);
+        int home = home(key);
+        synchronized (stripes[home & (STRIPES - 1)]) {
+            while (true) {
+                long now = now();
+                int found = -1;
+                int free = -1;
+                int victim = -1;
+                long victimRefill = Long.MAX_VALUE;
+                for (int probe = 0; probe < probes; probe++) {
+                    int slot = (home + probe) & mask;
+                    long current = fingerprints.get(slot);
+                    if (current == key) {
+                        found = slot;
+                        break;
+                    }
+                    if (current == 0) {
+                        free = slot;
+                        break;
+                    }
+                    if (current != CLAIMING) {
+                        long state = states.get(slot);
+                        long lastRefill = state & TIME_MASK;
+                        // Full buckets go first, then the one that refilled longest ago
+                        long refill = now - lastRefill >= periods[slot] ? Long.MIN_VALUE : lastRefill;
+                        if (refill < victimRefill) {
+                            victim = slot;
+                            victimRefill = refill;
+                        }
+                    }
+                }
+
+                int slot;
+                if (found >= 0) {
+                    int result = consume(found, key, tokens, now);
+                    if (result != ABSENT) {
+                        return result;
+                    }
+                    continue;
+                } else if (free >= 0) {
+                    slot = free;
+                    if (!fingerprints.compareAndSet(slot, 0, CLAIMING)) {
+                        continue;
+                    }
+                    size.incrementAndGet();
+                } else if (victim >= 0) {
+                    slot = victim;
+                    long evicted = fingerprints.get(slot);
+                    if (evicted == CLAIMING || !fingerprints.compareAndSet(slot, evicted, CLAIMING)) {
+                        continue;
+                    }
+                    evictions.increment();
+                } else {
+                    // Every slot of the window is being filled by other inserts
+                    Thread.onSpinWait();
+                    continue;
+                }
+
+                long charged = Math.min(tokens, capacity);
+                capacities[slot] = capacity;
+                periods[slot] = periodMillis;
+                states.set(slot, pack(capacity - charged, now));
+                fingerprints.set(slot, key);
+                return CONSUMED;
+            }
+        }
+    }
+
+    /**
+     * Number of buckets held.
+     */
+    int size() {
+        return size.get();
+    }
+
+    /**
+     * Number of buckets replaced by other principals' buckets.
+     */
+    long evictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Heap held by the table, independent of how many buckets it holds.
+     */
+    long memoryBytes() {
+        return (mask + 1L) * SLOT_BYTES;
+    }
+
+    private int consume(int slot, long key, long tokens, long now) {
+        // Written before the fingerprint was published, so they belong to it
+        long capacity = capacities[slot];
+        long period = periods[slot];
+        long charged = Math.min(tokens, capacity);
+        while (true) {
+            long state = states.get(slot);
+            long available = state >>> TIME_BITS;
+            long lastRefill = state & TIME_MASK;
+            if (now - lastRefill >= period) {
+                available = capacity;
+                lastRefill += (now - lastRefill) / period * period;
+            }
+            if (available < charged) {
+                return fingerprints.get(slot) == key ? REJECTED : ABSENT;
+            }
+            if (states.compareAndSet(slot, state, pack(available - charged, lastRefill))) {
+                break;
+            }
+        }
+        if (fingerprints.get(slot) != key) {
+            // The bucket was replaced while consuming: return the tokens to its new owner
+            refund(slot, charged);
+            return ABSENT;
+        }
+        return CONSUMED;
+    }
+
+    private void refund(int slot, long tokens) {
+        long capacity = capacities[slot];
+        while (true) {
+            long state = states.get(slot);
+            long available = Math.min(capacity, (state >>> TIME_BITS) + tokens);
+            if (states.compareAndSet(slot, state, pack(available, state & TIME_MASK))) {
+                return;
+            }
+        }
+    }
+
+    private int home(long key) {
+        return (int) (key ^ (key >>> 32)) & mask;
+    }
+
+    private long now() {
+        return (System.nanoTime() - originNanos) / 1_000_000;
+    }
+
+    private static long pack(long tokens, long lastRefill) {
+        return tokens << TIME_BITS | (lastRefill & TIME_MASK);
+    }
+
+    private static long normalize(long fingerprint) {
+        return fingerprint == 0 || fingerprint == CLAIMING ? 1 : fingerprint;
+    }
+}
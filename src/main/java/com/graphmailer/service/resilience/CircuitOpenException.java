@@ -0,0 +1,39 @@
+package com.graphmailer.service.resilience;
+
+import com.graphmailer.service.GraphMailException;
+
+import java.time.Duration;
+
+/**
+ * Exception raised when a Graph call is rejected because the circuit breaker is open.
+ *
+ * No request was made to Graph. Callers should report the service as
+ * temporarily unavailable rather than retrying immediately.
+ */
+public class CircuitOpenException extends GraphMailException {
+
+    private final Duration retryAfter;
+
+    public CircuitOpenException(Duration retryAfter) {
+        this("Microsoft Graph is temporarily unavailable (circuit breaker open)", retryAfter);
+    }
+
+    protected CircuitOpenException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Time until the breaker next lets probe calls through.
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * Retry-After header value in whole seconds, at least one.
+     */
+    public long getRetryAfterSeconds() {
+        return Math.max(1, (retryAfter.toMillis() + 999) / 1000);
+    }
+}
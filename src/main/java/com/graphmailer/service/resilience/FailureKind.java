@@ -0,0 +1,26 @@
+package com.graphmailer.service.resilience;
+
+/**
+ * Classification of a failed Microsoft Graph call for retry purposes.
+ */
+public enum FailureKind {
+
+    /**
+     * Client errors and business rule violations that will fail again if retried.
+     */
+    NON_RETRYABLE,
+
+    /**
+     * Graph asked the caller to slow down (429, or 503 with Retry-After).
+     */
+    THROTTLED,
+
+    /**
+     * Server-side or network failures that are likely to succeed on a later attempt.
+     */
+    TRANSIENT;
+
+    public boolean isRetryable() {
+        return this != NON_RETRYABLE;
+    }
+}
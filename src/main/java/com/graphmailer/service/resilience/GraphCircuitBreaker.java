@@ -0,0 +1,300 @@
+package com.graphmailer.service.resilience;
+
+import com.graphmailer.config.CircuitBreakerProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Circuit breaker guarding all Microsoft Graph calls.
+ *
+ * While closed, the outcome of the most recent calls is kept in a count-based
+ * sliding window. Transient failures (5xx, I/O) and calls slower than
+ * {@code circuit-breaker.slow-call-duration} are counted against Graph; client
+ * errors and throttling are not, as they say nothing about Graph's health.
+ * Once enough calls were recorded and either rate crosses its threshold the
+ * breaker opens and rejects calls with a {@link CircuitOpenException}. After
+ * the open duration a limited number of probe calls are let through; if they
+ * all succeed the breaker closes again, otherwise it re-opens.
+ *
+ * State and outcomes are published as Micrometer metrics
+ * ({@code graph.circuit.state}, {@code graph.circuit.calls},
+ * {@code graph.circuit.transitions}).
+ */
+@Component
+public class GraphCircuitBreaker {
+
+    private static final Logger logger = LoggerFactory.getLogger(GraphCircuitBreaker.class);
+
+    /**
+     * Breaker states.
+     */
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final CircuitBreakerProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final boolean[] failedCalls;
+    private final boolean[] slowCalls;
+    private int windowIndex;
+    private int recordedCalls;
+    private int failureCount;
+    private int slowCount;
+
+    private volatile State state = State.CLOSED;
+    private long openedAtNanos;
+    private int probesInFlight;
+    private int probeSuccesses;
+
+    private final Counter successCalls;
+    private final Counter failedCallsCounter;
+    private final Counter slowCallsCounter;
+    private final Counter rejectedCalls;
+
+    public GraphCircuitBreaker(CircuitBreakerProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.failedCalls = new boolean[properties.slidingWindowSize()];
+        this.slowCalls = new boolean[properties.slidingWindowSize()];
+
+        for (State gaugeState : State.values()) {
+            Gauge.builder("graph.circuit.state", () -> state == gaugeState ? 1 : 0)
+                    .description("Whether the Graph circuit breaker is in the tagged state")
+                    .tag("state", tagValue(gaugeState))
+                    .register(meterRegistry);
+        }
+        this.successCalls = callCounter("success");
+        this.failedCallsCounter = callCounter("failure");
+        this.slowCallsCounter = callCounter("slow");
+        this.rejectedCalls = callCounter("rejected");
+
+        logger.info("Graph circuit breaker initialized (enabled: {}, failureRateThreshold: {}%, openDuration: {})",
+                properties.enabled(), properties.failureRateThreshold(), properties.openDuration());
+    }
+
+    /**
+     * Current breaker state.
+     */
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Runs an asynchronous Graph call through the breaker.
+     *
+     * @param call Starts the Graph call
+     * @return Future of the call, or one failed with {@link CircuitOpenException}
+     *         if the breaker rejected it
+     */
+    public <T> CompletableFuture<T> execute(Supplier<CompletableFuture<T>> call) {
+        if (!properties.enabled()) {
+            return call.get();
+        }
+        boolean probe;
+        try {
+            probe = acquirePermission();
+        } catch (CircuitOpenException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        long startNanos = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (Exception e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        return future.whenComplete((value, error) -> onComplete(probe, startNanos, error));
+    }
+
+    /**
+     * Runs a blocking Graph call through the breaker.
+     *
+     * @param call The blocking Graph call
+     * @return Result of the call
+     * @throws CircuitOpenException if the breaker rejected the call
+     * @throws Exception            the call's own failure
+     */
+    public <T> T call(Callable<T> call) throws Exception {
+        if (!properties.enabled()) {
+            return call.call();
+        }
+        boolean probe = acquirePermission();
+        long startNanos = System.nanoTime();
+        try {
+            T result = call.call();
+            onComplete(probe, startNanos, null);
+            return result;
+        } catch (Exception e) {
+            onComplete(probe, startNanos, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Checks whether a call may proceed.
+     *
+     * @return true if the call is a half-open probe
+     * @throws CircuitOpenException if the call is rejected
+     */
+    private boolean acquirePermission() {
+        lock.lock();
+        try {
+            if (state == State.CLOSED) {
+                return false;
+            }
+            long now = System.nanoTime();
+            if (state == State.OPEN) {
+                long remaining = properties.openDuration().toNanos() - (now - openedAtNanos);
+                if (remaining > 0) {
+                    rejectedCalls.increment();
+                    throw new CircuitOpenException(Duration.ofNanos(remaining));
+                }
+                transitionTo(State.HALF_OPEN);
+            }
+            if (probesInFlight + probeSuccesses >= properties.halfOpenProbes()) {
+                rejectedCalls.increment();
+                throw new CircuitOpenException(Duration.ofSeconds(1));
+            }
+            probesInFlight++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onComplete(boolean probe, long startNanos, Throwable error) {
+        boolean failed = error != null
+                && GraphFailureClassifier.classify(error).kind() == FailureKind.TRANSIENT;
+        boolean slow = System.nanoTime() - startNanos > properties.slowCallDuration().toNanos();
+
+        if (failed) {
+            failedCallsCounter.increment();
+        } else if (slow) {
+            slowCallsCounter.increment();
+        } else {
+            successCalls.increment();
+        }
+
+        lock.lock();
+        try {
+            if (probe) {
+                onProbeComplete(failed || slow);
+            } else if (state == State.CLOSED) {
+                record(failed, slow);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Must be called with the lock held.
+     */
+    private void onProbeComplete(boolean unhealthy) {
+        if (state != State.HALF_OPEN) {
+            return;
+        }
+        probesInFlight--;
+        if (unhealthy) {
+            logger.warn("Graph circuit breaker probe failed, re-opening");
+            transitionTo(State.OPEN);
+        } else if (++probeSuccesses >= properties.halfOpenProbes()) {
+            logger.info("Graph circuit breaker probes succeeded, closing");
+            transitionTo(State.CLOSED);
+        }
+    }
+
+    /**
+     * Adds an outcome to the sliding window and opens the breaker if a threshold
+     * is crossed. Must be called with the lock held.
+     */
+    private void record(boolean failed, boolean slow) {
+        if (recordedCalls == failedCalls.length) {
+            if (failedCalls[windowIndex]) {
+                failureCount--;
+            }
+            if (slowCalls[windowIndex]) {
+                slowCount--;
+            }
+        } else {
+            recordedCalls++;
+        }
+        failedCalls[windowIndex] = failed;
+        slowCalls[windowIndex] = slow;
+        if (failed) {
+            failureCount++;
+        }
+        if (slow) {
+            slowCount++;
+        }
+        windowIndex = (windowIndex + 1) % failedCalls.length;
+
+        if (recordedCalls < properties.minimumCalls()) {
+            return;
+        }
+        int failureRate = failureCount * 100 / recordedCalls;
+        int slowRate = slowCount * 100 / recordedCalls;
+        if (failureRate >= properties.failureRateThreshold() || slowRate >= properties.slowCallRateThreshold()) {
+            logger.error("Graph circuit breaker opening (failure rate: {}%, slow call rate: {}% over {} calls)",
+                    failureRate, slowRate, recordedCalls);
+            transitionTo(State.OPEN);
+        }
+    }
+
+    /**
+     * Must be called with the lock held.
+     */
+    private void transitionTo(State newState) {
+        State previous = state;
+        state = newState;
+        switch (newState) {
+            case OPEN -> openedAtNanos = System.nanoTime();
+            case HALF_OPEN -> {
+                probesInFlight = 0;
+                probeSuccesses = 0;
+            }
+            case CLOSED -> resetWindow();
+        }
+        Counter.builder("graph.circuit.transitions")
+                .description("Graph circuit breaker state transitions")
+                .tag("from", tagValue(previous))
+                .tag("to", tagValue(newState))
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private void resetWindow() {
+        Arrays.fill(failedCalls, false);
+        Arrays.fill(slowCalls, false);
+        windowIndex = 0;
+        recordedCalls = 0;
+        failureCount = 0;
+        slowCount = 0;
+    }
+
+    private Counter callCounter(String outcome) {
+        return Counter.builder("graph.circuit.calls")
+                .description("Graph calls seen by the circuit breaker, by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private static String tagValue(State state) {
+        return state.name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,56 @@
+package com.graphmailer.service.resilience;
+
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * OkHttp interceptor holding a {@link GraphConcurrencyLimiter} permit for each
+ * HTTP request of the Graph client, so every call, including batches and
+ * attachment downloads, counts against the same limit.
+ *
+ * The permit is returned once the response headers arrived; the body may still
+ * be streaming. Registered after the SDK's middleware, whose RetryHandler is
+ * removed, so every attempt of {@link GraphRetryEngine} takes its own permit.
+ */
+public class GraphConcurrencyInterceptor implements Interceptor {
+
+    private final GraphConcurrencyLimiter limiter;
+
+    public GraphConcurrencyInterceptor(GraphConcurrencyLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        GraphConcurrencyLimiter.Permit permit;
+        try {
+            permit = limiter.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a Graph concurrency permit");
+        }
+
+        try {
+            Response response = chain.proceed(chain.request());
+            if (response.code() == 429 || response.code() == 503) {
+                permit.onDropped();
+            } else {
+                permit.onSuccess();
+            }
+            return response;
+        } catch (IOException e) {
+            if (chain.call().isCanceled()) {
+                permit.onIgnore();
+            } else {
+                permit.onDropped();
+            }
+            throw e;
+        } catch (RuntimeException | Error e) {
+            permit.onIgnore();
+            throw e;
+        }
+    }
+}
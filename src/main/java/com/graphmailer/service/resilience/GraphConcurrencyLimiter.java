@@ -0,0 +1,349 @@
+package com.graphmailer.service.resilience;
+
+import com.graphmailer.config.GraphConcurrencyProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Adaptive limit on concurrent Microsoft Graph requests, shared by all callers.
+ *
+ * The limit follows TCP Vegas: the lowest recent round-trip time is taken as
+ * Graph's latency without queueing, and {@code limit * (1 - minRtt / rtt)}
+ * estimates how many of our requests are queued inside Graph. While that
+ * estimate stays small the limit grows, once it exceeds a few requests the
+ * limit shrinks, so the service runs as many requests as Graph completes
+ * without slowing down. Throttled responses (429, 503) and I/O failures cut the
+ * limit by {@code graph-concurrency.backoff-ratio}, at most once per round
+ * trip. The minimum RTT is forgotten every {@code min-rtt-window} so a lasting
+ * change of Graph's baseline latency is picked up.
+ *
+ * Requests beyond the limit wait up to {@code graph-concurrency.max-queue-wait}.
+ * Freed permits are handed to waiters in arrival order, so a new caller never
+ * overtakes a waiting one; callers are rejected with a
+ * {@link GraphOverloadedException} when the wait times out or the queue is full.
+ *
+ * The limit, in-flight and queued requests, RTT estimates and rejections are
+ * published as Micrometer metrics ({@code graph.concurrency.*}).
+ */
+@Component
+public class GraphConcurrencyLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(GraphConcurrencyLimiter.class);
+
+    /** Weight of a new sample in the smoothed RTT. */
+    private static final double RTT_SMOOTHING = 0.1;
+
+    private final GraphConcurrencyProperties properties;
+    private final ReentrantLock lock = new ReentrantLock();
+    /** Callers waiting for a permit, oldest first. */
+    private final Deque<Waiter> waiters = new ArrayDeque<>();
+
+    private double limit;
+    private int inFlight;
+    private volatile int queued;
+    private long minRttNanos;
+    private long minRttSinceNanos;
+    private double smoothedRttNanos;
+    private long lastDecreaseNanos;
+
+    private final Counter queueFullRejections;
+    private final Counter timeoutRejections;
+
+    public GraphConcurrencyLimiter(GraphConcurrencyProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.limit = clamp(properties.initialLimit());
+        this.minRttSinceNanos = System.nanoTime();
+
+        Gauge.builder("graph.concurrency.limit", this, GraphConcurrencyLimiter::getLimit)
+                .description("Current limit on concurrent Graph requests")
+                .register(meterRegistry);
+        Gauge.builder("graph.concurrency.inflight", this, GraphConcurrencyLimiter::getInFlight)
+                .description("Graph requests in flight")
+                .register(meterRegistry);
+        Gauge.builder("graph.concurrency.queued", this, limiter -> limiter.queued)
+                .description("Graph requests waiting for a permit")
+                .register(meterRegistry);
+        TimeGauge.builder("graph.concurrency.rtt", this, TimeUnit.NANOSECONDS, limiter -> limiter.rttNanos(true))
+                .description("Lowest recent Graph round-trip time, taken as the latency without queueing")
+                .tag("estimate", "min")
+                .register(meterRegistry);
+        TimeGauge.builder("graph.concurrency.rtt", this, TimeUnit.NANOSECONDS, limiter -> limiter.rttNanos(false))
+                .description("Smoothed Graph round-trip time")
+                .tag("estimate", "smoothed")
+                .register(meterRegistry);
+        this.queueFullRejections = rejectionCounter("queue_full", meterRegistry);
+        this.timeoutRejections = rejectionCounter("timeout", meterRegistry);
+
+        logger.info("Graph concurrency limiter initialized (enabled: {}, initialLimit: {}, range: {}-{})",
+                properties.enabled(), properties.initialLimit(), properties.minLimit(), properties.maxLimit());
+    }
+
+    /**
+     * Fails fast when the queue for permits is already full, so callers can
+     * turn work away before doing any of it.
+     *
+     * @throws GraphOverloadedException if no more calls may wait for a permit
+     */
+    public void checkAdmission() {
+        if (properties.enabled() && queued >= properties.maxQueued() && getInFlight() >= getLimit()) {
+            queueFullRejections.increment();
+            throw new GraphOverloadedException(retryAfter());
+        }
+    }
+
+    /**
+     * Takes a permit for one Graph request, waiting while the limit is reached.
+     * The permit must be completed once Graph's response headers arrived or the
+     * request failed.
+     *
+     * @return The permit
+     * @throws GraphOverloadedException if the queue is full or no permit became free in time
+     * @throws InterruptedException     if interrupted while waiting
+     */
+    public Permit acquire() throws InterruptedException {
+        if (!properties.enabled()) {
+            return new Permit(false, 0);
+        }
+        lock.lock();
+        try {
+            if (waiters.isEmpty() && inFlight < (int) limit) {
+                inFlight++;
+            } else {
+                awaitPermit();
+            }
+            return new Permit(true, inFlight);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Current limit on concurrent requests.
+     */
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Requests holding a permit.
+     */
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queues the caller and waits until {@link #grantWaiting()} hands it a
+     * permit. Called holding the lock.
+     */
+    private void awaitPermit() throws InterruptedException {
+        if (waiters.size() >= properties.maxQueued()) {
+            queueFullRejections.increment();
+            throw new GraphOverloadedException(retryAfter());
+        }
+        Waiter waiter = new Waiter(lock.newCondition());
+        waiters.addLast(waiter);
+        queued = waiters.size();
+        boolean acquired = false;
+        try {
+            long remainingNanos = properties.maxQueueWait().toNanos();
+            while (!waiter.granted) {
+                if (remainingNanos <= 0) {
+                    timeoutRejections.increment();
+                    throw new GraphOverloadedException(retryAfter());
+                }
+                remainingNanos = waiter.signal.awaitNanos(remainingNanos);
+            }
+            acquired = true;
+        } finally {
+            if (!acquired) {
+                if (waiter.granted) {
+                    // Interrupted after the hand-off; pass the permit on
+                    inFlight--;
+                } else {
+                    waiters.remove(waiter);
+                }
+                grantWaiting();
+            }
+        }
+    }
+
+    /**
+     * Hands free permits to the oldest waiters. Called holding the lock.
+     */
+    private void grantWaiting() {
+        while (!waiters.isEmpty() && inFlight < (int) limit) {
+            Waiter waiter = waiters.pollFirst();
+            waiter.granted = true;
+            inFlight++;
+            waiter.signal.signal();
+        }
+        queued = waiters.size();
+    }
+
+    /**
+     * Returns a permit and adjusts the limit from the request's outcome.
+     *
+     * @param rttNanos Round-trip time, or -1 if the request failed before a response
+     * @param inFlightAtStart Requests in flight when this one started
+     * @param dropped Whether Graph throttled or failed the request
+     */
+    void onSample(long rttNanos, int inFlightAtStart, boolean dropped) {
+        lock.lock();
+        try {
+            inFlight--;
+            if (dropped) {
+                decrease();
+            } else if (rttNanos > 0) {
+                update(rttNanos, inFlightAtStart);
+            }
+            grantWaiting();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void update(long rttNanos, int inFlightAtStart) {
+        long now = System.nanoTime();
+        smoothedRttNanos = smoothedRttNanos == 0
+                ? rttNanos : smoothedRttNanos + RTT_SMOOTHING * (rttNanos - smoothedRttNanos);
+        if (minRttNanos == 0 || rttNanos < minRttNanos
+                || now - minRttSinceNanos > properties.minRttWindow().toNanos()) {
+            minRttNanos = rttNanos;
+            minRttSinceNanos = now;
+        }
+
+        // Below half the limit latency says nothing about whether more would fit
+        if (inFlightAtStart * 2 < limit) {
+            return;
+        }
+
+        double step = Math.max(1, Math.log10(limit));
+        double queuedInGraph = limit * (1 - (double) minRttNanos / rttNanos);
+        if (queuedInGraph < 3 * step) {
+            limit = clamp(limit + step);
+        } else if (queuedInGraph > 6 * step) {
+            limit = clamp(limit - step);
+        }
+    }
+
+    private void decrease() {
+        long now = System.nanoTime();
+        // Throttled responses to requests sent together count as one signal
+        if (lastDecreaseNanos != 0 && now - lastDecreaseNanos < smoothedRttNanos) {
+            return;
+        }
+        lastDecreaseNanos = now;
+        double previous = limit;
+        limit = clamp(limit * properties.backoffRatio());
+        if ((int) previous != (int) limit) {
+            logger.info("Graph concurrency limit lowered from {} to {} after throttling", (int) previous, (int) limit);
+        }
+    }
+
+    private double clamp(double value) {
+        return Math.max(properties.minLimit(), Math.min(properties.maxLimit(), value));
+    }
+
+    /**
+     * Time for the requests ahead to drain, assuming they take the smoothed RTT.
+     */
+    private Duration retryAfter() {
+        double rounds = (double) queued / Math.max(1, (int) limit) + 1;
+        return Duration.ofNanos((long) (rounds * smoothedRttNanos));
+    }
+
+    private double rttNanos(boolean min) {
+        lock.lock();
+        try {
+            return min ? minRttNanos : smoothedRttNanos;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static Counter rejectionCounter(String reason, MeterRegistry meterRegistry) {
+        return Counter.builder("graph.concurrency.rejections")
+                .description("Graph requests rejected by the concurrency limit")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    private static final class Waiter {
+
+        private final Condition signal;
+        private boolean granted;
+
+        private Waiter(Condition signal) {
+            this.signal = signal;
+        }
+    }
+
+    /**
+     * Permit for one Graph request.
+     */
+    public final class Permit {
+
+        private final boolean limited;
+        private final int inFlightAtStart;
+        private final long startNanos = System.nanoTime();
+        private boolean completed;
+
+        private Permit(boolean limited, int inFlightAtStart) {
+            this.limited = limited;
+            this.inFlightAtStart = inFlightAtStart;
+        }
+
+        /**
+         * Graph answered without throttling; its latency feeds the limit.
+         */
+        public void onSuccess() {
+            complete(System.nanoTime() - startNanos, false);
+        }
+
+        /**
+         * Graph throttled the request or it failed on the network; the limit is lowered.
+         */
+        public void onDropped() {
+            complete(-1, true);
+        }
+
+        /**
+         * The request failed for reasons that say nothing about Graph's load.
+         */
+        public void onIgnore() {
+            complete(-1, false);
+        }
+
+        private void complete(long rttNanos, boolean dropped) {
+            if (completed) {
+                return;
+            }
+            completed = true;
+            if (limited) {
+                onSample(rttNanos, inFlightAtStart, dropped);
+            }
+        }
+    }
+}
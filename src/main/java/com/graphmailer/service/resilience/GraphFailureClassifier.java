@@ -0,0 +1,96 @@
+package com.graphmailer.service.resilience;
+
+import com.graphmailer.service.GraphResponseException;
+import com.graphmailer.util.RetryAfterParser;
+import com.microsoft.kiota.ApiException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Classifies failures of Microsoft Graph calls into non-retryable, throttled
+ * and transient failures, extracting any Retry-After hint Graph supplied.
+ *
+ * The cause chain is inspected, so wrapped exceptions such as
+ * {@link java.util.concurrent.CompletionException} are classified by their cause.
+ */
+public final class GraphFailureClassifier {
+
+    private static final int MAX_CAUSE_DEPTH = 10;
+
+    private GraphFailureClassifier() {
+    }
+
+    /**
+     * Result of classifying a failure.
+     *
+     * @param kind       Failure category
+     * @param statusCode HTTP status code, or 0 if the failure had none
+     * @param retryAfter Delay requested by Graph, or null if none was sent
+     */
+    public record Classification(FailureKind kind, int statusCode, Duration retryAfter) {
+
+        public boolean isThrottled() {
+            return kind == FailureKind.THROTTLED;
+        }
+    }
+
+    /**
+     * Classifies a failure.
+     *
+     * @param failure The exception thrown by, or completing, a Graph call
+     * @return Classification of the failure
+     */
+    public static Classification classify(Throwable failure) {
+        Throwable current = failure;
+        for (int depth = 0; current != null && depth < MAX_CAUSE_DEPTH; depth++) {
+            if (current instanceof GraphResponseException responseException) {
+                return fromStatus(responseException.getStatusCode(), responseException.getRetryAfter());
+            }
+            if (current instanceof MailboxBusyException busyException) {
+                return new Classification(FailureKind.THROTTLED, 429, busyException.getRetryAfter());
+            }
+            if (current instanceof ApiException apiException && apiException.getResponseStatusCode() > 0) {
+                return fromStatus(apiException.getResponseStatusCode(), retryAfterOf(apiException));
+            }
+            if (current instanceof IllegalArgumentException) {
+                return new Classification(FailureKind.NON_RETRYABLE, 0, null);
+            }
+            if (current instanceof IOException
+                    || current instanceof UncheckedIOException
+                    || current instanceof TimeoutException) {
+                return new Classification(FailureKind.TRANSIENT, 0, null);
+            }
+            current = current.getCause();
+        }
+        return new Classification(FailureKind.NON_RETRYABLE, 0, null);
+    }
+
+    private static Classification fromStatus(int statusCode, Duration retryAfter) {
+        if (statusCode == 429 || (statusCode == 503 && retryAfter != null)) {
+            return new Classification(FailureKind.THROTTLED, statusCode, retryAfter);
+        }
+        if (statusCode >= 500 || statusCode == 408) {
+            return new Classification(FailureKind.TRANSIENT, statusCode, retryAfter);
+        }
+        return new Classification(FailureKind.NON_RETRYABLE, statusCode, null);
+    }
+
+    private static Duration retryAfterOf(ApiException apiException) {
+        var headers = apiException.getResponseHeaders();
+        if (headers == null) {
+            return null;
+        }
+        Collection<String> values = headers.get("Retry-After");
+        if (values == null) {
+            values = headers.get("retry-after");
+        }
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        return RetryAfterParser.parse(values.iterator().next());
+    }
+}
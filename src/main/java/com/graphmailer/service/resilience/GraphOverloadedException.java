@@ -0,0 +1,17 @@
+package com.graphmailer.service.resilience;
+
+import java.time.Duration;
+
+/**
+ * Exception raised when a Graph call is rejected because the concurrency limit
+ * is reached and no permit became free in time, or too many calls are waiting.
+ *
+ * Like an open circuit breaker, no request was made to Graph and callers should
+ * report the service as temporarily unavailable.
+ */
+public class GraphOverloadedException extends CircuitOpenException {
+
+    public GraphOverloadedException(Duration retryAfter) {
+        super("Microsoft Graph is temporarily unavailable (concurrency limit reached)", retryAfter);
+    }
+}
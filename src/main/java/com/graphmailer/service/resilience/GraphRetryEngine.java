@@ -0,0 +1,230 @@
+package com.graphmailer.service.resilience;
+
+import com.graphmailer.config.GraphProperties;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Retries Microsoft Graph calls according to how they failed.
+ *
+ * Failures are classified by {@link GraphFailureClassifier}: non-retryable
+ * failures complete immediately, throttled calls wait exactly as long as Graph's
+ * Retry-After header asks plus a small jitter, and transient failures back off
+ * exponentially from {@code graph.request.retry-base-delay-ms}. At most
+ * {@code graph.request.max-retries} retries are made. A Retry-After longer than
+ * {@code graph.request.max-retry-after-ms} is not waited out; the call fails
+ * with a {@link GraphThrottledException} carrying it instead.
+ *
+ * Retries are scheduled on a timer rather than sleeping, and run on a small
+ * retry pool, so no thread is held while waiting out a backoff.
+ */
+@Component
+public class GraphRetryEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(GraphRetryEngine.class);
+
+    static final Duration MAX_BACKOFF = Duration.ofSeconds(30);
+
+    private static final int RETRY_THREADS = 4;
+
+    private final int maxRetries;
+    private final long baseDelayMs;
+    private final Duration maxRetryAfter;
+    private final ScheduledExecutorService retryTimer;
+    private final ExecutorService retryExecutor;
+
+    public GraphRetryEngine(GraphProperties graphProperties,
+                            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.maxRetries = graphProperties.request().maxRetries();
+        this.baseDelayMs = graphProperties.request().retryBaseDelayMs();
+        this.maxRetryAfter = Duration.ofMillis(graphProperties.request().maxRetryAfterMs());
+        this.retryTimer = Executors.newSingleThreadScheduledExecutor(namedThreadFactory("graph-retry-timer"));
+        // Retries block on Graph I/O; with virtual threads each one gets its own thread
+        this.retryExecutor = virtualThreads
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("graph-retry-", 1).factory())
+                : Executors.newFixedThreadPool(RETRY_THREADS, namedThreadFactory("graph-retry"));
+
+        logger.info("Graph retry engine initialized (maxRetries: {}, baseDelayMs: {}, maxRetryAfterMs: {})",
+                maxRetries, baseDelayMs, maxRetryAfter.toMillis());
+    }
+
+    /**
+     * Runs an asynchronous Graph operation, retrying it while it fails retryably.
+     * The first attempt runs on the calling thread.
+     *
+     * @param operation Short description used in log messages
+     * @param action    Starts one attempt of the operation
+     * @return Future completed with the first successful result, or with the
+     *         last failure once it is non-retryable or the retry budget is spent
+     */
+    public <T> CompletableFuture<T> execute(String operation, Supplier<CompletableFuture<T>> action) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attempt(operation, action, 1, result, MDC.getCopyOfContextMap());
+        return result;
+    }
+
+    /**
+     * Runs a blocking Graph call with retries and waits for the outcome.
+     *
+     * @param operation Short description used in log messages
+     * @param call      The blocking Graph call
+     * @return Result of the first successful attempt
+     * @throws Exception the last failure if the call did not succeed
+     */
+    public <T> T call(String operation, Callable<T> call) throws Exception {
+        try {
+            return execute(operation, () -> {
+                try {
+                    return CompletableFuture.completedFuture(call.call());
+                } catch (Exception e) {
+                    return CompletableFuture.failedFuture(e);
+                }
+            }).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception exception) {
+                throw exception;
+            }
+            throw e;
+        }
+    }
+
+    private <T> void attempt(String operation,
+                             Supplier<CompletableFuture<T>> action,
+                             int attemptNumber,
+                             CompletableFuture<T> result,
+                             Map<String, String> mdc) {
+        CompletableFuture<T> future;
+        try {
+            future = action.get();
+        } catch (Exception e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+
+        future.whenComplete((value, error) -> {
+            if (error == null) {
+                result.complete(value);
+                return;
+            }
+            withMdc(mdc, () -> onFailure(operation, action, attemptNumber, result, mdc, unwrap(error)));
+        });
+    }
+
+    private <T> void onFailure(String operation,
+                               Supplier<CompletableFuture<T>> action,
+                               int attemptNumber,
+                               CompletableFuture<T> result,
+                               Map<String, String> mdc,
+                               Throwable failure) {
+        GraphFailureClassifier.Classification classification = GraphFailureClassifier.classify(failure);
+        if (!classification.kind().isRetryable() || attemptNumber > maxRetries) {
+            if (classification.kind().isRetryable()) {
+                logger.warn("{} failed after {} attempts: {}", operation, attemptNumber, failure.getMessage());
+            }
+            result.completeExceptionally(failure);
+            return;
+        }
+        if (classification.retryAfter() != null && classification.retryAfter().compareTo(maxRetryAfter) > 0) {
+            logger.warn("{} throttled with Retry-After of {} ms, above the {} ms limit; not retrying",
+                    operation, classification.retryAfter().toMillis(), maxRetryAfter.toMillis());
+            result.completeExceptionally(new GraphThrottledException(classification.retryAfter()));
+            return;
+        }
+
+        Duration delay = delayFor(classification, attemptNumber);
+        logger.info("{} {} (status {}), retry {}/{} in {} ms", operation,
+                classification.isThrottled() ? "throttled" : "failed", classification.statusCode(),
+                attemptNumber, maxRetries, delay.toMillis());
+
+        try {
+            retryTimer.schedule(() -> {
+                try {
+                    retryExecutor.execute(() -> withMdc(mdc,
+                            () -> attempt(operation, action, attemptNumber + 1, result, mdc)));
+                } catch (RejectedExecutionException e) {
+                    result.completeExceptionally(failure);
+                }
+            }, delay.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(failure);
+        }
+    }
+
+    /**
+     * Computes the wait before the next attempt.
+     *
+     * Throttled calls with a Retry-After hint wait exactly that long plus up to one
+     * base delay of jitter, so a burst of throttled callers does not return in
+     * lockstep. Everything else uses exponential backoff with equal jitter,
+     * capped at {@link #MAX_BACKOFF}.
+     */
+    Duration delayFor(GraphFailureClassifier.Classification classification, int attemptNumber) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (classification.retryAfter() != null) {
+            return classification.retryAfter().plusMillis(random.nextLong(baseDelayMs + 1));
+        }
+        long exponential = Math.min(MAX_BACKOFF.toMillis(), baseDelayMs << Math.min(attemptNumber - 1, 20));
+        long half = exponential / 2;
+        return Duration.ofMillis(half + random.nextLong(exponential - half + 1));
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        Throwable current = error;
+        while ((current instanceof CompletionException || current instanceof ExecutionException)
+                && current.getCause() != null) {
+            current = current.getCause();
+        }
+        return current;
+    }
+
+    private static void withMdc(Map<String, String> mdc, Runnable runnable) {
+        Map<String, String> previous = MDC.getCopyOfContextMap();
+        if (mdc != null) {
+            MDC.setContextMap(mdc);
+        }
+        try {
+            runnable.run();
+        } finally {
+            if (previous != null) {
+                MDC.setContextMap(previous);
+            } else {
+                MDC.clear();
+            }
+        }
+    }
+
+    private static ThreadFactory namedThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        retryTimer.shutdownNow();
+        retryExecutor.shutdown();
+    }
+}
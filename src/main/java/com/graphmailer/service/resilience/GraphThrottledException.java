@@ -0,0 +1,18 @@
+package com.graphmailer.service.resilience;
+
+import java.time.Duration;
+
+/**
+ * Exception raised when Graph throttled a call with a Retry-After longer than
+ * {@code graph.request.max-retry-after-ms}.
+ *
+ * The call is not retried, as that would hold the caller for the whole delay;
+ * like an open circuit breaker, callers should report the service as
+ * temporarily unavailable and pass the Retry-After on.
+ */
+public class GraphThrottledException extends CircuitOpenException {
+
+    public GraphThrottledException(Duration retryAfter) {
+        super("Microsoft Graph is throttling requests (retry after " + retryAfter.toSeconds() + " s)", retryAfter);
+    }
+}
@@ -0,0 +1,28 @@
+package com.graphmailer.service.resilience;
+
+import com.graphmailer.service.GraphMailException;
+
+import java.time.Duration;
+
+/**
+ * Exception raised when a mailbox already has the maximum number of sends queued.
+ *
+ * It is classified as throttling, so the retry engine backs off and tries again
+ * instead of failing the send outright.
+ */
+public class MailboxBusyException extends GraphMailException {
+
+    private final Duration retryAfter;
+
+    public MailboxBusyException(String mailbox, Duration retryAfter) {
+        super("Too many sends queued for mailbox: " + mailbox);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Suggested delay before the mailbox is likely to accept more work.
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
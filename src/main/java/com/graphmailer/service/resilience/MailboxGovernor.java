@@ -0,0 +1,452 @@
+package com.graphmailer.service.resilience;
+
+import com.graphmailer.config.MailboxGovernorProperties;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Limits concurrent Graph calls and send rate per sending mailbox.
+ *
+ * Each mailbox gets its own concurrency limit and token bucket, so a hot sender
+ * such as noreply@ is held to Exchange Online's per-mailbox limits without
+ * slowing down other mailboxes. Calls beyond the limits wait in a FIFO queue
+ * per mailbox and are started in arrival order as permits free up.
+ *
+ * Limits adapt to Graph's feedback: a throttled response halves the mailbox's
+ * concurrency limit and send rate and pauses it for any Retry-After period,
+ * while a window of successful calls raises them again by one step, up to the
+ * configured maximum.
+ *
+ * Queued calls wait at least one send interval each, so a call that would wait
+ * longer than {@code mailbox-governor.max-queue-delay} is rejected at submit
+ * time with a {@link MailboxBusyException} carrying the estimated wait, rather
+ * than holding its caller for minutes.
+ */
+@Component
+public class MailboxGovernor {
+
+    private static final Logger logger = LoggerFactory.getLogger(MailboxGovernor.class);
+
+    private static final long DECREASE_COOLDOWN_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long NANOS_PER_MINUTE = TimeUnit.MINUTES.toNanos(1);
+
+    private final MailboxGovernorProperties properties;
+    private final ConcurrentMap<String, MailboxState> mailboxes = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer;
+    private final ExecutorService executor;
+
+    public MailboxGovernor(MailboxGovernorProperties properties,
+                           @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.properties = properties;
+        this.timer = Executors.newSingleThreadScheduledExecutor(namedThreadFactory("mailbox-governor-timer"));
+        this.executor = virtualThreads
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("mailbox-governor-", 1).factory())
+                : Executors.newCachedThreadPool(namedThreadFactory("mailbox-governor"));
+
+        long sweepMillis = Math.max(1000, properties.idleEviction().toMillis() / 2);
+        timer.scheduleWithFixedDelay(this::evictIdleMailboxes, sweepMillis, sweepMillis, TimeUnit.MILLISECONDS);
+
+        logger.info("Mailbox governor initialized (enabled: {}, maxConcurrent: {}, messagesPerMinute: {})",
+                properties.enabled(), properties.maxConcurrent(), properties.messagesPerMinute());
+    }
+
+    /**
+     * Runs a Graph call for a mailbox once the mailbox has a free permit and send token.
+     * The call runs on the calling thread when the mailbox is below its limits,
+     * otherwise it is queued and started by the governor.
+     *
+     * @param mailbox The sending mailbox (UPN)
+     * @param call    Starts the Graph call
+     * @return Future completed with the call's outcome, or exceptionally with a
+     *         {@link MailboxBusyException} if the mailbox queue is full or the
+     *         call would wait longer than the configured maximum queue delay
+     */
+    public <T> CompletableFuture<T> submit(String mailbox, Supplier<CompletableFuture<T>> call) {
+        if (!properties.enabled()) {
+            return start(call);
+        }
+
+        PendingCall<T> pending = new PendingCall<>(call, MDC.getCopyOfContextMap());
+        String key = mailbox.toLowerCase(Locale.ROOT);
+
+        while (true) {
+            MailboxState state = mailboxes.computeIfAbsent(key, k -> new MailboxState(k, properties));
+            boolean runNow;
+            state.lock.lock();
+            try {
+                if (state.retired) {
+                    continue;
+                }
+                long now = System.nanoTime();
+                state.lastActivityNanos = now;
+                if (state.queue.isEmpty() && state.tryAcquire(now)) {
+                    runNow = true;
+                } else if (state.queue.size() >= properties.maxQueued()) {
+                    logger.warn("Mailbox {} has {} sends queued, rejecting", key, state.queue.size());
+                    return CompletableFuture.failedFuture(new MailboxBusyException(key, state.retryAfterHint(now)));
+                } else if (state.queueDelayNanos(now) > properties.maxQueueDelay().toNanos()) {
+                    Duration delay = Duration.ofNanos(state.queueDelayNanos(now));
+                    logger.warn("Mailbox {} has {} sends queued, about {} ms of waiting; rejecting",
+                            key, state.queue.size(), delay.toMillis());
+                    return CompletableFuture.failedFuture(new MailboxBusyException(key, delay));
+                } else {
+                    state.queue.add(pending);
+                    scheduleWakeup(state, now);
+                    runNow = false;
+                }
+            } finally {
+                state.lock.unlock();
+            }
+
+            if (runNow) {
+                run(state, pending);
+            }
+            return pending.result;
+        }
+    }
+
+    /**
+     * Current limits and load of every tracked mailbox, keyed by mailbox.
+     */
+    public Map<String, MailboxSnapshot> snapshot() {
+        Map<String, MailboxSnapshot> snapshot = new TreeMap<>();
+        mailboxes.forEach((mailbox, state) -> snapshot.put(mailbox, state.snapshot()));
+        return snapshot;
+    }
+
+    private <T> void run(MailboxState state, PendingCall<T> pending) {
+        start(pending.call).whenComplete((value, error) -> {
+            release(state, error);
+            if (error == null) {
+                pending.result.complete(value);
+            } else {
+                pending.result.completeExceptionally(error);
+            }
+        });
+    }
+
+    private static <T> CompletableFuture<T> start(Supplier<CompletableFuture<T>> call) {
+        try {
+            return call.get();
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Returns a permit, adapts the limits to the call's outcome and starts queued calls.
+     */
+    private void release(MailboxState state, Throwable error) {
+        List<PendingCall<?>> ready;
+        state.lock.lock();
+        try {
+            long now = System.nanoTime();
+            state.inFlight--;
+            state.lastActivityNanos = now;
+            if (error == null) {
+                state.onSuccess();
+            } else {
+                GraphFailureClassifier.Classification classification = GraphFailureClassifier.classify(error);
+                if (classification.isThrottled()) {
+                    state.onThrottled(now, classification.retryAfter());
+                }
+            }
+            ready = state.pollReady(now);
+            scheduleWakeup(state, now);
+        } finally {
+            state.lock.unlock();
+        }
+        dispatch(state, ready);
+    }
+
+    /**
+     * Starts queued calls once the mailbox is unpaused or a send token is available.
+     * Must be called with the mailbox lock held.
+     */
+    private void scheduleWakeup(MailboxState state, long now) {
+        if (state.wakeup != null || state.queue.isEmpty() || state.inFlight >= state.limit) {
+            return;
+        }
+        long delayNanos = Math.max(1, state.nanosUntilPermit(now));
+        state.wakeup = timer.schedule(() -> wakeup(state), delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void wakeup(MailboxState state) {
+        List<PendingCall<?>> ready;
+        state.lock.lock();
+        try {
+            state.wakeup = null;
+            long now = System.nanoTime();
+            ready = state.pollReady(now);
+            scheduleWakeup(state, now);
+        } finally {
+            state.lock.unlock();
+        }
+        dispatch(state, ready);
+    }
+
+    private void dispatch(MailboxState state, List<PendingCall<?>> ready) {
+        for (PendingCall<?> pending : ready) {
+            try {
+                executor.execute(() -> withMdc(pending.mdc, () -> run(state, pending)));
+            } catch (RejectedExecutionException e) {
+                release(state, e);
+                pending.result.completeExceptionally(new MailboxBusyException(state.mailbox, null));
+            }
+        }
+    }
+
+    /**
+     * Forgets mailboxes that have been idle for the configured period, so the
+     * table does not grow without bound. A mailbox seen again starts at full limits.
+     */
+    private void evictIdleMailboxes() {
+        long cutoff = System.nanoTime() - properties.idleEviction().toNanos();
+        for (String mailbox : mailboxes.keySet()) {
+            mailboxes.computeIfPresent(mailbox, (key, state) -> {
+                state.lock.lock();
+                try {
+                    if (state.isIdleSince(cutoff)) {
+                        state.retired = true;
+                        return null;
+                    }
+                    return state;
+                } finally {
+                    state.lock.unlock();
+                }
+            });
+        }
+    }
+
+    private static void withMdc(Map<String, String> mdc, Runnable runnable) {
+        if (mdc != null) {
+            MDC.setContextMap(mdc);
+        }
+        try {
+            runnable.run();
+        } finally {
+            MDC.clear();
+        }
+    }
+
+    private static ThreadFactory namedThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+        executor.shutdown();
+    }
+
+    /**
+     * Point-in-time view of one mailbox's limits and load.
+     *
+     * @param concurrencyLimit  Current limit on concurrent Graph calls
+     * @param inFlight          Graph calls currently running
+     * @param queued            Calls waiting for a permit
+     * @param messagesPerMinute Current send rate limit
+     * @param availableTokens   Sends that may start immediately under the rate limit
+     * @param throttledCount    Throttled responses seen since the mailbox was first tracked
+     * @param pausedUntil       End of the current Retry-After pause, or null if not paused
+     */
+    public record MailboxSnapshot(int concurrencyLimit,
+                                  int inFlight,
+                                  int queued,
+                                  double messagesPerMinute,
+                                  double availableTokens,
+                                  long throttledCount,
+                                  Instant pausedUntil) {}
+
+    /**
+     * A call waiting for a mailbox permit.
+     */
+    private static final class PendingCall<T> {
+        private final Supplier<CompletableFuture<T>> call;
+        private final Map<String, String> mdc;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        private PendingCall(Supplier<CompletableFuture<T>> call, Map<String, String> mdc) {
+            this.call = call;
+            this.mdc = mdc;
+        }
+    }
+
+    /**
+     * Limits, token bucket and queue of one mailbox. All fields are guarded by the lock.
+     */
+    private static final class MailboxState {
+        private final String mailbox;
+        private final int maxConcurrent;
+        private final int minConcurrent;
+        private final double maxPerMinute;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Queue<PendingCall<?>> queue = new ArrayDeque<>();
+
+        private int limit;
+        private int inFlight;
+        private int successesSinceIncrease;
+        private double perMinute;
+        private double tokens;
+        private long lastRefillNanos;
+        private long pausedUntilNanos;
+        private long lastDecreaseNanos;
+        private long lastActivityNanos;
+        private long throttledCount;
+        private boolean retired;
+        private ScheduledFuture<?> wakeup;
+
+        private MailboxState(String mailbox, MailboxGovernorProperties properties) {
+            this.mailbox = mailbox;
+            this.maxConcurrent = properties.maxConcurrent();
+            this.minConcurrent = Math.min(properties.minConcurrent(), maxConcurrent);
+            this.maxPerMinute = properties.messagesPerMinute();
+            this.limit = maxConcurrent;
+            this.perMinute = maxPerMinute;
+            this.tokens = maxPerMinute;
+            long now = System.nanoTime();
+            this.lastRefillNanos = now;
+            this.pausedUntilNanos = now;
+            this.lastDecreaseNanos = now - DECREASE_COOLDOWN_NANOS;
+            this.lastActivityNanos = now;
+        }
+
+        private boolean tryAcquire(long now) {
+            refill(now);
+            if (now - pausedUntilNanos < 0 || inFlight >= limit || tokens < 1) {
+                return false;
+            }
+            tokens -= 1;
+            inFlight++;
+            return true;
+        }
+
+        private List<PendingCall<?>> pollReady(long now) {
+            List<PendingCall<?>> ready = new ArrayList<>();
+            while (!queue.isEmpty() && tryAcquire(now)) {
+                ready.add(queue.poll());
+            }
+            return ready;
+        }
+
+        private void refill(long now) {
+            long elapsed = now - lastRefillNanos;
+            if (elapsed > 0) {
+                tokens = Math.min(perMinute, tokens + perMinute * elapsed / NANOS_PER_MINUTE);
+                lastRefillNanos = now;
+            }
+        }
+
+        private long nanosUntilPermit(long now) {
+            refill(now);
+            long untilUnpaused = pausedUntilNanos - now;
+            long untilToken = tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) * NANOS_PER_MINUTE / perMinute);
+            return Math.max(untilUnpaused, untilToken);
+        }
+
+        /**
+         * Additive increase: one step per window of {@code limit} successful calls.
+         */
+        private void onSuccess() {
+            if (++successesSinceIncrease < limit) {
+                return;
+            }
+            successesSinceIncrease = 0;
+            if (limit < maxConcurrent) {
+                limit++;
+            }
+            perMinute = Math.min(maxPerMinute, perMinute + Math.max(1, maxPerMinute / 10));
+        }
+
+        /**
+         * Multiplicative decrease, applied at most once per cooldown so a burst of
+         * throttled responses to calls already in flight counts as one signal.
+         */
+        private void onThrottled(long now, Duration retryAfter) {
+            throttledCount++;
+            successesSinceIncrease = 0;
+            if (retryAfter != null) {
+                long until = now + retryAfter.toNanos();
+                if (until - pausedUntilNanos > 0) {
+                    pausedUntilNanos = until;
+                }
+            }
+            if (now - lastDecreaseNanos < DECREASE_COOLDOWN_NANOS) {
+                return;
+            }
+            lastDecreaseNanos = now;
+            refill(now);
+            limit = Math.max(minConcurrent, limit / 2);
+            perMinute = Math.max(1, perMinute / 2);
+            tokens = Math.min(tokens, perMinute);
+            logger.warn("Mailbox {} throttled by Graph, lowering limits to {} concurrent / {} per minute{}",
+                    mailbox, limit, Math.round(perMinute),
+                    retryAfter != null ? ", paused for " + retryAfter.toMillis() + " ms" : "");
+        }
+
+        /**
+         * Estimated wait before a call queued now would start: every call ahead of
+         * it needs a send token, and none start while the mailbox is paused.
+         */
+        private long queueDelayNanos(long now) {
+            refill(now);
+            long untilUnpaused = pausedUntilNanos - now;
+            double tokensNeeded = queue.size() + 1 - tokens;
+            long untilTokens = tokensNeeded <= 0 ? 0 : (long) Math.ceil(tokensNeeded * NANOS_PER_MINUTE / perMinute);
+            return Math.max(untilUnpaused, untilTokens);
+        }
+
+        private Duration retryAfterHint(long now) {
+            return Duration.ofNanos(Math.max(nanosUntilPermit(now), NANOS_PER_MINUTE / (long) Math.max(1, perMinute)));
+        }
+
+        private boolean isIdleSince(long cutoff) {
+            return inFlight == 0 && queue.isEmpty() && lastActivityNanos - cutoff < 0;
+        }
+
+        private MailboxSnapshot snapshot() {
+            lock.lock();
+            try {
+                long now = System.nanoTime();
+                refill(now);
+                long pausedNanos = pausedUntilNanos - now;
+                return new MailboxSnapshot(limit, inFlight, queue.size(), perMinute, Math.floor(tokens),
+                        throttledCount, pausedNanos > 0 ? Instant.now().plusNanos(pausedNanos) : null);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.graphmailer.service.search;
+
+import com.graphmailer.service.mirror.MirroredMessage;
+
+import java.util.List;
+
+/**
+ * A mirrored message as indexed: its key, the fingerprint of the indexed
+ * fields, receive time and the terms of each field in order.
+ *
+ * @param key         Message key within the mailbox
+ * @param fingerprint Hash of the indexed fields, to recognise changed messages
+ * @param received    Receive time in epoch milliseconds, {@link #NO_DATE} if unknown
+ * @param subject     Subject terms
+ * @param from        Sender address terms
+ * @param body        Body preview terms
+ */
+record IndexedDoc(String key, long fingerprint, long received,
+                  List<String> subject, List<String> from, List<String> body) {
+
+    /**
+     * Receive time of messages without one; sorts after every real date.
+     */
+    static final long NO_DATE = Long.MIN_VALUE;
+
+    static IndexedDoc of(MirroredMessage message) {
+        return new IndexedDoc(message.key(), fingerprint(message),
+                message.receivedDateTime() != null ? message.receivedDateTime().toEpochMilli() : NO_DATE,
+                Tokenizer.tokenize(message.subject()),
+                Tokenizer.tokenize(message.from()),
+                Tokenizer.tokenize(message.bodyPreview()));
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the indexed fields. Read state and other
+     * unindexed changes keep the fingerprint, so they are not reindexed.
+     */
+    static long fingerprint(MirroredMessage message) {
+        long hash = 0xcbf29ce484222325L;
+        hash = mix(hash, message.subject());
+        hash = mix(hash, message.from());
+        hash = mix(hash, message.bodyPreview());
+        long received = message.receivedDateTime() != null ? message.receivedDateTime().toEpochMilli() : NO_DATE;
+        return (hash ^ received) * 0x100000001b3L;
+    }
+
+    List<String> tokens(SearchField field) {
+        return switch (field) {
+            case SUBJECT -> subject;
+            case FROM -> from;
+            case BODY -> body;
+        };
+    }
+
+    private static long mix(long hash, String value) {
+        if (value == null) {
+            return (hash ^ 0xff) * 0x100000001b3L;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        return (hash ^ 0xfe) * 0x100000001b3L;
+    }
+}
@@ -0,0 +1,176 @@
+package com.graphmailer.service.search;
+
+import com.graphmailer.config.SearchProperties;
+import com.graphmailer.service.mirror.MailboxMirror;
+import com.graphmailer.service.mirror.MirrorListener;
+import com.graphmailer.service.mirror.MirroredMessage;
+import com.microsoft.graph.models.Message;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Full-text search over mirrored mailboxes.
+ *
+ * Each mailbox has a {@link MailboxIndex} in its own directory, kept current
+ * by listening to the mailbox mirror: changes are indexed as they are synced
+ * and written as a segment when the sync completes. Indexes are opened on
+ * first use and reconciled with the mirror, so changes synced while the
+ * service was down are picked up on restart.
+ */
+@Service
+public class MailSearchService implements MirrorListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(MailSearchService.class);
+
+    private final SearchProperties properties;
+    private final MailboxMirror mailboxMirror;
+    private final Path directory;
+    private final ConcurrentMap<String, MailboxIndex> indexes = new ConcurrentHashMap<>();
+
+    public MailSearchService(SearchProperties properties, MailboxMirror mailboxMirror) throws IOException {
+        this.properties = properties;
+        this.mailboxMirror = mailboxMirror;
+        this.directory = Paths.get(properties.directory());
+
+        if (isEnabled()) {
+            Files.createDirectories(directory);
+            mailboxMirror.addListener(this);
+            logger.info("Mail search enabled at {} (flush docs: {}, max segments: {})",
+                    directory.toAbsolutePath(), properties.flushDocs(), properties.maxSegments());
+        } else {
+            logger.info("Mail search disabled");
+        }
+    }
+
+    /**
+     * Whether searches can be served; the index is built from the mailbox mirror.
+     */
+    public boolean isEnabled() {
+        return properties.enabled() && mailboxMirror.isEnabled();
+    }
+
+    /**
+     * Returns the newest messages of a mailbox matching the query, syncing the
+     * mailbox first if it has not been synced within the mirror refresh interval.
+     *
+     * @param mailbox Mailbox UPN
+     * @param query   Parsed query; an empty query matches every message in the date range
+     * @param after   Earliest receive time, inclusive, or null
+     * @param before  Latest receive time, exclusive, or null
+     * @param top     Maximum number of messages
+     * @return Messages with the mirrored fields set, newest first
+     * @throws SearchUnavailableException if search or the mailbox mirror is disabled
+     * @throws IOException if the mirror or index could not be written
+     */
+    public List<Message> search(String mailbox, SearchQuery query, OffsetDateTime after, OffsetDateTime before,
+                                int top) throws IOException {
+        if (!isEnabled()) {
+            throw new SearchUnavailableException("Search requires the mailbox mirror and search index to be enabled");
+        }
+        long start = System.nanoTime();
+        mailboxMirror.sync(mailbox);
+
+        String key = mailbox.toLowerCase(Locale.ROOT);
+        List<String> keys = index(key).search(query,
+                after != null ? after.toInstant().toEpochMilli() : Long.MIN_VALUE,
+                before != null ? before.toInstant().toEpochMilli() : Long.MAX_VALUE,
+                top);
+        List<Message> messages = new ArrayList<>(keys.size());
+        for (String messageKey : keys) {
+            MirroredMessage message = mailboxMirror.lookup(key, messageKey);
+            if (message != null) {
+                messages.add(message.toGraph());
+            }
+        }
+        logger.debug("Searched mailbox {}: {} matches in {} us", mailbox, messages.size(),
+                (System.nanoTime() - start) / 1_000);
+        return messages;
+    }
+
+    @Override
+    public void upserted(String mailbox, MirroredMessage message) {
+        update(mailbox, index -> index.upsert(message));
+    }
+
+    @Override
+    public void removed(String mailbox, MirroredMessage message) {
+        update(mailbox, index -> index.remove(message));
+    }
+
+    @Override
+    public void synced(String mailbox) {
+        update(mailbox, MailboxIndex::flush);
+    }
+
+    /**
+     * Applies a mirror change to a mailbox index. A failing index is dropped
+     * so that it is reopened, and reconciled with the mirror, on next use.
+     */
+    private void update(String mailbox, IndexUpdate update) {
+        try {
+            update.apply(index(mailbox));
+        } catch (IOException | UncheckedIOException e) {
+            logger.error("Failed to update search index of mailbox {}: {}", mailbox, e.getMessage());
+            indexes.remove(mailbox);
+        }
+    }
+
+    private MailboxIndex index(String mailbox) {
+        return indexes.computeIfAbsent(mailbox, key -> {
+            try {
+                long start = System.nanoTime();
+                MailboxIndex index = MailboxIndex.open(directory.resolve(directoryName(key)),
+                        properties.flushDocs(), properties.maxSegments(), properties.maxPrefixTerms(),
+                        mailboxMirror.messages(key), messageKey -> mailboxMirror.lookup(key, messageKey));
+                logger.debug("Opened search index of mailbox {} ({} segments) in {} ms",
+                        key, index.segmentCount(), (System.nanoTime() - start) / 1_000_000);
+                return index;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to open search index of mailbox " + key, e);
+            }
+        });
+    }
+
+    private static String directoryName(String mailbox) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(mailbox.getBytes(StandardCharsets.UTF_8));
+            return "mailbox-" + HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        for (MailboxIndex index : indexes.values()) {
+            try {
+                index.flush();
+            } catch (IOException e) {
+                logger.warn("Failed to flush search index: {}", e.getMessage());
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface IndexUpdate {
+        void apply(MailboxIndex index) throws IOException;
+    }
+}
@@ -0,0 +1,407 @@
+package com.graphmailer.service.search;
+
+import com.graphmailer.service.mirror.MirroredMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * Full-text index of one mirrored mailbox.
+ *
+ * Indexed messages live in immutable {@link Segment}s listed by a manifest
+ * file; changes are buffered in memory until {@link #flush()} writes them as
+ * a new segment. A changed or removed message is marked deleted in the
+ * segment holding it, and segments are merged once there are more than the
+ * configured maximum.
+ *
+ * The mirror is the source of truth: deletions are not persisted, but
+ * recomputed when the index is opened by reconciling the segments with the
+ * mirrored messages, and merges rebuild the live messages from the mirror.
+ */
+public final class MailboxIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(MailboxIndex.class);
+
+    private static final String MANIFEST = "segments";
+    private static final String SEGMENT_PREFIX = "seg-";
+    private static final String SEGMENT_SUFFIX = ".idx";
+
+    private static final Comparator<Hit> NEWEST_FIRST = Comparator
+            .comparingLong(Hit::received).reversed()
+            .thenComparing(Hit::key);
+
+    private final Path directory;
+    private final int flushDocs;
+    private final int maxSegments;
+    private final int maxPrefixTerms;
+    private final Function<String, MirroredMessage> lookup;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** Segments, oldest first. */
+    private final List<Segment> segments = new ArrayList<>();
+    private final Map<Segment, BitSet> deletions = new IdentityHashMap<>();
+    private final Map<String, SegmentDoc> indexed = new HashMap<>();
+    private final Map<String, IndexedDoc> buffer = new LinkedHashMap<>();
+    private long nextGeneration = 1;
+
+    private MailboxIndex(Path directory, int flushDocs, int maxSegments, int maxPrefixTerms,
+                         Function<String, MirroredMessage> lookup) {
+        this.directory = directory;
+        this.flushDocs = flushDocs;
+        this.maxSegments = maxSegments;
+        this.maxPrefixTerms = maxPrefixTerms;
+        this.lookup = lookup;
+    }
+
+    /**
+     * Opens the index stored in a directory and brings it up to date with the
+     * mirrored messages. An unreadable index is discarded and rebuilt.
+     *
+     * @param mirrored Current mirrored messages of the mailbox
+     * @param lookup   Current mirrored message by key, used when merging
+     */
+    public static MailboxIndex open(Path directory, int flushDocs, int maxSegments, int maxPrefixTerms,
+                                    Collection<MirroredMessage> mirrored,
+                                    Function<String, MirroredMessage> lookup) throws IOException {
+        Files.createDirectories(directory);
+        MailboxIndex index = new MailboxIndex(directory, flushDocs, maxSegments, maxPrefixTerms, lookup);
+        try {
+            index.load();
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Search index at {} is unreadable, rebuilding it: {}", directory, e.getMessage());
+            index.clear();
+        }
+        index.reconcile(mirrored);
+        index.flush();
+        return index;
+    }
+
+    /**
+     * Indexes a new or changed message. Changes to fields that are not
+     * indexed, like the read state, are ignored.
+     */
+    public void upsert(MirroredMessage message) throws IOException {
+        long fingerprint = IndexedDoc.fingerprint(message);
+        lock.writeLock().lock();
+        try {
+            IndexedDoc buffered = buffer.get(message.key());
+            SegmentDoc current = indexed.get(message.key());
+            if ((buffered != null && buffered.fingerprint() == fingerprint)
+                    || (current != null && current.fingerprint() == fingerprint)) {
+                return;
+            }
+            delete(message.key());
+            buffer.put(message.key(), IndexedDoc.of(message));
+            if (buffer.size() >= flushDocs) {
+                flush();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void remove(MirroredMessage message) {
+        lock.writeLock().lock();
+        try {
+            buffer.remove(message.key());
+            delete(message.key());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes buffered changes as a new segment, merging segments if there are
+     * now more than the maximum.
+     */
+    public void flush() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (buffer.isEmpty()) {
+                return;
+            }
+            Segment segment = Segment.write(nextSegmentFile(), new ArrayList<>(buffer.values()));
+            add(segment);
+            buffer.clear();
+            if (segments.size() > maxSegments) {
+                merge();
+            } else {
+                writeManifest();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Keys of the newest messages matching the query that were received in
+     * {@code [after, before)}, newest first.
+     *
+     * @param after  Earliest receive time in epoch milliseconds, inclusive; {@link Long#MIN_VALUE} for none
+     * @param before Latest receive time in epoch milliseconds, exclusive; {@link Long#MAX_VALUE} for none
+     * @param top    Maximum number of keys
+     */
+    public List<String> search(SearchQuery query, long after, long before, int top) {
+        List<Hit> hits = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (Segment segment : segments) {
+                collect(segment, query, after, before, top, hits);
+            }
+            for (IndexedDoc doc : buffer.values()) {
+                if (doc.received() >= after && doc.received() < before && matches(doc, query)) {
+                    hits.add(new Hit(doc.key(), doc.received()));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        hits.sort(NEWEST_FIRST);
+        List<String> keys = new ArrayList<>(Math.min(top, hits.size()));
+        for (int i = 0; i < hits.size() && keys.size() < top; i++) {
+            keys.add(hits.get(i).key());
+        }
+        return keys;
+    }
+
+    int segmentCount() {
+        lock.readLock().lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds the first {@code top} live matches of a segment within the date
+     * range. Documents are numbered newest first, so these are its newest matches.
+     */
+    private void collect(Segment segment, SearchQuery query, long after, long before, int top, List<Hit> hits) {
+        int from = segment.firstReceivedBefore(before);
+        int to = after == Long.MIN_VALUE ? segment.docCount() : segment.firstReceivedBefore(after);
+        if (from >= to) {
+            return;
+        }
+        BitSet matches = null;
+        for (SearchQuery.Clause clause : query.clauses()) {
+            BitSet clauseMatches = segment.match(clause, maxPrefixTerms);
+            if (matches == null) {
+                matches = clauseMatches;
+            } else {
+                matches.and(clauseMatches);
+            }
+            if (matches.isEmpty()) {
+                return;
+            }
+        }
+        if (matches == null) {
+            matches = new BitSet(to);
+            matches.set(from, to);
+        } else {
+            matches.clear(0, from);
+            matches.clear(to, segment.docCount());
+        }
+        matches.andNot(deletions.get(segment));
+
+        int found = 0;
+        for (int doc = matches.nextSetBit(0); doc >= 0 && found < top; doc = matches.nextSetBit(doc + 1), found++) {
+            hits.add(new Hit(segment.key(doc), segment.received(doc)));
+        }
+    }
+
+    private static boolean matches(IndexedDoc doc, SearchQuery query) {
+        for (SearchQuery.Clause clause : query.clauses()) {
+            if (!matches(doc, clause)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matches(IndexedDoc doc, SearchQuery.Clause clause) {
+        SearchField[] fields = clause.field() != null ? new SearchField[]{clause.field()} : SearchField.values();
+        for (SearchField field : fields) {
+            List<String> tokens = doc.tokens(field);
+            boolean found = switch (clause.kind()) {
+                case TERM -> tokens.contains(clause.tokens().get(0));
+                case PREFIX -> tokens.stream().anyMatch(token -> token.startsWith(clause.tokens().get(0)));
+                case PHRASE -> Collections.indexOfSubList(tokens, clause.tokens()) >= 0;
+            };
+            if (found) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Marks the segment copy of a message deleted.
+     */
+    private void delete(String key) {
+        SegmentDoc current = indexed.remove(key);
+        if (current != null) {
+            deletions.get(current.segment()).set(current.doc());
+        }
+    }
+
+    /**
+     * Adds a segment; its documents replace older copies of the same messages.
+     */
+    private void add(Segment segment) {
+        segments.add(segment);
+        deletions.put(segment, new BitSet(segment.docCount()));
+        for (int doc = 0; doc < segment.docCount(); doc++) {
+            String key = segment.key(doc);
+            delete(key);
+            indexed.put(key, new SegmentDoc(segment, doc, segment.fingerprint(doc)));
+        }
+    }
+
+    /**
+     * Rewrites all live messages as one segment, from their mirrored versions.
+     */
+    private void merge() throws IOException {
+        long start = System.nanoTime();
+        List<IndexedDoc> live = new ArrayList<>(indexed.size());
+        for (String key : indexed.keySet()) {
+            MirroredMessage message = lookup.apply(key);
+            if (message != null) {
+                live.add(IndexedDoc.of(message));
+            }
+        }
+        List<Segment> merged = new ArrayList<>(segments);
+        segments.clear();
+        deletions.clear();
+        indexed.clear();
+        add(Segment.write(nextSegmentFile(), live));
+        writeManifest();
+        for (Segment segment : merged) {
+            deleteFile(segment.file());
+        }
+        logger.debug("Merged {} search index segments at {} into one of {} messages in {} ms",
+                merged.size(), directory, live.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Opens the segments listed in the manifest and removes files it does not list.
+     */
+    private void load() throws IOException {
+        Path manifest = directory.resolve(MANIFEST);
+        Set<Path> listed = new HashSet<>();
+        if (Files.exists(manifest)) {
+            for (String name : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+                if (name.isBlank()) {
+                    continue;
+                }
+                Path file = directory.resolve(name.trim());
+                listed.add(file);
+                nextGeneration = Math.max(nextGeneration, generation(file) + 1);
+                add(Segment.open(file));
+            }
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*")) {
+            for (Path file : files) {
+                if (!listed.contains(file)) {
+                    deleteFile(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes indexed messages that are no longer mirrored or have changed,
+     * and buffers mirrored messages that are not indexed.
+     */
+    private void reconcile(Collection<MirroredMessage> mirrored) {
+        Set<String> keys = new HashSet<>(mirrored.size() * 2);
+        for (MirroredMessage message : mirrored) {
+            keys.add(message.key());
+            SegmentDoc current = indexed.get(message.key());
+            if (current == null || current.fingerprint() != IndexedDoc.fingerprint(message)) {
+                delete(message.key());
+                buffer.put(message.key(), IndexedDoc.of(message));
+            }
+        }
+        for (String key : new ArrayList<>(indexed.keySet())) {
+            if (!keys.contains(key)) {
+                delete(key);
+            }
+        }
+    }
+
+    private void clear() throws IOException {
+        segments.clear();
+        deletions.clear();
+        indexed.clear();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                deleteFile(file);
+            }
+        }
+    }
+
+    private void writeManifest() throws IOException {
+        StringBuilder manifest = new StringBuilder();
+        for (Segment segment : segments) {
+            manifest.append(segment.file().getFileName()).append('\n');
+        }
+        Path temporary = directory.resolve(MANIFEST + ".tmp");
+        Files.writeString(temporary, manifest, StandardCharsets.UTF_8);
+        Files.move(temporary, directory.resolve(MANIFEST),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path nextSegmentFile() {
+        return directory.resolve(SEGMENT_PREFIX + nextGeneration++ + SEGMENT_SUFFIX);
+    }
+
+    private static long generation(Path file) throws IOException {
+        String name = file.getFileName().toString();
+        if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+            throw new IOException("Unexpected search index segment name: " + name);
+        }
+        try {
+            return Long.parseLong(name, SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length(), 10);
+        } catch (NumberFormatException e) {
+            throw new IOException("Unexpected search index segment name: " + name, e);
+        }
+    }
+
+    private static void deleteFile(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Failed to delete search index file {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Location of the indexed copy of a message.
+     */
+    private record SegmentDoc(Segment segment, int doc, long fingerprint) {
+    }
+
+    private record Hit(String key, long received) {
+    }
+}
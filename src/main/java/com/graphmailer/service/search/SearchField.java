@@ -0,0 +1,38 @@
+package com.graphmailer.service.search;
+
+import java.util.Locale;
+
+/**
+ * Indexed message fields. Each term is stored with its field's code as first
+ * byte, so the terms of a field are contiguous in a segment's dictionary.
+ */
+enum SearchField {
+    SUBJECT("subject", (byte) 's'),
+    FROM("from", (byte) 'f'),
+    BODY("body", (byte) 'b');
+
+    private final String queryName;
+    private final byte code;
+
+    SearchField(String queryName, byte code) {
+        this.queryName = queryName;
+        this.code = code;
+    }
+
+    byte code() {
+        return code;
+    }
+
+    /**
+     * Field with the given query prefix, e.g. {@code subject} in {@code subject:report}, or null.
+     */
+    static SearchField forQueryName(String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        for (SearchField field : values()) {
+            if (field.queryName.equals(lower)) {
+                return field;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,119 @@
+package com.graphmailer.service.search;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A parsed search query: clauses that must all match.
+ *
+ * Syntax, with clauses separated by spaces:
+ * <ul>
+ *   <li>{@code report} - messages containing the term</li>
+ *   <li>{@code rep*} - messages containing a term starting with "rep"</li>
+ *   <li>{@code "quarterly report"} - messages containing the terms next to each other</li>
+ *   <li>{@code subject:report}, {@code from:alice}, {@code body:"see attached"} - restricted to one field</li>
+ * </ul>
+ * Without a field, a clause matches the subject, sender or body preview. A
+ * term that tokenizes into several terms, like {@code alice@example.com}, is
+ * matched as a phrase.
+ *
+ * @param clauses Clauses that must all match; empty matches every message
+ */
+public record SearchQuery(List<Clause> clauses) {
+
+    /**
+     * How a clause's terms are matched.
+     */
+    enum Kind {
+        TERM,
+        PREFIX,
+        PHRASE
+    }
+
+    /**
+     * One query clause.
+     *
+     * @param field  Field to match, or null for any field
+     * @param kind   How the terms are matched
+     * @param tokens Lower-case terms; one for TERM and PREFIX
+     */
+    record Clause(SearchField field, Kind kind, List<String> tokens) {
+    }
+
+    /**
+     * Parses a query string.
+     *
+     * @throws IllegalArgumentException if a phrase is not closed
+     */
+    public static SearchQuery parse(String query) {
+        List<Clause> clauses = new ArrayList<>();
+        if (query == null) {
+            return new SearchQuery(clauses);
+        }
+        int i = 0;
+        while (i < query.length()) {
+            if (Character.isWhitespace(query.charAt(i))) {
+                i++;
+                continue;
+            }
+            int start = i;
+            SearchField field = null;
+            int colon = fieldSeparator(query, i);
+            if (colon > 0) {
+                field = SearchField.forQueryName(query.substring(i, colon));
+                if (field != null) {
+                    i = colon + 1;
+                }
+            }
+
+            String text;
+            boolean quoted = i < query.length() && query.charAt(i) == '"';
+            if (quoted) {
+                int end = query.indexOf('"', i + 1);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Unterminated phrase at position " + start);
+                }
+                text = query.substring(i + 1, end);
+                i = end + 1;
+            } else {
+                int end = i;
+                while (end < query.length() && !Character.isWhitespace(query.charAt(end))) {
+                    end++;
+                }
+                text = query.substring(i, end);
+                i = end;
+            }
+
+            List<String> tokens = Tokenizer.tokenize(text);
+            if (tokens.isEmpty()) {
+                continue;
+            }
+            if (!quoted && tokens.size() == 1) {
+                clauses.add(new Clause(field, text.endsWith("*") ? Kind.PREFIX : Kind.TERM, tokens));
+            } else {
+                clauses.add(new Clause(field, tokens.size() == 1 ? Kind.TERM : Kind.PHRASE, tokens));
+            }
+        }
+        return new SearchQuery(List.copyOf(clauses));
+    }
+
+    /**
+     * Position of the colon ending a {@code field:} prefix at {@code start}, or -1.
+     */
+    private static int fieldSeparator(String query, int start) {
+        for (int i = start; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (c == ':') {
+                return i;
+            }
+            if (!Character.isLetter(c)) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    public boolean isEmpty() {
+        return clauses.isEmpty();
+    }
+}
@@ -0,0 +1,11 @@
+package com.graphmailer.service.search;
+
+/**
+ * Exception raised when a search is requested while the search index is disabled.
+ */
+public class SearchUnavailableException extends RuntimeException {
+
+    public SearchUnavailableException(String message) {
+        super(message);
+    }
+}
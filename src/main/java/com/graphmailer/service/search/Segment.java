@@ -0,0 +1,449 @@
+package com.graphmailer.service.search;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable, memory-mapped index segment.
+ *
+ * Documents are numbered newest first, so every postings list is also in
+ * receive order and a date range is a contiguous range of document numbers.
+ * The file holds, after a fixed header:
+ * <ul>
+ *   <li>the document table: receive time, fingerprint and key offset per document</li>
+ *   <li>the document keys</li>
+ *   <li>the term table, sorted by term bytes: term offset and length, document
+ *       frequency and postings offset per term</li>
+ *   <li>the term bytes: field code followed by the UTF-8 term</li>
+ *   <li>the postings: per term, the delta-coded document numbers, then per
+ *       document the number of positions and the delta-coded positions, as varints</li>
+ * </ul>
+ * Segments are written to a temporary file, fsynced and renamed into place, so
+ * a segment file is either complete or absent.
+ */
+final class Segment {
+
+    private static final int MAGIC = 0x4D534958;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int DOC_ENTRY_BYTES = 20;
+    private static final int TERM_ENTRY_BYTES = 20;
+
+    private static final Comparator<IndexedDoc> NEWEST_FIRST = Comparator
+            .comparingLong(IndexedDoc::received).reversed()
+            .thenComparing(IndexedDoc::key);
+
+    private final Path file;
+    private final MappedByteBuffer buffer;
+    private final int docCount;
+    private final int termCount;
+    private final int docsOffset;
+    private final int keysOffset;
+    private final int termsOffset;
+    private final int termBytesOffset;
+    private final int postingsOffset;
+
+    private Segment(Path file, MappedByteBuffer buffer) throws IOException {
+        this.file = file;
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a search index segment: " + file);
+        }
+        this.docCount = buffer.getInt(8);
+        this.termCount = buffer.getInt(12);
+        this.docsOffset = buffer.getInt(16);
+        this.keysOffset = buffer.getInt(20);
+        this.termsOffset = buffer.getInt(24);
+        this.termBytesOffset = buffer.getInt(28);
+        this.postingsOffset = buffer.getInt(32);
+    }
+
+    /**
+     * Maps an existing segment file.
+     */
+    static Segment open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new Segment(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Writes the documents as a new segment and maps it.
+     */
+    static Segment write(Path file, List<IndexedDoc> docs) throws IOException {
+        List<IndexedDoc> sorted = new ArrayList<>(docs);
+        sorted.sort(NEWEST_FIRST);
+
+        // Collect (document, position) pairs per term, in document order
+        Map<String, IntPairs> occurrences = new HashMap<>();
+        for (int doc = 0; doc < sorted.size(); doc++) {
+            for (SearchField field : SearchField.values()) {
+                List<String> tokens = sorted.get(doc).tokens(field);
+                for (int position = 0; position < tokens.size(); position++) {
+                    occurrences.computeIfAbsent((char) field.code() + tokens.get(position), term -> new IntPairs())
+                            .add(doc, position);
+                }
+            }
+        }
+        List<byte[]> terms = new ArrayList<>(occurrences.size());
+        for (String term : occurrences.keySet()) {
+            terms.add(term.getBytes(StandardCharsets.UTF_8));
+        }
+        terms.sort(Arrays::compareUnsigned);
+
+        ByteArrayOutputStream docTable = new ByteArrayOutputStream(sorted.size() * DOC_ENTRY_BYTES);
+        ByteArrayOutputStream keys = new ByteArrayOutputStream(sorted.size() * 32);
+        DataOutputStream docOutput = new DataOutputStream(docTable);
+        DataOutputStream keyOutput = new DataOutputStream(keys);
+        for (IndexedDoc doc : sorted) {
+            docOutput.writeLong(doc.received());
+            docOutput.writeLong(doc.fingerprint());
+            docOutput.writeInt(keys.size());
+            byte[] key = doc.key().getBytes(StandardCharsets.UTF_8);
+            keyOutput.writeInt(key.length);
+            keyOutput.write(key);
+        }
+
+        ByteArrayOutputStream termTable = new ByteArrayOutputStream(terms.size() * TERM_ENTRY_BYTES);
+        ByteArrayOutputStream termBytes = new ByteArrayOutputStream(terms.size() * 8);
+        ByteArrayOutputStream postings = new ByteArrayOutputStream(terms.size() * 16);
+        DataOutputStream termOutput = new DataOutputStream(termTable);
+        for (byte[] term : terms) {
+            IntPairs pairs = occurrences.get(new String(term, StandardCharsets.UTF_8));
+            termOutput.writeInt(termBytes.size());
+            termOutput.writeInt(term.length);
+            termOutput.writeInt(pairs.distinctFirsts());
+            termOutput.writeInt(postings.size());
+            termOutput.writeInt(0);
+            termBytes.write(term);
+            pairs.writePostings(postings);
+        }
+
+        int docsAt = HEADER_BYTES;
+        int keysAt = docsAt + docTable.size();
+        int termsAt = keysAt + keys.size();
+        int termBytesAt = termsAt + termTable.size();
+        int postingsAt = termBytesAt + termBytes.size();
+        if ((long) postingsAt + postings.size() > Integer.MAX_VALUE) {
+            throw new IOException("Search index segment would exceed 2GB, lower search.flush-docs");
+        }
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream stream = Files.newOutputStream(temporary);
+             DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream, 65536))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(sorted.size());
+            output.writeInt(terms.size());
+            output.writeInt(docsAt);
+            output.writeInt(keysAt);
+            output.writeInt(termsAt);
+            output.writeInt(termBytesAt);
+            output.writeInt(postingsAt);
+            output.write(new byte[HEADER_BYTES - 36]);
+            docTable.writeTo(output);
+            keys.writeTo(output);
+            termTable.writeTo(output);
+            termBytes.writeTo(output);
+            postings.writeTo(output);
+        }
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return open(file);
+    }
+
+    Path file() {
+        return file;
+    }
+
+    int docCount() {
+        return docCount;
+    }
+
+    long received(int doc) {
+        return buffer.getLong(docsOffset + doc * DOC_ENTRY_BYTES);
+    }
+
+    long fingerprint(int doc) {
+        return buffer.getLong(docsOffset + doc * DOC_ENTRY_BYTES + 8);
+    }
+
+    String key(int doc) {
+        int at = keysOffset + buffer.getInt(docsOffset + doc * DOC_ENTRY_BYTES + 16);
+        byte[] bytes = new byte[buffer.getInt(at)];
+        buffer.get(at + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * First document received before the given time; documents from here on are older.
+     */
+    int firstReceivedBefore(long time) {
+        int low = 0;
+        int high = docCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (received(middle) < time) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Documents matching a clause.
+     *
+     * @param maxPrefixTerms Maximum number of terms a prefix expands to
+     */
+    BitSet match(SearchQuery.Clause clause, int maxPrefixTerms) {
+        BitSet matches = new BitSet(docCount);
+        SearchField[] fields = clause.field() != null ? new SearchField[]{clause.field()} : SearchField.values();
+        for (SearchField field : fields) {
+            switch (clause.kind()) {
+                case TERM -> {
+                    int term = find(termBytes(field, clause.tokens().get(0)));
+                    if (term >= 0) {
+                        addDocs(term, matches);
+                    }
+                }
+                case PREFIX -> {
+                    byte[] prefix = termBytes(field, clause.tokens().get(0));
+                    int end = Math.min(termCount, lowerBound(prefix) + maxPrefixTerms);
+                    for (int term = lowerBound(prefix); term < end && startsWith(term, prefix); term++) {
+                        addDocs(term, matches);
+                    }
+                }
+                case PHRASE -> matchPhrase(field, clause.tokens(), matches);
+            }
+        }
+        return matches;
+    }
+
+    private void matchPhrase(SearchField field, List<String> tokens, BitSet matches) {
+        Postings[] postings = new Postings[tokens.size()];
+        for (int i = 0; i < tokens.size(); i++) {
+            int term = find(termBytes(field, tokens.get(i)));
+            if (term < 0) {
+                return;
+            }
+            postings[i] = readPostings(term);
+        }
+        Postings first = postings[0];
+        for (int d = 0; d < first.docs.length; d++) {
+            int doc = first.docs[d];
+            int[][] candidates = new int[tokens.size()][];
+            candidates[0] = first.positions[d];
+            boolean inAll = true;
+            for (int i = 1; i < postings.length && inAll; i++) {
+                int index = Arrays.binarySearch(postings[i].docs, doc);
+                inAll = index >= 0;
+                if (inAll) {
+                    candidates[i] = postings[i].positions[index];
+                }
+            }
+            if (inAll && hasConsecutivePositions(candidates)) {
+                matches.set(doc);
+            }
+        }
+    }
+
+    private static boolean hasConsecutivePositions(int[][] positions) {
+        for (int start : positions[0]) {
+            boolean consecutive = true;
+            for (int i = 1; i < positions.length && consecutive; i++) {
+                consecutive = Arrays.binarySearch(positions[i], start + i) >= 0;
+            }
+            if (consecutive) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void addDocs(int term, BitSet matches) {
+        int entry = termsOffset + term * TERM_ENTRY_BYTES;
+        int docFreq = buffer.getInt(entry + 8);
+        int[] cursor = {postingsOffset + buffer.getInt(entry + 12)};
+        int doc = 0;
+        for (int i = 0; i < docFreq; i++) {
+            doc += readVarInt(cursor);
+            matches.set(doc);
+        }
+    }
+
+    private Postings readPostings(int term) {
+        int entry = termsOffset + term * TERM_ENTRY_BYTES;
+        int docFreq = buffer.getInt(entry + 8);
+        int[] cursor = {postingsOffset + buffer.getInt(entry + 12)};
+        int[] docs = new int[docFreq];
+        int doc = 0;
+        for (int i = 0; i < docFreq; i++) {
+            doc += readVarInt(cursor);
+            docs[i] = doc;
+        }
+        int[][] positions = new int[docFreq][];
+        for (int i = 0; i < docFreq; i++) {
+            int[] docPositions = new int[readVarInt(cursor)];
+            int position = 0;
+            for (int p = 0; p < docPositions.length; p++) {
+                position += readVarInt(cursor);
+                docPositions[p] = position;
+            }
+            positions[i] = docPositions;
+        }
+        return new Postings(docs, positions);
+    }
+
+    private int find(byte[] term) {
+        int index = lowerBound(term);
+        return index < termCount && compare(index, term) == 0 ? index : -1;
+    }
+
+    /**
+     * Index of the first term not less than the given bytes.
+     */
+    private int lowerBound(byte[] term) {
+        int low = 0;
+        int high = termCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(middle, term) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int compare(int term, byte[] other) {
+        int entry = termsOffset + term * TERM_ENTRY_BYTES;
+        int at = termBytesOffset + buffer.getInt(entry);
+        int length = buffer.getInt(entry + 4);
+        int common = Math.min(length, other.length);
+        for (int i = 0; i < common; i++) {
+            int difference = Byte.toUnsignedInt(buffer.get(at + i)) - Byte.toUnsignedInt(other[i]);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length - other.length;
+    }
+
+    private boolean startsWith(int term, byte[] prefix) {
+        int entry = termsOffset + term * TERM_ENTRY_BYTES;
+        int at = termBytesOffset + buffer.getInt(entry);
+        if (buffer.getInt(entry + 4) < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(at + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int readVarInt(int[] cursor) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get(cursor[0]++);
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private static byte[] termBytes(SearchField field, String token) {
+        byte[] text = token.getBytes(StandardCharsets.UTF_8);
+        byte[] term = new byte[text.length + 1];
+        term[0] = field.code();
+        System.arraycopy(text, 0, term, 1, text.length);
+        return term;
+    }
+
+    private record Postings(int[] docs, int[][] positions) {
+    }
+
+    /**
+     * Growable list of (document, position) pairs of one term, in document order.
+     */
+    private static final class IntPairs {
+
+        private int[] values = new int[8];
+        private int size;
+
+        void add(int doc, int position) {
+            if (size + 2 > values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[size++] = doc;
+            values[size++] = position;
+        }
+
+        int distinctFirsts() {
+            int count = 0;
+            for (int i = 0; i < size; i += 2) {
+                if (i == 0 || values[i] != values[i - 2]) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        void writePostings(ByteArrayOutputStream output) {
+            int previousDoc = 0;
+            for (int i = 0; i < size; i += 2) {
+                if (i == 0 || values[i] != values[i - 2]) {
+                    writeVarInt(output, values[i] - previousDoc);
+                    previousDoc = values[i];
+                }
+            }
+            for (int i = 0; i < size; ) {
+                int doc = values[i];
+                int end = i;
+                while (end < size && values[end] == doc) {
+                    end += 2;
+                }
+                writeVarInt(output, (end - i) / 2);
+                int previousPosition = 0;
+                for (int p = i; p < end; p += 2) {
+                    writeVarInt(output, values[p + 1] - previousPosition);
+                    previousPosition = values[p + 1];
+                }
+                i = end;
+            }
+        }
+
+        private static void writeVarInt(ByteArrayOutputStream output, int value) {
+            while ((value & ~0x7F) != 0) {
+                output.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            output.write(value);
+        }
+    }
+}
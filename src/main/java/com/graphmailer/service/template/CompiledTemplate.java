@@ -0,0 +1,147 @@
+package com.graphmailer.service.template;
+
+import com.graphmailer.model.MailTemplate;
+import com.graphmailer.model.TemplateInfo;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A stored template compiled into render plans for its subject and body.
+ *
+ * Variables are numbered in order of first use. Each render binds the shared
+ * and per-recipient values into an array by those numbers once and escapes
+ * each value at most once, so rendering a body of any size only copies
+ * literal runs and values. Instances are immutable and shared by all threads.
+ */
+public final class CompiledTemplate {
+
+    /** Room reserved per placeholder when sizing a fresh buffer. */
+    private static final int EXPECTED_VALUE_LENGTH = 32;
+
+    private final String id;
+    private final MailTemplate source;
+    private final Instant updatedAt;
+    private final List<String> variables;
+    private final RenderPlan subject;
+    /** Plan of the body that is sent: the HTML body if there is one, else the text body. */
+    private final RenderPlan body;
+    private final boolean html;
+
+    private CompiledTemplate(String id, MailTemplate source, Instant updatedAt, List<String> variables,
+                             RenderPlan subject, RenderPlan body, boolean html) {
+        this.id = id;
+        this.source = source;
+        this.updatedAt = updatedAt;
+        this.variables = variables;
+        this.subject = subject;
+        this.body = body;
+        this.html = html;
+    }
+
+    /**
+     * Compiles a template.
+     *
+     * @throws IllegalArgumentException if the template has no body or a placeholder is malformed
+     */
+    public static CompiledTemplate compile(String id, MailTemplate source, Instant updatedAt) {
+        if (source.subject() == null || source.subject().isBlank()) {
+            throw new IllegalArgumentException("Template subject is required");
+        }
+        boolean html = source.htmlBody() != null && !source.htmlBody().isBlank();
+        if (!html && (source.textBody() == null || source.textBody().isBlank())) {
+            throw new IllegalArgumentException("Template needs an htmlBody or a textBody");
+        }
+
+        Map<String, Integer> slotsByName = new LinkedHashMap<>();
+        RenderPlan subject = RenderPlan.compile(source.subject(), slotsByName, false);
+        RenderPlan body = html
+                ? RenderPlan.compile(source.htmlBody(), slotsByName, true)
+                : RenderPlan.compile(source.textBody(), slotsByName, false);
+        return new CompiledTemplate(id, source, updatedAt, List.copyOf(slotsByName.keySet()), subject, body, html);
+    }
+
+    /**
+     * Renders the template into a new buffer.
+     *
+     * @see #render(Map, Map, StringBuilder)
+     */
+    public Rendered render(Map<String, String> shared, Map<String, String> own) {
+        return render(shared, own, new StringBuilder(expectedBodyLength()));
+    }
+
+    /**
+     * Renders the template, building the body in the given buffer. Callers
+     * rendering many messages pass the same buffer, which then keeps the
+     * capacity of the largest body instead of growing again for every message.
+     *
+     * @param shared Values for all recipients
+     * @param own    Values for this recipient, taking precedence over shared ones
+     * @param buffer Buffer the body is built in; its content is replaced
+     * @throws IllegalArgumentException if a variable has no value
+     */
+    public Rendered render(Map<String, String> shared, Map<String, String> own, StringBuilder buffer) {
+        String[] values = new String[variables.size()];
+        for (int slot = 0; slot < values.length; slot++) {
+            String name = variables.get(slot);
+            String value = own.get(name);
+            if (value == null) {
+                value = shared.get(name);
+            }
+            if (value == null) {
+                throw new IllegalArgumentException("No value for template variable '" + name + "'");
+            }
+            values[slot] = value;
+        }
+
+        StringBuilder subjectText = new StringBuilder(subject.literalLength()
+                + subject.slotCount() * EXPECTED_VALUE_LENGTH);
+        String[] escaped = new String[values.length];
+        subject.render(values, escaped, subjectText);
+
+        buffer.setLength(0);
+        buffer.ensureCapacity(expectedBodyLength());
+        body.render(values, escaped, buffer);
+        String bodyText = buffer.toString();
+        return html
+                ? new Rendered(subjectText.toString(), bodyText, null)
+                : new Rendered(subjectText.toString(), null, bodyText);
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public MailTemplate source() {
+        return source;
+    }
+
+    /**
+     * Variables referenced by the template, in order of first use.
+     */
+    public List<String> variables() {
+        return variables;
+    }
+
+    public Instant updatedAt() {
+        return updatedAt;
+    }
+
+    public TemplateInfo info() {
+        return new TemplateInfo(id, variables,
+                source.htmlBody() != null ? source.htmlBody().length() : 0,
+                source.textBody() != null ? source.textBody().length() : 0,
+                updatedAt);
+    }
+
+    private int expectedBodyLength() {
+        return body.literalLength() + body.slotCount() * EXPECTED_VALUE_LENGTH;
+    }
+
+    /**
+     * A rendered message; one of the bodies is null.
+     */
+    public record Rendered(String subject, String htmlBody, String textBody) {}
+}
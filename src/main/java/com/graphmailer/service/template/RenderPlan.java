@@ -0,0 +1,148 @@
+package com.graphmailer.service.template;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * One part of a template, compiled into literal text runs alternating with
+ * variable slots.
+ *
+ * The source is parsed once, when the template is uploaded. Rendering appends
+ * the runs and the slots' values to a buffer without scanning the source
+ * again, and values are looked up by slot number rather than by name.
+ */
+final class RenderPlan {
+
+    private static final Pattern VARIABLE_NAME = Pattern.compile("[A-Za-z0-9_.-]{1,64}");
+
+    /** Literal runs; {@code literals[i]} precedes slot {@code i}, the last one follows the last slot. */
+    private final String[] literals;
+    private final int[] slots;
+    private final boolean[] escaped;
+    private final int literalLength;
+
+    private RenderPlan(String[] literals, int[] slots, boolean[] escaped) {
+        this.literals = literals;
+        this.slots = slots;
+        this.escaped = escaped;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * Parses a template part. Slots are numbered in order of first use across
+     * all parts compiled with the same map.
+     *
+     * @param source      Template text with {@code {{name}}} and {@code {{{name}}}} placeholders
+     * @param slotsByName Slots of the variables seen so far; new variables are added
+     * @param html        Whether values of {@code {{name}}} placeholders are HTML-escaped
+     * @throws IllegalArgumentException if a placeholder is not closed or its name is invalid
+     */
+    static RenderPlan compile(String source, Map<String, Integer> slotsByName, boolean html) {
+        List<String> literals = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+        List<Boolean> escaped = new ArrayList<>();
+
+        int position = 0;
+        int open;
+        while ((open = source.indexOf("{{", position)) >= 0) {
+            boolean raw = source.startsWith("{{{", open);
+            String close = raw ? "}}}" : "}}";
+            int nameStart = open + close.length();
+            int end = source.indexOf(close, nameStart);
+            if (end < 0) {
+                throw new IllegalArgumentException("Unclosed template placeholder at offset " + open);
+            }
+            String name = source.substring(nameStart, end).trim();
+            if (!VARIABLE_NAME.matcher(name).matches()) {
+                throw new IllegalArgumentException("Invalid template variable '" + name + "' at offset " + open);
+            }
+
+            literals.add(source.substring(position, open));
+            slots.add(slotsByName.computeIfAbsent(name, key -> slotsByName.size()));
+            escaped.add(html && !raw);
+            position = end + close.length();
+        }
+        literals.add(source.substring(position));
+
+        boolean[] escapedSlots = new boolean[escaped.size()];
+        for (int i = 0; i < escapedSlots.length; i++) {
+            escapedSlots[i] = escaped.get(i);
+        }
+        return new RenderPlan(literals.toArray(String[]::new),
+                slots.stream().mapToInt(Integer::intValue).toArray(), escapedSlots);
+    }
+
+    /**
+     * Appends the rendered text to the buffer.
+     *
+     * @param values  Variable values indexed by slot
+     * @param escaped HTML-escaped values indexed by slot, filled in on first use so
+     *                a value used many times is escaped once; shared by all parts of one render
+     */
+    void render(String[] values, String[] escaped, StringBuilder out) {
+        out.append(literals[0]);
+        for (int i = 0; i < slots.length; i++) {
+            int slot = slots[i];
+            if (this.escaped[i]) {
+                String value = escaped[slot];
+                if (value == null) {
+                    value = escapeHtml(values[slot]);
+                    escaped[slot] = value;
+                }
+                out.append(value);
+            } else {
+                out.append(values[slot]);
+            }
+            out.append(literals[i + 1]);
+        }
+    }
+
+    /**
+     * Characters of literal text, a lower bound of the rendered length.
+     */
+    int literalLength() {
+        return literalLength;
+    }
+
+    /**
+     * Number of placeholders.
+     */
+    int slotCount() {
+        return slots.length;
+    }
+
+    /**
+     * Replaces the characters that are special in HTML text and attribute
+     * values by entities.
+     *
+     * @return The value itself if it has no such characters
+     */
+    static String escapeHtml(String value) {
+        StringBuilder out = null;
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            String entity = switch (value.charAt(i)) {
+                case '&' -> "&amp;";
+                case '<' -> "&lt;";
+                case '>' -> "&gt;";
+                case '"' -> "&quot;";
+                case '\'' -> "&#39;";
+                default -> null;
+            };
+            if (entity != null) {
+                if (out == null) {
+                    out = new StringBuilder(value.length() + 16);
+                }
+                out.append(value, start, i).append(entity);
+                start = i + 1;
+            }
+        }
+        return out == null ? value : out.append(value, start, value.length()).toString();
+    }
+}
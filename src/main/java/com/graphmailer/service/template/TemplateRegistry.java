@@ -0,0 +1,258 @@
+package com.graphmailer.service.template;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.graphmailer.config.TemplateProperties;
+import com.graphmailer.model.MailTemplate;
+import com.graphmailer.model.TemplateInfo;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * Stores email templates by ID, compiled once when they are uploaded.
+ *
+ * Lookups read a concurrent map and never compile. Uploads and deletes are
+ * serialized; with {@code templates.persistent} each template is also written
+ * to its own file in {@code templates.directory} before it replaces the
+ * previous version, and all files are compiled again on startup.
+ *
+ * The directory is the source of truth when it is shared by several replicas:
+ * a lookup of a template not cached, or last checked more than
+ * {@code templates.recheck-interval} ago, checks its file and compiles it
+ * again when it is newer or appeared, drops it when another replica deleted
+ * it, and listing rescans the directory.
+ */
+@Service
+public class TemplateRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(TemplateRegistry.class);
+
+    private static final Pattern TEMPLATE_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+    private static final String FILE_SUFFIX = ".template.json";
+
+    private final TemplateProperties properties;
+    private final ObjectMapper objectMapper;
+    private final Path directory;
+    private final long recheckNanos;
+    private final ConcurrentMap<String, Entry> templates = new ConcurrentHashMap<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    public TemplateRegistry(TemplateProperties properties, ObjectMapper objectMapper, MeterRegistry meterRegistry)
+            throws IOException {
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+        this.directory = properties.persistent() ? Paths.get(properties.directory()) : null;
+        this.recheckNanos = properties.recheckInterval().toNanos();
+
+        if (directory != null) {
+            Files.createDirectories(directory);
+            sync();
+        }
+
+        Gauge.builder("mail.templates", templates, ConcurrentMap::size)
+                .description("Stored email templates")
+                .register(meterRegistry);
+
+        logger.info("Template registry initialized ({} templates, persistent: {})", templates.size(),
+                directory != null ? directory.toAbsolutePath() : "no");
+    }
+
+    /**
+     * Compiles and stores a template, replacing any previous version.
+     *
+     * @return The compiled template
+     * @throws IllegalArgumentException if the ID or template is invalid or the registry is full
+     * @throws UncheckedIOException     if the template cannot be persisted
+     */
+    public CompiledTemplate put(String templateId, MailTemplate template) {
+        if (templateId == null || !TEMPLATE_ID.matcher(templateId).matches()) {
+            throw new IllegalArgumentException("Template ID must be 1-64 letters, digits, '-' or '_'");
+        }
+        CompiledTemplate compiled = CompiledTemplate.compile(templateId, template, Instant.now());
+
+        writeLock.lock();
+        try {
+            if (!templates.containsKey(templateId) && templates.size() >= properties.maxTemplates()) {
+                throw new IllegalArgumentException("Template limit of " + properties.maxTemplates() + " reached");
+            }
+            FileTime modified = directory != null ? write(compiled) : null;
+            templates.put(templateId, new Entry(compiled, modified, System.nanoTime()));
+        } finally {
+            writeLock.unlock();
+        }
+
+        logger.info("Stored template {} ({} variables, {} chars)", templateId, compiled.variables().size(),
+                compiled.info().htmlBodyLength() + compiled.info().textBodyLength());
+        return compiled;
+    }
+
+    /**
+     * Compiled template with the given ID, if stored.
+     */
+    public Optional<CompiledTemplate> get(String templateId) {
+        if (templateId == null || !TEMPLATE_ID.matcher(templateId).matches()) {
+            return Optional.empty();
+        }
+        Entry entry = templates.get(templateId);
+        if (directory != null && (entry == null || System.nanoTime() - entry.checkedNanos() >= recheckNanos)) {
+            entry = refresh(templateId);
+        }
+        return entry == null ? Optional.empty() : Optional.of(entry.template());
+    }
+
+    /**
+     * Descriptions of all stored templates, by ID.
+     */
+    public List<TemplateInfo> list() {
+        if (directory != null) {
+            try {
+                sync();
+            } catch (IOException e) {
+                logger.warn("Failed to rescan template directory {}: {}", directory, e.getMessage());
+            }
+        }
+        return templates.values().stream()
+                .map(entry -> entry.template().info())
+                .sorted(Comparator.comparing(TemplateInfo::templateId))
+                .toList();
+    }
+
+    /**
+     * Deletes a template.
+     *
+     * @return Whether the template existed
+     * @throws UncheckedIOException if the template file cannot be deleted
+     */
+    public boolean remove(String templateId) {
+        writeLock.lock();
+        try {
+            if (templateId == null || !TEMPLATE_ID.matcher(templateId).matches()) {
+                return false;
+            }
+            boolean stored = templates.containsKey(templateId)
+                    || (directory != null && Files.exists(file(templateId)));
+            if (!stored) {
+                return false;
+            }
+            if (directory != null) {
+                Files.deleteIfExists(file(templateId));
+            }
+            templates.remove(templateId);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to delete template " + templateId, e);
+        } finally {
+            writeLock.unlock();
+        }
+        logger.info("Deleted template {}", templateId);
+        return true;
+    }
+
+    /**
+     * Writes a template's file and returns its modification time.
+     */
+    private FileTime write(CompiledTemplate compiled) {
+        Path file = file(compiled.id());
+        try {
+            Path temp = Files.createTempFile(directory, "template-", ".tmp");
+            objectMapper.writeValue(temp.toFile(),
+                    new StoredTemplate(compiled.id(), compiled.updatedAt(), compiled.source()));
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to store template " + compiled.id(), e);
+        }
+    }
+
+    /**
+     * Brings the cached templates in line with the files in the directory.
+     */
+    private void sync() throws IOException {
+        Set<String> stored = new HashSet<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + FILE_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String templateId = name.substring(0, name.length() - FILE_SUFFIX.length());
+                if (TEMPLATE_ID.matcher(templateId).matches() && refresh(templateId) != null) {
+                    stored.add(templateId);
+                }
+            }
+        }
+        templates.keySet().retainAll(stored);
+    }
+
+    /**
+     * Cached template, compiled again from its file if the file changed since
+     * it was cached; null if there is no readable file.
+     */
+    private Entry refresh(String templateId) {
+        Path file = file(templateId);
+        Entry cached = templates.get(templateId);
+        long now = System.nanoTime();
+        FileTime modified;
+        try {
+            modified = Files.getLastModifiedTime(file);
+        } catch (NoSuchFileException e) {
+            if (cached != null) {
+                templates.remove(templateId, cached);
+            }
+            return null;
+        } catch (IOException e) {
+            logger.warn("Failed to check template file {}: {}", file, e.getMessage());
+            return cached;
+        }
+        if (cached != null && modified.compareTo(cached.modified()) <= 0) {
+            Entry checked = new Entry(cached.template(), cached.modified(), now);
+            return templates.replace(templateId, cached, checked) ? checked : cached;
+        }
+
+        Entry loaded;
+        try {
+            StoredTemplate stored = objectMapper.readValue(file.toFile(), StoredTemplate.class);
+            loaded = new Entry(CompiledTemplate.compile(templateId, stored.template(), stored.updatedAt()), modified,
+                    now);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.warn("Skipping unreadable template file {}: {}", file, e.getMessage());
+            return cached;
+        }
+        // Keep a newer version cached concurrently by an upload or another lookup
+        return templates.merge(templateId, loaded,
+                (current, fresh) -> current.modified().compareTo(fresh.modified()) >= 0 ? current : fresh);
+    }
+
+    private Path file(String templateId) {
+        return directory.resolve(templateId + FILE_SUFFIX);
+    }
+
+    /**
+     * A compiled template, the modification time of its file (null when not
+     * persistent) and when that file was last checked.
+     */
+    private record Entry(CompiledTemplate template, FileTime modified, long checkedNanos) {}
+
+    /**
+     * File format of a persisted template.
+     */
+    record StoredTemplate(String templateId, Instant updatedAt, MailTemplate template) {}
+}
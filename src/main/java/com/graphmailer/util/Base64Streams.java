@@ -0,0 +1,64 @@
+package com.graphmailer.util;
+
+import java.io.InputStream;
+import java.util.Base64;
+
+/**
+ * Streaming access to base64 content.
+ */
+public final class Base64Streams {
+
+    private Base64Streams() {
+    }
+
+    /**
+     * Returns a stream of the bytes encoded by the given base64 text. The text is
+     * decoded as the stream is read, so no copy of the encoded or decoded content
+     * is made.
+     *
+     * @param base64 Base64 text, as produced by {@link Base64#getEncoder()}
+     * @return Stream of the decoded bytes
+     */
+    public static InputStream decoding(CharSequence base64) {
+        return Base64.getDecoder().wrap(new AsciiInputStream(base64));
+    }
+
+    /**
+     * Reads the characters of an ASCII char sequence as bytes.
+     */
+    private static final class AsciiInputStream extends InputStream {
+
+        private final CharSequence chars;
+        private int position;
+
+        AsciiInputStream(CharSequence chars) {
+            this.chars = chars;
+        }
+
+        @Override
+        public int read() {
+            return position < chars.length() ? chars.charAt(position++) & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            int remaining = chars.length() - position;
+            if (remaining <= 0) {
+                return -1;
+            }
+            int count = Math.min(length, remaining);
+            for (int i = 0; i < count; i++) {
+                buffer[offset + i] = (byte) chars.charAt(position++);
+            }
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return chars.length() - position;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.graphmailer.util;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Utility for parsing HTTP Retry-After header values.
+ *
+ * Graph sends Retry-After as a number of seconds, but RFC 9110 also allows
+ * an HTTP-date, so both forms are accepted.
+ */
+public final class RetryAfterParser {
+
+    private RetryAfterParser() {
+    }
+
+    /**
+     * Parses a Retry-After value.
+     *
+     * @param value Header value, may be null
+     * @return Requested delay, or null if the value is missing or malformed
+     */
+    public static Duration parse(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        String trimmed = value.trim();
+        try {
+            long seconds = Long.parseLong(trimmed);
+            return seconds >= 0 ? Duration.ofSeconds(seconds) : null;
+        } catch (NumberFormatException e) {
+            // Fall through to HTTP-date parsing
+        }
+        try {
+            ZonedDateTime retryAt = ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME);
+            Duration delay = Duration.between(Instant.now(), retryAt.toInstant());
+            return delay.isNegative() ? Duration.ZERO : delay;
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
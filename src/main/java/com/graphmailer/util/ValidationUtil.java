@@ -4,7 +4,6 @@ import com.graphmailer.config.MailProperties;
 import com.graphmailer.model.SendMailRequest;
 import org.springframework.stereotype.Component;
 
-import java.util.Base64;
 import java.util.List;
 import java.util.regex.Pattern;
 
@@ -40,7 +39,7 @@ public class ValidationUtil {
         validateRecipientDomains(request.to(), mailProperties);
         validateRecipientDomains(request.cc(), mailProperties);
         validateRecipientDomains(request.bcc(), mailProperties);
-        validateAttachments(request.attachments(), mailProperties);
+        validateAttachments(request.attachments(), request.saveToSentItems(), mailProperties);
         validateContentSize(request);
     }
 
@@ -72,9 +71,11 @@ public class ValidationUtil {
 
     /**
      * Validates attachments against size and type restrictions.
+     * Messages over the upload session threshold are sent as a draft, which
+     * Graph always keeps in Sent Items, so they must not opt out of it.
      */
     private void validateAttachments(List<com.graphmailer.model.EmailAttachment> attachments,
-            MailProperties mailProperties) {
+            Boolean saveToSentItems, MailProperties mailProperties) {
         if (attachments == null)
             return;
 
@@ -86,15 +87,19 @@ public class ValidationUtil {
                         "Attachment MIME type '" + attachment.contentType() + "' is not allowed");
             }
 
-            // Calculate attachment size
-            byte[] decodedContent = Base64.getDecoder().decode(attachment.base64());
-            totalSize += decodedContent.length;
+            // Calculate attachment size from the base64 length rather than decoding it
+            totalSize += attachment.decodedSize();
 
             if (totalSize > mailProperties.maxAttachmentBytes()) {
                 throw new IllegalArgumentException(
                         "Total attachment size exceeds limit of " + mailProperties.maxAttachmentBytes() + " bytes");
             }
         }
+
+        if (totalSize > mailProperties.uploadSessionThresholdBytes() && Boolean.FALSE.equals(saveToSentItems)) {
+            throw new IllegalArgumentException("saveToSentItems=false is not supported when attachments exceed "
+                    + mailProperties.uploadSessionThresholdBytes() + " bytes in total");
+        }
     }
 
     /**
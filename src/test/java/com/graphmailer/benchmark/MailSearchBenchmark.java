@@ -0,0 +1,94 @@
+package com.graphmailer.benchmark;
+
+import com.graphmailer.service.mirror.MirroredMessage;
+import com.graphmailer.service.search.MailboxIndex;
+import com.graphmailer.service.search.SearchQuery;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures search latency over a mailbox index of 100k messages spread over
+ * several segments, for each query kind.
+ *
+ * Run with {@code mvn -Pbenchmark test -Dbenchmark=MailSearchBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MailSearchBenchmark {
+
+    private static final String[] WORDS = {
+        "report", "invoice", "meeting", "quarterly", "budget", "review", "release", "incident",
+        "contract", "travel", "update", "planning", "customer", "renewal", "security", "training"
+    };
+
+    @Param({"report", "rev*", "\"quarterly report\"", "from:contoso invoice", "subject:incident budget"})
+    private String query;
+
+    private final Instant base = Instant.parse("2025-10-21T12:00:00Z");
+    private Path directory;
+    private MailboxIndex index;
+    private SearchQuery parsed;
+    private long after;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("search-benchmark");
+        Map<String, MirroredMessage> mirror = new HashMap<>();
+        index = MailboxIndex.open(directory, 20_000, 8, 1024, List.of(), mirror::get);
+        for (int i = 0; i < 100_000; i++) {
+            MirroredMessage message = new MirroredMessage("inbox", "id-" + i, "<" + i + "@example.com>",
+                    WORDS[i % 16] + " " + WORDS[(i / 16) % 16] + " " + i,
+                    "sender" + (i % 500) + (i % 3 == 0 ? "@contoso.com" : "@example.com"),
+                    base.minusSeconds(i * 60L),
+                    "Hello team, the " + WORDS[(i / 7) % 16] + " " + WORDS[(i / 3) % 16] + " is attached for review",
+                    false, false);
+            mirror.put(message.key(), message);
+            index.upsert(message);
+        }
+        index.flush();
+        parsed = SearchQuery.parse(query);
+        after = base.minusSeconds(30L * 24 * 3600).toEpochMilli();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public List<String> newest25() {
+        return index.search(parsed, Long.MIN_VALUE, Long.MAX_VALUE, 25);
+    }
+
+    @Benchmark
+    public List<String> newest25InLastMonth() {
+        return index.search(parsed, after, Long.MAX_VALUE, 25);
+    }
+}
@@ -0,0 +1,144 @@
+package com.graphmailer.benchmark;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.graphmailer.config.RateLimitProperties;
+import com.graphmailer.service.ratelimit.RateLimitPrincipal;
+import com.graphmailer.service.ratelimit.RateLimiter;
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.Refill;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the read rate limit check on the lock-free bucket table against
+ * the previous Caffeine registry of Bucket4j buckets, at 1, 8 and 64 threads
+ * spreading requests over 10,000 API key principals.
+ *
+ * Run with {@code mvn -Pbenchmark test -Dbenchmark=RateLimiterBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RateLimiterBenchmark {
+
+    private static final int PRINCIPALS = 10_000;
+    private static final long CAPACITY = 8_000_000;
+
+    private RateLimiter rateLimiter;
+    private Cache<String, Bucket> legacyBuckets;
+    private Authentication[] authentications;
+
+    @Setup
+    public void setUp() {
+        RateLimitProperties properties = new RateLimitProperties(CAPACITY, Duration.ofMinutes(1), null, 16_384,
+                null, null, null);
+        rateLimiter = new RateLimiter(properties, new SimpleMeterRegistry(), Optional.empty());
+        legacyBuckets = Caffeine.newBuilder()
+                .maximumSize(16_384)
+                .expireAfterAccess(Duration.ofMinutes(10))
+                .recordStats()
+                .build();
+        authentications = new Authentication[PRINCIPALS];
+        for (int i = 0; i < PRINCIPALS; i++) {
+            authentications[i] = new UsernamePasswordAuthenticationToken("api-user-" + i, null, List.of());
+        }
+    }
+
+    /**
+     * Request of one benchmark thread, authenticated as a random principal per call.
+     */
+    @State(Scope.Thread)
+    public static class Caller {
+
+        private MockHttpServletRequest request;
+        private SecurityContext context;
+
+        @Setup
+        public void setUp() {
+            request = new MockHttpServletRequest("GET", "/api/v1/mail/read");
+            request.setRemoteAddr("10.0.0.7");
+            context = SecurityContextHolder.createEmptyContext();
+            SecurityContextHolder.setContext(context);
+        }
+
+        private MockHttpServletRequest next(Authentication[] authentications) {
+            context.setAuthentication(authentications[ThreadLocalRandom.current().nextInt(authentications.length)]);
+            return request;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean legacyThreads1(Caller caller) {
+        return legacy(caller);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean legacyThreads8(Caller caller) {
+        return legacy(caller);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public boolean legacyThreads64(Caller caller) {
+        return legacy(caller);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean tableThreads1(Caller caller) {
+        return rateLimiter.tryConsume(caller.next(authentications));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean tableThreads8(Caller caller) {
+        return rateLimiter.tryConsume(caller.next(authentications));
+    }
+
+    @Benchmark
+    @Threads(64)
+    public boolean tableThreads64(Caller caller) {
+        return rateLimiter.tryConsume(caller.next(authentications));
+    }
+
+    /**
+     * The read rate limit check before the bucket table.
+     */
+    private boolean legacy(Caller caller) {
+        MockHttpServletRequest request = caller.next(authentications);
+        RateLimitPrincipal principal = RateLimitPrincipal.of(SecurityContextHolder.getContext().getAuthentication(),
+                request);
+        Bucket bucket = legacyBuckets.get(principal.key(), key -> Bucket.builder()
+                .addLimit(Bandwidth.classic(CAPACITY, Refill.intervally(CAPACITY, Duration.ofMinutes(1))))
+                .build());
+        return bucket.tryConsume(1);
+    }
+}
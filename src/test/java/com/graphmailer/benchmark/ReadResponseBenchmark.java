@@ -0,0 +1,154 @@
+package com.graphmailer.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.graphmailer.service.export.CsvMessageWriter;
+import com.graphmailer.service.export.JsonMessageWriter;
+import com.graphmailer.service.export.MessageWriter;
+import com.microsoft.graph.models.EmailAddress;
+import com.microsoft.graph.models.Message;
+import com.microsoft.graph.models.Recipient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the streaming read response writers against the previous
+ * map-and-string serialization, from Graph messages to response bytes.
+ *
+ * Run with {@code mvn -Pbenchmark test -Dbenchmark=ReadResponseBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadResponseBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    private int messageCount;
+
+    @Param({"json", "csv"})
+    private String format;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private List<Message> messages;
+
+    @Setup
+    public void setUp() {
+        messages = new ArrayList<>(messageCount);
+        OffsetDateTime base = OffsetDateTime.of(2025, 10, 21, 9, 0, 0, 0, ZoneOffset.UTC);
+        for (int i = 0; i < messageCount; i++) {
+            EmailAddress address = new EmailAddress();
+            address.setAddress("sender" + (i % 50) + "@example.com");
+            Recipient from = new Recipient();
+            from.setEmailAddress(address);
+
+            Message message = new Message();
+            message.setInternetMessageId("<message-" + i + "@example.com>");
+            message.setSubject(i % 10 == 0 ? "Quarterly report, \"final\" – Q" + (i % 4 + 1) : "Status update " + i);
+            message.setFrom(from);
+            message.setReceivedDateTime(base.minusMinutes(i));
+            message.setBodyPreview("Hello team, please find the latest figures attached. Größe: " + i);
+            message.setIsRead(i % 3 == 0);
+            message.setHasAttachments(i % 5 == 0);
+            messages.add(message);
+        }
+    }
+
+    @Benchmark
+    public byte[] legacy() throws IOException {
+        String response = "csv".equals(format) ? legacyCsv() : legacyJson();
+        return response.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] streaming() throws IOException {
+        boolean csv = "csv".equals(format);
+        ByteArrayOutputStream output = new ByteArrayOutputStream(256 + messages.size() * (csv ? 160 : 512));
+        try (MessageWriter writer = csv
+                ? new CsvMessageWriter(output, ",", true)
+                : JsonMessageWriter.enveloped(output, objectMapper, messages.size())) {
+            for (Message message : messages) {
+                writer.write(message);
+            }
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * The JSON conversion read responses used before the streaming writers.
+     */
+    private String legacyJson() throws IOException {
+        List<Map<String, Object>> emailList = new ArrayList<>();
+        for (Message message : messages) {
+            Map<String, Object> email = new HashMap<>();
+            email.put("messageId", message.getInternetMessageId());
+            email.put("subject", message.getSubject());
+            email.put("from", message.getFrom() != null ? message.getFrom().getEmailAddress().getAddress() : "");
+            email.put("receivedDateTime", message.getReceivedDateTime() != null
+                    ? message.getReceivedDateTime().format(DateTimeFormatter.ISO_INSTANT) : "");
+            email.put("bodyPreview", message.getBodyPreview());
+            email.put("isRead", message.getIsRead());
+            email.put("hasAttachments", message.getHasAttachments());
+            emailList.add(email);
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("status", "SUCCESS");
+        response.put("totalCount", emailList.size());
+        response.put("emails", emailList);
+        return objectMapper.writeValueAsString(response);
+    }
+
+    /**
+     * The CSV conversion read responses used before the streaming writers.
+     */
+    private String legacyCsv() {
+        String sep = ",";
+        StringBuilder csv = new StringBuilder();
+        csv.append("MessageId").append(sep)
+           .append("Subject").append(sep)
+           .append("From").append(sep)
+           .append("ReceivedDateTime").append(sep)
+           .append("IsRead").append(sep)
+           .append("HasAttachments").append("\n");
+        for (Message message : messages) {
+            csv.append(escapeCsv(message.getInternetMessageId())).append(sep)
+               .append(escapeCsv(message.getSubject())).append(sep)
+               .append(escapeCsv(message.getFrom() != null ? message.getFrom().getEmailAddress().getAddress() : "")).append(sep)
+               .append(escapeCsv(message.getReceivedDateTime() != null ? message.getReceivedDateTime().toString() : "")).append(sep)
+               .append(message.getIsRead()).append(sep)
+               .append(message.getHasAttachments()).append("\n");
+        }
+        return csv.toString();
+    }
+
+    private static String escapeCsv(String value) {
+        if (value == null) return "";
+        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+}
@@ -0,0 +1,127 @@
+package com.graphmailer.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.graphmailer.model.MailTemplate;
+import com.graphmailer.model.SendMailRequest;
+import com.graphmailer.model.TemplateSendRequest;
+import com.graphmailer.service.template.CompiledTemplate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Measures the cost per message of a 1 KB, 100 KB and 500 KB HTML template:
+ * rendering the compiled plan into a reused buffer against substituting
+ * placeholders with a regular expression, and accepting a recipient entry of
+ * a template send against parsing a send request that carries the rendered body.
+ *
+ * Run with {@code mvn -Pbenchmark test -Dbenchmark=TemplateRenderBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TemplateRenderBenchmark {
+
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\{\\{\\s*([A-Za-z0-9_.-]+)\\s*}}");
+
+    @Param({"1", "100", "500"})
+    private int templateKb;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final StringBuilder buffer = new StringBuilder();
+    private String source;
+    private CompiledTemplate template;
+    private Map<String, String> shared;
+    private Map<String, String> own;
+    private ObjectReader sendRequestReader;
+    private ObjectReader recipientReader;
+    private byte[] inlineRequest;
+    private byte[] recipientEntry;
+
+    @Setup
+    public void setUp() throws IOException {
+        StringBuilder html = new StringBuilder("<html><body><h1>Hello {{firstName}} {{lastName}}</h1>");
+        int row = 0;
+        while (html.length() < templateKb * 1024) {
+            html.append("<tr><td style=\"padding:4px;border:1px solid #ddd\">Item ").append(row++)
+                    .append(" for order <b>{{orderId}}</b> &mdash; shipped to {{city}}</td></tr>\n")
+                    .append("<p>Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor ")
+                    .append("incididunt ut labore et dolore magna aliqua. Questions? {{supportUrl}}</p>\n");
+        }
+        source = html.append("</body></html>").toString();
+        template = CompiledTemplate.compile("benchmark", new MailTemplate("Order {{orderId}}", source, null),
+                Instant.now());
+
+        shared = Map.of("supportUrl", "https://support.example.com/orders");
+        own = Map.of("firstName", "Anna", "lastName", "O'Neil & Sons", "orderId", "A-104217", "city", "Zürich");
+
+        sendRequestReader = objectMapper.readerFor(SendMailRequest.class);
+        recipientReader = objectMapper.readerFor(TemplateSendRequest.Recipient.class);
+        CompiledTemplate.Rendered rendered = template.render(shared, own);
+        inlineRequest = objectMapper.writeValueAsBytes(new SendMailRequest("noreply@yourtenant.com",
+                List.of("anna@example.com"), null, null, rendered.subject(), rendered.htmlBody(), null, null, true,
+                "normal"));
+        recipientEntry = objectMapper.writeValueAsBytes(
+                new TemplateSendRequest.Recipient(List.of("anna@example.com"), null, null, own));
+    }
+
+    @Benchmark
+    public String compiledRender() {
+        return template.render(shared, own, buffer).htmlBody();
+    }
+
+    @Benchmark
+    public String regexRender() {
+        Matcher matcher = PLACEHOLDER.matcher(source);
+        StringBuilder out = new StringBuilder(source.length() + 256);
+        while (matcher.find()) {
+            String name = matcher.group(1);
+            String value = own.containsKey(name) ? own.get(name) : shared.get(name);
+            matcher.appendReplacement(out, Matcher.quoteReplacement(escapeHtml(value)));
+        }
+        matcher.appendTail(out);
+        return out.toString();
+    }
+
+    /**
+     * A send request carrying the rendered body, as callers post it without templates.
+     */
+    @Benchmark
+    public SendMailRequest parseInlineRequest() throws IOException {
+        return sendRequestReader.readValue(inlineRequest);
+    }
+
+    /**
+     * A recipient entry of a template send, parsed and rendered.
+     */
+    @Benchmark
+    public String parseAndRenderRecipient() throws IOException {
+        TemplateSendRequest.Recipient recipient = recipientReader.readValue(recipientEntry);
+        return template.render(shared, recipient.variables(), buffer).htmlBody();
+    }
+
+    private static String escapeHtml(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;")
+                .replace("\"", "&quot;").replace("'", "&#39;");
+    }
+}
@@ -0,0 +1,67 @@
+package com.graphmailer.config;
+
+import com.graphmailer.service.GraphResponseException;
+import com.graphmailer.service.resilience.GraphConcurrencyLimiter;
+import com.graphmailer.service.resilience.GraphRetryEngine;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for GraphClientConfig.
+ */
+class GraphClientConfigTest {
+
+    private final GraphProperties graphProperties = new GraphProperties("tenant", "client", "secret",
+            "https://graph.microsoft.com/.default", new GraphProperties.RequestConfig(10000, 2, 5, null), null);
+    private final GraphRetryEngine retryEngine = new GraphRetryEngine(graphProperties, false);
+
+    @AfterEach
+    void tearDown() {
+        retryEngine.shutdown();
+    }
+
+    @Test
+    void throttledResponsesAreRetriedByTheRetryEngineOnly() {
+        // Given - every request reaching the network is answered 503 without Retry-After
+        AtomicInteger networkCalls = new AtomicInteger();
+        GraphConcurrencyLimiter limiter = new GraphConcurrencyLimiter(new GraphConcurrencyProperties(false, 20, 1,
+                100, 10, Duration.ofSeconds(1), 0.5, Duration.ofMinutes(1)), new SimpleMeterRegistry());
+        OkHttpClient httpClient = new GraphClientConfig(graphProperties, limiter, false).httpClientBuilder()
+                .addInterceptor(chain -> {
+                    networkCalls.incrementAndGet();
+                    return new Response.Builder()
+                            .request(chain.request())
+                            .protocol(Protocol.HTTP_1_1)
+                            .code(503)
+                            .message("Service Unavailable")
+                            .body(ResponseBody.create("", null))
+                            .build();
+                })
+                .build();
+        Request request = new Request.Builder()
+                .url("https://graph.microsoft.com/v1.0/users/sender@contoso.com/messages")
+                .build();
+
+        // When
+        assertThatThrownBy(() -> retryEngine.call("test", () -> {
+            try (Response response = httpClient.newCall(request).execute()) {
+                throw new GraphResponseException("unavailable", response.code(), null);
+            }
+        })).isInstanceOf(GraphResponseException.class);
+
+        // Then - one request per engine attempt: the first one plus two retries
+        assertThat(networkCalls.get()).isEqualTo(3);
+    }
+}
@@ -1,34 +1,65 @@
 package com.graphmailer.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.graphmailer.config.IdempotencyProperties;
 import com.graphmailer.model.SendMailRequest;
+import com.graphmailer.security.SecurityProperties;
+import com.graphmailer.model.DispatchState;
 import com.graphmailer.model.SendMailResponse;
+import com.graphmailer.model.SendMailStatusResponse;
 import com.graphmailer.service.GraphMailService;
-import io.github.bucket4j.Bandwidth;
-import io.github.bucket4j.Bucket;
+import com.graphmailer.service.ReadMailService;
+import com.graphmailer.service.dispatch.BulkSendProcessor;
+import com.graphmailer.service.dispatch.MailDispatchQueue;
+import com.graphmailer.service.dispatch.MailScheduler;
+import com.graphmailer.service.attachment.AttachmentService;
+import com.graphmailer.service.fanout.MultiMailboxReader;
+import com.graphmailer.service.search.MailSearchService;
+import com.graphmailer.service.idempotency.IdempotencyStore;
+import com.graphmailer.service.outbox.MailOutbox;
+import com.graphmailer.service.ratelimit.RateLimitPrincipal;
+import com.graphmailer.service.ratelimit.RateLimiter;
+import com.graphmailer.service.resilience.CircuitOpenException;
+import com.graphmailer.service.resilience.GraphConcurrencyLimiter;
+import com.graphmailer.service.resilience.GraphOverloadedException;
+import jakarta.servlet.http.HttpServletRequest;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
 import org.springframework.http.MediaType;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.Optional;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 /**
  * Unit tests for MailController.
  */
-@WebMvcTest(MailController.class)
+@WebMvcTest(controllers = MailController.class, properties = "security.inbound.mode=oauth2")
 class MailControllerTest {
 
     @Autowired
@@ -41,10 +72,47 @@ class MailControllerTest {
     private GraphMailService mailService;
 
     @MockBean
-    private ConcurrentMap<String, Bucket> rateLimitBuckets;
+    private ReadMailService readMailService;
 
     @MockBean
-    private Bandwidth defaultBandwidth;
+    private MultiMailboxReader multiMailboxReader;
+
+    @MockBean
+    private MailSearchService mailSearchService;
+
+    @MockBean
+    private AttachmentService attachmentService;
+
+    @MockBean
+    private MailDispatchQueue dispatchQueue;
+
+    @MockBean
+    private MailScheduler scheduler;
+
+    @MockBean
+    private BulkSendProcessor bulkSendProcessor;
+
+    @MockBean
+    private MailOutbox outbox;
+
+    @MockBean
+    private RateLimiter rateLimiter;
+
+    @MockBean
+    private GraphConcurrencyLimiter concurrencyLimiter;
+
+    @MockBean
+    private JwtDecoder jwtDecoder;
+
+    @TestConfiguration
+    @EnableConfigurationProperties(SecurityProperties.class)
+    static class IdempotencyTestConfig {
+
+        @Bean
+        IdempotencyStore idempotencyStore(ObjectMapper objectMapper) {
+            return new IdempotencyStore(new IdempotencyProperties(null, null, null, null, null, null), objectMapper);
+        }
+    }
 
     @Test
     @WithMockUser
@@ -54,7 +122,7 @@ class MailControllerTest {
         SendMailResponse response = SendMailResponse.success("msg-123", "corr-123");
         
         when(mailService.sendMail(any(SendMailRequest.class))).thenReturn(response);
-        when(rateLimitBuckets.computeIfAbsent(any(), any())).thenReturn(createMockBucket());
+        when(rateLimiter.tryConsume(any(HttpServletRequest.class), eq(RateLimiter.Lane.SEND), anyLong())).thenReturn(true);
 
         // When & Then
         mockMvc.perform(post("/api/v1/mail/send")
@@ -84,7 +152,7 @@ class MailControllerTest {
                 null
         );
 
-        when(rateLimitBuckets.computeIfAbsent(any(), any())).thenReturn(createMockBucket());
+        when(rateLimiter.tryConsume(any(HttpServletRequest.class), eq(RateLimiter.Lane.SEND), anyLong())).thenReturn(true);
 
         // When & Then
         mockMvc.perform(post("/api/v1/mail/send")
@@ -95,6 +163,178 @@ class MailControllerTest {
                 .andExpect(jsonPath("$.title").value("Validation Failed"));
     }
 
+    @Test
+    @WithMockUser
+    void sendMailOverTheSendLimitReturnsTooManyRequests() throws Exception {
+        // Given
+        SendMailRequest request = createValidMailRequest();
+
+        when(rateLimiter.sendCost(any(SendMailRequest.class))).thenReturn(1L);
+        when(rateLimiter.tryConsume(any(HttpServletRequest.class), eq(RateLimiter.Lane.SEND), eq(1L))).thenReturn(false);
+        when(rateLimiter.principalOf(any(HttpServletRequest.class)))
+                .thenReturn(new RateLimitPrincipal("principal:user", null));
+
+        // When & Then
+        mockMvc.perform(post("/api/v1/mail/send")
+                .with(csrf())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(jsonPath("$.message").value("Rate limit exceeded"));
+        verify(mailService, times(0)).sendMail(any(SendMailRequest.class));
+    }
+
+    @Test
+    @WithMockUser
+    void sendMailInAsyncModeReturnsAccepted() throws Exception {
+        // Given
+        SendMailRequest request = createValidMailRequest();
+        SendMailStatusResponse queued = new SendMailStatusResponse(
+                "track-123", DispatchState.QUEUED, null, null, "corr-123", Instant.now(), Instant.now());
+
+        when(dispatchQueue.isAsyncEnabled()).thenReturn(true);
+        when(dispatchQueue.submit(any(SendMailRequest.class), any())).thenReturn(queued);
+        when(rateLimiter.tryConsume(any(HttpServletRequest.class), eq(RateLimiter.Lane.SEND), anyLong())).thenReturn(true);
+
+        // When & Then
+        mockMvc.perform(post("/api/v1/mail/send")
+                .with(csrf())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", "/api/v1/mail/send/track-123"))
+                .andExpect(jsonPath("$.status").value("ACCEPTED"))
+                .andExpect(jsonPath("$.trackingId").value("track-123"));
+    }
+
+    @Test
+    @WithMockUser
+    void deferredSendIsScheduledAndCanBeCancelled() throws Exception {
+        // Given
+        SendMailRequest base = createValidMailRequest();
+        SendMailRequest request = new SendMailRequest(base.fromUpn(), base.to(), base.cc(), base.bcc(),
+                base.subject(), base.htmlBody(), base.textBody(), base.attachments(), base.saveToSentItems(),
+                base.importance(), null, null, Duration.ofHours(1));
+        SendMailStatusResponse scheduled = new SendMailStatusResponse(
+                "track-123", DispatchState.SCHEDULED, null, null, "corr-123", Instant.now(), Instant.now());
+
+        when(scheduler.schedule(any(SendMailRequest.class), any())).thenReturn(scheduled);
+        when(scheduler.cancel("track-123")).thenReturn(MailScheduler.CancelOutcome.CANCELLED);
+        when(scheduler.cancel("track-456")).thenReturn(MailScheduler.CancelOutcome.ALREADY_DISPATCHED);
+        when(rateLimiter.tryConsume(any(HttpServletRequest.class), eq(RateLimiter.Lane.SEND), anyLong())).thenReturn(true);
+
+        // When & Then
+        mockMvc.perform(post("/api/v1/mail/send")
+                .with(csrf())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", "/api/v1/mail/send/track-123"))
+                .andExpect(jsonPath("$.trackingId").value("track-123"));
+
+        mockMvc.perform(delete("/api/v1/mail/send/track-123").with(csrf()))
+                .andExpect(status().isNoContent());
+        mockMvc.perform(delete("/api/v1/mail/send/track-456").with(csrf()))
+                .andExpect(status().isConflict());
+
+        verify(mailService, never()).sendMail(any(SendMailRequest.class));
+        verify(dispatchQueue, never()).submit(any(SendMailRequest.class), any());
+    }
+
+    @Test
+    @WithMockUser
+    void sendMailReturnsServiceUnavailableWhenCircuitIsOpen() throws Exception {
+        // Given
+        SendMailRequest request = createValidMailRequest();
+
+        when(mailService.sendMail(any(SendMailRequest.class))).thenThrow(new CircuitOpenException(Duration.ofSeconds(12)));
+        when(rateLimiter.tryConsume(any(HttpServletRequest.class), eq(RateLimiter.Lane.SEND), anyLong())).thenReturn(true);
+
+        // When & Then
+        mockMvc.perform(post("/api/v1/mail/send")
+                .with(csrf())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "12"))
+                .andExpect(jsonPath("$.status").value("FAILED"));
+    }
+
+    @Test
+    @WithMockUser
+    void sendMailIsRejectedEarlyWhenGraphConcurrencyLimitIsReached() throws Exception {
+        // Given
+        SendMailRequest request = createValidMailRequest();
+
+        when(rateLimiter.tryConsume(any(HttpServletRequest.class), eq(RateLimiter.Lane.SEND), anyLong())).thenReturn(true);
+        doThrow(new GraphOverloadedException(Duration.ofMillis(2500))).when(concurrencyLimiter).checkAdmission();
+
+        // When & Then
+        mockMvc.perform(post("/api/v1/mail/send")
+                .with(csrf())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "3"))
+                .andExpect(jsonPath("$.status").value("FAILED"));
+
+        verify(mailService, never()).sendMail(any(SendMailRequest.class));
+    }
+
+    @Test
+    @WithMockUser
+    void sendMailWithRepeatedIdempotencyKeyReplaysOriginalResponse() throws Exception {
+        // Given
+        SendMailRequest request = createValidMailRequest();
+        SendMailResponse response = SendMailResponse.success("msg-123", "corr-123");
+
+        when(mailService.sendMail(any(SendMailRequest.class))).thenReturn(response);
+        when(rateLimiter.tryConsume(any(HttpServletRequest.class), eq(RateLimiter.Lane.SEND), anyLong())).thenReturn(true);
+        when(rateLimiter.principalOf(any(HttpServletRequest.class)))
+                .thenReturn(new RateLimitPrincipal("principal:user", null));
+
+        // When & Then
+        mockMvc.perform(post("/api/v1/mail/send")
+                .with(csrf())
+                .header("Idempotency-Key", "order-42-confirmation")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Idempotent-Replayed"));
+
+        mockMvc.perform(post("/api/v1/mail/send")
+                .with(csrf())
+                .header("Idempotency-Key", "order-42-confirmation")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Idempotent-Replayed", "true"))
+                .andExpect(jsonPath("$.messageId").value("msg-123"));
+
+        verify(mailService, times(1)).sendMail(any(SendMailRequest.class));
+    }
+
+    @Test
+    @WithMockUser
+    void getSendStatusReturnsTrackedState() throws Exception {
+        // Given
+        SendMailStatusResponse sent = new SendMailStatusResponse(
+                "track-123", DispatchState.SENT, "msg-123", "Email sent successfully", "corr-123",
+                Instant.now(), Instant.now());
+
+        when(dispatchQueue.getStatus(eq("track-123"))).thenReturn(Optional.of(sent));
+        when(dispatchQueue.getStatus(eq("unknown"))).thenReturn(Optional.empty());
+
+        // When & Then
+        mockMvc.perform(get("/api/v1/mail/send/track-123"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("SENT"))
+                .andExpect(jsonPath("$.messageId").value("msg-123"));
+
+        mockMvc.perform(get("/api/v1/mail/send/unknown"))
+                .andExpect(status().isNotFound());
+    }
+
     private SendMailRequest createValidMailRequest() {
         return new SendMailRequest(
                 "noreply@yourtenant.com",
@@ -109,11 +349,4 @@ class MailControllerTest {
                 "normal"
         );
     }
-
-    private Bucket createMockBucket() {
-        // Create a mock bucket that always allows requests for testing
-        return Bucket.builder()
-                .addLimit(Bandwidth.simple(1000, java.time.Duration.ofMinutes(1)))
-                .build();
-    }
 }
\ No newline at end of file
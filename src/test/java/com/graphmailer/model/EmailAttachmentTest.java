@@ -0,0 +1,42 @@
+package com.graphmailer.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for EmailAttachment.
+ */
+class EmailAttachmentTest {
+
+    @Test
+    void decodedSizeMatchesDecodedLength() {
+        for (int length = 0; length < 10; length++) {
+            // Given
+            byte[] content = new byte[length];
+            String padded = Base64.getEncoder().encodeToString(content);
+            String unpadded = Base64.getEncoder().withoutPadding().encodeToString(content);
+
+            // When / Then
+            assertThat(attachment(padded).decodedSize()).isEqualTo(length);
+            assertThat(attachment(unpadded).decodedSize()).isEqualTo(length);
+        }
+    }
+
+    @Test
+    void decodedSizeRejectsImpossibleLength() {
+        // Given
+        EmailAttachment attachment = attachment("QUJDR");
+
+        // When / Then
+        assertThatThrownBy(attachment::decodedSize)
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static EmailAttachment attachment(String base64) {
+        return new EmailAttachment("file.txt", "text/plain", base64);
+    }
+}
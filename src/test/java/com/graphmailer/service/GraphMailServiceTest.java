@@ -1,14 +1,27 @@
 package com.graphmailer.service;
 
+import com.graphmailer.config.CircuitBreakerProperties;
+import com.graphmailer.config.GraphProperties;
 import com.graphmailer.config.MailProperties;
+import com.graphmailer.config.MailboxGovernorProperties;
 import com.graphmailer.logging.AuditLogger;
+import com.graphmailer.model.EmailAttachment;
 import com.graphmailer.model.SendMailRequest;
 import com.graphmailer.model.SendMailResponse;
+import com.graphmailer.service.dispatch.GraphBatchDispatcher;
+import com.graphmailer.service.resilience.GraphCircuitBreaker;
+import com.graphmailer.service.resilience.GraphRetryEngine;
+import com.graphmailer.service.resilience.MailboxGovernor;
 import com.graphmailer.util.ValidationUtil;
+import com.microsoft.graph.models.Attachment;
+import com.microsoft.graph.models.Message;
 import com.microsoft.graph.serviceclient.GraphServiceClient;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Answers;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.slf4j.MDC;
@@ -19,6 +32,9 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -28,9 +44,12 @@ import static org.mockito.Mockito.when;
 @ExtendWith(MockitoExtension.class)
 class GraphMailServiceTest {
 
-    @Mock
+    @Mock(answer = Answers.RETURNS_DEEP_STUBS)
     private GraphServiceClient graphClient;
 
+    @Mock
+    private GraphBatchDispatcher batchDispatcher;
+
     @Mock
     private MailProperties mailProperties;
 
@@ -40,14 +59,32 @@ class GraphMailServiceTest {
     @Mock
     private AuditLogger auditLogger;
 
+    private GraphRetryEngine retryEngine;
+
+    private MailboxGovernor mailboxGovernor;
+
     private GraphMailService mailService;
 
     @BeforeEach
     void setUp() {
-        mailService = new GraphMailService(graphClient, mailProperties, validationUtil, auditLogger);
+        GraphProperties graphProperties = new GraphProperties("tenant", "client", "secret",
+                "https://graph.microsoft.com/.default",
+                new GraphProperties.RequestConfig(10000, 3, 300, null), null);
+        retryEngine = new GraphRetryEngine(graphProperties, false);
+        mailboxGovernor = new MailboxGovernor(new MailboxGovernorProperties(null, null, null, null, null, null, null), false);
+        mailService = new GraphMailService(graphClient, graphProperties, mailProperties, validationUtil,
+                auditLogger, batchDispatcher, retryEngine, mailboxGovernor,
+                new GraphCircuitBreaker(new CircuitBreakerProperties(null, null, null, null, null, null, null, null),
+                        new SimpleMeterRegistry()));
         MDC.clear();
     }
 
+    @AfterEach
+    void tearDown() {
+        retryEngine.shutdown();
+        mailboxGovernor.shutdown();
+    }
+
     @Test
     void sendMailWithValidRequestReturnsSuccessResponse() {
         // Given
@@ -78,8 +115,8 @@ class GraphMailServiceTest {
         String errorMessage = "Invalid sender UPN";
 
         // Mock validation to throw exception
-        when(validationUtil.validateMailRequest(any(), any()))
-                .thenThrow(new IllegalArgumentException(errorMessage));
+        doThrow(new IllegalArgumentException(errorMessage))
+                .when(validationUtil).validateMailRequest(any(), any());
 
         // Mock audit logger
         doNothing().when(auditLogger).logEmailFailed(any(), any(), any());
@@ -95,6 +132,41 @@ class GraphMailServiceTest {
         verify(auditLogger).logEmailFailed(eq(request), any(), any());
     }
 
+    @Test
+    void sendMailWithLargeAttachmentsSendsViaDraft() {
+        // Given
+        SendMailRequest request = new SendMailRequest(
+                "noreply@yourtenant.com",
+                List.of("test@example.com"),
+                List.of(),
+                List.of(),
+                "Test Subject",
+                "<p>Test HTML Body</p>",
+                null,
+                List.of(new EmailAttachment("a.txt", "text/plain", "YWJj"),
+                        new EmailAttachment("b.txt", "text/plain", "ZGVm")),
+                true,
+                "normal");
+        when(mailProperties.uploadSessionThresholdBytes()).thenReturn(4L);
+
+        Message draft = new Message();
+        draft.setId("draft-1");
+        when(graphClient.users().byUserId("noreply@yourtenant.com").messages().post(any(Message.class)))
+                .thenReturn(draft);
+
+        // When
+        SendMailResponse response = mailService.sendMail(request);
+
+        // Then
+        assertThat(response.status()).isEqualTo("SUCCESS");
+        assertThat(response.messageId()).isEqualTo("draft-1");
+
+        var draftRequests = graphClient.users().byUserId("noreply@yourtenant.com").messages().byMessageId("draft-1");
+        verify(draftRequests.attachments(), times(2)).post(any(Attachment.class));
+        verify(draftRequests.send()).post();
+        verify(graphClient.users().byUserId("noreply@yourtenant.com").sendMail(), never()).post(any());
+    }
+
     private SendMailRequest createValidMailRequest() {
         return new SendMailRequest(
                 "noreply@yourtenant.com",
@@ -0,0 +1,136 @@
+package com.graphmailer.service.attachment;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for AttachmentCache and ranged attachment content.
+ */
+class AttachmentCacheTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void servesCachedContentAndRanges() throws Exception {
+        // Given
+        AttachmentCache cache = new AttachmentCache(directory, 1024, 512);
+        put(cache, "a", "0123456789");
+
+        // When
+        ByteArrayOutputStream whole = new ByteArrayOutputStream();
+        ByteArrayOutputStream middle = new ByteArrayOutputStream();
+        ByteArrayOutputStream suffix = new ByteArrayOutputStream();
+        try (AttachmentContent content = open(cache, "a", null)) {
+            content.writeTo(whole);
+        }
+        try (AttachmentContent content = open(cache, "a", ByteRange.parse("bytes=2-4"))) {
+            content.writeTo(middle);
+            assertThat(content.getStatus()).isEqualTo(206);
+            assertThat(content.getContentRange()).isEqualTo("bytes 2-4/10");
+            assertThat(content.getContentLength()).isEqualTo(3);
+        }
+        try (AttachmentContent content = open(cache, "a", ByteRange.parse("bytes=-3"))) {
+            content.writeTo(suffix);
+        }
+
+        // Then
+        assertThat(whole.toString(StandardCharsets.UTF_8)).isEqualTo("0123456789");
+        assertThat(middle.toString(StandardCharsets.UTF_8)).isEqualTo("234");
+        assertThat(suffix.toString(StandardCharsets.UTF_8)).isEqualTo("789");
+        try (AttachmentContent content = open(cache, "a", ByteRange.parse("bytes=10-"))) {
+            assertThat(content.getStatus()).isEqualTo(416);
+            assertThat(content.getContentRange()).isEqualTo("bytes */10");
+        }
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedBeyondMaxSize() throws Exception {
+        // Given
+        AttachmentCache cache = new AttachmentCache(directory, 300, 200);
+        put(cache, "a", "a".repeat(100));
+        put(cache, "b", "b".repeat(100));
+        cache.get("a").channel().close();
+
+        // When
+        put(cache, "c", "c".repeat(100));
+
+        // Then
+        assertThat(cache.get("b")).isNull();
+        assertThat(cache.get("a")).isNotNull();
+        assertThat(cache.get("c")).isNotNull();
+        assertThat(cache.totalBytes()).isLessThanOrEqualTo(300);
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files).hasSize(2);
+        }
+    }
+
+    @Test
+    void abandonsOversizedAndIncompleteFills() throws Exception {
+        // Given
+        AttachmentCache cache = new AttachmentCache(directory, 1024, 8);
+
+        // When
+        put(cache, "large", "0123456789");
+        AttachmentCache.Fill incomplete = cache.fill("partial", "partial.txt", "text/plain");
+        incomplete.write(new byte[]{1, 2, 3}, 0, 3);
+        incomplete.abort();
+
+        // Then
+        assertThat(cache.get("large")).isNull();
+        assertThat(cache.get("partial")).isNull();
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    @Test
+    void survivesRestart() throws Exception {
+        // Given
+        put(new AttachmentCache(directory, 1024, 512), "a", "report contents");
+
+        // When
+        AttachmentCache reopened = new AttachmentCache(directory, 1024, 512);
+        AttachmentCache.Entry entry = reopened.get("a");
+
+        // Then
+        assertThat(entry).isNotNull();
+        assertThat(entry.name()).isEqualTo("a.txt");
+        assertThat(entry.contentType()).isEqualTo("text/plain");
+        assertThat(entry.length()).isEqualTo(15);
+        entry.channel().close();
+    }
+
+    @Test
+    void parsesRangeHeaders() {
+        // When / Then
+        assertThat(ByteRange.parse("bytes=0-99")).isEqualTo(new ByteRange(0L, 99L));
+        assertThat(ByteRange.parse("bytes=100-")).isEqualTo(new ByteRange(100L, null));
+        assertThat(ByteRange.parse("bytes=-500")).isEqualTo(new ByteRange(null, 500L));
+        assertThat(ByteRange.parse("bytes=0-1,5-6")).isNull();
+        assertThat(ByteRange.parse("bytes=9-3")).isNull();
+        assertThat(ByteRange.parse("items=0-1")).isNull();
+        assertThat(new ByteRange(100L, null).toHeader()).isEqualTo("bytes=100-");
+    }
+
+    private static void put(AttachmentCache cache, String key, String content) throws Exception {
+        AttachmentCache.Fill fill = cache.fill(key, key + ".txt", "text/plain");
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        fill.write(bytes, 0, bytes.length);
+        fill.commit();
+    }
+
+    private static AttachmentContent open(AttachmentCache cache, String key, ByteRange range) throws Exception {
+        AttachmentCache.Entry entry = cache.get(key);
+        return AttachmentContent.ranged(entry.name(), entry.contentType(), entry.length(), range, true,
+                entry::write, entry.channel());
+    }
+}
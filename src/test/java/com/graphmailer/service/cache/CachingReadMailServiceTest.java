@@ -0,0 +1,158 @@
+package com.graphmailer.service.cache;
+
+import com.graphmailer.config.ReadCacheProperties;
+import com.graphmailer.service.GraphReadMailService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for CachingReadMailService.
+ */
+@ExtendWith(MockitoExtension.class)
+class CachingReadMailServiceTest {
+
+    private static final byte[] RESPONSE =
+            "{\"status\":\"SUCCESS\",\"totalCount\":0,\"emails\":[]}".getBytes(StandardCharsets.UTF_8);
+
+    @Mock
+    private GraphReadMailService delegate;
+
+    private SimpleMeterRegistry meterRegistry;
+    private CachingReadMailService service;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        service = new CachingReadMailService(delegate, new ReadCacheProperties(true, Duration.ofMinutes(1),
+                DataSize.ofMegabytes(1), Map.of("live@example.com", Duration.ZERO)), meterRegistry);
+    }
+
+    @Test
+    void equivalentReadsAreServedFromCache() {
+        // Given
+        when(delegate.readEmailBytes(any(), any(), any(), any(), any(), any(), any())).thenReturn(RESPONSE);
+
+        // When
+        byte[] first = service.readEmailBytes("User@Example.com", " report ", "", "JSON", 10, ",", "true");
+        byte[] second = service.readEmailBytes("user@example.com", "report", null, "json", 10, ";", "false");
+
+        // Then
+        assertThat(first).isEqualTo(RESPONSE);
+        assertThat(second).isSameAs(first);
+        verify(delegate, times(1)).readEmailBytes(any(), any(), any(), any(), any(), any(), any());
+        verify(delegate).readEmailBytes(eq("User@Example.com"), eq("report"), isNull(), eq("JSON"), eq(10),
+                eq(","), eq("true"));
+        assertThat(meterRegistry.get("cache.gets").tag("cache", "mail.read").tag("result", "hit")
+                .functionCounter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void differentFiltersAreCachedSeparately() {
+        // Given
+        when(delegate.readEmailBytes(any(), any(), any(), any(), any(), any(), any())).thenReturn(RESPONSE);
+
+        // When
+        service.readEmailBytes("user@example.com", null, null, "JSON", 10, null, null);
+        service.readEmailBytes("user@example.com", null, null, "JSON", 25, null, null);
+        service.readEmailBytes("user@example.com", null, null, "CSV", 10, ",", "true");
+
+        // Then
+        verify(delegate, times(3)).readEmailBytes(any(), any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void errorResponsesAreNotCached() {
+        // Given
+        byte[] error = "{\"status\":\"ERROR\",\"message\":\"Error reading emails: boom\"}".getBytes(StandardCharsets.UTF_8);
+        when(delegate.readEmailBytes(any(), any(), any(), any(), any(), any(), any()))
+                .thenReturn(error, RESPONSE);
+
+        // When
+        byte[] first = service.readEmailBytes("user@example.com", null, null, "JSON", 10, null, null);
+        byte[] second = service.readEmailBytes("user@example.com", null, null, "JSON", 10, null, null);
+
+        // Then
+        assertThat(first).isEqualTo(error);
+        assertThat(second).isEqualTo(RESPONSE);
+    }
+
+    @Test
+    void failedReadIsNotCached() {
+        // Given
+        when(delegate.readEmailBytes(any(), any(), any(), any(), any(), any(), any()))
+                .thenThrow(new IllegalStateException("boom"))
+                .thenReturn(RESPONSE);
+
+        // When
+        assertThatThrownBy(() -> service.readEmailBytes("user@example.com", null, null, "JSON", 10, null, null))
+                .isInstanceOf(IllegalStateException.class);
+        byte[] second = service.readEmailBytes("user@example.com", null, null, "JSON", 10, null, null);
+
+        // Then
+        assertThat(second).isEqualTo(RESPONSE);
+        verify(delegate, times(2)).readEmailBytes(any(), any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void mailboxWithZeroTtlIsNotCached() {
+        // Given
+        when(delegate.readEmailBytes(eq("live@example.com"), any(), any(), any(), any(), any(), any()))
+                .thenReturn(RESPONSE);
+
+        // When
+        service.readEmailBytes("live@example.com", null, null, "JSON", 10, null, null);
+        service.readEmailBytes("live@example.com", null, null, "JSON", 10, null, null);
+
+        // Then
+        verify(delegate, times(2)).readEmailBytes(eq("live@example.com"), any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void concurrentMissesShareOneRead() throws Exception {
+        // Given
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(delegate.readEmailBytes(anyString(), any(), any(), any(), any(), any(), any()))
+                .thenAnswer(invocation -> {
+                    started.countDown();
+                    release.await(5, TimeUnit.SECONDS);
+                    return RESPONSE;
+                });
+
+        // When
+        CompletableFuture<byte[]> first = CompletableFuture.supplyAsync(
+                () -> service.readEmailBytes("user@example.com", null, null, "JSON", 10, null, null));
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<byte[]> second = CompletableFuture.supplyAsync(
+                () -> service.readEmailBytes("user@example.com", null, null, "JSON", 10, null, null));
+        Thread.sleep(100);
+        release.countDown();
+
+        // Then
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo(RESPONSE);
+        assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo(RESPONSE);
+        verify(delegate, times(1)).readEmailBytes(any(), any(), any(), any(), any(), any(), any());
+    }
+}
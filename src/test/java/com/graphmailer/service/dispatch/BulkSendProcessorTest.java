@@ -0,0 +1,223 @@
+package com.graphmailer.service.dispatch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.graphmailer.config.DispatchProperties;
+import com.graphmailer.model.MailTemplate;
+import com.graphmailer.model.SendMailRequest;
+import com.graphmailer.model.SendMailResponse;
+import com.graphmailer.model.TemplateSendRequest;
+import com.graphmailer.service.template.CompiledTemplate;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for BulkSendProcessor.
+ */
+@ExtendWith(MockitoExtension.class)
+class BulkSendProcessorTest {
+
+    @Mock
+    private MailDispatchQueue dispatchQueue;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private BulkSendProcessor processor;
+
+    @BeforeEach
+    void setUp() {
+        Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+        DispatchProperties properties = new DispatchProperties(false, 10, 1, 100, Duration.ofHours(1), 4, null);
+        processor = new BulkSendProcessor(dispatchQueue, objectMapper, validator, properties);
+    }
+
+    @Test
+    void processStreamsOneResultLinePerMessage() throws Exception {
+        // Given
+        when(dispatchQueue.dispatch(any(), any()))
+                .thenReturn(CompletableFuture.completedFuture(SendMailResponse.success("msg-1", "corr-1")));
+        String input = validLine() + "\n" + validLine() + "\n";
+
+        // When
+        BulkSendProcessor.BulkSendSummary summary = process(input, new ByteArrayOutputStream());
+
+        // Then
+        assertThat(summary.received()).isEqualTo(2);
+        assertThat(summary.invalid()).isZero();
+        verify(dispatchQueue, times(2)).dispatch(any(), any());
+    }
+
+    @Test
+    void resultsAreWrittenByTheRequestThreadNotByTheCompletingWorker() throws Exception {
+        // Given - sends complete on another thread, like a dispatch worker
+        ExecutorService worker = Executors.newSingleThreadExecutor();
+        when(dispatchQueue.dispatch(any(), any())).thenAnswer(invocation -> CompletableFuture.supplyAsync(
+                () -> SendMailResponse.success("msg-1", "corr-1"), worker));
+        Set<Thread> writers = ConcurrentHashMap.newKeySet();
+        ByteArrayOutputStream output = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] bytes, int offset, int length) {
+                writers.add(Thread.currentThread());
+                super.write(bytes, offset, length);
+            }
+        };
+        String input = (validLine() + "\n").repeat(10);
+
+        // When
+        BulkSendProcessor.BulkSendSummary summary;
+        try {
+            summary = process(input, output);
+        } finally {
+            worker.shutdown();
+        }
+
+        // Then
+        assertThat(readResults(output)).hasSize(10);
+        assertThat(summary.failed()).isZero();
+        assertThat(writers).containsExactly(Thread.currentThread());
+    }
+
+    @Test
+    void processReportsInvalidLinesAndContinues() throws Exception {
+        // Given - second line misses required fields
+        when(dispatchQueue.dispatch(any(), any()))
+                .thenReturn(CompletableFuture.completedFuture(SendMailResponse.success("msg-1", "corr-1")));
+        String input = validLine() + "\n{\"subject\":\"No recipients\"}\n" + validLine() + "\n";
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        // When
+        BulkSendProcessor.BulkSendSummary summary = process(input, output);
+
+        // Then
+        List<JsonNode> results = readResults(output);
+        assertThat(summary.received()).isEqualTo(3);
+        assertThat(summary.invalid()).isEqualTo(1);
+        assertThat(results).hasSize(3);
+        assertThat(results.get(0).get("status").asText()).isEqualTo("SUCCESS");
+        assertThat(results.get(1).get("index").asLong()).isEqualTo(1);
+        assertThat(results.get(1).get("status").asText()).isEqualTo("INVALID");
+        assertThat(results.get(2).get("status").asText()).isEqualTo("SUCCESS");
+    }
+
+    @Test
+    void processStopsAtMalformedJson() throws Exception {
+        // Given
+        when(dispatchQueue.dispatch(any(), any()))
+                .thenReturn(CompletableFuture.completedFuture(SendMailResponse.success("msg-1", "corr-1")));
+        String input = validLine() + "\n{not json\n" + validLine() + "\n";
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        // When
+        process(input, output);
+
+        // Then
+        List<JsonNode> results = readResults(output);
+        assertThat(results).hasSize(2);
+        assertThat(results.get(1).get("status").asText()).isEqualTo("INVALID");
+        assertThat(results.get(1).get("message").asText()).startsWith("Malformed NDJSON");
+    }
+
+    @Test
+    void processReportsMessagesOverTheRateLimit() throws Exception {
+        // Given - admission allows only the first message
+        when(dispatchQueue.dispatch(any(), any()))
+                .thenReturn(CompletableFuture.completedFuture(SendMailResponse.success("msg-1", "corr-1")));
+        AtomicInteger admitted = new AtomicInteger();
+        String input = validLine() + "\n" + validLine() + "\n";
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        // When
+        BulkSendProcessor.BulkSendSummary summary = processor.process(
+                new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), output,
+                request -> admitted.incrementAndGet() == 1);
+
+        // Then
+        List<JsonNode> results = readResults(output);
+        assertThat(summary.rateLimited()).isEqualTo(1);
+        assertThat(results).extracting(result -> result.get("status").asText())
+                .containsExactly("SUCCESS", "RATE_LIMITED");
+        verify(dispatchQueue, times(1)).dispatch(any(), any());
+    }
+
+    @Test
+    void mergeRendersOneMessagePerRecipient() throws Exception {
+        // Given - the second entry lacks a value for {{orderId}}
+        when(dispatchQueue.dispatch(any(), any()))
+                .thenReturn(CompletableFuture.completedFuture(SendMailResponse.success("msg-1", "corr-1")));
+        CompiledTemplate template = CompiledTemplate.compile("shipped",
+                new MailTemplate("Order {{orderId}}", "<p>Hi {{name}}, see {{url}}</p>", null), Instant.now());
+        TemplateSendRequest request = new TemplateSendRequest("noreply@yourtenant.com", List.of(
+                new TemplateSendRequest.Recipient(List.of("ann@example.com"), null, null,
+                        Map.of("name", "Ann", "orderId", "A-1")),
+                new TemplateSendRequest.Recipient(List.of("bob@example.com"), null, null, Map.of("name", "Bob")),
+                new TemplateSendRequest.Recipient(List.of("cy@example.com"), null, null,
+                        Map.of("name", "Cy & Co", "orderId", "A-3"))),
+                Map.of("url", "https://example.com"), null, null, null);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        // When
+        BulkSendProcessor.BulkSendSummary summary = processor.merge(template, request, output, message -> true);
+
+        // Then
+        ArgumentCaptor<SendMailRequest> sent = ArgumentCaptor.forClass(SendMailRequest.class);
+        verify(dispatchQueue, times(2)).dispatch(sent.capture(), any());
+        assertThat(sent.getAllValues()).extracting(SendMailRequest::subject).containsExactly("Order A-1", "Order A-3");
+        assertThat(sent.getAllValues().get(1).htmlBody()).isEqualTo("<p>Hi Cy &amp; Co, see https://example.com</p>");
+        assertThat(sent.getAllValues().get(1).to()).containsExactly("cy@example.com");
+
+        List<JsonNode> results = readResults(output);
+        assertThat(summary.received()).isEqualTo(3);
+        assertThat(summary.invalid()).isEqualTo(1);
+        assertThat(results).extracting(result -> result.get("status").asText())
+                .containsExactly("SUCCESS", "INVALID", "SUCCESS");
+        assertThat(results.get(1).get("message").asText()).contains("orderId");
+    }
+
+    private BulkSendProcessor.BulkSendSummary process(String input, ByteArrayOutputStream output) throws Exception {
+        return processor.process(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), output);
+    }
+
+    private List<JsonNode> readResults(ByteArrayOutputStream output) throws Exception {
+        List<JsonNode> results = new ArrayList<>();
+        for (String line : output.toString(StandardCharsets.UTF_8).split("\n")) {
+            if (!line.isBlank()) {
+                results.add(objectMapper.readTree(line));
+            }
+        }
+        results.sort(Comparator.comparingLong(node -> node.get("index").asLong()));
+        return results;
+    }
+
+    private String validLine() {
+        return "{\"fromUpn\":\"noreply@yourtenant.com\",\"to\":[\"test@example.com\"],"
+                + "\"subject\":\"Hello\",\"htmlBody\":\"<p>Hi</p>\"}";
+    }
+}
@@ -0,0 +1,323 @@
+package com.graphmailer.service.dispatch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.graphmailer.config.GraphProperties;
+import com.graphmailer.service.GraphMailException;
+import com.graphmailer.service.GraphResponseException;
+import com.graphmailer.service.resilience.GraphFailureClassifier;
+import com.graphmailer.service.resilience.GraphOverloadedException;
+import com.microsoft.graph.models.ItemBody;
+import com.microsoft.graph.models.Message;
+import com.microsoft.graph.serviceclient.GraphServiceClient;
+import com.microsoft.graph.users.item.sendmail.SendMailPostRequestBody;
+import com.microsoft.kiota.authentication.AnonymousAuthenticationProvider;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for GraphBatchDispatcher.
+ *
+ * The dispatcher talks to a real GraphServiceClient whose HTTP client answers
+ * $batch requests locally, so request building and response parsing are those
+ * of the Graph SDK.
+ */
+class GraphBatchDispatcherTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+    private final List<String> subjects = new CopyOnWriteArrayList<>();
+    private GraphBatchDispatcher dispatcher;
+
+    @AfterEach
+    void tearDown() {
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+    }
+
+    @Test
+    void flushesAsSoonAsTheBatchIsFull() throws Exception {
+        // Given
+        dispatcher = dispatcher(3, 60_000, 2, request -> itemResponses(request, 202, null));
+
+        // When
+        List<CompletableFuture<Void>> futures = submit(3);
+
+        // Then
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+        assertThat(batchSizes).containsExactly(3);
+    }
+
+    @Test
+    void flushesAfterTheLingerWindow() throws Exception {
+        // Given
+        dispatcher = dispatcher(20, 50, 2, request -> itemResponses(request, 202, null));
+
+        // When
+        List<CompletableFuture<Void>> futures = submit(2);
+
+        // Then
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+        assertThat(batchSizes).containsExactly(2);
+    }
+
+    @Test
+    void mapsEachItemResponseToItsFuture() throws Exception {
+        // Given
+        int[] statuses = {202, 400, 429};
+        dispatcher = dispatcher(3, 60_000, 2, request -> {
+            ArrayNode responses = MAPPER.createArrayNode();
+            JsonNode requests = request.get("requests");
+            for (int i = 0; i < requests.size(); i++) {
+                int status = statuses[indexOf(requests.get(i))];
+                responses.add(itemResponse(requests.get(i).get("id").asText(), status, status == 429 ? "5" : null));
+            }
+            return MAPPER.createObjectNode().set("responses", responses);
+        });
+
+        // When
+        List<CompletableFuture<Void>> futures = submit(3);
+
+        // Then
+        assertThat(futures.get(0).get(5, TimeUnit.SECONDS)).isNull();
+        assertThat(failureOf(futures.get(1))).isInstanceOfSatisfying(GraphResponseException.class,
+                failure -> assertThat(failure.getStatusCode()).isEqualTo(400));
+        assertThat(failureOf(futures.get(2))).isInstanceOfSatisfying(GraphResponseException.class, failure -> {
+            assertThat(failure.getStatusCode()).isEqualTo(429);
+            assertThat(failure.getRetryAfter()).isEqualTo(Duration.ofSeconds(5));
+        });
+        assertThat(batchSizes).containsExactly(3);
+    }
+
+    @Test
+    void requeuesItemsFailingWithoutRetryAfterUpToMaxRequeues() throws Exception {
+        // Given
+        dispatcher = dispatcher(1, 0, 2, request -> itemResponses(request, 503, null));
+
+        // When
+        Throwable failure = failureOf(dispatcher.submit("sender@contoso.com", body(0)));
+
+        // Then
+        assertThat(failure).isInstanceOfSatisfying(GraphResponseException.class,
+                response -> assertThat(response.getStatusCode()).isEqualTo(503));
+        assertThat(batchSizes).containsExactly(1, 1, 1);
+        assertThat(subjects).containsExactly("message-0", "message-0", "message-0");
+    }
+
+    @Test
+    void failsThrottledItemsWithRetryAfterWithoutRequeueing() throws Exception {
+        // Given
+        dispatcher = dispatcher(1, 0, 2, request -> itemResponses(request, 503, "2"));
+
+        // When
+        Throwable failure = failureOf(dispatcher.submit("sender@contoso.com", body(0)));
+
+        // Then
+        assertThat(failure).isInstanceOfSatisfying(GraphResponseException.class,
+                response -> assertThat(response.getRetryAfter()).isEqualTo(Duration.ofSeconds(2)));
+        assertThat(batchSizes).containsExactly(1);
+    }
+
+    @Test
+    void requeuesBatchThrottledAsAWhole() throws Exception {
+        // Given
+        List<Integer> calls = new ArrayList<>();
+        dispatcher = dispatcher(1, 0, 2, request -> {
+            calls.add(1);
+            return calls.size() == 1 ? null : itemResponses(request, 202, null);
+        });
+
+        // When
+        CompletableFuture<Void> future = dispatcher.submit("sender@contoso.com", body(0));
+
+        // Then
+        assertThat(future.get(5, TimeUnit.SECONDS)).isNull();
+        assertThat(batchSizes).containsExactly(1, 1);
+    }
+
+    @Test
+    void neverRequeuesBatchRejectedWithClientError() throws Exception {
+        // Given
+        dispatcher = dispatcher(1, 0, 2, request -> {
+            throw new BatchStatus(400);
+        });
+
+        // When
+        Throwable failure = failureOf(dispatcher.submit("sender@contoso.com", body(0)));
+
+        // Then
+        assertThat(GraphFailureClassifier.classify(failure).kind().isRetryable()).isFalse();
+        assertThat(batchSizes).containsExactly(1);
+    }
+
+    @Test
+    void failsWithoutRetryWhenTheResponseIsLostAfterTheRequestWasWritten() throws Exception {
+        // Given
+        dispatcher = dispatcher(1, 0, 2, request -> {
+            throw new SocketTimeoutException("timeout");
+        });
+
+        // When
+        Throwable failure = failureOf(dispatcher.submit("sender@contoso.com", body(0)));
+
+        // Then
+        assertThat(failure).isInstanceOf(GraphMailException.class);
+        assertThat(GraphFailureClassifier.classify(failure).kind().isRetryable()).isFalse();
+        assertThat(batchSizes).containsExactly(1);
+    }
+
+    @Test
+    void passesConcurrencyLimitRejectionsThroughUnchanged() throws Exception {
+        // Given
+        GraphOverloadedException overloaded = new GraphOverloadedException(Duration.ofSeconds(3));
+        dispatcher = dispatcher(1, 0, 2, request -> {
+            throw overloaded;
+        });
+
+        // When
+        Throwable failure = failureOf(dispatcher.submit("sender@contoso.com", body(0)));
+
+        // Then
+        assertThat(failure).isSameAs(overloaded);
+        assertThat(batchSizes).containsExactly(1);
+    }
+
+    private GraphBatchDispatcher dispatcher(int maxBatchSize, long lingerMs, int maxRequeues, BatchHandler handler) {
+        GraphProperties properties = new GraphProperties("tenant", "client", "secret", "scope",
+                new GraphProperties.RequestConfig(5_000, 3, 100, null),
+                new GraphProperties.BatchConfig(true, maxBatchSize, lingerMs, maxRequeues, 1));
+        OkHttpClient httpClient = new OkHttpClient.Builder()
+                .addInterceptor(chain -> answer(chain, handler))
+                .build();
+        GraphServiceClient graphClient = new GraphServiceClient(new AnonymousAuthenticationProvider(), httpClient);
+        return new GraphBatchDispatcher(graphClient, properties);
+    }
+
+    private Response answer(Interceptor.Chain chain, BatchHandler handler) throws IOException {
+        Buffer buffer = new Buffer();
+        chain.request().body().writeTo(buffer);
+        JsonNode request = MAPPER.readTree(buffer.readUtf8());
+        batchSizes.add(request.get("requests").size());
+        request.get("requests").forEach(step -> subjects.add(subjectOf(step)));
+
+        int status = 200;
+        JsonNode body;
+        try {
+            body = handler.handle(request);
+            if (body == null) {
+                status = 429;
+                body = error();
+            }
+        } catch (BatchStatus batchStatus) {
+            status = batchStatus.status;
+            body = error();
+        }
+        return new Response.Builder()
+                .request(chain.request())
+                .protocol(Protocol.HTTP_1_1)
+                .code(status)
+                .message("")
+                .body(ResponseBody.create(MAPPER.writeValueAsString(body), MediaType.get("application/json")))
+                .build();
+    }
+
+    private List<CompletableFuture<Void>> submit(int count) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            futures.add(dispatcher.submit("sender@contoso.com", body(i)));
+        }
+        return futures;
+    }
+
+    private static SendMailPostRequestBody body(int index) {
+        ItemBody itemBody = new ItemBody();
+        itemBody.setContent("message-" + index);
+        Message message = new Message();
+        message.setSubject("message-" + index);
+        message.setBody(itemBody);
+        SendMailPostRequestBody body = new SendMailPostRequestBody();
+        body.setMessage(message);
+        return body;
+    }
+
+    private static String subjectOf(JsonNode step) {
+        return step.path("body").path("Message").path("subject").asText(null);
+    }
+
+    private static int indexOf(JsonNode step) {
+        return Integer.parseInt(subjectOf(step).substring("message-".length()));
+    }
+
+    private static JsonNode itemResponses(JsonNode request, int status, String retryAfter) {
+        ArrayNode responses = MAPPER.createArrayNode();
+        for (JsonNode step : request.get("requests")) {
+            responses.add(itemResponse(step.get("id").asText(), status, retryAfter));
+        }
+        return MAPPER.createObjectNode().set("responses", responses);
+    }
+
+    private static ObjectNode itemResponse(String id, int status, String retryAfter) {
+        ObjectNode response = MAPPER.createObjectNode().put("id", id).put("status", status);
+        ObjectNode headers = response.putObject("headers");
+        if (retryAfter != null) {
+            headers.put("Retry-After", retryAfter);
+        }
+        if (status >= 400) {
+            headers.put("Content-Type", "application/json");
+            response.set("body", error());
+        }
+        return response;
+    }
+
+    private static ObjectNode error() {
+        ObjectNode error = MAPPER.createObjectNode();
+        error.putObject("error").put("code", "Error").put("message", "failed");
+        return error;
+    }
+
+    private static Throwable failureOf(CompletableFuture<Void> future) {
+        assertThatThrownBy(() -> future.get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class);
+        return future.handle((ignored, error) -> error).join();
+    }
+
+    /**
+     * Produces the $batch response body for a request, or throws to answer with an error status.
+     * Returning null answers 429 without Retry-After.
+     */
+    @FunctionalInterface
+    private interface BatchHandler {
+        JsonNode handle(JsonNode request) throws IOException;
+    }
+
+    private static final class BatchStatus extends RuntimeException {
+        private final int status;
+
+        private BatchStatus(int status) {
+            this.status = status;
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package com.graphmailer.service.dispatch;
+
+import com.graphmailer.config.DispatchProperties;
+import com.graphmailer.config.MailProperties;
+import com.graphmailer.model.DispatchState;
+import com.graphmailer.model.MailPriority;
+import com.graphmailer.model.SendMailRequest;
+import com.graphmailer.model.SendMailResponse;
+import com.graphmailer.model.SendMailStatusResponse;
+import com.graphmailer.service.MailService;
+import com.graphmailer.service.outbox.MailOutbox;
+import com.graphmailer.service.outbox.OutboxEntry;
+import com.graphmailer.util.ValidationUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for MailDispatchQueue.
+ */
+@ExtendWith(MockitoExtension.class)
+class MailDispatchQueueTest {
+
+    @Mock
+    private MailService mailService;
+
+    @Mock
+    private ValidationUtil validationUtil;
+
+    @Mock
+    private MailProperties mailProperties;
+
+    @Mock
+    private MailOutbox outbox;
+
+    private MailDispatchQueue dispatchQueue;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @AfterEach
+    void tearDown() {
+        if (dispatchQueue != null) {
+            dispatchQueue.shutdown();
+        }
+    }
+
+    @Test
+    void submittedSendIsDispatchedAndReportedAsSent() throws Exception {
+        // Given
+        dispatchQueue = createQueue(10, 1);
+        when(mailService.sendMail(any())).thenReturn(SendMailResponse.success("msg-123", "corr-123"));
+
+        // When
+        SendMailStatusResponse accepted = dispatchQueue.submit(createValidMailRequest(), "corr-123");
+
+        // Then
+        assertThat(accepted.status()).isEqualTo(DispatchState.QUEUED);
+        SendMailStatusResponse finalStatus = awaitTerminal(accepted.trackingId());
+        assertThat(finalStatus.status()).isEqualTo(DispatchState.SENT);
+        assertThat(finalStatus.messageId()).isEqualTo("msg-123");
+        assertThat(finalStatus.correlationId()).isEqualTo("corr-123");
+    }
+
+    @Test
+    void failedSendIsReportedAsFailed() throws Exception {
+        // Given
+        dispatchQueue = createQueue(10, 1);
+        when(mailService.sendMail(any())).thenReturn(SendMailResponse.failed("Graph API call failed", "corr-123"));
+
+        // When
+        SendMailStatusResponse accepted = dispatchQueue.submit(createValidMailRequest(), "corr-123");
+
+        // Then
+        SendMailStatusResponse finalStatus = awaitTerminal(accepted.trackingId());
+        assertThat(finalStatus.status()).isEqualTo(DispatchState.FAILED);
+        assertThat(finalStatus.message()).contains("Graph API call failed");
+    }
+
+    @Test
+    void invalidRequestIsRejectedBeforeEnqueueing() {
+        // Given
+        dispatchQueue = createQueue(10, 1);
+        doThrow(new IllegalArgumentException("Sender UPN not allowed"))
+                .when(validationUtil).validateMailRequest(any(), any());
+
+        // When & Then
+        assertThatThrownBy(() -> dispatchQueue.submit(createValidMailRequest(), "corr-123"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(dispatchQueue.pendingCount()).isZero();
+    }
+
+    @Test
+    void fullQueueRejectsSubmission() throws Exception {
+        // Given - a single worker blocked on the first send and room for one more
+        dispatchQueue = createQueue(1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        when(mailService.sendMail(any())).thenAnswer(invocation -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return SendMailResponse.success("msg", "corr");
+        });
+
+        dispatchQueue.submit(createValidMailRequest(), "corr-1");
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        dispatchQueue.submit(createValidMailRequest(), "corr-2");
+
+        // When & Then
+        assertThatThrownBy(() -> dispatchQueue.submit(createValidMailRequest(), "corr-3"))
+                .isInstanceOf(DispatchRejectedException.class);
+
+        release.countDown();
+    }
+
+    @Test
+    void transactionalSendOvertakesBulkBacklog() throws Exception {
+        // Given - the only worker is busy while a bulk backlog builds up behind it
+        dispatchQueue = createQueue(100, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        List<String> sent = Collections.synchronizedList(new ArrayList<>());
+        when(mailService.sendMail(any())).thenAnswer(invocation -> {
+            SendMailRequest request = invocation.getArgument(0);
+            sent.add(request.subject());
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return SendMailResponse.success("msg", "corr");
+        });
+
+        dispatchQueue.submit(createMailRequest("blocker", MailPriority.NORMAL), "corr-0");
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        for (int i = 0; i < 20; i++) {
+            dispatchQueue.dispatch(createMailRequest("bulk-" + i, null), "corr-bulk");
+        }
+
+        // When
+        SendMailStatusResponse otp = dispatchQueue.submit(createMailRequest("otp", MailPriority.TRANSACTIONAL),
+                "corr-otp");
+        release.countDown();
+
+        // Then - picked up first, not after the twenty bulk sends
+        assertThat(awaitTerminal(otp.trackingId()).status()).isEqualTo(DispatchState.SENT);
+        assertThat(sent.subList(0, 2)).containsExactly("blocker", "otp");
+        assertThat(meterRegistry.get("mail.dispatch.queue.wait").tag("lane", "transactional").timer().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void bulkSendsBlockedOnThrottledMailboxLeaveReservedWorkersToTransactionalSends() throws Exception {
+        // Given - bulk sends of a throttled mailbox block the workers that pick them up
+        dispatchQueue = createQueue(100, 4);
+        CountDownLatch throttled = new CountDownLatch(1);
+        List<String> started = Collections.synchronizedList(new ArrayList<>());
+        when(mailService.sendMail(any())).thenAnswer(invocation -> {
+            SendMailRequest request = invocation.getArgument(0);
+            started.add(request.subject());
+            if (request.subject().startsWith("bulk-")) {
+                throttled.await(5, TimeUnit.SECONDS);
+            }
+            return SendMailResponse.success("msg", "corr");
+        });
+        for (int i = 0; i < 10; i++) {
+            dispatchQueue.dispatch(createMailRequest("bulk-" + i, null), "corr-bulk");
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (started.size() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        // When
+        SendMailStatusResponse otp = dispatchQueue.submit(createMailRequest("otp", MailPriority.TRANSACTIONAL),
+                "corr-otp");
+
+        // Then - sent while the bulk sends are still stuck, which hold only the unreserved workers
+        assertThat(awaitTerminal(otp.trackingId()).status()).isEqualTo(DispatchState.SENT);
+        assertThat(started).filteredOn(subject -> subject.startsWith("bulk-")).hasSize(3);
+        throttled.countDown();
+    }
+
+    @Test
+    void fullBulkLaneDoesNotRejectTransactionalSends() throws Exception {
+        // Given
+        DispatchProperties properties = new DispatchProperties(true, 10, 1, 100, Duration.ofHours(1), 8,
+                Map.of(MailPriority.NORMAL, new DispatchProperties.Lane(null, 1, null, null)));
+        dispatchQueue = createQueue(properties, false);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        when(mailService.sendMail(any())).thenAnswer(invocation -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return SendMailResponse.success("msg", "corr");
+        });
+        dispatchQueue.submit(createValidMailRequest(), "corr-1");
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        dispatchQueue.submit(createValidMailRequest(), "corr-2");
+
+        // When & Then
+        assertThatThrownBy(() -> dispatchQueue.submit(createValidMailRequest(), "corr-3"))
+                .isInstanceOf(DispatchRejectedException.class);
+        dispatchQueue.submit(createMailRequest("otp", MailPriority.TRANSACTIONAL), "corr-4");
+        assertThat(dispatchQueue.pendingCount(MailPriority.TRANSACTIONAL)).isEqualTo(1);
+        assertThat(meterRegistry.get("mail.dispatch.rejected").tag("lane", "normal").counter().count())
+                .isEqualTo(1.0);
+
+        release.countDown();
+    }
+
+    @Test
+    void sendIsJournaledAndCompletedInOutbox() throws Exception {
+        // Given
+        dispatchQueue = createQueue(10, 1);
+        when(outbox.append(any(), any(), eq("corr-123"))).thenReturn("entry-1");
+        when(mailService.sendMail(any())).thenReturn(SendMailResponse.success("msg-123", "corr-123"));
+
+        // When
+        SendMailStatusResponse accepted = dispatchQueue.submit(createValidMailRequest(), "corr-123");
+
+        // Then
+        awaitTerminal(accepted.trackingId());
+        verify(outbox).append(any(), eq(accepted.trackingId()), eq("corr-123"));
+        verify(outbox, timeout(5000)).complete("entry-1");
+    }
+
+    @Test
+    void recoveredOutboxEntriesAreReplayed() throws Exception {
+        // Given - an entry left unfinished by a previous run
+        dispatchQueue = createQueue(10, 1);
+        OutboxEntry entry = new OutboxEntry("entry-1", "track-1", "corr-1", Instant.now(), createValidMailRequest());
+        when(outbox.recoveredEntries()).thenReturn(List.of(entry));
+        when(mailService.sendMail(any())).thenReturn(SendMailResponse.success("msg-1", "corr-1"));
+
+        // When
+        dispatchQueue.replayOutbox();
+
+        // Then
+        verify(outbox, timeout(5000)).complete("entry-1");
+        assertThat(awaitTerminal("track-1").status()).isEqualTo(DispatchState.SENT);
+    }
+
+    @Test
+    void virtualThreadModeSendsOnVirtualThreads() throws Exception {
+        // Given
+        dispatchQueue = createQueue(10, 2, true);
+        AtomicBoolean sentOnVirtualThread = new AtomicBoolean();
+        when(mailService.sendMail(any())).thenAnswer(invocation -> {
+            sentOnVirtualThread.set(Thread.currentThread().isVirtual());
+            return SendMailResponse.success("msg-123", "corr-123");
+        });
+
+        // When
+        SendMailStatusResponse accepted = dispatchQueue.submit(createValidMailRequest(), "corr-123");
+
+        // Then
+        assertThat(awaitTerminal(accepted.trackingId()).status()).isEqualTo(DispatchState.SENT);
+        assertThat(sentOnVirtualThread).isTrue();
+    }
+
+    private MailDispatchQueue createQueue(int capacity, int workers) {
+        return createQueue(capacity, workers, false);
+    }
+
+    private MailDispatchQueue createQueue(int capacity, int workers, boolean virtualThreads) {
+        return createQueue(new DispatchProperties(true, capacity, workers, 100, Duration.ofHours(1), 8, null),
+                virtualThreads);
+    }
+
+    private MailDispatchQueue createQueue(DispatchProperties properties, boolean virtualThreads) {
+        meterRegistry = new SimpleMeterRegistry();
+        return new MailDispatchQueue(mailService, validationUtil, mailProperties, properties, outbox, meterRegistry,
+                virtualThreads);
+    }
+
+    private SendMailStatusResponse awaitTerminal(String trackingId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            SendMailStatusResponse status = dispatchQueue.getStatus(trackingId).orElseThrow();
+            if (status.status().isTerminal()) {
+                return status;
+            }
+            Thread.sleep(20);
+        }
+        throw new AssertionError("Send " + trackingId + " did not complete in time");
+    }
+
+    private SendMailRequest createValidMailRequest() {
+        return createMailRequest("Test Subject", null);
+    }
+
+    private SendMailRequest createMailRequest(String subject, MailPriority priority) {
+        return new SendMailRequest(
+                "noreply@yourtenant.com",
+                List.of("test@example.com"),
+                List.of(),
+                List.of(),
+                subject,
+                "<p>Test HTML Body</p>",
+                null,
+                List.of(),
+                true,
+                "normal",
+                priority,
+                null,
+                null);
+    }
+}
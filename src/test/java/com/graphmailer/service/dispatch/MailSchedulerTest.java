@@ -0,0 +1,270 @@
+package com.graphmailer.service.dispatch;
+
+import com.graphmailer.config.MailProperties;
+import com.graphmailer.config.ScheduleProperties;
+import com.graphmailer.model.DispatchState;
+import com.graphmailer.model.SendMailRequest;
+import com.graphmailer.model.SendMailStatusResponse;
+import com.graphmailer.service.outbox.MailOutbox;
+import com.graphmailer.service.outbox.OutboxEntry;
+import com.graphmailer.util.ValidationUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for MailScheduler.
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class MailSchedulerTest {
+
+    private static final Instant START = Instant.parse("2025-10-21T06:00:00Z");
+
+    @Mock
+    private MailDispatchQueue dispatchQueue;
+
+    @Mock
+    private ValidationUtil validationUtil;
+
+    @Mock
+    private MailProperties mailProperties;
+
+    @Mock
+    private MailOutbox outbox;
+
+    private MutableClock clock;
+    private MailScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        clock = new MutableClock(START);
+        when(outbox.append(any(), anyString(), anyString())).thenReturn("entry-1");
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    void deferredSendIsEnqueuedOnceDue() throws Exception {
+        // Given
+        scheduler = createScheduler();
+        SendMailRequest request = createRequest(null, Duration.ofMinutes(5));
+
+        // When
+        SendMailStatusResponse scheduled = scheduler.schedule(request, "corr-1");
+        clock.advance(Duration.ofMinutes(4));
+        scheduler.fireDue();
+
+        // Then
+        assertThat(scheduled.status()).isEqualTo(DispatchState.SCHEDULED);
+        assertThat(scheduler.getStatus(scheduled.trackingId())).isPresent();
+        verify(dispatchQueue, never()).enqueueScheduled(any(), any(), any(), any());
+        verify(outbox).append(request, scheduled.trackingId(), "corr-1");
+
+        clock.advance(Duration.ofMinutes(1));
+        scheduler.fireDue();
+        verify(dispatchQueue).enqueueScheduled(request, "corr-1", scheduled.trackingId(), "entry-1");
+        assertThat(scheduler.getStatus(scheduled.trackingId())).isEmpty();
+        assertThat(scheduler.pendingCount()).isZero();
+    }
+
+    @Test
+    void sendAtIsHonouredInTheGivenOffset() throws Exception {
+        // Given - 10:00 in UTC+2 is 08:00Z, two hours after the start
+        scheduler = createScheduler();
+        SendMailRequest request = createRequest(OffsetDateTime.of(2025, 10, 21, 10, 0, 0, 0, ZoneOffset.ofHours(2)),
+                null);
+        scheduler.schedule(request, "corr-1");
+
+        // When & Then
+        clock.advance(Duration.ofHours(2).minusMinutes(1));
+        scheduler.fireDue();
+        verify(dispatchQueue, never()).enqueueScheduled(any(), any(), any(), any());
+        clock.advance(Duration.ofMinutes(1));
+        scheduler.fireDue();
+        verify(dispatchQueue).enqueueScheduled(eq(request), eq("corr-1"), anyString(), eq("entry-1"));
+    }
+
+    @Test
+    void cancelledSendIsNeverEnqueued() throws Exception {
+        // Given
+        scheduler = createScheduler();
+        SendMailStatusResponse scheduled = scheduler.schedule(createRequest(null, Duration.ofMinutes(5)), "corr-1");
+        when(dispatchQueue.getStatus(scheduled.trackingId())).thenReturn(Optional.empty());
+
+        // When
+        MailScheduler.CancelOutcome outcome = scheduler.cancel(scheduled.trackingId());
+        clock.advance(Duration.ofMinutes(10));
+        scheduler.fireDue();
+
+        // Then
+        assertThat(outcome).isEqualTo(MailScheduler.CancelOutcome.CANCELLED);
+        verify(outbox).complete("entry-1");
+        verify(dispatchQueue).recordCancelled(scheduled.trackingId(), "corr-1");
+        verify(dispatchQueue, never()).enqueueScheduled(any(), any(), any(), any());
+        assertThat(scheduler.cancel(scheduled.trackingId())).isEqualTo(MailScheduler.CancelOutcome.NOT_FOUND);
+    }
+
+    @Test
+    void dueSendIsTrackedBeforeItLeavesThePendingTable() throws Exception {
+        // Given
+        scheduler = createScheduler();
+        SendMailStatusResponse scheduled = scheduler.schedule(createRequest(null, Duration.ofMinutes(5)), "corr-1");
+        clock.advance(Duration.ofMinutes(5));
+        doAnswer(invocation -> {
+            assertThat(scheduler.getStatus(scheduled.trackingId())).isPresent();
+            return null;
+        }).when(dispatchQueue).trackScheduled(scheduled.trackingId(), "corr-1");
+
+        // When
+        scheduler.fireDue();
+
+        // Then
+        InOrder inOrder = inOrder(dispatchQueue);
+        inOrder.verify(dispatchQueue).trackScheduled(scheduled.trackingId(), "corr-1");
+        inOrder.verify(dispatchQueue).enqueueScheduled(any(), eq("corr-1"), eq(scheduled.trackingId()),
+                eq("entry-1"));
+        assertThat(scheduler.getStatus(scheduled.trackingId())).isEmpty();
+    }
+
+    @Test
+    void dueSendThatCannotBeEnqueuedIsFailedAndCompleted() throws Exception {
+        // Given
+        scheduler = createScheduler();
+        SendMailStatusResponse scheduled = scheduler.schedule(createRequest(null, Duration.ofMinutes(5)), "corr-1");
+        doThrow(new IllegalStateException("queue closed")).when(dispatchQueue)
+                .enqueueScheduled(any(), any(), any(), any());
+
+        // When
+        clock.advance(Duration.ofMinutes(5));
+        scheduler.fireDue();
+
+        // Then
+        verify(dispatchQueue).recordFailed(eq(scheduled.trackingId()), eq("corr-1"), contains("queue closed"));
+        verify(outbox).complete("entry-1");
+    }
+
+    @Test
+    void pendingSendsAreRestoredFromOutbox() throws Exception {
+        // Given - one send still ahead, one that fell due while stopped, and one immediate send
+        SendMailRequest ahead = createRequest(null, Duration.ofHours(1));
+        SendMailRequest overdue = createRequest(null, Duration.ofMinutes(1));
+        SendMailRequest immediate = createRequest(null, null);
+        when(outbox.recoveredEntries()).thenReturn(List.of(
+                new OutboxEntry("entry-a", "track-a", "corr-a", START, ahead),
+                new OutboxEntry("entry-b", "track-b", "corr-b", START.minus(Duration.ofMinutes(5)), overdue),
+                new OutboxEntry("entry-c", "track-c", "corr-c", START, immediate)));
+        scheduler = createScheduler();
+
+        // When
+        scheduler.restoreFromOutbox();
+        scheduler.fireDue();
+
+        // Then
+        verify(dispatchQueue).enqueueScheduled(overdue, "corr-b", "track-b", "entry-b");
+        verify(dispatchQueue, never()).enqueueScheduled(eq(immediate), any(), any(), any());
+        assertThat(scheduler.pendingCount()).isEqualTo(1);
+        assertThat(scheduler.getStatus("track-a")).isPresent();
+    }
+
+    @Test
+    void invalidSchedulesAreRejected() {
+        // Given
+        scheduler = createScheduler();
+
+        // When & Then
+        assertThatThrownBy(() -> scheduler.schedule(createRequest(OffsetDateTime.now(clock), Duration.ofMinutes(1)),
+                "corr-1")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> scheduler.schedule(createRequest(null, Duration.ofDays(31)), "corr-1"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(scheduler.pendingCount()).isZero();
+    }
+
+    private MailScheduler createScheduler() {
+        ScheduleProperties properties = new ScheduleProperties(true, Duration.ofMinutes(1), 64,
+                Duration.ofDays(30), 100);
+        return new MailScheduler(properties, dispatchQueue, validationUtil, mailProperties, outbox,
+                new SimpleMeterRegistry(), clock);
+    }
+
+    private SendMailRequest createRequest(OffsetDateTime sendAt, Duration sendAfter) {
+        return new SendMailRequest(
+                "noreply@yourtenant.com",
+                List.of("test@example.com"),
+                List.of(),
+                List.of(),
+                "Reminder",
+                "<p>Test HTML Body</p>",
+                null,
+                List.of(),
+                true,
+                "normal",
+                null,
+                sendAt,
+                sendAfter);
+    }
+
+    /**
+     * Clock moved forward by the test.
+     */
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        private MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        private void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
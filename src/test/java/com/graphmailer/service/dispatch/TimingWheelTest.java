@@ -0,0 +1,94 @@
+package com.graphmailer.service.dispatch;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for TimingWheel.
+ */
+class TimingWheelTest {
+
+    @Test
+    void itemsFireInTheTickOfTheirDeadlineAcrossLevels() {
+        // Given - 100ms ticks, 8 slots per level and deadlines from 50ms to about 3 days
+        TimingWheel<Long> wheel = new TimingWheel<>(100, 8, 3 * 86_400_000L, 0);
+        Random random = new Random(42);
+        List<Long> deadlines = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            long deadline = 50 + (long) (random.nextDouble() * random.nextDouble() * 3 * 86_400_000L);
+            deadlines.add(deadline);
+            wheel.schedule(deadline, deadline);
+        }
+
+        // When - turned in uneven steps, checking nothing fires early or more than a tick late
+        List<Long> fired = new ArrayList<>();
+        long now = 0;
+        while (now < 3 * 86_400_000L + 1_000) {
+            now += 1 + random.nextInt(60_000);
+            List<Long> expired = new ArrayList<>();
+            wheel.advance(now, expired);
+            for (long deadline : expired) {
+                assertThat(deadline).isLessThanOrEqualTo(now);
+            }
+            fired.addAll(expired);
+        }
+
+        // Then
+        assertThat(fired).containsExactlyInAnyOrderElementsOf(deadlines);
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void itemFiresOnceItsTickIsReached() {
+        // Given
+        TimingWheel<String> wheel = new TimingWheel<>(100, 64, 60_000, 1_000);
+        wheel.schedule("a", 1_250);
+        List<String> expired = new ArrayList<>();
+
+        // When & Then - rounded up to the tick at 1300ms
+        wheel.advance(1_299, expired);
+        assertThat(expired).isEmpty();
+        wheel.advance(1_300, expired);
+        assertThat(expired).containsExactly("a");
+    }
+
+    @Test
+    void cancelledItemsNeverFire() {
+        // Given
+        TimingWheel<String> wheel = new TimingWheel<>(100, 64, 86_400_000L, 0);
+        TimingWheel.Timeout<String> kept = wheel.schedule("kept", 30_000);
+        TimingWheel.Timeout<String> cancelled = wheel.schedule("cancelled", 30_000);
+        TimingWheel.Timeout<String> distant = wheel.schedule("distant", 7_200_000);
+
+        // When
+        assertThat(wheel.cancel(cancelled)).isTrue();
+        assertThat(wheel.cancel(distant)).isTrue();
+        List<String> expired = new ArrayList<>();
+        wheel.advance(86_400_000L, expired);
+
+        // Then
+        assertThat(expired).containsExactly("kept");
+        assertThat(wheel.cancel(kept)).isFalse();
+        assertThat(wheel.cancel(cancelled)).isFalse();
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void pastDeadlinesFireOnNextAdvance() {
+        // Given
+        TimingWheel<String> wheel = new TimingWheel<>(100, 64, 60_000, 10_000);
+        wheel.schedule("overdue", 5_000);
+        List<String> expired = new ArrayList<>();
+
+        // When
+        wheel.advance(10_000, expired);
+
+        // Then
+        assertThat(expired).containsExactly("overdue");
+    }
+}
@@ -0,0 +1,71 @@
+package com.graphmailer.service.dispatch;
+
+import com.graphmailer.model.MailPriority;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for WeightedLaneQueue.
+ */
+class WeightedLaneQueueTest {
+
+    @Test
+    void busyLanesAreServedInProportionToWeightAndInterleaved() throws Exception {
+        // Given - weights 3 : 2 : 1 and plenty of work in every lane
+        WeightedLaneQueue<String> queue = new WeightedLaneQueue<>(new int[] {100, 100, 100}, new int[] {3, 2, 1});
+        for (int i = 0; i < 12; i++) {
+            queue.offer(MailPriority.TRANSACTIONAL, "t");
+            queue.offer(MailPriority.NORMAL, "n");
+            queue.offer(MailPriority.BULK, "b");
+        }
+
+        // When
+        List<String> taken = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            taken.add(queue.poll(0, TimeUnit.MILLISECONDS).item());
+        }
+
+        // Then
+        assertThat(taken).containsExactly("t", "n", "t", "b", "n", "t", "t", "n", "t", "b", "n", "t");
+    }
+
+    @Test
+    void idleLanesLeaveTheirShareToOthers() throws Exception {
+        // Given
+        WeightedLaneQueue<String> queue = new WeightedLaneQueue<>(new int[] {10, 10, 10}, new int[] {8, 3, 1});
+        queue.offer(MailPriority.BULK, "b1");
+        queue.offer(MailPriority.BULK, "b2");
+
+        // When
+        WeightedLaneQueue.Entry<String> first = queue.poll(0, TimeUnit.MILLISECONDS);
+        queue.offer(MailPriority.TRANSACTIONAL, "t1");
+        WeightedLaneQueue.Entry<String> second = queue.poll(0, TimeUnit.MILLISECONDS);
+
+        // Then
+        assertThat(first.item()).isEqualTo("b1");
+        assertThat(first.lane()).isEqualTo(MailPriority.BULK);
+        assertThat(second.item()).isEqualTo("t1");
+        assertThat(queue.size()).isEqualTo(1);
+        assertThat(queue.poll(10, TimeUnit.MILLISECONDS).item()).isEqualTo("b2");
+        assertThat(queue.poll(10, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    @Test
+    void eachLaneHasItsOwnCapacity() {
+        // Given
+        WeightedLaneQueue<String> queue = new WeightedLaneQueue<>(new int[] {1, 1, 2}, new int[] {1, 1, 1});
+
+        // When & Then
+        assertThat(queue.offer(MailPriority.BULK, "b1")).isTrue();
+        assertThat(queue.offer(MailPriority.BULK, "b2")).isTrue();
+        assertThat(queue.offer(MailPriority.BULK, "b3")).isFalse();
+        assertThat(queue.offer(MailPriority.TRANSACTIONAL, "t1")).isTrue();
+        assertThat(queue.size(MailPriority.BULK)).isEqualTo(2);
+        assertThat(queue.size()).isEqualTo(3);
+    }
+}
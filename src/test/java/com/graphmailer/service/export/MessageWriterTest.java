@@ -0,0 +1,129 @@
+package com.graphmailer.service.export;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.graph.models.EmailAddress;
+import com.microsoft.graph.models.Message;
+import com.microsoft.graph.models.Recipient;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for the streaming message writers.
+ */
+class MessageWriterTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void jsonWriterProducesArrayOfMessages() throws Exception {
+        // Given
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        MessageWriter writer = MessageWriter.forFormat("JSON", null, false, output, objectMapper);
+
+        // When
+        writer.write(createMessage("msg-1", "Hello"));
+        writer.write(createMessage("msg-2", "World"));
+        writer.close();
+
+        // Then
+        JsonNode json = objectMapper.readTree(output.toString(StandardCharsets.UTF_8));
+        assertThat(writer.count()).isEqualTo(2);
+        assertThat(json.isArray()).isTrue();
+        assertThat(json).hasSize(2);
+        assertThat(json.get(0).get("messageId").asText()).isEqualTo("msg-1");
+        assertThat(json.get(1).get("from").asText()).isEqualTo("sender@example.com");
+        assertThat(json.get(1).get("receivedDateTime").asText()).isEqualTo("2025-10-21T09:00:00Z");
+    }
+
+    @Test
+    void jsonWriterWithoutMessagesProducesEmptyArray() throws Exception {
+        // Given
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        MessageWriter writer = MessageWriter.forFormat("JSON", null, false, output, objectMapper);
+
+        // When
+        writer.close();
+
+        // Then
+        assertThat(output.toString(StandardCharsets.UTF_8)).isEqualTo("[]");
+    }
+
+    @Test
+    void csvWriterEscapesValuesAndWritesHeader() throws Exception {
+        // Given
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        MessageWriter writer = MessageWriter.forFormat("CSV", ";", true, output, objectMapper);
+
+        // When
+        writer.write(createMessage("msg-1", "Hello, \"World\""));
+        writer.close();
+
+        // Then
+        assertThat(output.toString(StandardCharsets.UTF_8)).isEqualTo(
+                "MessageId;Subject;From;ReceivedDateTime;IsRead;HasAttachments\n"
+                        + "msg-1;\"Hello, \"\"World\"\"\";sender@example.com;2025-10-21T09:00Z;true;false\n");
+    }
+
+    @Test
+    void envelopedJsonWriterProducesReadResponse() throws Exception {
+        // Given
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        MessageWriter writer = JsonMessageWriter.enveloped(output, objectMapper, 1);
+
+        // When
+        writer.write(createMessage("msg-1", "Grüße \"aus\" Köln"));
+        writer.close();
+
+        // Then
+        JsonNode json = objectMapper.readTree(output.toByteArray());
+        assertThat(json.get("status").asText()).isEqualTo("SUCCESS");
+        assertThat(json.get("totalCount").asInt()).isEqualTo(1);
+        assertThat(json.get("emails").get(0).get("subject").asText()).isEqualTo("Grüße \"aus\" Köln");
+        assertThat(json.get("emails").get(0).get("isRead").asBoolean()).isTrue();
+    }
+
+    @Test
+    void csvWriterEncodesMultibyteCharactersAsUtf8() throws Exception {
+        // Given
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        MessageWriter writer = MessageWriter.forFormat("CSV", ",", false, output, objectMapper);
+        String subject = "Café 東京 \uD83D\uDCE7\nline two";
+
+        // When
+        for (int i = 0; i < 1000; i++) {
+            writer.write(createMessage("msg-" + i, subject));
+        }
+        writer.close();
+
+        // Then
+        String[] rows = output.toString(StandardCharsets.UTF_8).split("\n(?=msg-)");
+        assertThat(writer.count()).isEqualTo(1000);
+        assertThat(rows).hasSize(1000);
+        assertThat(rows[999]).isEqualTo(
+                "msg-999,\"" + subject + "\",sender@example.com,2025-10-21T09:00Z,true,false\n");
+    }
+
+    private static Message createMessage(String id, String subject) {
+        EmailAddress address = new EmailAddress();
+        address.setAddress("sender@example.com");
+        Recipient from = new Recipient();
+        from.setEmailAddress(address);
+
+        Message message = new Message();
+        message.setInternetMessageId(id);
+        message.setSubject(subject);
+        message.setFrom(from);
+        message.setReceivedDateTime(OffsetDateTime.of(2025, 10, 21, 9, 0, 0, 0, ZoneOffset.UTC));
+        message.setBodyPreview("Preview");
+        message.setIsRead(true);
+        message.setHasAttachments(false);
+        return message;
+    }
+}
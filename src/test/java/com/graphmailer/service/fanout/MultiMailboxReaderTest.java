@@ -0,0 +1,154 @@
+package com.graphmailer.service.fanout;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.graphmailer.config.FanOutProperties;
+import com.graphmailer.service.GraphReadMailService;
+import com.microsoft.graph.models.Message;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for MultiMailboxReader and the merged response.
+ */
+@ExtendWith(MockitoExtension.class)
+class MultiMailboxReaderTest {
+
+    private static final OffsetDateTime BASE = OffsetDateTime.of(2025, 10, 21, 12, 0, 0, 0, ZoneOffset.UTC);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Mock
+    private GraphReadMailService readMailService;
+
+    private MultiMailboxReader reader;
+
+    @BeforeEach
+    void setUp() {
+        reader = new MultiMailboxReader(readMailService, new FanOutProperties(2, Duration.ofMillis(300), 5), false);
+    }
+
+    @AfterEach
+    void tearDown() {
+        reader.shutdown();
+    }
+
+    @Test
+    void mergesMailboxesNewestFirst() throws Exception {
+        // Given
+        when(readMailService.readMessages(eq("a@example.com"), any(), any(), any()))
+                .thenReturn(List.of(message("a-1", 1), message("a-2", 4), message("a-3", 9)));
+        when(readMailService.readMessages(eq("b@example.com"), any(), any(), any()))
+                .thenReturn(List.of(message("b-1", 2), message("b-2", 3)));
+        when(readMailService.readMessages(eq("c@example.com"), any(), any(), any()))
+                .thenReturn(List.of(message("c-1", 0), message("c-2", 5)));
+
+        // When
+        MultiMailboxReadResult result = reader.read(List.of("a@example.com", "b@example.com", "c@example.com"),
+                null, null, 10);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        long written = result.writeTo("JSON", null, false, output, objectMapper);
+
+        // Then
+        JsonNode json = objectMapper.readTree(output.toByteArray());
+        assertThat(written).isEqualTo(7);
+        assertThat(json.get("status").asText()).isEqualTo("SUCCESS");
+        assertThat(json.get("totalCount").asInt()).isEqualTo(7);
+        assertThat(json.get("emails").findValuesAsText("messageId"))
+                .containsExactly("c-1", "a-1", "b-1", "b-2", "a-2", "c-2", "a-3");
+        assertThat(json.get("emails").get(0).get("mailbox").asText()).isEqualTo("c@example.com");
+    }
+
+    @Test
+    void failedAndSlowMailboxesAreReportedPerMailbox() throws Exception {
+        // Given
+        when(readMailService.readMessages(eq("ok@example.com"), any(), any(), any()))
+                .thenReturn(List.of(message("ok-1", 1)));
+        when(readMailService.readMessages(eq("broken@example.com"), any(), any(), any()))
+                .thenThrow(new IllegalStateException("Mailbox not found"));
+        when(readMailService.readMessages(eq("slow@example.com"), any(), any(), any()))
+                .thenAnswer(invocation -> {
+                    Thread.sleep(5000);
+                    return List.of(message("slow-1", 0));
+                });
+
+        // When
+        MultiMailboxReadResult result = reader.read(List.of("ok@example.com", "broken@example.com", "slow@example.com"),
+                null, null, 10);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        result.writeTo("CSV", ",", true, output, objectMapper);
+
+        // Then
+        assertThat(result.status()).isEqualTo(MultiMailboxReadResult.Status.PARTIAL);
+        assertThat(result.mailboxes()).extracting(MailboxReadResult::status).containsExactly(
+                MailboxReadResult.Status.SUCCESS, MailboxReadResult.Status.ERROR, MailboxReadResult.Status.TIMEOUT);
+        assertThat(result.mailboxes().get(1).error()).contains("Mailbox not found");
+        assertThat(output.toString(StandardCharsets.UTF_8)).isEqualTo(
+                "Mailbox,MessageId,Subject,From,ReceivedDateTime,IsRead,HasAttachments\n"
+                        + "ok@example.com,ok-1,Subject ok-1,,2025-10-21T11:59Z,null,null\n");
+    }
+
+    @Test
+    void readsAtMostParallelismMailboxesAtOnce() {
+        // Given
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        when(readMailService.readMessages(anyString(), any(), any(), any())).thenAnswer(invocation -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            Thread.sleep(50);
+            inFlight.decrementAndGet();
+            return List.of();
+        });
+
+        // When
+        MultiMailboxReadResult result = reader.read(
+                List.of("a@example.com", "b@example.com", "A@Example.com", "c@example.com", "d@example.com"),
+                null, null, 10);
+
+        // Then
+        assertThat(result.mailboxes()).extracting(MailboxReadResult::mailbox)
+                .containsExactly("a@example.com", "b@example.com", "c@example.com", "d@example.com");
+        assertThat(maxInFlight.get()).isEqualTo(2);
+        verify(readMailService, times(4)).readMessages(anyString(), any(), any(), any());
+    }
+
+    @Test
+    void rejectsTooManyMailboxes() {
+        // Given
+        List<String> mailboxes = List.of("1@x.com", "2@x.com", "3@x.com", "4@x.com", "5@x.com", "6@x.com");
+
+        // When / Then
+        assertThatThrownBy(() -> reader.read(mailboxes, null, null, 10))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("At most 5 mailboxes");
+    }
+
+    private static Message message(String id, int minutesAgo) {
+        Message message = new Message();
+        message.setInternetMessageId(id);
+        message.setSubject("Subject " + id);
+        message.setReceivedDateTime(BASE.minusMinutes(minutesAgo));
+        return message;
+    }
+}
@@ -0,0 +1,210 @@
+package com.graphmailer.service.idempotency;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.graphmailer.config.IdempotencyProperties;
+import com.graphmailer.model.SendMailRequest;
+import com.graphmailer.model.SendMailResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for IdempotencyStore.
+ */
+class IdempotencyStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private static final String CLIENT = "principal:reporting";
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    private IdempotencyStore store;
+
+    @AfterEach
+    void tearDown() {
+        if (store != null) {
+            store.shutdown();
+        }
+    }
+
+    @Test
+    void repeatedKeyReturnsOriginalResponseWithoutSending() {
+        // Given
+        store = create(100, false);
+        AtomicInteger sends = new AtomicInteger();
+        SendMailRequest request = createMailRequest("Welcome");
+
+        // When
+        IdempotencyStore.Outcome first = store.execute(CLIENT, "key-1", request, () -> send(sends));
+        IdempotencyStore.Outcome second = store.execute(CLIENT, "key-1", request, () -> send(sends));
+
+        // Then
+        assertThat(sends).hasValue(1);
+        assertThat(first.replayed()).isFalse();
+        assertThat(second.replayed()).isTrue();
+        assertThat(second.response().messageId()).isEqualTo(first.response().messageId());
+    }
+
+    @Test
+    void concurrentDuplicatesShareOneSend() throws Exception {
+        // Given
+        store = create(100, false);
+        AtomicInteger sends = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        SendMailRequest request = createMailRequest("Welcome");
+
+        // When
+        CompletableFuture<IdempotencyStore.Outcome> first = CompletableFuture.supplyAsync(
+                () -> store.execute(CLIENT, "key-1", request, () -> {
+                    started.countDown();
+                    await(release);
+                    return send(sends);
+                }));
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<IdempotencyStore.Outcome> duplicate = CompletableFuture.supplyAsync(
+                () -> store.execute(CLIENT, "key-1", request, () -> send(sends)));
+        Thread.sleep(100);
+        release.countDown();
+
+        // Then
+        assertThat(duplicate.get(5, TimeUnit.SECONDS).replayed()).isTrue();
+        assertThat(first.get(5, TimeUnit.SECONDS).replayed()).isFalse();
+        assertThat(sends).hasValue(1);
+    }
+
+    @Test
+    void failedSendIsNotRemembered() {
+        // Given
+        store = create(100, false);
+        SendMailRequest request = createMailRequest("Welcome");
+
+        // When
+        store.execute(CLIENT, "key-1", request, () -> SendMailResponse.failed("Graph API call failed", "corr-1"));
+        IdempotencyStore.Outcome retry = store.execute(CLIENT, "key-1", request,
+                () -> SendMailResponse.success("msg-1", "corr-2"));
+
+        // Then
+        assertThat(retry.replayed()).isFalse();
+        assertThat(retry.response().status()).isEqualTo("SUCCESS");
+    }
+
+    @Test
+    void keyReusedForDifferentRequestIsRejected() {
+        // Given
+        store = create(100, false);
+        store.execute(CLIENT, "key-1", createMailRequest("Welcome"), () -> SendMailResponse.success("msg-1", "corr-1"));
+
+        // When / Then
+        assertThatThrownBy(() -> store.execute(CLIENT, "key-1", createMailRequest("Goodbye"),
+                () -> SendMailResponse.success("msg-2", "corr-2")))
+                .isInstanceOf(IdempotencyKeyReusedException.class);
+    }
+
+    @Test
+    void evictedEntriesAreFoundInSpill() {
+        // Given
+        store = create(1, true);
+        AtomicInteger sends = new AtomicInteger();
+        SendMailRequest request = createMailRequest("Welcome");
+        store.execute(CLIENT, "key-1", request, () -> send(sends));
+        store.execute(CLIENT, "key-2", request, () -> send(sends));
+
+        // When
+        IdempotencyStore.Outcome replay = store.execute(CLIENT, "key-1", request, () -> send(sends));
+
+        // Then
+        assertThat(replay.replayed()).isTrue();
+        assertThat(sends).hasValue(2);
+    }
+
+    @Test
+    void sendsStillRunningAreNotEvictedForCapacity() throws Exception {
+        // Given - room for one entry, taken by a send that has not finished
+        store = create(1, true);
+        AtomicInteger sends = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        SendMailRequest request = createMailRequest("Welcome");
+        CompletableFuture<IdempotencyStore.Outcome> first = CompletableFuture.supplyAsync(
+                () -> store.execute(CLIENT, "key-1", request, () -> {
+                    started.countDown();
+                    await(release);
+                    return send(sends);
+                }));
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // When - another key fills the stripe, then the first key is retried
+        store.execute(CLIENT, "key-2", request, () -> send(sends));
+        CompletableFuture<IdempotencyStore.Outcome> retry = CompletableFuture.supplyAsync(
+                () -> store.execute(CLIENT, "key-1", request, () -> send(sends)));
+        Thread.sleep(100);
+        release.countDown();
+
+        // Then - the retry waited for the running send instead of sending again
+        assertThat(retry.get(5, TimeUnit.SECONDS).replayed()).isTrue();
+        assertThat(first.get(5, TimeUnit.SECONDS).replayed()).isFalse();
+        assertThat(sends).hasValue(2);
+    }
+
+    @Test
+    void keysAreScopedToTheirPrincipal() {
+        // Given
+        store = create(100, false);
+        AtomicInteger sends = new AtomicInteger();
+        store.execute(CLIENT, "key-1", createMailRequest("Welcome"), () -> send(sends));
+
+        // When - another principal uses the same key for its own message
+        IdempotencyStore.Outcome other = store.execute("principal:billing", "key-1",
+                createMailRequest("Invoice"), () -> send(sends));
+
+        // Then - sent as its own request, neither replayed nor rejected
+        assertThat(other.replayed()).isFalse();
+        assertThat(other.response().messageId()).isEqualTo("msg-2");
+    }
+
+    private IdempotencyStore create(int maxEntries, boolean spill) {
+        return new IdempotencyStore(new IdempotencyProperties(true, Duration.ofHours(1), maxEntries, 1, spill,
+                directory.toString()), objectMapper);
+    }
+
+    private static SendMailResponse send(AtomicInteger sends) {
+        return SendMailResponse.success("msg-" + sends.incrementAndGet(), "corr-1");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static SendMailRequest createMailRequest(String subject) {
+        return new SendMailRequest(
+                "noreply@yourtenant.com",
+                List.of("test@example.com"),
+                List.of(),
+                List.of(),
+                subject,
+                "<p>Body</p>",
+                null,
+                List.of(),
+                true,
+                "normal");
+    }
+}
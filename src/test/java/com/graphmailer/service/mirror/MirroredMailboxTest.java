@@ -0,0 +1,136 @@
+package com.graphmailer.service.mirror;
+
+import com.microsoft.graph.models.EmailAddress;
+import com.microsoft.graph.models.Message;
+import com.microsoft.graph.models.Recipient;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for MirroredMailbox.
+ */
+class MirroredMailboxTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void queryReturnsNewestMatchingMessagesFirst() throws Exception {
+        // Given
+        MirroredMailbox mailbox = MirroredMailbox.open(directory.resolve("mailbox.log"));
+        mailbox.apply("inbox", List.of(
+                createMessage("1", "Weekly report", "alice@example.com", 8),
+                createMessage("2", "Lunch", "bob@example.com", 9),
+                createMessage("3", "Monthly REPORT", "alice@example.com", 10)));
+
+        // When
+        List<MirroredMessage> reports = mailbox.query("report", null, 10);
+        List<MirroredMessage> fromAlice = mailbox.query(null, "ALICE@example.com", 1);
+
+        // Then
+        assertThat(reports).extracting(MirroredMessage::id).containsExactly("3", "1");
+        assertThat(fromAlice).extracting(MirroredMessage::id).containsExactly("3");
+        mailbox.close();
+    }
+
+    @Test
+    void changesAndDeltaLinkSurviveReopen() throws Exception {
+        // Given
+        Path file = directory.resolve("mailbox.log");
+        MirroredMailbox mailbox = MirroredMailbox.open(file);
+        mailbox.apply("inbox", List.of(
+                createMessage("1", "First", "alice@example.com", 8),
+                createMessage("2", "Second", "alice@example.com", 9)));
+        Message updated = createMessage("1", "First", "alice@example.com", 8);
+        updated.setIsRead(true);
+        mailbox.apply("inbox", List.of(updated, removed("2")));
+        mailbox.completeRound("inbox", "https://graph.microsoft.com/delta?$deltatoken=abc");
+        mailbox.close();
+
+        // When
+        MirroredMailbox reopened = MirroredMailbox.open(file);
+
+        // Then
+        assertThat(reopened.deltaLink("inbox")).isEqualTo("https://graph.microsoft.com/delta?$deltatoken=abc");
+        assertThat(reopened.query(null, null, 10))
+                .singleElement()
+                .satisfies(message -> {
+                    assertThat(message.id()).isEqualTo("1");
+                    assertThat(message.isRead()).isTrue();
+                });
+        reopened.close();
+    }
+
+    @Test
+    void tornFrameAtEndOfLogIsIgnored() throws Exception {
+        // Given
+        Path file = directory.resolve("mailbox.log");
+        MirroredMailbox mailbox = MirroredMailbox.open(file);
+        mailbox.apply("inbox", List.of(createMessage("1", "First", "alice@example.com", 8)));
+        mailbox.completeRound("inbox", "link-1");
+        mailbox.close();
+        Files.write(file, new byte[]{0, 0, 0, 50, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        // When
+        MirroredMailbox reopened = MirroredMailbox.open(file);
+        reopened.completeRound("inbox", "link-2");
+        reopened.close();
+        MirroredMailbox again = MirroredMailbox.open(file);
+
+        // Then
+        assertThat(again.size()).isEqualTo(1);
+        assertThat(again.deltaLink("inbox")).isEqualTo("link-2");
+        again.close();
+    }
+
+    @Test
+    void resetForgetsFolder() throws Exception {
+        // Given
+        MirroredMailbox mailbox = MirroredMailbox.open(directory.resolve("mailbox.log"));
+        mailbox.apply("inbox", List.of(createMessage("1", "First", "alice@example.com", 8)));
+        mailbox.apply("archive", List.of(createMessage("2", "Second", "alice@example.com", 9)));
+        mailbox.completeRound("inbox", "link-1");
+
+        // When
+        mailbox.reset("inbox");
+
+        // Then
+        assertThat(mailbox.deltaLink("inbox")).isNull();
+        assertThat(mailbox.query(null, null, 10)).extracting(MirroredMessage::id).containsExactly("2");
+        mailbox.close();
+    }
+
+    private static Message createMessage(String id, String subject, String sender, int hour) {
+        EmailAddress address = new EmailAddress();
+        address.setAddress(sender);
+        Recipient from = new Recipient();
+        from.setEmailAddress(address);
+
+        Message message = new Message();
+        message.setId(id);
+        message.setInternetMessageId("<" + id + "@example.com>");
+        message.setSubject(subject);
+        message.setFrom(from);
+        message.setReceivedDateTime(OffsetDateTime.of(2025, 10, 21, hour, 0, 0, 0, ZoneOffset.UTC));
+        message.setIsRead(false);
+        message.setHasAttachments(false);
+        return message;
+    }
+
+    private static Message removed(String id) {
+        Message message = new Message();
+        message.setId(id);
+        message.setAdditionalData(Map.of("@removed", Map.of("reason", "deleted")));
+        return message;
+    }
+}
@@ -0,0 +1,178 @@
+package com.graphmailer.service.outbox;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.graphmailer.config.OutboxProperties;
+import com.graphmailer.model.SendMailRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for MailOutbox.
+ */
+class MailOutboxTest {
+
+    @TempDir
+    Path directory;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    private MailOutbox outbox;
+
+    @AfterEach
+    void tearDown() {
+        if (outbox != null) {
+            outbox.close();
+        }
+    }
+
+    @Test
+    void unfinishedEntriesAreRecoveredAfterRestart() throws Exception {
+        // Given
+        outbox = open(64L * 1024 * 1024);
+        String sent = outbox.append(createMailRequest("Sent"), null, "corr-1");
+        String unfinished = outbox.append(createMailRequest("Unfinished"), "track-2", "corr-2");
+        outbox.complete(sent);
+        outbox.close();
+
+        // When
+        outbox = open(64L * 1024 * 1024);
+
+        // Then
+        assertThat(outbox.recoveredEntries()).hasSize(1);
+        OutboxEntry entry = outbox.recoveredEntries().get(0);
+        assertThat(entry.id()).isEqualTo(unfinished);
+        assertThat(entry.trackingId()).isEqualTo("track-2");
+        assertThat(entry.correlationId()).isEqualTo("corr-2");
+        assertThat(entry.request().subject()).isEqualTo("Unfinished");
+        assertThat(outbox.openCount()).isEqualTo(1);
+    }
+
+    @Test
+    void tornFrameAtEndOfSegmentIsIgnored() throws Exception {
+        // Given - a crash left half a frame behind the last complete entry
+        outbox = open(64L * 1024 * 1024);
+        outbox.append(createMailRequest("Intact"), null, "corr-1");
+        outbox.close();
+        try (Stream<Path> segments = Files.list(directory)) {
+            Path segment = segments.findFirst().orElseThrow();
+            Files.write(segment, new byte[]{0, 0, 0, 42, 1, 2}, StandardOpenOption.APPEND);
+        }
+
+        // When
+        outbox = open(64L * 1024 * 1024);
+
+        // Then
+        assertThat(outbox.recoveredEntries()).extracting(entry -> entry.request().subject())
+                .containsExactly("Intact");
+    }
+
+    @Test
+    void concurrentAppendsAreAllDurableAndSegmentsRoll() throws Exception {
+        // Given - small segments so the journal rolls while writing
+        outbox = open(4096);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<CompletableFuture<String>> appends = new ArrayList<>();
+
+        // When
+        try {
+            for (int i = 0; i < 200; i++) {
+                String subject = "Message " + i;
+                appends.add(CompletableFuture.supplyAsync(
+                        () -> outbox.append(createMailRequest(subject), null, "corr"), executor));
+            }
+            for (int i = 0; i < appends.size(); i += 2) {
+                outbox.complete(appends.get(i).join());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        outbox.close();
+        outbox = open(4096);
+
+        // Then - only the uncompleted half comes back, and old segments were removed
+        assertThat(outbox.recoveredEntries()).hasSize(100);
+        try (Stream<Path> segments = Files.list(directory)) {
+            assertThat(segments.count()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void segmentIsOnlyCompactedOnceCompletedEntriesDominate() throws Exception {
+        // Given - open entries alone are several times the segment size
+        outbox = open(4096);
+        List<String> entryIds = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            entryIds.add(outbox.append(createMailRequest("Message " + i), null, "corr"));
+        }
+
+        // Then - nothing is rewritten while every entry is still open
+        assertThat(segmentNames()).containsExactly("outbox-000000000001.log");
+
+        // When
+        entryIds.forEach(outbox::complete);
+        outbox.close();
+
+        // Then - the completed entries were dropped by compaction
+        List<String> segments = segmentNames();
+        assertThat(segments).hasSize(1).doesNotContain("outbox-000000000001.log");
+        assertThat(Files.size(directory.resolve(segments.get(0)))).isLessThan(4096);
+        outbox = open(4096);
+        assertThat(outbox.recoveredEntries()).isEmpty();
+    }
+
+    @Test
+    void disabledOutboxDoesNotJournal() throws Exception {
+        // Given
+        outbox = new MailOutbox(new OutboxProperties(false, directory.toString(), null, null), objectMapper,
+                new SimpleMeterRegistry());
+
+        // When
+        String entryId = outbox.append(createMailRequest("Not journaled"), null, "corr-1");
+
+        // Then
+        assertThat(entryId).isNull();
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files.count()).isZero();
+        }
+    }
+
+    private List<String> segmentNames() throws Exception {
+        try (Stream<Path> segments = Files.list(directory)) {
+            return segments.map(path -> path.getFileName().toString()).sorted().toList();
+        }
+    }
+
+    private MailOutbox open(long maxSegmentBytes) throws Exception {
+        return new MailOutbox(new OutboxProperties(true, directory.toString(), 64, maxSegmentBytes), objectMapper,
+                new SimpleMeterRegistry());
+    }
+
+    private SendMailRequest createMailRequest(String subject) {
+        return new SendMailRequest(
+                "noreply@yourtenant.com",
+                List.of("test@example.com"),
+                List.of(),
+                List.of(),
+                subject,
+                "<p>Test HTML Body</p>",
+                null,
+                List.of(),
+                true,
+                "normal");
+    }
+}
@@ -0,0 +1,214 @@
+package com.graphmailer.service.ratelimit;
+
+import com.graphmailer.config.RateLimitProperties;
+import com.graphmailer.model.EmailAttachment;
+import com.graphmailer.model.SendMailRequest;
+import io.github.bucket4j.distributed.proxy.generic.compare_and_swap.CompareAndSwapOperation;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for RateLimiter and principal resolution.
+ */
+class RateLimiterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void keysRequestsByPrincipalNotForwardedAddress() {
+        // Given
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr("10.0.0.7");
+        request.addHeader("X-Forwarded-For", "203.0.113.9");
+        Jwt jwt = Jwt.withTokenValue("token").header("alg", "none")
+                .subject("user-1").claim("tid", "tenant-a").build();
+
+        // When
+        RateLimitPrincipal jwtPrincipal = RateLimitPrincipal.of(new JwtAuthenticationToken(jwt, List.of()), request);
+        RateLimitPrincipal apiKeyPrincipal = RateLimitPrincipal.of(
+                new UsernamePasswordAuthenticationToken("api-user", null, List.of()), request);
+        RateLimitPrincipal named = RateLimitPrincipal.of(
+                new UsernamePasswordAuthenticationToken("reporting", null, List.of()), request);
+        RateLimitPrincipal anonymous = RateLimitPrincipal.of(new AnonymousAuthenticationToken("key", "anonymous",
+                AuthorityUtils.createAuthorityList("ROLE_ANONYMOUS")), request);
+
+        // Then
+        assertThat(jwtPrincipal).isEqualTo(new RateLimitPrincipal("jwt:tenant-a/user-1", "tenant-a"));
+        assertThat(apiKeyPrincipal.key()).isEqualTo("api-key:10.0.0.7");
+        assertThat(named.key()).isEqualTo("principal:reporting");
+        assertThat(RateLimitPrincipal.fingerprint(
+                new UsernamePasswordAuthenticationToken("api-user", null, List.of()), request))
+                .isEqualTo(apiKeyPrincipal.fingerprint());
+        assertThat(anonymous.key()).isEqualTo("ip:10.0.0.7");
+        assertThat(RateLimitPrincipal.fingerprint(new JwtAuthenticationToken(jwt, List.of()), request))
+                .isEqualTo(jwtPrincipal.fingerprint())
+                .isNotEqualTo(apiKeyPrincipal.fingerprint());
+        assertThat(RateLimitPrincipal.fingerprint(null, request)).isEqualTo(anonymous.fingerprint());
+    }
+
+    @Test
+    void appliesPrincipalAndTenantOverrides() {
+        // Given
+        RateLimiter rateLimiter = new RateLimiter(new RateLimitProperties(2L, Duration.ofMinutes(1), Map.of(
+                "jwt:tenant-a/vip", new RateLimitProperties.Limit(5L, Duration.ofMinutes(1)),
+                "tenant:tenant-a", new RateLimitProperties.Limit(3L, Duration.ofMinutes(1))),
+                100, Duration.ofMinutes(10), null, null), meterRegistry, Optional.empty());
+
+        // When / Then
+        assertThat(consumed(rateLimiter, new RateLimitPrincipal("jwt:tenant-a/vip", "tenant-a"), 10)).isEqualTo(5);
+        assertThat(consumed(rateLimiter, new RateLimitPrincipal("jwt:tenant-a/user", "tenant-a"), 10)).isEqualTo(3);
+        assertThat(consumed(rateLimiter, new RateLimitPrincipal("jwt:tenant-b/user", "tenant-b"), 10)).isEqualTo(2);
+        assertThat(consumed(rateLimiter, new RateLimitPrincipal("principal:api-user", null), 10)).isEqualTo(2);
+    }
+
+    @Test
+    void registryIsBoundedAndReported() {
+        // Given
+        RateLimiter rateLimiter = new RateLimiter(new RateLimitProperties(null, null, null, 50, null, null, null),
+                meterRegistry, Optional.empty());
+
+        // When
+        for (int i = 0; i < 1000; i++) {
+            RateLimitPrincipal principal = new RateLimitPrincipal("principal:user-" + i, null);
+            rateLimiter.tryConsume(principal);
+            rateLimiter.tryConsume(principal, RateLimiter.Lane.SEND, 1);
+        }
+
+        // Then - read buckets in a table of 32 slots, send buckets in a registry of 50
+        assertThat(rateLimiter.principalCount()).isLessThanOrEqualTo(32 + 50);
+        assertThat(meterRegistry.get("rate.limit.registry.bytes").gauge().value())
+                .isEqualTo(32 * TokenBucketTable.SLOT_BYTES
+                        + (rateLimiter.principalCount() - 32) * RateLimiter.ESTIMATED_ENTRY_BYTES);
+        assertThat(meterRegistry.get("rate.limit.table.evictions").functionCounter().count()).isEqualTo(1000 - 32);
+        assertThat(meterRegistry.get("cache.evictions").tag("cache", "rate-limit").functionCounter().count())
+                .isGreaterThanOrEqualTo(950);
+    }
+
+    @Test
+    void replicasSharingAStoreEnforceOneLimit() {
+        // Given
+        InMemoryProxyManager store = new InMemoryProxyManager();
+        RateLimitProperties properties = distributed(10L, 0L);
+        RateLimiter replicaA = new RateLimiter(properties, meterRegistry, Optional.of(store));
+        RateLimiter replicaB = new RateLimiter(properties, new SimpleMeterRegistry(), Optional.of(store));
+        RateLimitPrincipal principal = new RateLimitPrincipal("principal:api-user", null);
+
+        // When
+        int consumed = consumed(replicaA, principal, 8) + consumed(replicaB, principal, 8);
+
+        // Then
+        assertThat(consumed).isEqualTo(10);
+        assertThat(store.size()).isEqualTo(1);
+    }
+
+    @Test
+    void syncTokensBatchStoreUpdates() {
+        // Given
+        AtomicInteger storeOperations = new AtomicInteger();
+        InMemoryProxyManager store = new InMemoryProxyManager() {
+            @Override
+            protected CompareAndSwapOperation beginCompareAndSwapOperation(String key) {
+                storeOperations.incrementAndGet();
+                return super.beginCompareAndSwapOperation(key);
+            }
+        };
+        RateLimitProperties properties = distributed(1000L, 10L);
+        RateLimiter replicaA = new RateLimiter(properties, meterRegistry, Optional.of(store));
+        RateLimiter replicaB = new RateLimiter(properties, new SimpleMeterRegistry(), Optional.of(store));
+        RateLimitPrincipal principal = new RateLimitPrincipal("principal:api-user", null);
+
+        // When
+        int consumed = consumed(replicaA, principal, 100) + consumed(replicaB, principal, 100);
+
+        // Then
+        assertThat(consumed).isEqualTo(200);
+        assertThat(storeOperations.get()).isLessThanOrEqualTo(40);
+    }
+
+    @Test
+    void storeFailureLetsRequestsThrough() {
+        // Given
+        InMemoryProxyManager store = new InMemoryProxyManager() {
+            @Override
+            protected CompareAndSwapOperation beginCompareAndSwapOperation(String key) {
+                throw new IllegalStateException("Connection refused");
+            }
+        };
+        RateLimiter rateLimiter = new RateLimiter(distributed(1L, 0L), meterRegistry, Optional.of(store));
+
+        // When
+        int consumed = consumed(rateLimiter, new RateLimitPrincipal("principal:api-user", null), 3);
+
+        // Then
+        assertThat(consumed).isEqualTo(3);
+        assertThat(meterRegistry.get("rate.limit.store.errors").counter().count()).isEqualTo(3);
+    }
+
+    @Test
+    void sendsAreChargedByRecipientsAndPayloadInTheirOwnBucket() {
+        // Given
+        RateLimitProperties properties = new RateLimitProperties(1L, Duration.ofMinutes(1), null, null, null, null,
+                new RateLimitProperties.Send(10L, Duration.ofMinutes(1), 15L, DataSize.ofKilobytes(1), null));
+        RateLimiter rateLimiter = new RateLimiter(properties, meterRegistry, Optional.empty());
+        RateLimitPrincipal principal = new RateLimitPrincipal("principal:api-user", null);
+        SendMailRequest request = new SendMailRequest("noreply@example.com",
+                List.of("a@example.com", "b@example.com"), List.of("c@example.com"), List.of("d@example.com"),
+                "Subject", "x".repeat(1500), null,
+                List.of(new EmailAttachment("a.bin", "application/octet-stream", "A".repeat(1024))), true, null);
+
+        // When
+        long cost = rateLimiter.sendCost(request);
+
+        // Then - 4 recipients, 1500 body + 768 attachment bytes in 1 KB tokens
+        assertThat(cost).isEqualTo(7);
+        assertThat(rateLimiter.tryConsume(principal, RateLimiter.Lane.SEND, cost)).isTrue();
+        assertThat(rateLimiter.tryConsume(principal, RateLimiter.Lane.SEND, cost)).isFalse();
+        assertThat(rateLimiter.tryConsume(principal, RateLimiter.Lane.SEND, 3)).isTrue();
+        assertThat(rateLimiter.tryConsume(principal)).isTrue();
+        assertThat(rateLimiter.tryConsume(principal)).isFalse();
+    }
+
+    @Test
+    void costsAboveCapacityNeedAFullBucket() {
+        // Given
+        RateLimitProperties properties = new RateLimitProperties(null, null, null, null, null, null,
+                new RateLimitProperties.Send(10L, Duration.ofMinutes(1), 100L, null, null));
+        RateLimiter rateLimiter = new RateLimiter(properties, meterRegistry, Optional.empty());
+        RateLimitPrincipal principal = new RateLimitPrincipal("principal:api-user", null);
+
+        // When / Then
+        assertThat(rateLimiter.tryConsume(principal, RateLimiter.Lane.SEND, 250)).isTrue();
+        assertThat(rateLimiter.tryConsume(principal, RateLimiter.Lane.SEND, 1)).isFalse();
+    }
+
+    private static RateLimitProperties distributed(long capacity, long syncTokens) {
+        return new RateLimitProperties(capacity, Duration.ofMinutes(1), null, null, null,
+                new RateLimitProperties.Distributed(RateLimitProperties.Backend.MEMORY, syncTokens,
+                        Duration.ofMinutes(1), null), null);
+    }
+
+    private static int consumed(RateLimiter rateLimiter, RateLimitPrincipal principal, int attempts) {
+        int consumed = 0;
+        for (int i = 0; i < attempts; i++) {
+            if (rateLimiter.tryConsume(principal)) {
+                consumed++;
+            }
+        }
+        return consumed;
+    }
+}
@@ -0,0 +1,110 @@
+package com.graphmailer.service.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for TokenBucketTable.
+ */
+class TokenBucketTableTest {
+
+    @Test
+    void refillsFullCapacityOncePerPeriod() throws Exception {
+        // Given
+        TokenBucketTable table = new TokenBucketTable(16);
+        assertThat(table.tryConsume(42, 1)).isEqualTo(TokenBucketTable.ABSENT);
+        assertThat(table.insertAndConsume(42, 3, 100, 1)).isEqualTo(TokenBucketTable.CONSUMED);
+
+        // When
+        int beforeRefill = consumed(table, 42, 5);
+        Thread.sleep(150);
+        int afterRefill = consumed(table, 42, 5);
+
+        // Then
+        assertThat(beforeRefill).isEqualTo(2);
+        assertThat(afterRefill).isEqualTo(3);
+    }
+
+    @Test
+    void concurrentRequestsNeverOverdrawABucket() throws Exception {
+        // Given
+        TokenBucketTable table = new TokenBucketTable(1024);
+        AtomicInteger consumed = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        // When
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int worker = 0; worker < 8; worker++) {
+                workers.add(executor.submit(() -> {
+                    for (int i = 0; i < 5_000; i++) {
+                        int result = table.tryConsume(7, 1);
+                        if (result == TokenBucketTable.ABSENT) {
+                            result = table.insertAndConsume(7, 10_000, 60_000, 1);
+                        }
+                        if (result == TokenBucketTable.CONSUMED) {
+                            consumed.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Then
+        assertThat(consumed.get()).isEqualTo(10_000);
+        assertThat(table.size()).isEqualTo(1);
+    }
+
+    @Test
+    void fullTableReplacesRefilledBucketsFirst() throws Exception {
+        // Given - two slots, so both buckets share one probe window
+        TokenBucketTable table = new TokenBucketTable(2);
+        table.insertAndConsume(1, 5, 50, 1);
+        table.insertAndConsume(2, 5, 60_000, 1);
+        Thread.sleep(100);
+
+        // When
+        table.insertAndConsume(3, 5, 60_000, 1);
+
+        // Then
+        assertThat(table.tryConsume(1, 1)).isEqualTo(TokenBucketTable.ABSENT);
+        assertThat(table.tryConsume(2, 1)).isEqualTo(TokenBucketTable.CONSUMED);
+        assertThat(table.tryConsume(3, 1)).isEqualTo(TokenBucketTable.CONSUMED);
+        assertThat(table.size()).isEqualTo(2);
+        assertThat(table.evictions()).isEqualTo(1);
+        assertThat(table.memoryBytes()).isEqualTo(2 * TokenBucketTable.SLOT_BYTES);
+    }
+
+    @Test
+    void chargesAtMostTheCapacity() {
+        // Given
+        TokenBucketTable table = new TokenBucketTable(16);
+        table.insertAndConsume(9, 10, 60_000, 250);
+
+        // When / Then
+        assertThat(table.tryConsume(9, 1)).isEqualTo(TokenBucketTable.REJECTED);
+    }
+
+    private static int consumed(TokenBucketTable table, long fingerprint, int attempts) {
+        int consumed = 0;
+        for (int i = 0; i < attempts; i++) {
+            if (table.tryConsume(fingerprint, 1) == TokenBucketTable.CONSUMED) {
+                consumed++;
+            }
+        }
+        return consumed;
+    }
+}
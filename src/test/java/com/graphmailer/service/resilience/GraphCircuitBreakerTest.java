@@ -0,0 +1,122 @@
+package com.graphmailer.service.resilience;
+
+import com.graphmailer.config.CircuitBreakerProperties;
+import com.graphmailer.service.GraphResponseException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for GraphCircuitBreaker.
+ */
+class GraphCircuitBreakerTest {
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void breakerOpensOnceFailureRateIsCrossed() {
+        // Given - four calls in the window, half of them failing opens the breaker
+        GraphCircuitBreaker breaker = createBreaker(Duration.ofMinutes(1));
+
+        // When
+        succeed(breaker);
+        succeed(breaker);
+        fail(breaker);
+        fail(breaker);
+
+        // Then
+        assertThat(breaker.getState()).isEqualTo(GraphCircuitBreaker.State.OPEN);
+        assertThatThrownBy(() -> breaker.call(() -> "not called"))
+                .isInstanceOf(CircuitOpenException.class);
+        assertThat(meterRegistry.get("graph.circuit.calls").tag("outcome", "rejected").counter().count())
+                .isEqualTo(1.0);
+        assertThat(meterRegistry.get("graph.circuit.state").tag("state", "open").gauge().value()).isEqualTo(1.0);
+    }
+
+    @Test
+    void clientErrorsDoNotOpenBreaker() {
+        // Given
+        GraphCircuitBreaker breaker = createBreaker(Duration.ofMinutes(1));
+
+        // When
+        for (int i = 0; i < 4; i++) {
+            assertThatThrownBy(() -> breaker.call(() -> {
+                throw new GraphResponseException("bad request", 400, null);
+            })).isInstanceOf(GraphResponseException.class);
+        }
+
+        // Then
+        assertThat(breaker.getState()).isEqualTo(GraphCircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void successfulProbesCloseBreaker() throws Exception {
+        // Given - an opened breaker whose open period has elapsed
+        GraphCircuitBreaker breaker = createBreaker(Duration.ofMillis(1));
+        for (int i = 0; i < 4; i++) {
+            fail(breaker);
+        }
+        assertThat(breaker.getState()).isEqualTo(GraphCircuitBreaker.State.OPEN);
+        Thread.sleep(10);
+
+        // When - two probes succeed
+        succeed(breaker);
+        assertThat(breaker.getState()).isEqualTo(GraphCircuitBreaker.State.HALF_OPEN);
+        succeed(breaker);
+
+        // Then
+        assertThat(breaker.getState()).isEqualTo(GraphCircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void failedProbeReopensBreakerAndLimitsProbes() throws Exception {
+        // Given
+        GraphCircuitBreaker breaker = createBreaker(Duration.ofMillis(1));
+        for (int i = 0; i < 4; i++) {
+            fail(breaker);
+        }
+        Thread.sleep(10);
+
+        // When - two probes are started, the third call is rejected
+        CompletableFuture<String> firstProbe = new CompletableFuture<>();
+        CompletableFuture<String> probe = breaker.execute(() -> firstProbe);
+        breaker.execute(CompletableFuture::new);
+        CompletableFuture<Object> rejected = breaker.execute(CompletableFuture::new);
+
+        // Then
+        assertThat(rejected).isCompletedExceptionally();
+        firstProbe.completeExceptionally(new GraphResponseException("unavailable", 503, null));
+        assertThat(probe).isCompletedExceptionally();
+        assertThat(breaker.getState()).isEqualTo(GraphCircuitBreaker.State.OPEN);
+    }
+
+    private GraphCircuitBreaker createBreaker(Duration openDuration) {
+        return new GraphCircuitBreaker(new CircuitBreakerProperties(true, 4, 4, 50, 100,
+                Duration.ofSeconds(5), openDuration, 2), meterRegistry);
+    }
+
+    private static void succeed(GraphCircuitBreaker breaker) {
+        try {
+            breaker.call(() -> "ok");
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static void fail(GraphCircuitBreaker breaker) {
+        assertThatThrownBy(() -> breaker.call(() -> {
+            throw new GraphResponseException("unavailable", 503, null);
+        })).isInstanceOf(GraphResponseException.class);
+    }
+}
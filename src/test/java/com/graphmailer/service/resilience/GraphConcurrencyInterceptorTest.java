@@ -0,0 +1,91 @@
+package com.graphmailer.service.resilience;
+
+import com.graphmailer.config.GraphConcurrencyProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.Call;
+import okhttp3.Interceptor;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for GraphConcurrencyInterceptor.
+ */
+class GraphConcurrencyInterceptorTest {
+
+    private static final Request REQUEST = new Request.Builder()
+            .url("https://graph.microsoft.com/v1.0/users/sender@contoso.com/sendMail")
+            .build();
+
+    private GraphConcurrencyLimiter limiter;
+    private GraphConcurrencyInterceptor interceptor;
+    private Interceptor.Chain chain;
+
+    @BeforeEach
+    void setUp() {
+        limiter = new GraphConcurrencyLimiter(new GraphConcurrencyProperties(true, 20, 1, 100, 10,
+                Duration.ofSeconds(1), 0.5, Duration.ofMinutes(1)), new SimpleMeterRegistry());
+        interceptor = new GraphConcurrencyInterceptor(limiter);
+        chain = mock(Interceptor.Chain.class);
+        when(chain.request()).thenReturn(REQUEST);
+        when(chain.call()).thenReturn(mock(Call.class));
+    }
+
+    @Test
+    void successfulResponseReturnsPermitAndKeepsLimit() throws Exception {
+        // Given
+        when(chain.proceed(REQUEST)).thenReturn(response(202));
+
+        // When
+        Response response = interceptor.intercept(chain);
+
+        // Then
+        assertThat(response.code()).isEqualTo(202);
+        assertThat(limiter.getInFlight()).isZero();
+        assertThat(limiter.getLimit()).isEqualTo(20);
+    }
+
+    @Test
+    void throttledResponseLowersLimit() throws Exception {
+        // Given
+        when(chain.proceed(REQUEST)).thenReturn(response(429));
+
+        // When
+        interceptor.intercept(chain);
+
+        // Then
+        assertThat(limiter.getInFlight()).isZero();
+        assertThat(limiter.getLimit()).isEqualTo(10);
+    }
+
+    @Test
+    void networkFailureLowersLimitAndPropagates() throws Exception {
+        // Given
+        when(chain.proceed(REQUEST)).thenThrow(new SocketTimeoutException("timeout"));
+
+        // When & Then
+        assertThatThrownBy(() -> interceptor.intercept(chain)).isInstanceOf(IOException.class);
+        assertThat(limiter.getInFlight()).isZero();
+        assertThat(limiter.getLimit()).isEqualTo(10);
+    }
+
+    private static Response response(int code) {
+        return new Response.Builder()
+                .request(REQUEST)
+                .protocol(Protocol.HTTP_1_1)
+                .code(code)
+                .message("status " + code)
+                .build();
+    }
+}
@@ -0,0 +1,204 @@
+package com.graphmailer.service.resilience;
+
+import com.graphmailer.config.GraphConcurrencyProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for GraphConcurrencyLimiter.
+ */
+class GraphConcurrencyLimiterTest {
+
+    private static final long BASE_RTT = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void limitGrowsWhileLatencyStaysAtBaseline() throws Exception {
+        // Given
+        GraphConcurrencyLimiter limiter = createLimiter(10, 0, Duration.ofSeconds(1));
+
+        // When - the limit is fully used and Graph answers as fast as ever
+        for (int i = 0; i < 20; i++) {
+            limiter.acquire();
+            limiter.onSample(BASE_RTT, limiter.getLimit(), false);
+        }
+
+        // Then
+        assertThat(limiter.getLimit()).isGreaterThan(10);
+        assertThat(limiter.getInFlight()).isZero();
+        assertThat(meterRegistry.get("graph.concurrency.limit").gauge().value()).isEqualTo(limiter.getLimit());
+        assertThat(meterRegistry.get("graph.concurrency.rtt").tag("estimate", "min").timeGauge()
+                .value(TimeUnit.MILLISECONDS)).isEqualTo(100.0);
+    }
+
+    @Test
+    void limitShrinksWhenLatencyRisesAboveBaseline() throws Exception {
+        // Given
+        GraphConcurrencyLimiter limiter = createLimiter(40, 0, Duration.ofSeconds(1));
+        limiter.acquire();
+        limiter.onSample(BASE_RTT, 40, false);
+        int afterBaseline = limiter.getLimit();
+
+        // When - requests take three times as long, so most of them queue inside Graph
+        for (int i = 0; i < 10; i++) {
+            limiter.acquire();
+            limiter.onSample(3 * BASE_RTT, limiter.getLimit(), false);
+        }
+
+        // Then
+        assertThat(limiter.getLimit()).isLessThan(afterBaseline);
+    }
+
+    @Test
+    void lightLoadDoesNotChangeLimit() throws Exception {
+        // Given
+        GraphConcurrencyLimiter limiter = createLimiter(40, 0, Duration.ofSeconds(1));
+
+        // When - a single request in flight says nothing about how many would fit
+        for (int i = 0; i < 10; i++) {
+            limiter.acquire();
+            limiter.onSample(BASE_RTT, 1, false);
+        }
+
+        // Then
+        assertThat(limiter.getLimit()).isEqualTo(40);
+    }
+
+    @Test
+    void throttledResponsesLowerLimitOncePerRoundTrip() throws Exception {
+        // Given - a long smoothed RTT, so both throttled responses belong to the same round trip
+        GraphConcurrencyLimiter limiter = createLimiter(40, 0, Duration.ofSeconds(1));
+        limiter.acquire();
+        limiter.onSample(TimeUnit.MINUTES.toNanos(1), 1, false);
+
+        // When
+        limiter.acquire().onDropped();
+        limiter.acquire().onDropped();
+
+        // Then
+        assertThat(limiter.getLimit()).isEqualTo(36);
+        assertThat(limiter.getInFlight()).isZero();
+    }
+
+    @Test
+    void callersWaitForPermitBeyondLimit() throws Exception {
+        // Given
+        GraphConcurrencyLimiter limiter = createLimiter(1, 10, Duration.ofSeconds(10));
+        GraphConcurrencyLimiter.Permit first = limiter.acquire();
+
+        // When
+        CompletableFuture<GraphConcurrencyLimiter.Permit> second = CompletableFuture.supplyAsync(() -> {
+            try {
+                return limiter.acquire();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        while (meterRegistry.get("graph.concurrency.queued").gauge().value() < 1) {
+            Thread.onSpinWait();
+        }
+        assertThat(second).isNotDone();
+        first.onSuccess();
+
+        // Then
+        second.get(5, TimeUnit.SECONDS).onSuccess();
+        assertThat(limiter.getInFlight()).isZero();
+    }
+
+    @Test
+    void freedPermitsGoToWaitersInArrivalOrder() throws Exception {
+        // Given
+        GraphConcurrencyLimiter limiter = createLimiter(1, 10, Duration.ofSeconds(10));
+        GraphConcurrencyLimiter.Permit first = limiter.acquire();
+        List<String> order = new CopyOnWriteArrayList<>();
+        CompletableFuture<GraphConcurrencyLimiter.Permit> second = acquireAsync(limiter, "second", order);
+        awaitQueued(1);
+        CompletableFuture<GraphConcurrencyLimiter.Permit> third = acquireAsync(limiter, "third", order);
+        awaitQueued(2);
+
+        // When - permits come back without changing the limit
+        first.onIgnore();
+        second.get(5, TimeUnit.SECONDS).onIgnore();
+        third.get(5, TimeUnit.SECONDS).onIgnore();
+
+        // Then
+        assertThat(order).containsExactly("second", "third");
+        assertThat(limiter.getInFlight()).isZero();
+        assertThat(meterRegistry.get("graph.concurrency.queued").gauge().value()).isZero();
+    }
+
+    @Test
+    void callersAreRejectedWhenQueueIsFullOrWaitTimesOut() throws Exception {
+        // Given
+        GraphConcurrencyLimiter limiter = createLimiter(1, 0, Duration.ofSeconds(1));
+        limiter.acquire();
+
+        // When & Then
+        assertThatThrownBy(limiter::checkAdmission).isInstanceOf(GraphOverloadedException.class);
+        assertThatThrownBy(limiter::acquire).isInstanceOf(GraphOverloadedException.class)
+                .isInstanceOf(CircuitOpenException.class);
+
+        GraphConcurrencyLimiter waiting = createLimiter(1, 10, Duration.ofMillis(20));
+        waiting.acquire();
+        assertThatThrownBy(waiting::acquire).isInstanceOf(GraphOverloadedException.class);
+        assertThat(meterRegistry.get("graph.concurrency.rejections").tag("reason", "timeout").counter().count())
+                .isEqualTo(1.0);
+    }
+
+    @Test
+    void disabledLimiterNeverWaits() throws Exception {
+        // Given
+        GraphConcurrencyLimiter limiter = new GraphConcurrencyLimiter(
+                new GraphConcurrencyProperties(false, 1, 1, 1, 0, null, null, null), meterRegistry);
+
+        // When
+        limiter.acquire();
+        limiter.acquire();
+        limiter.checkAdmission();
+
+        // Then
+        assertThat(limiter.getInFlight()).isZero();
+    }
+
+    private static CompletableFuture<GraphConcurrencyLimiter.Permit> acquireAsync(
+            GraphConcurrencyLimiter limiter, String name, List<String> order) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                GraphConcurrencyLimiter.Permit permit = limiter.acquire();
+                order.add(name);
+                return permit;
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    private void awaitQueued(int queued) {
+        while (meterRegistry.get("graph.concurrency.queued").gauge().value() < queued) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private GraphConcurrencyLimiter createLimiter(int initialLimit, int maxQueued, Duration maxQueueWait) {
+        meterRegistry = new SimpleMeterRegistry();
+        GraphConcurrencyProperties properties = new GraphConcurrencyProperties(true, initialLimit, 1, 100,
+                maxQueued, maxQueueWait, 0.9, Duration.ofMinutes(1));
+        return new GraphConcurrencyLimiter(properties, meterRegistry);
+    }
+}
@@ -0,0 +1,58 @@
+package com.graphmailer.service.resilience;
+
+import com.graphmailer.service.GraphMailException;
+import com.graphmailer.service.GraphResponseException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for GraphFailureClassifier.
+ */
+class GraphFailureClassifierTest {
+
+    @Test
+    void tooManyRequestsIsThrottledWithRetryAfter() {
+        // When
+        GraphFailureClassifier.Classification classification = GraphFailureClassifier.classify(
+                new GraphResponseException("throttled", 429, Duration.ofSeconds(7)));
+
+        // Then
+        assertThat(classification.kind()).isEqualTo(FailureKind.THROTTLED);
+        assertThat(classification.retryAfter()).isEqualTo(Duration.ofSeconds(7));
+    }
+
+    @Test
+    void serviceUnavailableIsThrottledOnlyWithRetryAfter() {
+        assertThat(GraphFailureClassifier.classify(
+                new GraphResponseException("busy", 503, Duration.ofSeconds(1))).kind())
+                .isEqualTo(FailureKind.THROTTLED);
+        assertThat(GraphFailureClassifier.classify(
+                new GraphResponseException("down", 503, null)).kind())
+                .isEqualTo(FailureKind.TRANSIENT);
+    }
+
+    @Test
+    void clientErrorsAreNotRetryable() {
+        assertThat(GraphFailureClassifier.classify(
+                new GraphResponseException("bad request", 400, null)).kind())
+                .isEqualTo(FailureKind.NON_RETRYABLE);
+        assertThat(GraphFailureClassifier.classify(
+                new IllegalArgumentException("Sender UPN not allowed")).kind())
+                .isEqualTo(FailureKind.NON_RETRYABLE);
+    }
+
+    @Test
+    void wrappedIoFailureIsTransient() {
+        // Given
+        Throwable failure = new CompletionException(
+                new GraphMailException("Graph API call failed", new IOException("connection reset")));
+
+        // When & Then
+        assertThat(GraphFailureClassifier.classify(failure).kind()).isEqualTo(FailureKind.TRANSIENT);
+    }
+}
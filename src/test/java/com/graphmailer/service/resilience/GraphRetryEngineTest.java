@@ -0,0 +1,125 @@
+package com.graphmailer.service.resilience;
+
+import com.graphmailer.config.GraphProperties;
+import com.graphmailer.service.GraphResponseException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for GraphRetryEngine.
+ */
+class GraphRetryEngineTest {
+
+    private GraphRetryEngine retryEngine;
+
+    @BeforeEach
+    void setUp() {
+        retryEngine = new GraphRetryEngine(new GraphProperties("tenant", "client", "secret",
+                "https://graph.microsoft.com/.default",
+                new GraphProperties.RequestConfig(10000, 3, 5, 2_000L), null), false);
+    }
+
+    @AfterEach
+    void tearDown() {
+        retryEngine.shutdown();
+    }
+
+    @Test
+    void transientFailuresAreRetriedUntilSuccess() throws Exception {
+        // Given - two server errors followed by success
+        AtomicInteger attempts = new AtomicInteger();
+
+        // When
+        String result = retryEngine.call("test", () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new GraphResponseException("server error", 500, null);
+            }
+            return "ok";
+        });
+
+        // Then
+        assertThat(result).isEqualTo("ok");
+        assertThat(attempts.get()).isEqualTo(3);
+    }
+
+    @Test
+    void nonRetryableFailureIsNotRetried() {
+        // Given
+        AtomicInteger attempts = new AtomicInteger();
+
+        // When & Then
+        assertThatThrownBy(() -> retryEngine.call("test", () -> {
+            attempts.incrementAndGet();
+            throw new IllegalArgumentException("Sender UPN not allowed");
+        })).isInstanceOf(IllegalArgumentException.class);
+        assertThat(attempts.get()).isEqualTo(1);
+    }
+
+    @Test
+    void retriesStopOnceBudgetIsSpent() {
+        // Given
+        AtomicInteger attempts = new AtomicInteger();
+
+        // When & Then - initial attempt plus three retries
+        assertThatThrownBy(() -> retryEngine.call("test", () -> {
+            attempts.incrementAndGet();
+            throw new GraphResponseException("server error", 503, null);
+        })).isInstanceOf(GraphResponseException.class);
+        assertThat(attempts.get()).isEqualTo(4);
+    }
+
+    @Test
+    void throttledAttemptWaitsForRetryAfter() throws Exception {
+        // Given - Graph asks for a 200 ms pause once
+        AtomicInteger attempts = new AtomicInteger();
+        long start = System.nanoTime();
+
+        // When
+        CompletableFuture<String> result = retryEngine.execute("test", () -> attempts.incrementAndGet() == 1
+                ? CompletableFuture.failedFuture(new GraphResponseException("throttled", 429, Duration.ofMillis(200)))
+                : CompletableFuture.completedFuture("ok"));
+
+        // Then
+        assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("ok");
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(Duration.ofMillis(200));
+    }
+
+    @Test
+    void retryAfterAboveLimitFailsFastWithThatRetryAfter() {
+        // Given - Graph asks for a pause longer than the 2 s limit
+        AtomicInteger attempts = new AtomicInteger();
+
+        // When
+        CompletableFuture<String> result = retryEngine.execute("test", () -> {
+            attempts.incrementAndGet();
+            return CompletableFuture.failedFuture(new GraphResponseException("throttled", 429, Duration.ofMinutes(5)));
+        });
+
+        // Then
+        assertThat(result).failsWithin(Duration.ofSeconds(1)).withThrowableThat()
+                .havingCause()
+                .isInstanceOfSatisfying(GraphThrottledException.class,
+                        throttled -> assertThat(throttled.getRetryAfter()).isEqualTo(Duration.ofMinutes(5)));
+        assertThat(attempts.get()).isEqualTo(1);
+    }
+
+    @Test
+    void backoffDelayIsJitteredAndCapped() {
+        // Given
+        GraphFailureClassifier.Classification transientFailure =
+                new GraphFailureClassifier.Classification(FailureKind.TRANSIENT, 500, null);
+
+        // When & Then
+        assertThat(retryEngine.delayFor(transientFailure, 3)).isBetween(Duration.ofMillis(10), Duration.ofMillis(20));
+        assertThat(retryEngine.delayFor(transientFailure, 30)).isLessThanOrEqualTo(GraphRetryEngine.MAX_BACKOFF);
+    }
+}
@@ -0,0 +1,148 @@
+package com.graphmailer.service.resilience;
+
+import com.graphmailer.config.MailboxGovernorProperties;
+import com.graphmailer.service.GraphResponseException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for MailboxGovernor.
+ */
+class MailboxGovernorTest {
+
+    private MailboxGovernor governor;
+
+    @AfterEach
+    void tearDown() {
+        if (governor != null) {
+            governor.shutdown();
+        }
+    }
+
+    @Test
+    void callsBeyondConcurrencyLimitAreQueuedInOrder() throws Exception {
+        // Given - two permits per mailbox
+        governor = createGovernor(2, 6000, 10);
+        List<CompletableFuture<String>> graphCalls = new ArrayList<>();
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            graphCalls.add(new CompletableFuture<>());
+        }
+        List<Integer> started = Collections.synchronizedList(new ArrayList<>());
+
+        // When
+        for (int i = 0; i < 4; i++) {
+            int call = i;
+            results.add(governor.submit("noreply@example.com", () -> {
+                started.add(call);
+                return call < 2 ? graphCalls.get(call) : CompletableFuture.completedFuture("queued-" + call);
+            }));
+        }
+
+        // Then - only two calls started until a permit is returned
+        assertThat(started).containsExactly(0, 1);
+        assertThat(governor.snapshot().get("noreply@example.com").queued()).isEqualTo(2);
+
+        graphCalls.get(0).complete("first");
+        assertThat(results.get(2).get(5, TimeUnit.SECONDS)).isEqualTo("queued-2");
+        assertThat(results.get(3).get(5, TimeUnit.SECONDS)).isEqualTo("queued-3");
+        assertThat(results.get(0).get()).isEqualTo("first");
+        graphCalls.get(1).complete("second");
+    }
+
+    @Test
+    void mailboxesAreLimitedIndependently() {
+        // Given - one permit per mailbox, held by a pending call
+        governor = createGovernor(1, 6000, 10);
+        governor.submit("hot@example.com", CompletableFuture::new);
+
+        // When
+        CompletableFuture<String> other = governor.submit("other@example.com",
+                () -> CompletableFuture.completedFuture("sent"));
+
+        // Then
+        assertThat(other).isCompletedWithValue("sent");
+        assertThat(governor.snapshot().get("hot@example.com").inFlight()).isEqualTo(1);
+    }
+
+    @Test
+    void throttledResponseLowersLimitsAndPausesMailbox() {
+        // Given
+        governor = createGovernor(4, 60, 10);
+
+        // When
+        governor.submit("noreply@example.com", () -> CompletableFuture.failedFuture(
+                new GraphResponseException("throttled", 429, Duration.ofSeconds(30))));
+
+        // Then
+        MailboxGovernor.MailboxSnapshot snapshot = governor.snapshot().get("noreply@example.com");
+        assertThat(snapshot.concurrencyLimit()).isEqualTo(2);
+        assertThat(snapshot.messagesPerMinute()).isEqualTo(30.0);
+        assertThat(snapshot.throttledCount()).isEqualTo(1);
+        assertThat(snapshot.pausedUntil()).isNotNull();
+    }
+
+    @Test
+    void limitsRecoverAfterSuccessfulCalls() {
+        // Given - a throttled mailbox without a pause
+        governor = createGovernor(4, 6000, 10);
+        governor.submit("noreply@example.com", () -> CompletableFuture.failedFuture(
+                new GraphResponseException("throttled", 429, null)));
+        assertThat(governor.snapshot().get("noreply@example.com").concurrencyLimit()).isEqualTo(2);
+
+        // When - one window of successes
+        for (int i = 0; i < 2; i++) {
+            governor.submit("noreply@example.com", () -> CompletableFuture.completedFuture("sent"));
+        }
+
+        // Then
+        assertThat(governor.snapshot().get("noreply@example.com").concurrencyLimit()).isEqualTo(3);
+    }
+
+    @Test
+    void fullQueueRejectsWithThrottlingFailure() {
+        // Given - one permit in use and room for one queued call
+        governor = createGovernor(1, 6000, 1);
+        governor.submit("noreply@example.com", CompletableFuture::new);
+        governor.submit("noreply@example.com", CompletableFuture::new);
+
+        // When
+        CompletableFuture<Object> rejected = governor.submit("noreply@example.com", CompletableFuture::new);
+
+        // Then
+        assertThat(rejected).isCompletedExceptionally();
+        Throwable failure = rejected.handle((value, error) -> error).join();
+        assertThat(failure).isInstanceOf(MailboxBusyException.class);
+        assertThat(GraphFailureClassifier.classify(failure).kind()).isEqualTo(FailureKind.THROTTLED);
+    }
+
+    @Test
+    void callsThatWouldWaitLongerThanTheMaxQueueDelayAreRejected() {
+        // Given - one send per minute, already used, and a 30 second bound
+        governor = createGovernor(4, 1, 500);
+        governor.submit("noreply@example.com", () -> CompletableFuture.completedFuture("sent"));
+
+        // When - the next token is about a minute away
+        CompletableFuture<Object> rejected = governor.submit("noreply@example.com", CompletableFuture::new);
+
+        // Then - rejected up front with the estimated wait, nothing queued
+        Throwable failure = rejected.handle((value, error) -> error).join();
+        assertThat(failure).isInstanceOf(MailboxBusyException.class);
+        assertThat(((MailboxBusyException) failure).getRetryAfter()).isGreaterThan(Duration.ofSeconds(30));
+        assertThat(governor.snapshot().get("noreply@example.com").queued()).isZero();
+    }
+
+    private MailboxGovernor createGovernor(int maxConcurrent, int messagesPerMinute, int maxQueued) {
+        return new MailboxGovernor(new MailboxGovernorProperties(true, maxConcurrent, 1, messagesPerMinute,
+                maxQueued, null, Duration.ofMinutes(10)), false);
+    }
+}
@@ -0,0 +1,176 @@
+package com.graphmailer.service.search;
+
+import com.graphmailer.service.mirror.MirroredMessage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for MailboxIndex, its segments and query parsing.
+ */
+class MailboxIndexTest {
+
+    private static final Instant BASE = Instant.parse("2025-10-21T12:00:00Z");
+
+    @TempDir
+    Path directory;
+
+    private final Map<String, MirroredMessage> mirror = new LinkedHashMap<>();
+
+    @Test
+    void matchesTermsPrefixesPhrasesAndFields() throws Exception {
+        // Given
+        mirror("1", "Quarterly report Q3", "alice@contoso.com", "Please review the attached invoice", 1);
+        mirror("2", "Lunch on Friday", "bob@example.com", "The quarterly numbers look good", 2);
+        mirror("3", "Report draft", "carol@contoso.com", "Quarterly report attached", 3);
+        MailboxIndex index = open(100);
+        index.flush();
+
+        // When / Then
+        assertThat(search(index, "report")).containsExactly("1", "3");
+        assertThat(search(index, "inv*")).containsExactly("1");
+        assertThat(search(index, "\"quarterly report\"")).containsExactly("1", "3");
+        assertThat(search(index, "subject:\"quarterly report\"")).containsExactly("1");
+        assertThat(search(index, "from:contoso quarterly")).containsExactly("1", "3");
+        assertThat(search(index, "from:bob@example.com")).containsExactly("2");
+        assertThat(search(index, "quarterly missing")).isEmpty();
+    }
+
+    @Test
+    void filtersByDateRangeNewestFirst() throws Exception {
+        // Given
+        MailboxIndex index = open(4);
+        for (int i = 0; i < 10; i++) {
+            index.upsert(mirror(String.valueOf(i), "Status update " + i, "ops@contoso.com", "All systems nominal", i));
+        }
+
+        // When
+        List<String> inRange = index.search(SearchQuery.parse("status"),
+                BASE.minusSeconds(8 * 3600).toEpochMilli(), BASE.minusSeconds(2 * 3600).toEpochMilli(), 10);
+        List<String> newest = index.search(SearchQuery.parse(""), Long.MIN_VALUE, Long.MAX_VALUE, 3);
+
+        // Then
+        assertThat(inRange).containsExactly(key("3"), key("4"), key("5"), key("6"), key("7"), key("8"));
+        assertThat(newest).containsExactly(key("0"), key("1"), key("2"));
+        assertThat(index.segmentCount()).isEqualTo(2);
+    }
+
+    @Test
+    void changesAreVisibleBeforeAndAfterFlush() throws Exception {
+        // Given
+        mirror("1", "Invoice 1001", "billing@contoso.com", "Due next week", 1);
+        mirror("2", "Invoice 1002", "billing@contoso.com", "Due next month", 2);
+        MailboxIndex index = open(100);
+        index.flush();
+
+        // When
+        index.upsert(mirror("1", "Receipt 1001", "billing@contoso.com", "Paid, thank you", 1));
+        index.remove(mirror.remove(key("2")));
+        MirroredMessage read = mirror("3", "Invoice 1003", "billing@contoso.com", "Due today", 0);
+        index.upsert(read);
+        index.upsert(new MirroredMessage("inbox", "3", read.internetMessageId(), read.subject(), read.from(),
+                read.receivedDateTime(), read.bodyPreview(), true, false));
+        List<String> buffered = search(index, "invoice");
+        index.flush();
+
+        // Then
+        assertThat(buffered).containsExactly("3");
+        assertThat(search(index, "invoice")).containsExactly("3");
+        assertThat(search(index, "receipt")).containsExactly("1");
+        assertThat(index.segmentCount()).isEqualTo(2);
+    }
+
+    @Test
+    void survivesReopenAndReconcilesWithMirror() throws Exception {
+        // Given
+        mirror("1", "Contract renewal", "legal@contoso.com", "Signed copy attached", 1);
+        mirror("2", "Contract draft", "legal@contoso.com", "Comments inline", 2);
+        open(100).flush();
+        mirror.remove(key("2"));
+        mirror("3", "Contract questions", "legal@contoso.com", "See below", 3);
+
+        // When
+        MailboxIndex reopened = open(100);
+
+        // Then
+        assertThat(search(reopened, "contract")).containsExactly("1", "3");
+        assertThat(reopened.segmentCount()).isEqualTo(2);
+    }
+
+    @Test
+    void mergesSegmentsAboveTheMaximum() throws Exception {
+        // Given
+        MailboxIndex index = MailboxIndex.open(directory, 100, 2, 1024, List.of(), mirror::get);
+
+        // When
+        for (int i = 0; i < 5; i++) {
+            index.upsert(mirror(String.valueOf(i), "Alert " + i, "monitor@contoso.com", "Disk usage high", i));
+            index.flush();
+        }
+
+        // Then
+        assertThat(index.segmentCount()).isLessThanOrEqualTo(2);
+        assertThat(search(index, "alert")).containsExactly("0", "1", "2", "3", "4");
+        try (var files = Files.list(directory)) {
+            assertThat(files.filter(file -> file.getFileName().toString().startsWith("seg-")))
+                    .hasSize(index.segmentCount());
+        }
+    }
+
+    @Test
+    void corruptSegmentIsRebuiltFromMirror() throws Exception {
+        // Given
+        mirror("1", "Travel booking", "travel@contoso.com", "Flight confirmed", 1);
+        open(100).flush();
+        try (var files = Files.list(directory)) {
+            Path segment = files.filter(file -> file.getFileName().toString().startsWith("seg-")).findFirst().orElseThrow();
+            Files.write(segment, new byte[]{1, 2, 3});
+        }
+
+        // When
+        MailboxIndex reopened = open(100);
+
+        // Then
+        assertThat(search(reopened, "flight")).containsExactly("1");
+    }
+
+    @Test
+    void parseRejectsUnterminatedPhrase() {
+        // When / Then
+        assertThatThrownBy(() -> SearchQuery.parse("subject:\"quarterly report"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Unterminated phrase");
+        assertThat(SearchQuery.parse("   ").isEmpty()).isTrue();
+    }
+
+    private MailboxIndex open(int flushDocs) throws Exception {
+        return MailboxIndex.open(directory, flushDocs, 8, 1024, new ArrayList<>(mirror.values()), mirror::get);
+    }
+
+    private List<String> search(MailboxIndex index, String query) {
+        return index.search(SearchQuery.parse(query), Long.MIN_VALUE, Long.MAX_VALUE, 100).stream()
+                .map(key -> mirror.get(key).id())
+                .toList();
+    }
+
+    private MirroredMessage mirror(String id, String subject, String from, String bodyPreview, int hoursAgo) {
+        MirroredMessage message = new MirroredMessage("inbox", id, "<" + id + "@contoso.com>", subject, from,
+                BASE.minusSeconds(hoursAgo * 3600L), bodyPreview, false, false);
+        mirror.put(message.key(), message);
+        return message;
+    }
+
+    private static String key(String id) {
+        return new MirroredMessage("inbox", id, null, null, null, null, null, null, null).key();
+    }
+}
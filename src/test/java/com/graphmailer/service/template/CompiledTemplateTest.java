@@ -0,0 +1,92 @@
+package com.graphmailer.service.template;
+
+import com.graphmailer.model.MailTemplate;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for CompiledTemplate.
+ */
+class CompiledTemplateTest {
+
+    @Test
+    void renderSubstitutesEscapedAndRawValues() {
+        // Given
+        CompiledTemplate template = compile("Order {{orderId}} shipped",
+                "<p>Hi {{ name }}, order {{orderId}}</p>{{{footer}}}", null);
+
+        // When
+        CompiledTemplate.Rendered rendered = template.render(
+                Map.of("footer", "<hr/>"),
+                Map.of("name", "Tom & \"Jerry\" <tj>", "orderId", "A-1"));
+
+        // Then
+        assertThat(template.variables()).containsExactly("orderId", "name", "footer");
+        assertThat(rendered.subject()).isEqualTo("Order A-1 shipped");
+        assertThat(rendered.htmlBody())
+                .isEqualTo("<p>Hi Tom &amp; &quot;Jerry&quot; &lt;tj&gt;, order A-1</p><hr/>");
+        assertThat(rendered.textBody()).isNull();
+    }
+
+    @Test
+    void recipientValuesTakePrecedenceOverSharedOnes() {
+        // Given
+        CompiledTemplate template = compile("Hello", null, "Dear {{name}}, see {{url}}");
+
+        // When
+        CompiledTemplate.Rendered rendered = template.render(
+                Map.of("name", "customer", "url", "https://example.com"), Map.of("name", "O'Brien <Ann>"));
+
+        // Then - text bodies are not escaped
+        assertThat(rendered.htmlBody()).isNull();
+        assertThat(rendered.textBody()).isEqualTo("Dear O'Brien <Ann>, see https://example.com");
+    }
+
+    @Test
+    void reusedBufferRendersEachRecipientIndependently() {
+        // Given
+        CompiledTemplate template = compile("Hi", "<p>{{name}}</p>", null);
+        StringBuilder buffer = new StringBuilder();
+
+        // When
+        String first = template.render(Map.of(), Map.of("name", "a much longer first name"), buffer).htmlBody();
+        String second = template.render(Map.of(), Map.of("name", "Bo"), buffer).htmlBody();
+
+        // Then
+        assertThat(first).isEqualTo("<p>a much longer first name</p>");
+        assertThat(second).isEqualTo("<p>Bo</p>");
+    }
+
+    @Test
+    void missingValueIsRejected() {
+        // Given
+        CompiledTemplate template = compile("Hi {{name}}", "<p>{{code}}</p>", null);
+
+        // When & Then
+        assertThatThrownBy(() -> template.render(Map.of(), Map.of("name", "Ann")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("'code'");
+    }
+
+    @Test
+    void malformedTemplatesAreRejectedWhenCompiled() {
+        // When & Then
+        assertThatThrownBy(() -> compile("Hi {{name", "<p>x</p>", null))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Unclosed");
+        assertThatThrownBy(() -> compile("Hi", "<p>{{first name}}</p>", null))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Invalid template variable");
+        assertThatThrownBy(() -> compile("Hi", " ", null))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private CompiledTemplate compile(String subject, String htmlBody, String textBody) {
+        return CompiledTemplate.compile("test", new MailTemplate(subject, htmlBody, textBody), Instant.now());
+    }
+}
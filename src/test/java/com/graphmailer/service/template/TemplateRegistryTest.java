@@ -0,0 +1,127 @@
+package com.graphmailer.service.template;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.graphmailer.config.TemplateProperties;
+import com.graphmailer.model.MailTemplate;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for TemplateRegistry.
+ */
+class TemplateRegistryTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void persistedTemplatesAreCompiledAgainOnStartup() throws Exception {
+        // Given
+        TemplateRegistry registry = createRegistry(true, 10);
+        registry.put("welcome", new MailTemplate("Welcome {{name}}", "<p>Hello {{name}}</p>", null));
+        registry.put("reset", new MailTemplate("Reset", "<a href=\"{{{link}}}\">Reset</a>", null));
+        registry.remove("reset");
+
+        // When
+        TemplateRegistry restarted = createRegistry(true, 10);
+
+        // Then
+        assertThat(restarted.list()).extracting("templateId").containsExactly("welcome");
+        assertThat(restarted.get("welcome").orElseThrow().render(Map.of(), Map.of("name", "Ann")).htmlBody())
+                .isEqualTo("<p>Hello Ann</p>");
+        assertThat(restarted.get("reset")).isEmpty();
+    }
+
+    @Test
+    void changesMadeByAnotherReplicaAreSeenThroughTheSharedDirectory() throws Exception {
+        // Given - two replicas on the same directory
+        TemplateRegistry first = createRegistry(true, 10);
+        TemplateRegistry second = createRegistry(true, 10);
+
+        // When & Then
+        first.put("welcome", new MailTemplate("Welcome", "<p>v1</p>", null));
+        assertThat(second.get("welcome").orElseThrow().render(Map.of(), Map.of()).htmlBody()).isEqualTo("<p>v1</p>");
+
+        first.put("welcome", new MailTemplate("Welcome", "<p>v2 {{name}}</p>", null));
+        Files.setLastModifiedTime(directory.resolve("welcome.template.json"),
+                FileTime.from(Instant.now().plusSeconds(1)));
+        assertThat(second.get("welcome").orElseThrow().variables()).containsExactly("name");
+
+        first.put("reset", new MailTemplate("Reset", "<p>x</p>", null));
+        assertThat(second.list()).extracting("templateId").containsExactly("reset", "welcome");
+
+        assertThat(second.remove("reset")).isTrue();
+        assertThat(first.get("reset")).isEmpty();
+        assertThat(first.list()).extracting("templateId").containsExactly("welcome");
+    }
+
+    @Test
+    void cachedTemplatesAreNotRecheckedWithinTheRecheckInterval() throws Exception {
+        // Given
+        TemplateRegistry first = createRegistry(true, 10);
+        TemplateRegistry second = createRegistry(true, 10, Duration.ofHours(1));
+        first.put("welcome", new MailTemplate("Welcome", "<p>v1</p>", null));
+        assertThat(second.get("welcome")).isPresent();
+
+        // When
+        first.remove("welcome");
+
+        // Then - still served from the cache until the next check
+        assertThat(second.get("welcome")).isPresent();
+        assertThat(second.list()).isEmpty();
+        assertThat(second.get("welcome")).isEmpty();
+    }
+
+    @Test
+    void uploadReplacesPreviousVersion() throws Exception {
+        // Given
+        TemplateRegistry registry = createRegistry(false, 1);
+        registry.put("welcome", new MailTemplate("Welcome", "<p>v1</p>", null));
+
+        // When
+        registry.put("welcome", new MailTemplate("Welcome", "<p>v2 {{name}}</p>", null));
+
+        // Then - replacing does not count against the limit
+        assertThat(registry.get("welcome").orElseThrow().variables()).containsExactly("name");
+        assertThat(registry.list()).hasSize(1);
+    }
+
+    @Test
+    void invalidIdsAndTemplatesBeyondLimitAreRejected() throws Exception {
+        // Given
+        TemplateRegistry registry = createRegistry(false, 1);
+        registry.put("first", new MailTemplate("Hi", "<p>x</p>", null));
+
+        // When & Then
+        assertThatThrownBy(() -> registry.put("../escape", new MailTemplate("Hi", "<p>x</p>", null)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> registry.put("second", new MailTemplate("Hi", "<p>x</p>", null)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("limit");
+        assertThat(registry.remove("second")).isFalse();
+    }
+
+    private TemplateRegistry createRegistry(boolean persistent, int maxTemplates) throws Exception {
+        return createRegistry(persistent, maxTemplates, Duration.ZERO);
+    }
+
+    private TemplateRegistry createRegistry(boolean persistent, int maxTemplates, Duration recheckInterval)
+            throws Exception {
+        TemplateProperties properties = new TemplateProperties(persistent, directory.toString(), maxTemplates, 100,
+                recheckInterval);
+        return new TemplateRegistry(properties, objectMapper, new SimpleMeterRegistry());
+    }
+}
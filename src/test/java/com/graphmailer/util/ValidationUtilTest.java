@@ -0,0 +1,66 @@
+package com.graphmailer.util;
+
+import com.graphmailer.config.MailProperties;
+import com.graphmailer.model.EmailAttachment;
+import com.graphmailer.model.SendMailRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.Base64;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for ValidationUtil.
+ */
+class ValidationUtilTest {
+
+    private final ValidationUtil validationUtil = new ValidationUtil();
+    private final MailProperties mailProperties = new MailProperties("noreply@yourtenant.com", true,
+            10_000, List.of("example.com"), List.of("noreply@yourtenant.com"), 1_000L, 327_680);
+
+    @Test
+    void largeAttachmentsCannotSkipSentItems() {
+        // Given - attachments over the upload session threshold
+        SendMailRequest request = createMailRequest(2_000, false);
+
+        // When & Then
+        assertThatThrownBy(() -> validationUtil.validateMailRequest(request, mailProperties))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("saveToSentItems");
+    }
+
+    @Test
+    void smallAttachmentsMaySkipSentItems() {
+        // Given
+        SendMailRequest request = createMailRequest(500, false);
+
+        // When & Then
+        assertThatCode(() -> validationUtil.validateMailRequest(request, mailProperties)).doesNotThrowAnyException();
+    }
+
+    @Test
+    void largeAttachmentsAreAcceptedWhenSavedToSentItems() {
+        // Given
+        SendMailRequest request = createMailRequest(2_000, true);
+
+        // When & Then
+        assertThatCode(() -> validationUtil.validateMailRequest(request, mailProperties)).doesNotThrowAnyException();
+    }
+
+    private SendMailRequest createMailRequest(int attachmentBytes, boolean saveToSentItems) {
+        String content = Base64.getEncoder().encodeToString(new byte[attachmentBytes]);
+        return new SendMailRequest(
+                "noreply@yourtenant.com",
+                List.of("test@example.com"),
+                List.of(),
+                List.of(),
+                "Test Subject",
+                "<p>Test HTML Body</p>",
+                null,
+                List.of(new EmailAttachment("report.pdf", "application/pdf", content)),
+                saveToSentItems,
+                "normal");
+    }
+}